@@ -29,7 +29,9 @@ import org.apache.rocketmq.acl.common.SessionCredentials;
 import org.apache.rocketmq.common.AclConfig;
 import org.apache.rocketmq.common.MixAll;
 import org.apache.rocketmq.common.PlainAccessConfig;
+import org.apache.rocketmq.common.message.MessageQueue;
 import org.apache.rocketmq.common.protocol.RequestCode;
+import org.apache.rocketmq.common.protocol.body.UpdateConsumerOffsetBatchRequestBody;
 import org.apache.rocketmq.common.protocol.header.GetConsumerListByGroupRequestHeader;
 import org.apache.rocketmq.common.protocol.header.UnregisterClientRequestHeader;
 import org.apache.rocketmq.common.protocol.header.UpdateConsumerOffsetRequestHeader;
@@ -88,7 +90,7 @@ public class PlainAccessValidator implements AccessValidator {
                     accessResource.addResourceAndPerm(request.getExtFields().get("topic"), Permission.SUB);
                     break;
                 case RequestCode.HEART_BEAT:
-                    HeartbeatData heartbeatData = HeartbeatData.decode(request.getBody(), HeartbeatData.class);
+                    HeartbeatData heartbeatData = HeartbeatData.decode(request);
                     for (ConsumerData data : heartbeatData.getConsumerDataSet()) {
                         accessResource.addResourceAndPerm(getRetryTopic(data.getGroupName()), Permission.SUB);
                         for (SubscriptionData subscriptionData : data.getSubscriptionDataSet()) {
@@ -115,6 +117,14 @@ public class PlainAccessValidator implements AccessValidator {
                     accessResource.addResourceAndPerm(getRetryTopic(updateConsumerOffsetRequestHeader.getConsumerGroup()), Permission.SUB);
                     accessResource.addResourceAndPerm(updateConsumerOffsetRequestHeader.getTopic(), Permission.SUB);
                     break;
+                case RequestCode.UPDATE_CONSUMER_OFFSET_BATCH:
+                    final UpdateConsumerOffsetBatchRequestBody updateConsumerOffsetBatchRequestBody =
+                        UpdateConsumerOffsetBatchRequestBody.decode(request.getBody(), UpdateConsumerOffsetBatchRequestBody.class);
+                    accessResource.addResourceAndPerm(getRetryTopic(updateConsumerOffsetBatchRequestBody.getConsumerGroup()), Permission.SUB);
+                    for (MessageQueue mq : updateConsumerOffsetBatchRequestBody.getOffsetTable().keySet()) {
+                        accessResource.addResourceAndPerm(mq.getTopic(), Permission.SUB);
+                    }
+                    break;
                 default:
                     break;
 
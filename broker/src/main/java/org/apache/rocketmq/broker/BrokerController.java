@@ -36,7 +36,6 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -55,6 +54,7 @@ import org.apache.rocketmq.broker.filter.ConsumerFilterManager;
 import org.apache.rocketmq.broker.filtersrv.FilterServerManager;
 import org.apache.rocketmq.broker.latency.BrokerFastFailure;
 import org.apache.rocketmq.broker.latency.BrokerFixedThreadPoolExecutor;
+import org.apache.rocketmq.broker.latency.BrokerVirtualThreadExecutor;
 import org.apache.rocketmq.broker.loadbalance.AssignmentManager;
 import org.apache.rocketmq.broker.longpolling.NotifyMessageArrivingListener;
 import org.apache.rocketmq.broker.longpolling.PullRequestHoldService;
@@ -194,6 +194,7 @@ public class BrokerController {
     private BrokerStats brokerStats;
     private InetSocketAddress storeHost;
     private BrokerFastFailure brokerFastFailure;
+    private final List<BrokerFixedThreadPoolExecutor> brokerFixedThreadPoolExecutors = new ArrayList<>();
     private Configuration configuration;
     private FileWatchService fileWatchService;
     private TransactionalMessageCheckService transactionalMessageCheckService;
@@ -351,25 +352,46 @@ public class BrokerController {
                 this.replyThreadPoolQueue,
                 new ThreadFactoryImpl("ProcessReplyMessageThread_"));
 
-            this.queryMessageExecutor = new BrokerFixedThreadPoolExecutor(
-                this.brokerConfig.getQueryMessageThreadPoolNums(),
-                this.brokerConfig.getQueryMessageThreadPoolNums(),
-                1000 * 60,
-                TimeUnit.MILLISECONDS,
-                this.queryThreadPoolQueue,
-                new ThreadFactoryImpl("QueryMessageThread_"));
+            final boolean virtualThread = this.brokerConfig.isVirtualThreadExecutorEnable()
+                && BrokerVirtualThreadExecutor.isSupported();
+            if (this.brokerConfig.isVirtualThreadExecutorEnable() && !virtualThread) {
+                log.warn("virtual threads are not supported by this JVM, fall back to thread pools");
+            }
 
-            this.adminBrokerExecutor =
-                Executors.newFixedThreadPool(this.brokerConfig.getAdminBrokerThreadPoolNums(), new ThreadFactoryImpl(
-                    "AdminBrokerThread_"));
+            if (virtualThread) {
+                this.queryMessageExecutor = new BrokerVirtualThreadExecutor("QueryMessageThread_",
+                    this.brokerConfig.getQueryMessageThreadPoolNums(), this.brokerConfig.getQueryThreadPoolQueueCapacity());
+            } else {
+                this.queryMessageExecutor = new BrokerFixedThreadPoolExecutor(
+                    this.brokerConfig.getQueryMessageThreadPoolNums(),
+                    this.brokerConfig.getQueryMessageThreadPoolNums(),
+                    1000 * 60,
+                    TimeUnit.MILLISECONDS,
+                    this.queryThreadPoolQueue,
+                    new ThreadFactoryImpl("QueryMessageThread_"));
+            }
 
-            this.clientManageExecutor = new ThreadPoolExecutor(
-                this.brokerConfig.getClientManageThreadPoolNums(),
-                this.brokerConfig.getClientManageThreadPoolNums(),
-                1000 * 60,
-                TimeUnit.MILLISECONDS,
-                this.clientManagerThreadPoolQueue,
-                new ThreadFactoryImpl("ClientManageThread_"));
+            if (virtualThread) {
+                this.adminBrokerExecutor = new BrokerVirtualThreadExecutor("AdminBrokerThread_",
+                    this.brokerConfig.getAdminBrokerThreadPoolNums(), Integer.MAX_VALUE);
+            } else {
+                this.adminBrokerExecutor =
+                    Executors.newFixedThreadPool(this.brokerConfig.getAdminBrokerThreadPoolNums(), new ThreadFactoryImpl(
+                        "AdminBrokerThread_"));
+            }
+
+            if (virtualThread) {
+                this.clientManageExecutor = new BrokerVirtualThreadExecutor("ClientManageThread_",
+                    this.brokerConfig.getClientManageThreadPoolNums(), this.brokerConfig.getClientManagerThreadPoolQueueCapacity());
+            } else {
+                this.clientManageExecutor = new BrokerFixedThreadPoolExecutor(
+                    this.brokerConfig.getClientManageThreadPoolNums(),
+                    this.brokerConfig.getClientManageThreadPoolNums(),
+                    1000 * 60,
+                    TimeUnit.MILLISECONDS,
+                    this.clientManagerThreadPoolQueue,
+                    new ThreadFactoryImpl("ClientManageThread_"));
+            }
 
             this.heartbeatExecutor = new BrokerFixedThreadPoolExecutor(
                 this.brokerConfig.getHeartbeatThreadPoolNums(),
@@ -379,17 +401,40 @@ public class BrokerController {
                 this.heartbeatThreadPoolQueue,
                 new ThreadFactoryImpl("HeartbeatThread_", true));
 
-            this.endTransactionExecutor = new BrokerFixedThreadPoolExecutor(
-                this.brokerConfig.getEndTransactionThreadPoolNums(),
-                this.brokerConfig.getEndTransactionThreadPoolNums(),
-                1000 * 60,
-                TimeUnit.MILLISECONDS,
-                this.endTransactionThreadPoolQueue,
-                new ThreadFactoryImpl("EndTransactionThread_"));
+            if (virtualThread) {
+                this.endTransactionExecutor = new BrokerVirtualThreadExecutor("EndTransactionThread_",
+                    this.brokerConfig.getEndTransactionThreadPoolNums(), this.brokerConfig.getEndTransactionPoolQueueCapacity());
+            } else {
+                this.endTransactionExecutor = new BrokerFixedThreadPoolExecutor(
+                    this.brokerConfig.getEndTransactionThreadPoolNums(),
+                    this.brokerConfig.getEndTransactionThreadPoolNums(),
+                    1000 * 60,
+                    TimeUnit.MILLISECONDS,
+                    this.endTransactionThreadPoolQueue,
+                    new ThreadFactoryImpl("EndTransactionThread_"));
+            }
+
+            for (ExecutorService executor : new ExecutorService[] {this.sendMessageExecutor, this.pullMessageExecutor,
+                this.ackMessageExecutor, this.replyMessageExecutor, this.queryMessageExecutor, this.clientManageExecutor,
+                this.heartbeatExecutor, this.endTransactionExecutor}) {
+                if (!(executor instanceof BrokerFixedThreadPoolExecutor)) {
+                    continue;
+                }
+                BrokerFixedThreadPoolExecutor brokerExecutor = (BrokerFixedThreadPoolExecutor) executor;
+                if (this.brokerConfig.isRequestTimeStatsEnable()) {
+                    brokerExecutor.setBrokerStatsManager(this.brokerStatsManager);
+                }
+                this.brokerFixedThreadPoolExecutors.add(brokerExecutor);
+            }
 
-            this.consumerManageExecutor =
-                Executors.newFixedThreadPool(this.brokerConfig.getConsumerManageThreadPoolNums(), new ThreadFactoryImpl(
-                    "ConsumerManageThread_"));
+            if (virtualThread) {
+                this.consumerManageExecutor = new BrokerVirtualThreadExecutor("ConsumerManageThread_",
+                    this.brokerConfig.getConsumerManageThreadPoolNums(), Integer.MAX_VALUE);
+            } else {
+                this.consumerManageExecutor =
+                    Executors.newFixedThreadPool(this.brokerConfig.getConsumerManageThreadPoolNums(), new ThreadFactoryImpl(
+                        "ConsumerManageThread_"));
+            }
 
             this.registerProcessor();
 
@@ -645,6 +690,14 @@ public class BrokerController {
         this.fastRemotingServer.registerProcessor(RequestCode.SEND_MESSAGE_V2, sendMessageProcessor, this.sendMessageExecutor);
         this.fastRemotingServer.registerProcessor(RequestCode.SEND_BATCH_MESSAGE, sendMessageProcessor, this.sendMessageExecutor);
         this.fastRemotingServer.registerProcessor(RequestCode.CONSUMER_SEND_MSG_BACK, sendMessageProcessor, this.sendMessageExecutor);
+        if (this.brokerConfig.isSendMessageRetainBodyEnable()) {
+            for (RemotingServer server : new RemotingServer[] {this.remotingServer, this.fastRemotingServer}) {
+                if (server instanceof NettyRemotingServer) {
+                    ((NettyRemotingServer) server).registerRetainedBodyCode(RequestCode.SEND_MESSAGE);
+                    ((NettyRemotingServer) server).registerRetainedBodyCode(RequestCode.SEND_MESSAGE_V2);
+                }
+            }
+        }
         /**
          * PullMessageProcessor
          */
@@ -705,10 +758,12 @@ public class BrokerController {
         this.remotingServer.registerProcessor(RequestCode.GET_CONSUMER_LIST_BY_GROUP, consumerManageProcessor, this.consumerManageExecutor);
         this.remotingServer.registerProcessor(RequestCode.UPDATE_CONSUMER_OFFSET, consumerManageProcessor, this.consumerManageExecutor);
         this.remotingServer.registerProcessor(RequestCode.QUERY_CONSUMER_OFFSET, consumerManageProcessor, this.consumerManageExecutor);
+        this.remotingServer.registerProcessor(RequestCode.UPDATE_CONSUMER_OFFSET_BATCH, consumerManageProcessor, this.consumerManageExecutor);
 
         this.fastRemotingServer.registerProcessor(RequestCode.GET_CONSUMER_LIST_BY_GROUP, consumerManageProcessor, this.consumerManageExecutor);
         this.fastRemotingServer.registerProcessor(RequestCode.UPDATE_CONSUMER_OFFSET, consumerManageProcessor, this.consumerManageExecutor);
         this.fastRemotingServer.registerProcessor(RequestCode.QUERY_CONSUMER_OFFSET, consumerManageProcessor, this.consumerManageExecutor);
+        this.fastRemotingServer.registerProcessor(RequestCode.UPDATE_CONSUMER_OFFSET_BATCH, consumerManageProcessor, this.consumerManageExecutor);
 
         /**
          * QueryAssignmentProcessor
@@ -1420,6 +1475,10 @@ public class BrokerController {
         return sendMessageExecutor;
     }
 
+    public List<BrokerFixedThreadPoolExecutor> getBrokerFixedThreadPoolExecutors() {
+        return brokerFixedThreadPoolExecutors;
+    }
+
     public long getShouldStartTime() {
         return shouldStartTime;
     }
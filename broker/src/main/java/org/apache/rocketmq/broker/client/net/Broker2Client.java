@@ -33,6 +33,7 @@ import org.apache.rocketmq.common.protocol.ResponseCode;
 import org.apache.rocketmq.common.protocol.body.GetConsumerStatusBody;
 import org.apache.rocketmq.common.protocol.body.ResetOffsetBody;
 import org.apache.rocketmq.common.protocol.body.ResetOffsetBodyForC;
+import org.apache.rocketmq.common.protocol.header.CheckTransactionStateBatchRequestHeader;
 import org.apache.rocketmq.common.protocol.header.CheckTransactionStateRequestHeader;
 import org.apache.rocketmq.common.protocol.header.GetConsumerStatusRequestHeader;
 import org.apache.rocketmq.common.protocol.header.NotifyConsumerIdsChangedRequestHeader;
@@ -44,6 +45,7 @@ import org.apache.rocketmq.remoting.exception.RemotingSendRequestException;
 import org.apache.rocketmq.remoting.exception.RemotingTimeoutException;
 import org.apache.rocketmq.remoting.protocol.RemotingCommand;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -75,6 +77,35 @@ public class Broker2Client {
         }
     }
 
+    public void checkProducerTransactionStateBatch(
+        final String group,
+        final Channel channel,
+        final List<MessageExt> messageExts) throws Exception {
+        CheckTransactionStateBatchRequestHeader requestHeader = new CheckTransactionStateBatchRequestHeader();
+        requestHeader.setProducerGroup(group);
+        requestHeader.setMsgNum(messageExts.size());
+        RemotingCommand request =
+            RemotingCommand.createRequestCommand(RequestCode.CHECK_TRANSACTION_STATE_BATCH, requestHeader);
+        List<byte[]> encodedList = new ArrayList<>(messageExts.size());
+        int totalSize = 0;
+        for (MessageExt messageExt : messageExts) {
+            byte[] encoded = MessageDecoder.encode(messageExt, false);
+            encodedList.add(encoded);
+            totalSize += encoded.length;
+        }
+        ByteBuffer body = ByteBuffer.allocate(totalSize);
+        for (byte[] encoded : encodedList) {
+            body.put(encoded);
+        }
+        request.setBody(body.array());
+        try {
+            this.brokerController.getRemotingServer().invokeOneway(channel, request, 10);
+        } catch (Exception e) {
+            log.error("Check transaction batch failed because invoke producer exception. group={}, msgNum={}, error={}",
+                group, messageExts.size(), e.toString());
+        }
+    }
+
     public RemotingCommand callClient(final Channel channel,
                                       final RemotingCommand request
     ) throws RemotingSendRequestException, RemotingTimeoutException, InterruptedException {
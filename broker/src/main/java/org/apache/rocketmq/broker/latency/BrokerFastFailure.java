@@ -16,6 +16,9 @@
  */
 package org.apache.rocketmq.broker.latency;
 
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -33,6 +36,7 @@ public class BrokerFastFailure {
     private final ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryImpl(
         "BrokerFastFailureScheduledThread"));
     private final BrokerController brokerController;
+    private final Map<BlockingQueue<Runnable>, QueueCoDel> queueCoDelTable = new IdentityHashMap<>();
 
     public BrokerFastFailure(final BrokerController brokerController) {
         this.brokerController = brokerController;
@@ -60,9 +64,42 @@ public class BrokerFastFailure {
                 }
             }
         }, 1000, 10, TimeUnit.MILLISECONDS);
+
+        this.scheduledExecutorService.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                if (brokerController.getBrokerConfig().isAdaptiveThreadPoolEnable()) {
+                    adjustThreadPoolSize();
+                }
+            }
+        }, 1000, 1000, TimeUnit.MILLISECONDS);
+    }
+
+    private void adjustThreadPoolSize() {
+        final long target = this.brokerController.getBrokerConfig().getCoDelTargetMillis();
+        final int maxRatio = Math.max(1, this.brokerController.getBrokerConfig().getAdaptiveThreadPoolMaxRatio());
+        List<BrokerFixedThreadPoolExecutor> executors = this.brokerController.getBrokerFixedThreadPoolExecutors();
+        for (BrokerFixedThreadPoolExecutor executor : executors) {
+            try {
+                int oldSize = executor.getCorePoolSize();
+                int newSize = executor.adjustPoolSize(target, executor.getInitialPoolSize() * maxRatio);
+                if (oldSize != newSize) {
+                    log.info("adjust thread pool size from {} to {}, queue size: {}", oldSize, newSize, executor.getQueue().size());
+                }
+            } catch (Throwable e) {
+                log.error("adjustThreadPoolSize exception", e);
+            }
+        }
     }
 
     private void cleanExpiredRequest() {
+        if (this.brokerController.getBrokerConfig().isBrokerFastFailureCoDelEnable()) {
+            cleanRequestByCoDel(this.brokerController.getSendThreadPoolQueue());
+            cleanRequestByCoDel(this.brokerController.getPullThreadPoolQueue());
+            cleanRequestByCoDel(this.brokerController.getHeartbeatThreadPoolQueue());
+            cleanRequestByCoDel(this.brokerController.getEndTransactionThreadPoolQueue());
+        }
+
         while (this.brokerController.getMessageStore().isOSPageCacheBusy()) {
             try {
                 if (!this.brokerController.getSendThreadPoolQueue().isEmpty()) {
@@ -93,6 +130,46 @@ public class BrokerFastFailure {
             .brokerController.getBrokerConfig().getWaitTimeMillsInTransactionQueue());
     }
 
+    private void cleanRequestByCoDel(final BlockingQueue<Runnable> blockingQueue) {
+        QueueCoDel coDel = this.queueCoDelTable.get(blockingQueue);
+        if (coDel == null) {
+            coDel = new QueueCoDel();
+            this.queueCoDelTable.put(blockingQueue, coDel);
+        }
+        cleanRequestByCoDel(blockingQueue, coDel, this.brokerController.getBrokerConfig().getCoDelTargetMillis(),
+            this.brokerController.getBrokerConfig().getCoDelIntervalMillis());
+    }
+
+    /**
+     * Unlike the fixed wait time, only rejects when requests keep waiting longer than the target, i.e. the queue
+     * stopped draining, and then at a pace increasing until the waiting time is back under the target.
+     */
+    void cleanRequestByCoDel(final BlockingQueue<Runnable> blockingQueue, final QueueCoDel coDel, final long target,
+        final long interval) {
+        while (true) {
+            try {
+                final long now = System.currentTimeMillis();
+                final Runnable runnable = blockingQueue.peek();
+                final RequestTask rt = runnable == null ? null : castRunnable(runnable);
+                if (rt == null || rt.isStopRun()) {
+                    coDel.shouldDrop(0, now, target, interval);
+                    break;
+                }
+
+                final long behind = now - rt.getCreateTimestamp();
+                if (!coDel.shouldDrop(behind, now, target, interval)) {
+                    break;
+                }
+                if (blockingQueue.remove(runnable)) {
+                    rt.setStopRun(true);
+                    rt.returnResponse(RemotingSysResponseCode.SYSTEM_BUSY, String.format("[CODEL_CLEAN_QUEUE]broker busy, start flow control for a while, period in queue: %sms, size of queue: %d", behind, blockingQueue.size()));
+                }
+            } catch (Throwable ignored) {
+                break;
+            }
+        }
+    }
+
     void cleanExpiredRequestInQueue(final BlockingQueue<Runnable> blockingQueue, final long maxWaitTimeMillsInQueue) {
         while (true) {
             try {
@@ -23,24 +23,56 @@ import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.rocketmq.remoting.netty.RequestTask;
+import org.apache.rocketmq.store.stats.BrokerStatsManager;
 
 public class BrokerFixedThreadPoolExecutor extends ThreadPoolExecutor {
+    private static final ThreadLocal<long[]> EXECUTE_BEGIN_TIME = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    /**
+     * The configured pool size, the pool never shrinks below it.
+     */
+    private final int initialPoolSize;
+    private volatile BrokerStatsManager brokerStatsManager;
+
+    /**
+     * Smallest queueing time seen since the last {@link #adjustPoolSize}, a standing queue keeps it above the target
+     * while a burst does not.
+     */
+    private final AtomicLong minQueueTimeInWindow = new AtomicLong(Long.MAX_VALUE);
+
+    /**
+     * Time spent running the request tasks completed since the last {@link #adjustPoolSize}, and their number.
+     */
+    private final AtomicLong serviceTimeInWindow = new AtomicLong();
+    private final AtomicLong serviceCountInWindow = new AtomicLong();
+    private volatile long lastAdjustTimestamp = System.currentTimeMillis();
+
     public BrokerFixedThreadPoolExecutor(final int corePoolSize, final int maximumPoolSize, final long keepAliveTime,
         final TimeUnit unit,
         final BlockingQueue<Runnable> workQueue) {
         super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue);
+        this.initialPoolSize = corePoolSize;
     }
 
     public BrokerFixedThreadPoolExecutor(final int corePoolSize, final int maximumPoolSize, final long keepAliveTime,
         final TimeUnit unit,
         final BlockingQueue<Runnable> workQueue, final ThreadFactory threadFactory) {
         super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory);
+        this.initialPoolSize = corePoolSize;
     }
 
     public BrokerFixedThreadPoolExecutor(final int corePoolSize, final int maximumPoolSize, final long keepAliveTime,
         final TimeUnit unit,
         final BlockingQueue<Runnable> workQueue, final RejectedExecutionHandler handler) {
         super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, handler);
+        this.initialPoolSize = corePoolSize;
     }
 
     public BrokerFixedThreadPoolExecutor(final int corePoolSize, final int maximumPoolSize, final long keepAliveTime,
@@ -48,10 +80,105 @@ public class BrokerFixedThreadPoolExecutor extends ThreadPoolExecutor {
         final BlockingQueue<Runnable> workQueue, final ThreadFactory threadFactory,
         final RejectedExecutionHandler handler) {
         super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler);
+        this.initialPoolSize = corePoolSize;
     }
 
     @Override
     protected <T> RunnableFuture<T> newTaskFor(final Runnable runnable, final T value) {
         return new FutureTaskExt<T>(runnable, value);
     }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+        RequestTask requestTask = requestTaskOf(r);
+        if (requestTask == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        EXECUTE_BEGIN_TIME.get()[0] = now;
+        long queueTime = now - requestTask.getCreateTimestamp();
+        long min = this.minQueueTimeInWindow.get();
+        while (queueTime < min && !this.minQueueTimeInWindow.compareAndSet(min, queueTime)) {
+            min = this.minQueueTimeInWindow.get();
+        }
+        BrokerStatsManager statsManager = this.brokerStatsManager;
+        if (statsManager != null && requestTask.getRequest() != null) {
+            statsManager.incRequestQueueTime(requestTask.getRequest().getCode(), queueTime);
+        }
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        RequestTask requestTask = requestTaskOf(r);
+        if (requestTask == null) {
+            return;
+        }
+        long serviceTime = System.currentTimeMillis() - EXECUTE_BEGIN_TIME.get()[0];
+        this.serviceTimeInWindow.addAndGet(serviceTime);
+        this.serviceCountInWindow.incrementAndGet();
+        BrokerStatsManager statsManager = this.brokerStatsManager;
+        if (statsManager != null && requestTask.getRequest() != null) {
+            statsManager.incRequestServiceTime(requestTask.getRequest().getCode(), serviceTime);
+        }
+    }
+
+    private static RequestTask requestTaskOf(Runnable r) {
+        if (r instanceof FutureTaskExt) {
+            Runnable runnable = ((FutureTaskExt) r).getRunnable();
+            if (runnable instanceof RequestTask) {
+                return (RequestTask) runnable;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Resize the pool from the queueing and service times measured since the last call.
+     * <p>
+     * The pool grows by a quarter while the queue keeps requests waiting longer than the target and the current
+     * threads, at the mean service time, can not work off the queued requests within the target either. It shrinks
+     * one thread at a time back to the configured size while the threads were busy less than half of the time.
+     *
+     * @return the new pool size
+     */
+    public int adjustPoolSize(long targetQueueTimeMillis, int maxPoolSize) {
+        long now = System.currentTimeMillis();
+        long windowMillis = Math.max(1, now - this.lastAdjustTimestamp);
+        this.lastAdjustTimestamp = now;
+        long minQueueTime = this.minQueueTimeInWindow.getAndSet(Long.MAX_VALUE);
+        long serviceTime = this.serviceTimeInWindow.getAndSet(0);
+        long serviceCount = this.serviceCountInWindow.getAndSet(0);
+        int poolSize = getCorePoolSize();
+        int queueSize = getQueue().size();
+
+        boolean standingQueue = minQueueTime != Long.MAX_VALUE && minQueueTime > targetQueueTimeMillis
+            && queueSize > 0;
+        if (standingQueue && poolSize < maxPoolSize) {
+            // no task completed in the window, they run longer than the window itself
+            long meanServiceTime = serviceCount > 0 ? serviceTime / serviceCount : windowMillis;
+            if (queueSize * meanServiceTime > poolSize * targetQueueTimeMillis) {
+                int newSize = Math.min(maxPoolSize, poolSize + Math.max(1, poolSize / 4));
+                setMaximumPoolSize(newSize);
+                setCorePoolSize(newSize);
+                return newSize;
+            }
+        } else if (!standingQueue && queueSize == 0 && poolSize > this.initialPoolSize
+            && getActiveCount() < poolSize / 2 && serviceTime * 2 < poolSize * windowMillis) {
+            int newSize = poolSize - 1;
+            setCorePoolSize(newSize);
+            setMaximumPoolSize(newSize);
+            return newSize;
+        }
+        return poolSize;
+    }
+
+    public int getInitialPoolSize() {
+        return initialPoolSize;
+    }
+
+    public void setBrokerStatsManager(BrokerStatsManager brokerStatsManager) {
+        this.brokerStatsManager = brokerStatsManager;
+    }
 }
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.broker.latency;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+
+/**
+ * Runs every task on its own virtual thread, for processors that spend most of their time blocked on disk or locks.
+ * <p>
+ * At most {@code maxConcurrency} tasks run at the same time, the others wait for a permit on their virtual thread, and
+ * at most {@code maxPending} tasks may wait, above that {@link RejectedExecutionException} is thrown just like a full
+ * thread pool queue.
+ * <p>
+ * Virtual threads are looked up reflectively, use {@link #isSupported()} before creating one.
+ */
+public class BrokerVirtualThreadExecutor extends AbstractExecutorService {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.BROKER_LOGGER_NAME);
+    private static final Method OF_VIRTUAL_METHOD;
+    private static final Method BUILDER_NAME_METHOD;
+    private static final Method BUILDER_FACTORY_METHOD;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            name = builderClass.getMethod("name", String.class, long.class);
+            factory = builderClass.getMethod("factory");
+            // preview releases throw here unless started with --enable-preview
+            ofVirtual.invoke(null);
+        } catch (Throwable ignored) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL_METHOD = ofVirtual;
+        BUILDER_NAME_METHOD = name;
+        BUILDER_FACTORY_METHOD = factory;
+    }
+
+    private final ThreadFactory threadFactory;
+    private final Semaphore permits;
+    private final int maxPending;
+    private final AtomicInteger pending = new AtomicInteger(0);
+    private final AtomicInteger running = new AtomicInteger(0);
+    private final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+    private final Object terminationLock = new Object();
+    private volatile boolean shutdown = false;
+
+    public BrokerVirtualThreadExecutor(final String threadNamePrefix, final int maxConcurrency, final int maxPending) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("virtual threads are not supported by this JVM");
+        }
+        this.threadFactory = newVirtualThreadFactory(threadNamePrefix);
+        this.permits = new Semaphore(maxConcurrency);
+        this.maxPending = maxPending;
+    }
+
+    public static boolean isSupported() {
+        return OF_VIRTUAL_METHOD != null;
+    }
+
+    private static ThreadFactory newVirtualThreadFactory(final String threadNamePrefix) {
+        try {
+            Object builder = OF_VIRTUAL_METHOD.invoke(null);
+            builder = BUILDER_NAME_METHOD.invoke(builder, threadNamePrefix, 0L);
+            return (ThreadFactory) BUILDER_FACTORY_METHOD.invoke(builder);
+        } catch (Exception e) {
+            throw new UnsupportedOperationException("create virtual thread factory failed", e);
+        }
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(final Runnable runnable, final T value) {
+        return new FutureTaskExt<T>(runnable, value);
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        if (this.shutdown) {
+            throw new RejectedExecutionException("executor has been shut down");
+        }
+        if (this.pending.incrementAndGet() > this.maxPending) {
+            this.pending.decrementAndGet();
+            throw new RejectedExecutionException("too many pending tasks, max: " + this.maxPending);
+        }
+
+        this.running.incrementAndGet();
+        Thread thread = this.threadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runTask(command);
+                } finally {
+                    threads.remove(Thread.currentThread());
+                    if (running.decrementAndGet() == 0 && shutdown) {
+                        synchronized (terminationLock) {
+                            terminationLock.notifyAll();
+                        }
+                    }
+                }
+            }
+        });
+        this.threads.add(thread);
+        thread.start();
+    }
+
+    private void runTask(final Runnable command) {
+        boolean acquired = false;
+        try {
+            this.permits.acquire();
+            acquired = true;
+        } catch (InterruptedException e) {
+            log.warn("interrupted while waiting for a permit, task dropped");
+            return;
+        } finally {
+            this.pending.decrementAndGet();
+        }
+
+        try {
+            command.run();
+        } catch (Throwable e) {
+            log.error("run task exception", e);
+        } finally {
+            if (acquired) {
+                this.permits.release();
+            }
+        }
+    }
+
+    public int getPendingCount() {
+        return this.pending.get();
+    }
+
+    public int getActiveCount() {
+        return this.running.get() - this.pending.get();
+    }
+
+    @Override
+    public void shutdown() {
+        this.shutdown = true;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        this.shutdown = true;
+        for (Thread thread : this.threads) {
+            thread.interrupt();
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return this.shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return this.shutdown && this.running.get() == 0;
+    }
+
+    @Override
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this.terminationLock) {
+            while (!isTerminated()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this.terminationLock, remaining);
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.latency;
+
+/**
+ * Controlled delay state of one request queue.
+ * <p>
+ * A queue only gets into dropping state once the time its head request waited stayed above the target for a whole
+ * interval, so a burst absorbed by the queue is not rejected. While dropping, the head is dropped at a rate growing with
+ * the square root of the drop count, until the waiting time is back under the target.
+ * <p>
+ * Not thread safe, only used by the fast failure thread.
+ */
+public class QueueCoDel {
+    private long firstAboveTime = 0;
+    private long dropNext = 0;
+    private int count = 0;
+    private boolean dropping = false;
+
+    /**
+     * @param sojournTime how long the head request has been waiting, 0 if the queue is empty
+     * @return whether the head request should be dropped
+     */
+    public boolean shouldDrop(long sojournTime, long now, long target, long interval) {
+        if (sojournTime < target) {
+            this.firstAboveTime = 0;
+            this.dropping = false;
+            return false;
+        }
+
+        if (this.firstAboveTime == 0) {
+            this.firstAboveTime = now + interval;
+            return false;
+        }
+
+        if (!this.dropping) {
+            if (now < this.firstAboveTime) {
+                return false;
+            }
+            this.dropping = true;
+            // go back to the drop rate of the previous dropping state if it ended recently
+            this.count = this.count > 2 && now - this.dropNext < 8 * interval ? this.count - 2 : 1;
+            this.dropNext = now;
+        }
+
+        if (now >= this.dropNext) {
+            this.count++;
+            this.dropNext = now + (long) (interval / Math.sqrt(this.count));
+            return true;
+        }
+        return false;
+    }
+
+    public boolean isDropping() {
+        return dropping;
+    }
+}
@@ -171,9 +171,9 @@ public abstract class AbstractSendMessageProcessor extends AsyncNettyRequestProc
             response.setCode(ResponseCode.MESSAGE_ILLEGAL);
             return response;
         }
-        if (request.getBody().length > DBMsgConstants.MAX_BODY_SIZE) {
+        if (request.getBodyLength() > DBMsgConstants.MAX_BODY_SIZE) {
             log.warn(" topic {}  msg body size {}  from {}", requestHeader.getTopic(),
-                request.getBody().length, ChannelUtil.getRemoteIp(ctx.channel()));
+                request.getBodyLength(), ChannelUtil.getRemoteIp(ctx.channel()));
             response.setRemark("msg body must be less 64KB");
             response.setCode(ResponseCode.MESSAGE_ILLEGAL);
             return response;
@@ -280,7 +280,7 @@ public abstract class AbstractSendMessageProcessor extends AsyncNettyRequestProc
                         context.setNamespace(namespace);
                         context.setProducerGroup(requestHeader.getProducerGroup());
                         context.setTopic(requestHeader.getTopic());
-                        context.setBodyLength(request.getBody().length);
+                        context.setBodyLength(request.getBodyLength());
                         context.setMsgProps(requestHeader.getProperties());
                         context.setBornHost(RemotingHelper.parseChannelRemoteAddr(ctx.channel()));
                         context.setBrokerAddr(this.brokerController.getBrokerAddr());
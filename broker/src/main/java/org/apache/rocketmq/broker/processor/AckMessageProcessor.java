@@ -121,15 +121,13 @@ public class AckMessageProcessor implements NettyRequestProcessor {
 
         if (rqId == KeyBuilder.POP_ORDER_REVIVE_QUEUE) {
             // order
-            String lockKey = requestHeader.getTopic() + PopAckConstants.SPLIT
-                    + requestHeader.getConsumerGroup() + PopAckConstants.SPLIT + requestHeader.getQueueId();
             long oldOffset = this.brokerController.getConsumerOffsetManager().queryOffset(requestHeader.getConsumerGroup(),
                     requestHeader.getTopic(), requestHeader.getQueueId());
             if (requestHeader.getOffset() < oldOffset) {
                 return response;
             }
-            while (!this.brokerController.getPopMessageProcessor().getQueueLockManager().tryLock(lockKey)) {
-            }
+            this.brokerController.getPopMessageProcessor().getQueueLockManager().lock(requestHeader.getTopic(),
+                    requestHeader.getConsumerGroup(), requestHeader.getQueueId());
             try {
                 oldOffset = this.brokerController.getConsumerOffsetManager().queryOffset(requestHeader.getConsumerGroup(),
                         requestHeader.getTopic(), requestHeader.getQueueId());
@@ -147,6 +145,8 @@ public class AckMessageProcessor implements NettyRequestProcessor {
                     this.brokerController.getPopMessageProcessor().notifyMessageArriving(requestHeader.getTopic(), requestHeader.getConsumerGroup(),
                             requestHeader.getQueueId());
                 } else if (nextOffset == -1) {
+                    String lockKey = requestHeader.getTopic() + PopAckConstants.SPLIT
+                            + requestHeader.getConsumerGroup() + PopAckConstants.SPLIT + requestHeader.getQueueId();
                     String errorInfo = String.format("offset is illegal, key:%s, old:%d, commit:%d, next:%d, %s",
                             lockKey, oldOffset, requestHeader.getOffset(), nextOffset, channel.remoteAddress());
                     POP_LOGGER.warn(errorInfo);
@@ -155,7 +155,8 @@ public class AckMessageProcessor implements NettyRequestProcessor {
                     return response;
                 }
             } finally {
-                this.brokerController.getPopMessageProcessor().getQueueLockManager().unLock(lockKey);
+                this.brokerController.getPopMessageProcessor().getQueueLockManager().unLock(requestHeader.getTopic(),
+                        requestHeader.getConsumerGroup(), requestHeader.getQueueId());
             }
             return response;
         }
@@ -43,6 +43,8 @@ import java.util.TreeMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 import org.apache.rocketmq.acl.AccessValidator;
 import org.apache.rocketmq.acl.plain.PlainAccessValidator;
@@ -169,6 +171,11 @@ import org.apache.rocketmq.store.SelectMappedBufferResult;
 public class AdminBrokerProcessor extends AsyncNettyRequestProcessor implements NettyRequestProcessor {
     private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.BROKER_LOGGER_NAME);
     private final BrokerController brokerController;
+    /**
+     * Serializes the config updates, a lock rather than synchronized methods as they write files and may run on
+     * virtual threads.
+     */
+    private final Lock adminLock = new ReentrantLock();
 
     public AdminBrokerProcessor(final BrokerController brokerController) {
         this.brokerController = brokerController;
@@ -292,173 +299,198 @@ public class AdminBrokerProcessor extends AsyncNettyRequestProcessor implements
         return false;
     }
 
-    private synchronized RemotingCommand updateAndCreateTopic(ChannelHandlerContext ctx,
+    private RemotingCommand updateAndCreateTopic(ChannelHandlerContext ctx,
         RemotingCommand request) throws RemotingCommandException {
-        final RemotingCommand response = RemotingCommand.createResponseCommand(null);
-        final CreateTopicRequestHeader requestHeader =
-            (CreateTopicRequestHeader) request.decodeCommandCustomHeader(CreateTopicRequestHeader.class);
-        log.info("updateAndCreateTopic called by {}", RemotingHelper.parseChannelRemoteAddr(ctx.channel()));
+        this.adminLock.lock();
+        try {
+            final RemotingCommand response = RemotingCommand.createResponseCommand(null);
+            final CreateTopicRequestHeader requestHeader =
+                (CreateTopicRequestHeader) request.decodeCommandCustomHeader(CreateTopicRequestHeader.class);
+            log.info("updateAndCreateTopic called by {}", RemotingHelper.parseChannelRemoteAddr(ctx.channel()));
 
-        String topic = requestHeader.getTopic();
+            String topic = requestHeader.getTopic();
 
-        if (!TopicValidator.validateTopic(topic, response)) {
-            return response;
-        }
-        if (TopicValidator.isSystemTopic(topic, response)) {
-            return response;
-        }
+            if (!TopicValidator.validateTopic(topic, response)) {
+                return response;
+            }
+            if (TopicValidator.isSystemTopic(topic, response)) {
+                return response;
+            }
 
-        TopicConfig topicConfig = new TopicConfig(topic);
-        topicConfig.setReadQueueNums(requestHeader.getReadQueueNums());
-        topicConfig.setWriteQueueNums(requestHeader.getWriteQueueNums());
-        topicConfig.setTopicFilterType(requestHeader.getTopicFilterTypeEnum());
-        topicConfig.setPerm(requestHeader.getPerm());
-        topicConfig.setTopicSysFlag(requestHeader.getTopicSysFlag() == null ? 0 : requestHeader.getTopicSysFlag());
+            TopicConfig topicConfig = new TopicConfig(topic);
+            topicConfig.setReadQueueNums(requestHeader.getReadQueueNums());
+            topicConfig.setWriteQueueNums(requestHeader.getWriteQueueNums());
+            topicConfig.setTopicFilterType(requestHeader.getTopicFilterTypeEnum());
+            topicConfig.setPerm(requestHeader.getPerm());
+            topicConfig.setTopicSysFlag(requestHeader.getTopicSysFlag() == null ? 0 : requestHeader.getTopicSysFlag());
 
-        this.brokerController.getTopicConfigManager().updateTopicConfig(topicConfig);
+            this.brokerController.getTopicConfigManager().updateTopicConfig(topicConfig);
 
-        this.brokerController.registerIncrementBrokerData(topicConfig, this.brokerController.getTopicConfigManager().getDataVersion());
+            this.brokerController.registerIncrementBrokerData(topicConfig, this.brokerController.getTopicConfigManager().getDataVersion());
 
-        response.setCode(ResponseCode.SUCCESS);
-        return response;
+            response.setCode(ResponseCode.SUCCESS);
+            return response;
+        } finally {
+            this.adminLock.unlock();
+        }
     }
 
-    private synchronized RemotingCommand deleteTopic(ChannelHandlerContext ctx,
+    private RemotingCommand deleteTopic(ChannelHandlerContext ctx,
         RemotingCommand request) throws RemotingCommandException {
-        final RemotingCommand response = RemotingCommand.createResponseCommand(null);
-        DeleteTopicRequestHeader requestHeader =
-            (DeleteTopicRequestHeader) request.decodeCommandCustomHeader(DeleteTopicRequestHeader.class);
+        this.adminLock.lock();
+        try {
+            final RemotingCommand response = RemotingCommand.createResponseCommand(null);
+            DeleteTopicRequestHeader requestHeader =
+                (DeleteTopicRequestHeader) request.decodeCommandCustomHeader(DeleteTopicRequestHeader.class);
 
-        log.info("deleteTopic called by {}", RemotingHelper.parseChannelRemoteAddr(ctx.channel()));
+            log.info("deleteTopic called by {}", RemotingHelper.parseChannelRemoteAddr(ctx.channel()));
 
-        String topic = requestHeader.getTopic();
-        if (!TopicValidator.validateTopic(topic, response)) {
-            return response;
-        }
-        if (TopicValidator.isSystemTopic(topic, response)) {
-            return response;
-        }
+            String topic = requestHeader.getTopic();
+            if (!TopicValidator.validateTopic(topic, response)) {
+                return response;
+            }
+            if (TopicValidator.isSystemTopic(topic, response)) {
+                return response;
+            }
 
-        this.brokerController.getTopicConfigManager().deleteTopicConfig(topic);
-        this.brokerController.getMessageStore()
-            .cleanUnusedTopic(this.brokerController.getTopicConfigManager().getTopicConfigTable().keySet());
-        if (this.brokerController.getBrokerConfig().isAutoDeleteUnusedStats()) {
-            this.brokerController.getBrokerStatsManager().onTopicDeleted(requestHeader.getTopic());
+            this.brokerController.getTopicConfigManager().deleteTopicConfig(topic);
+            this.brokerController.getMessageStore()
+                .cleanUnusedTopic(this.brokerController.getTopicConfigManager().getTopicConfigTable().keySet());
+            if (this.brokerController.getBrokerConfig().isAutoDeleteUnusedStats()) {
+                this.brokerController.getBrokerStatsManager().onTopicDeleted(requestHeader.getTopic());
+            }
+            this.brokerController.getTopicConfigManager().deleteQueueRouteData(requestHeader.getTopic());
+            response.setCode(ResponseCode.SUCCESS);
+            response.setRemark(null);
+            return response;
+        } finally {
+            this.adminLock.unlock();
         }
-        this.brokerController.getTopicConfigManager().deleteQueueRouteData(requestHeader.getTopic());
-        response.setCode(ResponseCode.SUCCESS);
-        response.setRemark(null);
-        return response;
     }
 
-    private synchronized RemotingCommand updateAndCreateAccessConfig(ChannelHandlerContext ctx,
+    private RemotingCommand updateAndCreateAccessConfig(ChannelHandlerContext ctx,
         RemotingCommand request) throws RemotingCommandException {
-        final RemotingCommand response = RemotingCommand.createResponseCommand(null);
-
-        final CreateAccessConfigRequestHeader requestHeader =
-            (CreateAccessConfigRequestHeader) request.decodeCommandCustomHeader(CreateAccessConfigRequestHeader.class);
-
-        PlainAccessConfig accessConfig = new PlainAccessConfig();
-        accessConfig.setAccessKey(requestHeader.getAccessKey());
-        accessConfig.setSecretKey(requestHeader.getSecretKey());
-        accessConfig.setWhiteRemoteAddress(requestHeader.getWhiteRemoteAddress());
-        accessConfig.setDefaultTopicPerm(requestHeader.getDefaultTopicPerm());
-        accessConfig.setDefaultGroupPerm(requestHeader.getDefaultGroupPerm());
-        accessConfig.setTopicPerms(UtilAll.split(requestHeader.getTopicPerms(), ","));
-        accessConfig.setGroupPerms(UtilAll.split(requestHeader.getGroupPerms(), ","));
-        accessConfig.setAdmin(requestHeader.isAdmin());
+        this.adminLock.lock();
         try {
+            final RemotingCommand response = RemotingCommand.createResponseCommand(null);
+
+            final CreateAccessConfigRequestHeader requestHeader =
+                (CreateAccessConfigRequestHeader) request.decodeCommandCustomHeader(CreateAccessConfigRequestHeader.class);
+
+            PlainAccessConfig accessConfig = new PlainAccessConfig();
+            accessConfig.setAccessKey(requestHeader.getAccessKey());
+            accessConfig.setSecretKey(requestHeader.getSecretKey());
+            accessConfig.setWhiteRemoteAddress(requestHeader.getWhiteRemoteAddress());
+            accessConfig.setDefaultTopicPerm(requestHeader.getDefaultTopicPerm());
+            accessConfig.setDefaultGroupPerm(requestHeader.getDefaultGroupPerm());
+            accessConfig.setTopicPerms(UtilAll.split(requestHeader.getTopicPerms(), ","));
+            accessConfig.setGroupPerms(UtilAll.split(requestHeader.getGroupPerms(), ","));
+            accessConfig.setAdmin(requestHeader.isAdmin());
+            try {
 
-            AccessValidator accessValidator = this.brokerController.getAccessValidatorMap().get(PlainAccessValidator.class);
-            if (accessValidator.updateAccessConfig(accessConfig)) {
-                response.setCode(ResponseCode.SUCCESS);
-                response.setOpaque(request.getOpaque());
-                response.markResponseType();
-                response.setRemark(null);
-                ctx.writeAndFlush(response);
-            } else {
-                String errorMsg = "The accesskey[" + requestHeader.getAccessKey() + "] corresponding to accessConfig has been updated failed.";
-                log.warn(errorMsg);
+                AccessValidator accessValidator = this.brokerController.getAccessValidatorMap().get(PlainAccessValidator.class);
+                if (accessValidator.updateAccessConfig(accessConfig)) {
+                    response.setCode(ResponseCode.SUCCESS);
+                    response.setOpaque(request.getOpaque());
+                    response.markResponseType();
+                    response.setRemark(null);
+                    ctx.writeAndFlush(response);
+                } else {
+                    String errorMsg = "The accesskey[" + requestHeader.getAccessKey() + "] corresponding to accessConfig has been updated failed.";
+                    log.warn(errorMsg);
+                    response.setCode(ResponseCode.UPDATE_AND_CREATE_ACL_CONFIG_FAILED);
+                    response.setRemark(errorMsg);
+                    return response;
+                }
+            } catch (Exception e) {
+                log.error("Failed to generate a proper update accessvalidator response", e);
                 response.setCode(ResponseCode.UPDATE_AND_CREATE_ACL_CONFIG_FAILED);
-                response.setRemark(errorMsg);
+                response.setRemark(e.getMessage());
                 return response;
             }
-        } catch (Exception e) {
-            log.error("Failed to generate a proper update accessvalidator response", e);
-            response.setCode(ResponseCode.UPDATE_AND_CREATE_ACL_CONFIG_FAILED);
-            response.setRemark(e.getMessage());
-            return response;
-        }
 
-        return null;
+            return null;
+        } finally {
+            this.adminLock.unlock();
+        }
     }
 
-    private synchronized RemotingCommand deleteAccessConfig(ChannelHandlerContext ctx,
+    private RemotingCommand deleteAccessConfig(ChannelHandlerContext ctx,
         RemotingCommand request) throws RemotingCommandException {
-        final RemotingCommand response = RemotingCommand.createResponseCommand(null);
+        this.adminLock.lock();
+        try {
+            final RemotingCommand response = RemotingCommand.createResponseCommand(null);
 
-        final DeleteAccessConfigRequestHeader requestHeader =
-            (DeleteAccessConfigRequestHeader) request.decodeCommandCustomHeader(DeleteAccessConfigRequestHeader.class);
-        log.info("DeleteAccessConfig called by {}", RemotingHelper.parseChannelRemoteAddr(ctx.channel()));
+            final DeleteAccessConfigRequestHeader requestHeader =
+                (DeleteAccessConfigRequestHeader) request.decodeCommandCustomHeader(DeleteAccessConfigRequestHeader.class);
+            log.info("DeleteAccessConfig called by {}", RemotingHelper.parseChannelRemoteAddr(ctx.channel()));
 
-        try {
-            String accessKey = requestHeader.getAccessKey();
-            AccessValidator accessValidator = this.brokerController.getAccessValidatorMap().get(PlainAccessValidator.class);
-            if (accessValidator.deleteAccessConfig(accessKey)) {
-                response.setCode(ResponseCode.SUCCESS);
-                response.setOpaque(request.getOpaque());
-                response.markResponseType();
-                response.setRemark(null);
-                ctx.writeAndFlush(response);
-            } else {
-                String errorMsg = "The accesskey[" + requestHeader.getAccessKey() + "] corresponding to accessConfig has been deleted failed.";
-                log.warn(errorMsg);
+            try {
+                String accessKey = requestHeader.getAccessKey();
+                AccessValidator accessValidator = this.brokerController.getAccessValidatorMap().get(PlainAccessValidator.class);
+                if (accessValidator.deleteAccessConfig(accessKey)) {
+                    response.setCode(ResponseCode.SUCCESS);
+                    response.setOpaque(request.getOpaque());
+                    response.markResponseType();
+                    response.setRemark(null);
+                    ctx.writeAndFlush(response);
+                } else {
+                    String errorMsg = "The accesskey[" + requestHeader.getAccessKey() + "] corresponding to accessConfig has been deleted failed.";
+                    log.warn(errorMsg);
+                    response.setCode(ResponseCode.DELETE_ACL_CONFIG_FAILED);
+                    response.setRemark(errorMsg);
+                    return response;
+                }
+
+            } catch (Exception e) {
+                log.error("Failed to generate a proper delete accessvalidator response", e);
                 response.setCode(ResponseCode.DELETE_ACL_CONFIG_FAILED);
-                response.setRemark(errorMsg);
+                response.setRemark(e.getMessage());
                 return response;
             }
 
-        } catch (Exception e) {
-            log.error("Failed to generate a proper delete accessvalidator response", e);
-            response.setCode(ResponseCode.DELETE_ACL_CONFIG_FAILED);
-            response.setRemark(e.getMessage());
-            return response;
+            return null;
+        } finally {
+            this.adminLock.unlock();
         }
-
-        return null;
     }
 
-    private synchronized RemotingCommand updateGlobalWhiteAddrsConfig(ChannelHandlerContext ctx,
+    private RemotingCommand updateGlobalWhiteAddrsConfig(ChannelHandlerContext ctx,
         RemotingCommand request) throws RemotingCommandException {
+        this.adminLock.lock();
+        try {
 
-        final RemotingCommand response = RemotingCommand.createResponseCommand(null);
+            final RemotingCommand response = RemotingCommand.createResponseCommand(null);
 
-        final UpdateGlobalWhiteAddrsConfigRequestHeader requestHeader =
-            (UpdateGlobalWhiteAddrsConfigRequestHeader) request.decodeCommandCustomHeader(UpdateGlobalWhiteAddrsConfigRequestHeader.class);
+            final UpdateGlobalWhiteAddrsConfigRequestHeader requestHeader =
+                (UpdateGlobalWhiteAddrsConfigRequestHeader) request.decodeCommandCustomHeader(UpdateGlobalWhiteAddrsConfigRequestHeader.class);
 
-        try {
-            AccessValidator accessValidator = this.brokerController.getAccessValidatorMap().get(PlainAccessValidator.class);
-            if (accessValidator.updateGlobalWhiteAddrsConfig(UtilAll.split(requestHeader.getGlobalWhiteAddrs(), ","))) {
-                response.setCode(ResponseCode.SUCCESS);
-                response.setOpaque(request.getOpaque());
-                response.markResponseType();
-                response.setRemark(null);
-                ctx.writeAndFlush(response);
-            } else {
-                String errorMsg = "The globalWhiteAddresses[" + requestHeader.getGlobalWhiteAddrs() + "] has been updated failed.";
-                log.warn(errorMsg);
+            try {
+                AccessValidator accessValidator = this.brokerController.getAccessValidatorMap().get(PlainAccessValidator.class);
+                if (accessValidator.updateGlobalWhiteAddrsConfig(UtilAll.split(requestHeader.getGlobalWhiteAddrs(), ","))) {
+                    response.setCode(ResponseCode.SUCCESS);
+                    response.setOpaque(request.getOpaque());
+                    response.markResponseType();
+                    response.setRemark(null);
+                    ctx.writeAndFlush(response);
+                } else {
+                    String errorMsg = "The globalWhiteAddresses[" + requestHeader.getGlobalWhiteAddrs() + "] has been updated failed.";
+                    log.warn(errorMsg);
+                    response.setCode(ResponseCode.UPDATE_GLOBAL_WHITE_ADDRS_CONFIG_FAILED);
+                    response.setRemark(errorMsg);
+                    return response;
+                }
+            } catch (Exception e) {
+                log.error("Failed to generate a proper update globalWhiteAddresses response", e);
                 response.setCode(ResponseCode.UPDATE_GLOBAL_WHITE_ADDRS_CONFIG_FAILED);
-                response.setRemark(errorMsg);
+                response.setRemark(e.getMessage());
                 return response;
             }
-        } catch (Exception e) {
-            log.error("Failed to generate a proper update globalWhiteAddresses response", e);
-            response.setCode(ResponseCode.UPDATE_GLOBAL_WHITE_ADDRS_CONFIG_FAILED);
-            response.setRemark(e.getMessage());
-            return response;
-        }
 
-        return null;
+            return null;
+        } finally {
+            this.adminLock.unlock();
+        }
     }
 
     private RemotingCommand getBrokerAclConfigVersion(ChannelHandlerContext ctx, RemotingCommand request) {
@@ -542,40 +574,45 @@ public class AdminBrokerProcessor extends AsyncNettyRequestProcessor implements
         return response;
     }
 
-    private synchronized RemotingCommand updateBrokerConfig(ChannelHandlerContext ctx, RemotingCommand request) {
-        final RemotingCommand response = RemotingCommand.createResponseCommand(null);
-
-        log.info("updateBrokerConfig called by {}", RemotingHelper.parseChannelRemoteAddr(ctx.channel()));
-
-        byte[] body = request.getBody();
-        if (body != null) {
-            try {
-                String bodyStr = new String(body, MixAll.DEFAULT_CHARSET);
-                Properties properties = MixAll.string2Properties(bodyStr);
-                if (properties != null) {
-                    log.info("updateBrokerConfig, new config: [{}] client: {} ", properties, ctx.channel().remoteAddress());
-                    this.brokerController.getConfiguration().update(properties);
-                    if (properties.containsKey("brokerPermission")) {
-                        this.brokerController.getTopicConfigManager().getDataVersion().nextVersion();
-                        this.brokerController.registerBrokerAll(false, false, true);
+    private RemotingCommand updateBrokerConfig(ChannelHandlerContext ctx, RemotingCommand request) {
+        this.adminLock.lock();
+        try {
+            final RemotingCommand response = RemotingCommand.createResponseCommand(null);
+
+            log.info("updateBrokerConfig called by {}", RemotingHelper.parseChannelRemoteAddr(ctx.channel()));
+
+            byte[] body = request.getBody();
+            if (body != null) {
+                try {
+                    String bodyStr = new String(body, MixAll.DEFAULT_CHARSET);
+                    Properties properties = MixAll.string2Properties(bodyStr);
+                    if (properties != null) {
+                        log.info("updateBrokerConfig, new config: [{}] client: {} ", properties, ctx.channel().remoteAddress());
+                        this.brokerController.getConfiguration().update(properties);
+                        if (properties.containsKey("brokerPermission")) {
+                            this.brokerController.getTopicConfigManager().getDataVersion().nextVersion();
+                            this.brokerController.registerBrokerAll(false, false, true);
+                        }
+                    } else {
+                        log.error("string2Properties error");
+                        response.setCode(ResponseCode.SYSTEM_ERROR);
+                        response.setRemark("string2Properties error");
+                        return response;
                     }
-                } else {
-                    log.error("string2Properties error");
+                } catch (UnsupportedEncodingException e) {
+                    log.error("", e);
                     response.setCode(ResponseCode.SYSTEM_ERROR);
-                    response.setRemark("string2Properties error");
+                    response.setRemark("UnsupportedEncodingException " + e);
                     return response;
                 }
-            } catch (UnsupportedEncodingException e) {
-                log.error("", e);
-                response.setCode(ResponseCode.SYSTEM_ERROR);
-                response.setRemark("UnsupportedEncodingException " + e);
-                return response;
             }
-        }
 
-        response.setCode(ResponseCode.SUCCESS);
-        response.setRemark(null);
-        return response;
+            response.setCode(ResponseCode.SUCCESS);
+            response.setRemark(null);
+            return response;
+        } finally {
+            this.adminLock.unlock();
+        }
     }
 
     private RemotingCommand getBrokerConfig(ChannelHandlerContext ctx, RemotingCommand request) {
@@ -74,7 +74,9 @@ public class ClientManageProcessor extends AsyncNettyRequestProcessor implements
 
     public RemotingCommand heartBeat(ChannelHandlerContext ctx, RemotingCommand request) {
         RemotingCommand response = RemotingCommand.createResponseCommand(null);
-        HeartbeatData heartbeatData = HeartbeatData.decode(request.getBody(), HeartbeatData.class);
+        // let the client know it may send binary heartbeats from now on
+        response.markAcceptBinaryBody();
+        HeartbeatData heartbeatData = HeartbeatData.decode(request);
         ClientChannelInfo clientChannelInfo = new ClientChannelInfo(
             ctx.channel(),
             heartbeatData.getClientID(),
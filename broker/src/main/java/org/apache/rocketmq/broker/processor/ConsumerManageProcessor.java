@@ -18,12 +18,15 @@ package org.apache.rocketmq.broker.processor;
 
 import io.netty.channel.ChannelHandlerContext;
 import java.util.List;
+import java.util.Map;
 import org.apache.rocketmq.broker.BrokerController;
 import org.apache.rocketmq.broker.client.ConsumerGroupInfo;
 import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.common.message.MessageQueue;
 import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.common.protocol.RequestCode;
 import org.apache.rocketmq.common.protocol.ResponseCode;
+import org.apache.rocketmq.common.protocol.body.UpdateConsumerOffsetBatchRequestBody;
 import org.apache.rocketmq.common.protocol.header.GetConsumerListByGroupRequestHeader;
 import org.apache.rocketmq.common.protocol.header.GetConsumerListByGroupResponseBody;
 import org.apache.rocketmq.common.protocol.header.GetConsumerListByGroupResponseHeader;
@@ -57,6 +60,8 @@ public class ConsumerManageProcessor extends AsyncNettyRequestProcessor implemen
                 return this.updateConsumerOffset(ctx, request);
             case RequestCode.QUERY_CONSUMER_OFFSET:
                 return this.queryConsumerOffset(ctx, request);
+            case RequestCode.UPDATE_CONSUMER_OFFSET_BATCH:
+                return this.updateConsumerOffsetBatch(ctx, request);
             default:
                 break;
         }
@@ -116,6 +121,29 @@ public class ConsumerManageProcessor extends AsyncNettyRequestProcessor implemen
         return response;
     }
 
+    private RemotingCommand updateConsumerOffsetBatch(ChannelHandlerContext ctx, RemotingCommand request) {
+        final RemotingCommand response = RemotingCommand.createResponseCommand(null);
+        UpdateConsumerOffsetBatchRequestBody requestBody = null;
+        if (request.getBody() != null) {
+            requestBody = UpdateConsumerOffsetBatchRequestBody.decode(request.getBody(), UpdateConsumerOffsetBatchRequestBody.class);
+        }
+        if (null == requestBody || null == requestBody.getConsumerGroup() || null == requestBody.getOffsetTable()) {
+            response.setCode(ResponseCode.SYSTEM_ERROR);
+            response.setRemark("the consumer group and the offsets to commit are required");
+            return response;
+        }
+
+        String clientHost = RemotingHelper.parseChannelRemoteAddr(ctx.channel());
+        for (Map.Entry<MessageQueue, Long> entry : requestBody.getOffsetTable().entrySet()) {
+            MessageQueue mq = entry.getKey();
+            this.brokerController.getConsumerOffsetManager().commitOffset(clientHost, requestBody.getConsumerGroup(),
+                mq.getTopic(), mq.getQueueId(), entry.getValue());
+        }
+        response.setCode(ResponseCode.SUCCESS);
+        response.setRemark(null);
+        return response;
+    }
+
     private RemotingCommand queryConsumerOffset(ChannelHandlerContext ctx, RemotingCommand request)
         throws RemotingCommandException {
         final RemotingCommand response =
@@ -338,9 +338,8 @@ public class PopBufferMergeService extends ServiceThread {
         }
 
         final PopCheckPoint popCheckPoint = wrapper.getCk();
-        final String lockKey = wrapper.getLockKey();
 
-        if (!queueLockManager.tryLock(lockKey)) {
+        if (!queueLockManager.tryLock(popCheckPoint.getTopic(), popCheckPoint.getCId(), popCheckPoint.getQueueId())) {
             return false;
         }
         try {
@@ -356,7 +355,7 @@ public class PopBufferMergeService extends ServiceThread {
             brokerController.getConsumerOffsetManager().commitOffset(getServiceName(),
                     popCheckPoint.getCId(), popCheckPoint.getTopic(), popCheckPoint.getQueueId(), wrapper.getNextBeginOffset());
         } finally {
-            queueLockManager.unLock(lockKey);
+            queueLockManager.unLock(popCheckPoint.getTopic(), popCheckPoint.getCId(), popCheckPoint.getQueueId());
         }
         return true;
     }
@@ -30,8 +30,10 @@ import java.util.Map.Entry;
 import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import org.apache.rocketmq.broker.BrokerController;
 import org.apache.rocketmq.broker.client.ConsumerGroupInfo;
 import org.apache.rocketmq.broker.filter.ConsumerFilterData;
@@ -472,15 +474,16 @@ public class PopMessageProcessor implements NettyRequestProcessor {
                                  StringBuilder msgOffsetInfo, StringBuilder orderCountInfo) {
         String topic = isRetry ? KeyBuilder.buildPopRetryTopic(requestHeader.getTopic(),
                 requestHeader.getConsumerGroup()) : requestHeader.getTopic();
-        String lockKey =
-                topic + PopAckConstants.SPLIT + requestHeader.getConsumerGroup() + PopAckConstants.SPLIT + queueId;
         boolean isOrder = requestHeader.isOrder();
-        long offset = getPopOffset(topic, requestHeader, queueId, false, lockKey);
-        if (!queueLockManager.tryLock(lockKey)) {
+        if (!queueLockManager.tryLock(topic, requestHeader.getConsumerGroup(), queueId)) {
+            // lost the queue, estimate the rest without looking into pop buffer and move on
+            long offset = getPopOffset(topic, requestHeader, queueId, false, null);
             restNum = this.brokerController.getMessageStore().getMaxOffsetInQueue(topic, queueId) - offset + restNum;
             return restNum;
         }
-        offset = getPopOffset(topic, requestHeader, queueId, true, lockKey);
+        String lockKey =
+                topic + PopAckConstants.SPLIT + requestHeader.getConsumerGroup() + PopAckConstants.SPLIT + queueId;
+        long offset = getPopOffset(topic, requestHeader, queueId, true, lockKey);
         GetMessageResult getMessageTmpResult;
         try {
             if (isOrder && brokerController.getConsumerOrderInfoManager().checkBlock(topic,
@@ -545,7 +548,7 @@ public class PopMessageProcessor implements NettyRequestProcessor {
                         requestHeader.getInvisibleTime(), popTime, reviveQid, getMessageTmpResult.getNextBeginOffset());
             }
         } finally {
-            queueLockManager.unLock(lockKey);
+            queueLockManager.unLock(topic, requestHeader.getConsumerGroup(), queueId);
         }
         if (getMessageTmpResult != null) {
             for (SelectMappedBufferResult mapedBuffer : getMessageTmpResult.getMessageMapedList()) {
@@ -576,6 +579,9 @@ public class PopMessageProcessor implements NettyRequestProcessor {
                 }
             }
         }
+        if (lockKey == null) {
+            return offset;
+        }
         long bufferOffset = this.popBufferMergeService.getLatestOffset(lockKey);
         if (bufferOffset < 0) {
             return offset;
@@ -859,31 +865,85 @@ public class PopMessageProcessor implements NettyRequestProcessor {
         }
     }
 
+    /**
+     * Ownership of a single queue, held by at most one thread at a time.
+     */
     static class TimedLock {
-        private final AtomicBoolean lock;
+        static final int LOCKED = 0;
+        static final int BUSY = 1;
+        static final int RETIRED = 2;
+
+        private static final Object RETIRED_OWNER = new Object();
+
+        private final AtomicReference<Object> owner = new AtomicReference<>();
+        private final AtomicInteger waiters = new AtomicInteger(0);
         private volatile long lockTime;
 
         public TimedLock() {
-            this.lock = new AtomicBoolean(true);
             this.lockTime = System.currentTimeMillis();
         }
 
-        public boolean tryLock() {
-            boolean ret = lock.compareAndSet(true, false);
-            if (ret) {
+        /**
+         * @param leaseMillis a holder keeping the lock longer than this may be preempted
+         * @param waiting whether the caller has registered as a waiter, non-waiting callers back off to waiters
+         * @return {@link #LOCKED}, {@link #BUSY} or {@link #RETIRED}
+         */
+        public int tryLock(final long leaseMillis, final boolean waiting) {
+            final Thread current = Thread.currentThread();
+            while (true) {
+                Object holder = owner.get();
+                if (holder == RETIRED_OWNER) {
+                    return RETIRED;
+                }
+                if (!waiting && waiters.get() > 0) {
+                    return BUSY;
+                }
+                if (holder == null) {
+                    if (owner.compareAndSet(null, current)) {
+                        this.lockTime = System.currentTimeMillis();
+                        return LOCKED;
+                    }
+                    continue;
+                }
+                long now = System.currentTimeMillis();
+                long heldTime = now - this.lockTime;
+                if (heldTime > leaseMillis && owner.compareAndSet(holder, current)) {
+                    this.lockTime = now;
+                    POP_LOGGER.warn("Queue lock lease expired, preempt it, holder={}, heldTime={}", holder, heldTime);
+                    return LOCKED;
+                }
+                return BUSY;
+            }
+        }
+
+        public void unLock() {
+            if (owner.compareAndSet(Thread.currentThread(), null)) {
                 this.lockTime = System.currentTimeMillis();
-                return true;
-            } else {
+            }
+        }
+
+        /**
+         * Retire an idle lock, so that it can be removed from the table safely.
+         * Threads still referencing it will see {@link #RETIRED} and look the table up again.
+         */
+        public boolean tryRetire(final long usedExpireMillis) {
+            if (waiters.get() > 0 || System.currentTimeMillis() - this.lockTime <= usedExpireMillis) {
                 return false;
             }
+            return owner.compareAndSet(null, RETIRED_OWNER);
         }
 
-        public void unLock() {
-            lock.set(true);
+        public boolean isRetired() {
+            return owner.get() == RETIRED_OWNER;
+        }
+
+        public AtomicInteger getWaiters() {
+            return waiters;
         }
 
         public boolean isLock() {
-            return !lock.get();
+            Object holder = owner.get();
+            return holder != null && holder != RETIRED_OWNER;
         }
 
         public long getLockTime() {
@@ -891,61 +951,227 @@ public class PopMessageProcessor implements NettyRequestProcessor {
         }
     }
 
-    public static class QueueLockManager extends ServiceThread {
-        private ConcurrentHashMap<String, TimedLock> expiredLocalCache = new ConcurrentHashMap<>(100000);
+    /**
+     * Locks of all queues of one topic and consumer group, indexed by queue id.
+     * Reads are lock free, creating, growing and cleaning slots are serialized on the table.
+     */
+    static class QueueLockTable {
+        private volatile AtomicReferenceArray<TimedLock> slots;
+        private volatile boolean retired = false;
 
-        public boolean tryLock(String key) {
-            TimedLock timedLock = expiredLocalCache.get(key);
+        public QueueLockTable(int initialSize) {
+            this.slots = new AtomicReferenceArray<>(initialSize);
+        }
 
-            if (timedLock == null) {
-                TimedLock old = expiredLocalCache.putIfAbsent(key, new TimedLock());
-                if (old != null) {
-                    return false;
+        /**
+         * @return the lock of the queue, or null if this table has been retired
+         */
+        public TimedLock getOrCreate(final int queueId) {
+            AtomicReferenceArray<TimedLock> current = this.slots;
+            if (queueId < current.length()) {
+                TimedLock timedLock = current.get(queueId);
+                if (timedLock != null) {
+                    return timedLock;
+                }
+            }
+            synchronized (this) {
+                if (this.retired) {
+                    return null;
+                }
+                current = this.slots;
+                if (queueId >= current.length()) {
+                    AtomicReferenceArray<TimedLock> grown =
+                        new AtomicReferenceArray<>(Math.max(queueId + 1, current.length() * 2));
+                    for (int i = 0; i < current.length(); i++) {
+                        grown.set(i, current.get(i));
+                    }
+                    this.slots = grown;
+                    current = grown;
+                }
+                TimedLock timedLock = current.get(queueId);
+                if (timedLock == null || timedLock.isRetired()) {
+                    timedLock = new TimedLock();
+                    current.set(queueId, timedLock);
+                }
+                return timedLock;
+            }
+        }
+
+        /**
+         * @return number of locks still alive
+         */
+        public synchronized int clean(final long usedExpireMillis) {
+            AtomicReferenceArray<TimedLock> current = this.slots;
+            int alive = 0;
+            for (int i = 0; i < current.length(); i++) {
+                TimedLock timedLock = current.get(i);
+                if (timedLock == null) {
+                    continue;
+                }
+                if (timedLock.tryRetire(usedExpireMillis)) {
+                    current.set(i, null);
                 } else {
-                    timedLock = expiredLocalCache.get(key);
+                    alive++;
+                }
+            }
+            if (alive == 0) {
+                this.retired = true;
+            }
+            return alive;
+        }
+    }
+
+    /**
+     * Ownership table of pop queues, keyed by topic and consumer group then indexed by queue id,
+     * so that no key has to be built to take or release a lock.
+     * <p>
+     * Locks are leased, a holder that does not release one within the lease may be preempted.
+     * Callers blocking in {@link #lock(String, String, int)} register as waiters, and {@link #tryLock(String, String, int)}
+     * backs off while anyone is waiting, so that a stream of pops can not starve them.
+     */
+    public static class QueueLockManager extends ServiceThread {
+        private static final long DEFAULT_LEASE_MILLIS = 60 * 1000;
+        private static final int INITIAL_QUEUE_SLOTS = 16;
+
+        private final ConcurrentHashMap<String/* topic */, ConcurrentHashMap<String/* group */, QueueLockTable>> lockTable =
+            new ConcurrentHashMap<>(1024);
+        private final long leaseMillis;
+
+        public QueueLockManager() {
+            this(DEFAULT_LEASE_MILLIS);
+        }
+
+        public QueueLockManager(long leaseMillis) {
+            this.leaseMillis = leaseMillis;
+        }
+
+        public boolean tryLock(final String topic, final String consumerGroup, final int queueId) {
+            while (true) {
+                TimedLock timedLock = getOrCreateLock(topic, consumerGroup, queueId);
+                if (timedLock == null) {
+                    continue;
+                }
+                int result = timedLock.tryLock(this.leaseMillis, false);
+                if (result != TimedLock.RETIRED) {
+                    return result == TimedLock.LOCKED;
                 }
             }
+        }
 
+        /**
+         * Wait until the lock is taken, ahead of any non-waiting {@link #tryLock(String, String, int)}.
+         */
+        public void lock(final String topic, final String consumerGroup, final int queueId) {
+            while (true) {
+                TimedLock timedLock = getOrCreateLock(topic, consumerGroup, queueId);
+                if (timedLock == null) {
+                    continue;
+                }
+                timedLock.getWaiters().incrementAndGet();
+                try {
+                    int result;
+                    while ((result = timedLock.tryLock(this.leaseMillis, true)) == TimedLock.BUSY) {
+                        Thread.yield();
+                    }
+                    if (result == TimedLock.LOCKED) {
+                        return;
+                    }
+                } finally {
+                    timedLock.getWaiters().decrementAndGet();
+                }
+            }
+        }
+
+        public void unLock(final String topic, final String consumerGroup, final int queueId) {
+            ConcurrentHashMap<String, QueueLockTable> groupTable = lockTable.get(topic);
+            if (groupTable == null) {
+                return;
+            }
+            QueueLockTable queueLockTable = groupTable.get(consumerGroup);
+            if (queueLockTable == null) {
+                return;
+            }
+            AtomicReferenceArray<TimedLock> slots = queueLockTable.slots;
+            if (queueId < slots.length()) {
+                TimedLock timedLock = slots.get(queueId);
+                if (timedLock != null) {
+                    timedLock.unLock();
+                }
+            }
+        }
+
+        private TimedLock getOrCreateLock(final String topic, final String consumerGroup, final int queueId) {
+            ConcurrentHashMap<String, QueueLockTable> groupTable = lockTable.get(topic);
+            if (groupTable == null) {
+                groupTable = new ConcurrentHashMap<>();
+                ConcurrentHashMap<String, QueueLockTable> old = lockTable.putIfAbsent(topic, groupTable);
+                if (old != null) {
+                    groupTable = old;
+                }
+            }
+            QueueLockTable queueLockTable = groupTable.get(consumerGroup);
+            if (queueLockTable == null) {
+                queueLockTable = new QueueLockTable(Math.max(INITIAL_QUEUE_SLOTS, queueId + 1));
+                QueueLockTable old = groupTable.putIfAbsent(consumerGroup, queueLockTable);
+                if (old != null) {
+                    queueLockTable = old;
+                }
+            }
+            TimedLock timedLock = queueLockTable.getOrCreate(queueId);
             if (timedLock == null) {
-                return false;
+                // retired by cleaning, a new table will be created on retry
+                groupTable.remove(consumerGroup, queueLockTable);
+                removeIfEmpty(topic, groupTable);
+                return null;
+            }
+            if (lockTable.get(topic) != groupTable) {
+                // the topic map was dropped as empty meanwhile, a lock only found there is seen by no one else
+                return null;
             }
+            return timedLock;
+        }
 
-            return timedLock.tryLock();
+        /**
+         * Drop the map of a topic left without any table. A caller that put a table into it meanwhile sees it gone
+         * from {@link #lockTable} and looks the topic up again, so no lock is handed out from a dropped map.
+         */
+        private void removeIfEmpty(final String topic, final ConcurrentHashMap<String, QueueLockTable> groupTable) {
+            if (groupTable.isEmpty() && lockTable.remove(topic, groupTable)) {
+                POP_LOGGER.info("Remove empty queue lock map of topic: {}", topic);
+            }
         }
 
         /**
-         * is not thread safe, may cause duplicate lock
+         * Retire locks unused for {@code usedExpireMillis}, and drop tables without any lock left and topics without
+         * any table left.
+         * A lock is retired atomically against acquiring, so cleaning never hands out the same queue twice.
          *
          * @param usedExpireMillis
-         * @return
+         * @return number of locks still alive
          */
         public int cleanUnusedLock(final long usedExpireMillis) {
-            Iterator<Entry<String, TimedLock>> iterator = expiredLocalCache.entrySet().iterator();
-
             int total = 0;
-            while (iterator.hasNext()) {
-                Entry<String, TimedLock> entry = iterator.next();
-
-                if (System.currentTimeMillis() - entry.getValue().getLockTime() > usedExpireMillis) {
-                    iterator.remove();
-                    POP_LOGGER.info("Remove unused queue lock: {}, {}, {}", entry.getKey(),
-                            entry.getValue().getLockTime(),
-                            entry.getValue().isLock());
+            Iterator<Entry<String, ConcurrentHashMap<String, QueueLockTable>>> topicIterator =
+                lockTable.entrySet().iterator();
+            while (topicIterator.hasNext()) {
+                Entry<String, ConcurrentHashMap<String, QueueLockTable>> topicEntry = topicIterator.next();
+                Iterator<Entry<String, QueueLockTable>> groupIterator = topicEntry.getValue().entrySet().iterator();
+                while (groupIterator.hasNext()) {
+                    Entry<String, QueueLockTable> groupEntry = groupIterator.next();
+                    int alive = groupEntry.getValue().clean(usedExpireMillis);
+                    if (alive == 0) {
+                        groupIterator.remove();
+                        POP_LOGGER.info("Remove unused queue lock table: {}, {}", topicEntry.getKey(), groupEntry.getKey());
+                    }
+                    total += alive;
+                }
+                if (topicEntry.getValue().isEmpty()) {
+                    removeIfEmpty(topicEntry.getKey(), topicEntry.getValue());
                 }
-
-                total++;
             }
-
             return total;
         }
 
-        public void unLock(String key) {
-            TimedLock timedLock = expiredLocalCache.get(key);
-            if (timedLock != null) {
-                timedLock.unLock();
-            }
-        }
-
         @Override
         public String getServiceName() {
             return "QueueLockManager";
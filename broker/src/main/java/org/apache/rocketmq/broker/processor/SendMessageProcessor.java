@@ -16,6 +16,7 @@
  */
 package org.apache.rocketmq.broker.processor;
 
+import java.io.IOException;
 import java.net.SocketAddress;
 import java.util.List;
 import java.util.Map;
@@ -23,6 +24,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ThreadLocalRandom;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import org.apache.rocketmq.broker.BrokerController;
 import org.apache.rocketmq.broker.mqtrace.ConsumeMessageContext;
@@ -33,6 +35,7 @@ import org.apache.rocketmq.common.MixAll;
 import org.apache.rocketmq.common.TopicConfig;
 import org.apache.rocketmq.common.TopicFilterType;
 import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.compression.CompressorFactory;
 import org.apache.rocketmq.common.constant.PermName;
 import org.apache.rocketmq.common.help.FAQUrl;
 import org.apache.rocketmq.common.message.MessageAccessor;
@@ -50,6 +53,7 @@ import org.apache.rocketmq.common.subscription.SubscriptionGroupConfig;
 import org.apache.rocketmq.common.sysflag.MessageSysFlag;
 import org.apache.rocketmq.common.sysflag.TopicSysFlag;
 import org.apache.rocketmq.common.topic.TopicValidator;
+import org.apache.rocketmq.remoting.common.RemotingHelper;
 import org.apache.rocketmq.remoting.exception.RemotingCommandException;
 import org.apache.rocketmq.remoting.netty.NettyRequestProcessor;
 import org.apache.rocketmq.remoting.netty.RemotingResponseCallback;
@@ -272,8 +276,6 @@ public class SendMessageProcessor extends AbstractSendMessageProcessor implement
             return CompletableFuture.completedFuture(response);
         }
 
-        final byte[] body = request.getBody();
-
         int queueIdInt = requestHeader.getQueueId();
         TopicConfig topicConfig = this.brokerController.getTopicConfigManager().selectTopicConfig(requestHeader.getTopic());
 
@@ -289,7 +291,13 @@ public class SendMessageProcessor extends AbstractSendMessageProcessor implement
             return CompletableFuture.completedFuture(response);
         }
 
-        msgInner.setBody(body);
+        final ByteBuf retainedBody = request.getRetainedBody();
+        if (retainedBody != null) {
+            // written by the commit log straight from the request frame, which is released once the put completes
+            msgInner.setBodyBuffer(retainedBody.nioBuffer());
+        } else {
+            msgInner.setBody(request.getBody());
+        }
         msgInner.setFlag(requestHeader.getFlag());
         Map<String, String> origProps = MessageDecoder.string2messageProperties(requestHeader.getProperties());
         MessageAccessor.setProperties(msgInner, origProps);
@@ -331,6 +339,9 @@ public class SendMessageProcessor extends AbstractSendMessageProcessor implement
         } else {
             putMessageResult = this.brokerController.getMessageStore().asyncPutMessage(msgInner);
         }
+        if (retainedBody != null) {
+            putMessageResult = putMessageResult.whenComplete((r, t) -> request.releaseBody());
+        }
         logicalQueueContext.hookAfterPut(putMessageResult);
         return handlePutMessageResultFuture(putMessageResult, response, request, msgInner, responseHeader, mqtraceContext, ctx, queueIdInt);
     }
@@ -568,7 +579,7 @@ public class SendMessageProcessor extends AbstractSendMessageProcessor implement
             return null;
         } else {
             if (hasSendMessageHook()) {
-                int wroteSize = request.getBody().length;
+                int wroteSize = request.getBodyLength();
                 int incValue = (int)Math.ceil(wroteSize / BrokerStatsManager.SIZE_PER_COUNT);
 
                 sendMessageContext.setCommercialSendStats(BrokerStatsManager.StatsType.SEND_FAILURE);
@@ -608,6 +619,21 @@ public class SendMessageProcessor extends AbstractSendMessageProcessor implement
         messageExtBatch.setQueueId(queueIdInt);
 
         int sysFlag = requestHeader.getSysFlag();
+        byte[] body = request.getBody();
+        if ((sysFlag & MessageSysFlag.COMPRESSED_FLAG) == MessageSysFlag.COMPRESSED_FLAG) {
+            // a batch is compressed as a whole, its messages are stored one by one uncompressed
+            try {
+                body = CompressorFactory.decompress(body, sysFlag,
+                    this.brokerController.getMessageStoreConfig().getMaxMessageSize());
+            } catch (IOException e) {
+                log.warn("decompress the batch of topic {} from {} failed", requestHeader.getTopic(),
+                    RemotingHelper.parseChannelRemoteAddr(ctx.channel()), e);
+                response.setCode(ResponseCode.MESSAGE_ILLEGAL);
+                response.setRemark("decompress the batch body failed, " + e.getMessage());
+                return CompletableFuture.completedFuture(response);
+            }
+            sysFlag = MessageSysFlag.clearCompressionFlags(sysFlag);
+        }
         if (TopicFilterType.MULTI_TAG == topicConfig.getTopicFilterType()) {
             sysFlag |= MessageSysFlag.MULTI_TAGS_FLAG;
         }
@@ -615,7 +641,7 @@ public class SendMessageProcessor extends AbstractSendMessageProcessor implement
 
         messageExtBatch.setFlag(requestHeader.getFlag());
         MessageAccessor.setProperties(messageExtBatch, MessageDecoder.string2messageProperties(requestHeader.getProperties()));
-        messageExtBatch.setBody(request.getBody());
+        messageExtBatch.setBody(body);
         messageExtBatch.setBornTimestamp(requestHeader.getBornTimestamp());
         messageExtBatch.setBornHost(ctx.channel().remoteAddress());
         messageExtBatch.setStoreHost(this.getStoreHost());
@@ -16,6 +16,7 @@
  */
 package org.apache.rocketmq.broker.transaction;
 
+import com.google.common.util.concurrent.RateLimiter;
 import io.netty.channel.Channel;
 import org.apache.rocketmq.broker.BrokerController;
 import org.apache.rocketmq.common.constant.LoggerName;
@@ -25,7 +26,12 @@ import org.apache.rocketmq.common.protocol.header.CheckTransactionStateRequestHe
 import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.logging.InternalLoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -56,7 +62,62 @@ public abstract class AbstractTransactionalMessageCheckListener {
         this.brokerController = brokerController;
     }
 
+    /**
+     * Pending half messages of each producer group, sent back in one request once a batch is full or
+     * the check round ends.
+     */
+    private final ConcurrentMap<String /* producerGroup */, List<MessageExt>> pendingCheckTable = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String /* producerGroup */, RateLimiter> checkRateLimiterTable = new ConcurrentHashMap<>();
+
     public void sendCheckMessage(MessageExt msgExt) throws Exception {
+        CheckTransactionStateRequestHeader checkTransactionStateRequestHeader = buildCheckRequestHeader(msgExt);
+        String groupId = msgExt.getProperty(MessageConst.PROPERTY_PRODUCER_GROUP);
+        acquireCheckPermits(groupId, 1);
+        Channel channel = brokerController.getProducerManager().getAvailableChannel(groupId);
+        if (channel != null) {
+            brokerController.getBroker2Client().checkProducerTransactionState(groupId, channel, checkTransactionStateRequestHeader, msgExt);
+        } else {
+            LOGGER.warn("Check transaction failed, channel is null. groupId={}", groupId);
+        }
+    }
+
+    /**
+     * Send the half messages of one producer group back in a single request.
+     */
+    public void sendCheckMessages(String groupId, List<MessageExt> msgExts) throws Exception {
+        acquireCheckPermits(groupId, msgExts.size());
+        Channel channel = brokerController.getProducerManager().getAvailableChannel(groupId);
+        if (channel != null) {
+            brokerController.getBroker2Client().checkProducerTransactionStateBatch(groupId, channel, msgExts);
+        } else {
+            LOGGER.warn("Check transaction failed, channel is null. groupId={}, msgNum={}", groupId, msgExts.size());
+        }
+    }
+
+    private void acquireCheckPermits(String groupId, int permits) {
+        if (groupId == null || brokerController == null) {
+            return;
+        }
+        int maxRate = brokerController.getBrokerConfig().getTransactionCheckMaxRatePerGroup();
+        if (maxRate <= 0) {
+            return;
+        }
+        RateLimiter rateLimiter = checkRateLimiterTable.get(groupId);
+        if (rateLimiter == null) {
+            rateLimiter = RateLimiter.create(maxRate);
+            RateLimiter prev = checkRateLimiterTable.putIfAbsent(groupId, rateLimiter);
+            if (prev != null) {
+                rateLimiter = prev;
+            }
+        }
+        if (rateLimiter.getRate() != maxRate) {
+            rateLimiter.setRate(maxRate);
+        }
+        rateLimiter.acquire(permits);
+    }
+
+    private CheckTransactionStateRequestHeader buildCheckRequestHeader(MessageExt msgExt) {
         CheckTransactionStateRequestHeader checkTransactionStateRequestHeader = new CheckTransactionStateRequestHeader();
         checkTransactionStateRequestHeader.setCommitLogOffset(msgExt.getCommitLogOffset());
         checkTransactionStateRequestHeader.setOffsetMsgId(msgExt.getMsgId());
@@ -66,16 +127,14 @@ public abstract class AbstractTransactionalMessageCheckListener {
         msgExt.setTopic(msgExt.getUserProperty(MessageConst.PROPERTY_REAL_TOPIC));
         msgExt.setQueueId(Integer.parseInt(msgExt.getUserProperty(MessageConst.PROPERTY_REAL_QUEUE_ID)));
         msgExt.setStoreSize(0);
-        String groupId = msgExt.getProperty(MessageConst.PROPERTY_PRODUCER_GROUP);
-        Channel channel = brokerController.getProducerManager().getAvailableChannel(groupId);
-        if (channel != null) {
-            brokerController.getBroker2Client().checkProducerTransactionState(groupId, channel, checkTransactionStateRequestHeader, msgExt);
-        } else {
-            LOGGER.warn("Check transaction failed, channel is null. groupId={}", groupId);
-        }
+        return checkTransactionStateRequestHeader;
     }
 
     public void resolveHalfMsg(final MessageExt msgExt) {
+        if (brokerController != null && brokerController.getBrokerConfig().isTransactionCheckBatchEnable()) {
+            addPendingCheck(msgExt);
+            return;
+        }
         executorService.execute(new Runnable() {
             @Override
             public void run() {
@@ -88,6 +147,67 @@ public abstract class AbstractTransactionalMessageCheckListener {
         });
     }
 
+    private void addPendingCheck(final MessageExt msgExt) {
+        final String groupId = msgExt.getProperty(MessageConst.PROPERTY_PRODUCER_GROUP);
+        if (groupId == null) {
+            LOGGER.warn("Check transaction failed, producer group is null. msgId={}", msgExt.getMsgId());
+            return;
+        }
+        buildCheckRequestHeader(msgExt);
+
+        int batchSize = brokerController.getBrokerConfig().getTransactionCheckBatchSize();
+        List<MessageExt> fullBatch = null;
+        List<MessageExt> pending = pendingCheckTable.get(groupId);
+        if (pending == null) {
+            pending = new ArrayList<>();
+            List<MessageExt> prev = pendingCheckTable.putIfAbsent(groupId, pending);
+            if (prev != null) {
+                pending = prev;
+            }
+        }
+        synchronized (pending) {
+            pending.add(msgExt);
+            if (pending.size() >= batchSize) {
+                fullBatch = new ArrayList<>(pending);
+                pending.clear();
+            }
+        }
+        if (fullBatch != null) {
+            dispatchCheckBatch(groupId, fullBatch);
+        }
+    }
+
+    /**
+     * Send out the batches not full yet, called at the end of each check round.
+     */
+    public void flushPendingCheck() {
+        for (Map.Entry<String, List<MessageExt>> entry : pendingCheckTable.entrySet()) {
+            List<MessageExt> batch;
+            List<MessageExt> pending = entry.getValue();
+            synchronized (pending) {
+                if (pending.isEmpty()) {
+                    continue;
+                }
+                batch = new ArrayList<>(pending);
+                pending.clear();
+            }
+            dispatchCheckBatch(entry.getKey(), batch);
+        }
+    }
+
+    private void dispatchCheckBatch(final String groupId, final List<MessageExt> batch) {
+        executorService.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sendCheckMessages(groupId, batch);
+                } catch (Exception e) {
+                    LOGGER.error("Send check messages error! groupId={}", groupId, e);
+                }
+            }
+        });
+    }
+
     public BrokerController getBrokerController() {
         return brokerController;
     }
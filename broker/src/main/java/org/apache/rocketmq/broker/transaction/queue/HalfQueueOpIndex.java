@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.transaction.queue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Op state of one half queue, kept between two transaction checks so that the op queue is only read
+ * incrementally instead of from the consume offset on every check.
+ * <p>
+ * Only the op side is indexed. The check still walks the half queue offset by offset from its consume offset, an
+ * offset found resolved here is skipped without reading the half message. Indexing the pending half offsets would
+ * let the consume offset jump over an offset appended but not registered yet, so it is not done.
+ * <p>
+ * Everything but the committed half offsets is only touched by the check thread.
+ */
+public class HalfQueueOpIndex {
+    /**
+     * Half offsets committed or rolled back through end transaction, not read from the op queue yet. An offset is
+     * dropped once its op message is read or the half consume offset passes it.
+     */
+    private final ConcurrentSkipListSet<Long> committedHalfOffsets = new ConcurrentSkipListSet<>();
+
+    /**
+     * Half offset to op offset, read from the op queue but not checked yet.
+     */
+    private final HashMap<Long, Long> removeMap = new HashMap<>();
+
+    /**
+     * Op offsets already processed, not yet covered by the op consume offset.
+     */
+    private final List<Long> doneOpOffset = new ArrayList<>();
+
+    /**
+     * Next op offset to read from the op queue.
+     */
+    private long opScanOffset = -1;
+
+    private long expectedHalfOffset = -1;
+    private long expectedOpOffset = -1;
+
+    /**
+     * Called before a check, drops the cached state if the consume offsets were moved by someone else.
+     */
+    public void prepare(long halfOffset, long opOffset) {
+        if (halfOffset != this.expectedHalfOffset || opOffset != this.expectedOpOffset || this.opScanOffset < opOffset) {
+            this.removeMap.clear();
+            this.doneOpOffset.clear();
+            this.opScanOffset = opOffset;
+        } else {
+            Iterator<Map.Entry<Long, Long>> it = this.removeMap.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Long, Long> entry = it.next();
+                if (entry.getKey() < halfOffset) {
+                    this.doneOpOffset.add(entry.getValue());
+                    it.remove();
+                }
+            }
+            Iterator<Long> doneIt = this.doneOpOffset.iterator();
+            while (doneIt.hasNext()) {
+                if (doneIt.next() < opOffset) {
+                    doneIt.remove();
+                }
+            }
+        }
+        this.committedHalfOffsets.headSet(halfOffset).clear();
+        this.expectedHalfOffset = halfOffset;
+        this.expectedOpOffset = opOffset;
+    }
+
+    /**
+     * Called after a check with the consume offsets it committed.
+     */
+    public void complete(long halfOffset, long opOffset) {
+        this.committedHalfOffsets.headSet(halfOffset).clear();
+        this.expectedHalfOffset = halfOffset;
+        this.expectedOpOffset = opOffset;
+    }
+
+    public void markCommitted(long halfOffset) {
+        this.committedHalfOffsets.add(halfOffset);
+    }
+
+    /**
+     * Called when the op message of the half offset is read, the remove map or the done op offsets know it from now on.
+     */
+    public void opRead(long halfOffset) {
+        this.committedHalfOffsets.remove(halfOffset);
+    }
+
+    public boolean isCommitted(long halfOffset) {
+        return this.committedHalfOffsets.contains(halfOffset);
+    }
+
+    public HashMap<Long, Long> getRemoveMap() {
+        return removeMap;
+    }
+
+    public List<Long> getDoneOpOffset() {
+        return doneOpOffset;
+    }
+
+    public long getOpScanOffset() {
+        return opScanOffset;
+    }
+
+    public void setOpScanOffset(long opScanOffset) {
+        this.opScanOffset = opScanOffset;
+    }
+
+    public int getCommittedSize() {
+        return this.committedHalfOffsets.size();
+    }
+}
@@ -16,11 +16,13 @@
  */
 package org.apache.rocketmq.broker.transaction.queue;
 
+import org.apache.rocketmq.broker.BrokerController;
 import org.apache.rocketmq.broker.transaction.AbstractTransactionalMessageCheckListener;
 import org.apache.rocketmq.broker.transaction.OperationResult;
 import org.apache.rocketmq.broker.transaction.TransactionalMessageService;
 import org.apache.rocketmq.client.consumer.PullResult;
 import org.apache.rocketmq.client.consumer.PullStatus;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
 import org.apache.rocketmq.common.constant.LoggerName;
 import org.apache.rocketmq.common.message.MessageConst;
 import org.apache.rocketmq.common.message.MessageExt;
@@ -42,6 +44,11 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class TransactionalMessageServiceImpl implements TransactionalMessageService {
     private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.TRANSACTION_LOGGER_NAME);
@@ -60,6 +67,13 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
 
     private ConcurrentHashMap<MessageQueue, MessageQueue> opQueueMap = new ConcurrentHashMap<>();
 
+    private ConcurrentHashMap<Integer /* half queueId */, HalfQueueOpIndex> opIndexTable = new ConcurrentHashMap<>();
+
+    /**
+     * Checks half queues in parallel when transactionCheckParallelism is more than one.
+     */
+    private ThreadPoolExecutor checkExecutor;
+
     @Override
     public CompletableFuture<PutMessageResult> asyncPrepareMessage(MessageExtBrokerInner messageInner) {
         return transactionalMessageBridge.asyncPutHalfMessage(messageInner);
@@ -124,8 +138,8 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
     }
 
     @Override
-    public void check(long transactionTimeout, int transactionCheckMax,
-        AbstractTransactionalMessageCheckListener listener) {
+    public void check(final long transactionTimeout, final int transactionCheckMax,
+        final AbstractTransactionalMessageCheckListener listener) {
         try {
             String topic = TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC;
             Set<MessageQueue> msgQueues = transactionalMessageBridge.fetchMessageQueues(topic);
@@ -134,122 +148,175 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
                 return;
             }
             log.debug("Check topic={}, queues={}", topic, msgQueues);
-            for (MessageQueue messageQueue : msgQueues) {
-                long startTime = System.currentTimeMillis();
-                MessageQueue opQueue = getOpQueue(messageQueue);
-                long halfOffset = transactionalMessageBridge.fetchConsumeOffset(messageQueue);
-                long opOffset = transactionalMessageBridge.fetchConsumeOffset(opQueue);
-                log.info("Before check, the queue={} msgOffset={} opOffset={}", messageQueue, halfOffset, opOffset);
-                if (halfOffset < 0 || opOffset < 0) {
-                    log.error("MessageQueue: {} illegal offset read: {}, op offset: {},skip this queue", messageQueue,
-                        halfOffset, opOffset);
-                    continue;
+            int parallelism = getCheckParallelism();
+            if (parallelism > 1 && msgQueues.size() > 1) {
+                ExecutorService executor = getCheckExecutor(parallelism);
+                List<Future<?>> futures = new ArrayList<>(msgQueues.size());
+                for (final MessageQueue messageQueue : msgQueues) {
+                    futures.add(executor.submit(new Runnable() {
+                        @Override
+                        public void run() {
+                            checkQueue(messageQueue, transactionTimeout, transactionCheckMax, listener);
+                        }
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } else {
+                for (MessageQueue messageQueue : msgQueues) {
+                    checkQueue(messageQueue, transactionTimeout, transactionCheckMax, listener);
                 }
+            }
+            listener.flushPendingCheck();
+        } catch (Throwable e) {
+            log.error("Check error", e);
+        }
+
+    }
+
+    private void checkQueue(MessageQueue messageQueue, long transactionTimeout, int transactionCheckMax,
+        AbstractTransactionalMessageCheckListener listener) {
+        try {
+            long startTime = System.currentTimeMillis();
+            MessageQueue opQueue = getOpQueue(messageQueue);
+            long halfOffset = transactionalMessageBridge.fetchConsumeOffset(messageQueue);
+            long opOffset = transactionalMessageBridge.fetchConsumeOffset(opQueue);
+            log.info("Before check, the queue={} msgOffset={} opOffset={}", messageQueue, halfOffset, opOffset);
+            if (halfOffset < 0 || opOffset < 0) {
+                log.error("MessageQueue: {} illegal offset read: {}, op offset: {},skip this queue", messageQueue,
+                    halfOffset, opOffset);
+                return;
+            }
 
-                List<Long> doneOpOffset = new ArrayList<>();
-                HashMap<Long, Long> removeMap = new HashMap<>();
-                PullResult pullResult = fillOpRemoveMap(removeMap, opQueue, opOffset, halfOffset, doneOpOffset);
-                if (null == pullResult) {
-                    log.error("The queue={} check msgOffset={} with opOffset={} failed, pullResult is null",
-                        messageQueue, halfOffset, opOffset);
-                    continue;
+            HalfQueueOpIndex opIndex = getOpIndex(messageQueue.getQueueId());
+            opIndex.prepare(halfOffset, opOffset);
+            List<Long> doneOpOffset = opIndex.getDoneOpOffset();
+            HashMap<Long, Long> removeMap = opIndex.getRemoveMap();
+            PullResult pullResult = fillOpRemoveMap(opIndex, opQueue, opIndex.getOpScanOffset(), halfOffset);
+            if (null == pullResult) {
+                log.error("The queue={} check msgOffset={} with opOffset={} failed, pullResult is null",
+                    messageQueue, halfOffset, opOffset);
+                return;
+            }
+            // single thread
+            int getMessageNullCount = 1;
+            long newOffset = halfOffset;
+            long i = halfOffset;
+            while (true) {
+                if (System.currentTimeMillis() - startTime > MAX_PROCESS_TIME_LIMIT) {
+                    log.info("Queue={} process time reach max={}", messageQueue, MAX_PROCESS_TIME_LIMIT);
+                    break;
                 }
-                // single thread
-                int getMessageNullCount = 1;
-                long newOffset = halfOffset;
-                long i = halfOffset;
-                while (true) {
-                    if (System.currentTimeMillis() - startTime > MAX_PROCESS_TIME_LIMIT) {
-                        log.info("Queue={} process time reach max={}", messageQueue, MAX_PROCESS_TIME_LIMIT);
+                if (removeMap.containsKey(i)) {
+                    log.debug("Half offset {} has been committed/rolled back", i);
+                    Long removedOpOffset = removeMap.remove(i);
+                    doneOpOffset.add(removedOpOffset);
+                } else if (opIndex.isCommitted(i)) {
+                    log.debug("Half offset {} has been committed/rolled back, op message not read yet", i);
+                } else {
+                    GetResult getResult = getHalfMsg(messageQueue, i);
+                    MessageExt msgExt = getResult.getMsg();
+                    if (msgExt == null) {
+                        if (getMessageNullCount++ > MAX_RETRY_COUNT_WHEN_HALF_NULL) {
+                            break;
+                        }
+                        if (getResult.getPullResult().getPullStatus() == PullStatus.NO_NEW_MSG) {
+                            log.debug("No new msg, the miss offset={} in={}, continue check={}, pull result={}", i,
+                                messageQueue, getMessageNullCount, getResult.getPullResult());
+                            break;
+                        } else {
+                            log.info("Illegal offset, the miss offset={} in={}, continue check={}, pull result={}",
+                                i, messageQueue, getMessageNullCount, getResult.getPullResult());
+                            i = getResult.getPullResult().getNextBeginOffset();
+                            newOffset = i;
+                            continue;
+                        }
+                    }
+
+                    if (needDiscard(msgExt, transactionCheckMax) || needSkip(msgExt)) {
+                        listener.resolveDiscardMsg(msgExt);
+                        newOffset = i + 1;
+                        i++;
+                        continue;
+                    }
+                    if (msgExt.getStoreTimestamp() >= startTime) {
+                        log.debug("Fresh stored. the miss offset={}, check it later, store={}", i,
+                            new Date(msgExt.getStoreTimestamp()));
                         break;
                     }
-                    if (removeMap.containsKey(i)) {
-                        log.debug("Half offset {} has been committed/rolled back", i);
-                        Long removedOpOffset = removeMap.remove(i);
-                        doneOpOffset.add(removedOpOffset);
-                    } else {
-                        GetResult getResult = getHalfMsg(messageQueue, i);
-                        MessageExt msgExt = getResult.getMsg();
-                        if (msgExt == null) {
-                            if (getMessageNullCount++ > MAX_RETRY_COUNT_WHEN_HALF_NULL) {
-                                break;
-                            }
-                            if (getResult.getPullResult().getPullStatus() == PullStatus.NO_NEW_MSG) {
-                                log.debug("No new msg, the miss offset={} in={}, continue check={}, pull result={}", i,
-                                    messageQueue, getMessageNullCount, getResult.getPullResult());
-                                break;
-                            } else {
-                                log.info("Illegal offset, the miss offset={} in={}, continue check={}, pull result={}",
-                                    i, messageQueue, getMessageNullCount, getResult.getPullResult());
-                                i = getResult.getPullResult().getNextBeginOffset();
-                                newOffset = i;
+
+                    long valueOfCurrentMinusBorn = System.currentTimeMillis() - msgExt.getBornTimestamp();
+                    long checkImmunityTime = transactionTimeout;
+                    String checkImmunityTimeStr = msgExt.getUserProperty(MessageConst.PROPERTY_CHECK_IMMUNITY_TIME_IN_SECONDS);
+                    if (null != checkImmunityTimeStr) {
+                        checkImmunityTime = getImmunityTime(checkImmunityTimeStr, transactionTimeout);
+                        if (valueOfCurrentMinusBorn < checkImmunityTime) {
+                            if (checkPrepareQueueOffset(opIndex, msgExt)) {
+                                newOffset = i + 1;
+                                i++;
                                 continue;
                             }
                         }
-
-                        if (needDiscard(msgExt, transactionCheckMax) || needSkip(msgExt)) {
-                            listener.resolveDiscardMsg(msgExt);
-                            newOffset = i + 1;
-                            i++;
-                            continue;
-                        }
-                        if (msgExt.getStoreTimestamp() >= startTime) {
-                            log.debug("Fresh stored. the miss offset={}, check it later, store={}", i,
-                                new Date(msgExt.getStoreTimestamp()));
+                    } else {
+                        if ((0 <= valueOfCurrentMinusBorn) && (valueOfCurrentMinusBorn < checkImmunityTime)) {
+                            log.debug("New arrived, the miss offset={}, check it later checkImmunity={}, born={}", i,
+                                checkImmunityTime, new Date(msgExt.getBornTimestamp()));
                             break;
                         }
+                    }
+                    List<MessageExt> opMsg = pullResult.getMsgFoundList();
+                    boolean isNeedCheck = (opMsg == null && valueOfCurrentMinusBorn > checkImmunityTime)
+                        || (opMsg != null && (opMsg.get(opMsg.size() - 1).getBornTimestamp() - startTime > transactionTimeout))
+                        || (valueOfCurrentMinusBorn <= -1);
 
-                        long valueOfCurrentMinusBorn = System.currentTimeMillis() - msgExt.getBornTimestamp();
-                        long checkImmunityTime = transactionTimeout;
-                        String checkImmunityTimeStr = msgExt.getUserProperty(MessageConst.PROPERTY_CHECK_IMMUNITY_TIME_IN_SECONDS);
-                        if (null != checkImmunityTimeStr) {
-                            checkImmunityTime = getImmunityTime(checkImmunityTimeStr, transactionTimeout);
-                            if (valueOfCurrentMinusBorn < checkImmunityTime) {
-                                if (checkPrepareQueueOffset(removeMap, doneOpOffset, msgExt)) {
-                                    newOffset = i + 1;
-                                    i++;
-                                    continue;
-                                }
-                            }
-                        } else {
-                            if ((0 <= valueOfCurrentMinusBorn) && (valueOfCurrentMinusBorn < checkImmunityTime)) {
-                                log.debug("New arrived, the miss offset={}, check it later checkImmunity={}, born={}", i,
-                                    checkImmunityTime, new Date(msgExt.getBornTimestamp()));
-                                break;
-                            }
-                        }
-                        List<MessageExt> opMsg = pullResult.getMsgFoundList();
-                        boolean isNeedCheck = (opMsg == null && valueOfCurrentMinusBorn > checkImmunityTime)
-                            || (opMsg != null && (opMsg.get(opMsg.size() - 1).getBornTimestamp() - startTime > transactionTimeout))
-                            || (valueOfCurrentMinusBorn <= -1);
-
-                        if (isNeedCheck) {
-                            if (!putBackHalfMsgQueue(msgExt, i)) {
-                                continue;
-                            }
-                            listener.resolveHalfMsg(msgExt);
-                        } else {
-                            pullResult = fillOpRemoveMap(removeMap, opQueue, pullResult.getNextBeginOffset(), halfOffset, doneOpOffset);
-                            log.debug("The miss offset:{} in messageQueue:{} need to get more opMsg, result is:{}", i,
-                                messageQueue, pullResult);
+                    if (isNeedCheck) {
+                        if (!putBackHalfMsgQueue(msgExt, i)) {
                             continue;
                         }
+                        listener.resolveHalfMsg(msgExt);
+                    } else {
+                        pullResult = fillOpRemoveMap(opIndex, opQueue, pullResult.getNextBeginOffset(), halfOffset);
+                        log.debug("The miss offset:{} in messageQueue:{} need to get more opMsg, result is:{}", i,
+                            messageQueue, pullResult);
+                        continue;
                     }
-                    newOffset = i + 1;
-                    i++;
-                }
-                if (newOffset != halfOffset) {
-                    transactionalMessageBridge.updateConsumeOffset(messageQueue, newOffset);
-                }
-                long newOpOffset = calculateOpOffset(doneOpOffset, opOffset);
-                if (newOpOffset != opOffset) {
-                    transactionalMessageBridge.updateConsumeOffset(opQueue, newOpOffset);
                 }
+                newOffset = i + 1;
+                i++;
             }
+            if (newOffset != halfOffset) {
+                transactionalMessageBridge.updateConsumeOffset(messageQueue, newOffset);
+            }
+            long newOpOffset = calculateOpOffset(doneOpOffset, opOffset);
+            if (newOpOffset != opOffset) {
+                transactionalMessageBridge.updateConsumeOffset(opQueue, newOpOffset);
+            }
+            opIndex.complete(newOffset, newOpOffset);
         } catch (Throwable e) {
-            log.error("Check error", e);
+            log.error("Check queue={} error", messageQueue, e);
         }
+    }
 
+    private int getCheckParallelism() {
+        BrokerController brokerController = transactionalMessageBridge.getBrokerController();
+        return brokerController == null ? 1 : brokerController.getBrokerConfig().getTransactionCheckParallelism();
+    }
+
+    private synchronized ExecutorService getCheckExecutor(int parallelism) {
+        if (checkExecutor == null) {
+            checkExecutor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactoryImpl("TransactionQueueCheckThread_"));
+        } else if (checkExecutor.getMaximumPoolSize() != parallelism) {
+            if (parallelism > checkExecutor.getMaximumPoolSize()) {
+                checkExecutor.setMaximumPoolSize(parallelism);
+                checkExecutor.setCorePoolSize(parallelism);
+            } else {
+                checkExecutor.setCorePoolSize(parallelism);
+                checkExecutor.setMaximumPoolSize(parallelism);
+            }
+        }
+        return checkExecutor;
     }
 
     private long getImmunityTime(String checkImmunityTimeStr, long transactionTimeout) {
@@ -265,26 +332,28 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
     }
 
     /**
-     * Read op message, parse op message, and fill removeMap
+     * Read op message, parse op message, and fill the removeMap of the op index
      *
-     * @param removeMap Half message to be remove, key:halfOffset, value: opOffset.
+     * @param opIndex Op state of the half queue, the removeMap and done op offsets are filled.
      * @param opQueue Op message queue.
      * @param pullOffsetOfOp The begin offset of op message queue.
      * @param miniOffset The current minimum offset of half message queue.
-     * @param doneOpOffset Stored op messages that have been processed.
      * @return Op message result.
      */
-    private PullResult fillOpRemoveMap(HashMap<Long, Long> removeMap,
-        MessageQueue opQueue, long pullOffsetOfOp, long miniOffset, List<Long> doneOpOffset) {
+    private PullResult fillOpRemoveMap(HalfQueueOpIndex opIndex,
+        MessageQueue opQueue, long pullOffsetOfOp, long miniOffset) {
         PullResult pullResult = pullOpMsg(opQueue, pullOffsetOfOp, 32);
         if (null == pullResult) {
             return null;
         }
+        HashMap<Long, Long> removeMap = opIndex.getRemoveMap();
+        List<Long> doneOpOffset = opIndex.getDoneOpOffset();
         if (pullResult.getPullStatus() == PullStatus.OFFSET_ILLEGAL
             || pullResult.getPullStatus() == PullStatus.NO_MATCHED_MSG) {
             log.warn("The miss op offset={} in queue={} is illegal, pullResult={}", pullOffsetOfOp, opQueue,
                 pullResult);
             transactionalMessageBridge.updateConsumeOffset(opQueue, pullResult.getNextBeginOffset());
+            opIndex.setOpScanOffset(pullResult.getNextBeginOffset());
             return pullResult;
         } else if (pullResult.getPullStatus() == PullStatus.NO_NEW_MSG) {
             log.warn("The miss op offset={} in queue={} is NO_NEW_MSG, pullResult={}", pullOffsetOfOp, opQueue,
@@ -296,6 +365,7 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
             log.warn("The miss op offset={} in queue={} is empty, pullResult={}", pullOffsetOfOp, opQueue, pullResult);
             return pullResult;
         }
+        opIndex.setOpScanOffset(pullResult.getNextBeginOffset());
         for (MessageExt opMessageExt : opMsg) {
             Long queueOffset = getLong(new String(opMessageExt.getBody(), TransactionalMessageUtil.charset));
             log.debug("Topic: {} tags: {}, OpOffset: {}, HalfOffset: {}", opMessageExt.getTopic(),
@@ -306,6 +376,7 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
                 } else {
                     removeMap.put(queueOffset, opMessageExt.getQueueOffset());
                 }
+                opIndex.opRead(queueOffset);
             } else {
                 log.error("Found a illegal tag in opMessageExt= {} ", opMessageExt);
             }
@@ -318,13 +389,12 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
     /**
      * If return true, skip this msg
      *
-     * @param removeMap Op message map to determine whether a half message was responded by producer.
-     * @param doneOpOffset Op Message which has been checked.
+     * @param opIndex Op state to determine whether a half message was responded by producer.
      * @param msgExt Half message
      * @return Return true if put success, otherwise return false.
      */
-    private boolean checkPrepareQueueOffset(HashMap<Long, Long> removeMap, List<Long> doneOpOffset,
-        MessageExt msgExt) {
+    private boolean checkPrepareQueueOffset(HalfQueueOpIndex opIndex, MessageExt msgExt) {
+        HashMap<Long, Long> removeMap = opIndex.getRemoveMap();
         String prepareQueueOffsetStr = msgExt.getUserProperty(MessageConst.PROPERTY_TRANSACTION_PREPARED_QUEUE_OFFSET);
         if (null == prepareQueueOffsetStr) {
             return putImmunityMsgBackToHalfQueue(msgExt);
@@ -335,7 +405,9 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
             } else {
                 if (removeMap.containsKey(prepareQueueOffset)) {
                     long tmpOpOffset = removeMap.remove(prepareQueueOffset);
-                    doneOpOffset.add(tmpOpOffset);
+                    opIndex.getDoneOpOffset().add(tmpOpOffset);
+                    return true;
+                } else if (opIndex.isCommitted(prepareQueueOffset)) {
                     return true;
                 } else {
                     return putImmunityMsgBackToHalfQueue(msgExt);
@@ -437,6 +509,18 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
 
     }
 
+    private HalfQueueOpIndex getOpIndex(int queueId) {
+        HalfQueueOpIndex opIndex = opIndexTable.get(queueId);
+        if (opIndex == null) {
+            opIndex = new HalfQueueOpIndex();
+            HalfQueueOpIndex prev = opIndexTable.putIfAbsent(queueId, opIndex);
+            if (prev != null) {
+                opIndex = prev;
+            }
+        }
+        return opIndex;
+    }
+
     private GetResult getHalfMsg(MessageQueue messageQueue, long offset) {
         GetResult getResult = new GetResult();
 
@@ -466,6 +550,7 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
     @Override
     public boolean deletePrepareMessage(MessageExt msgExt) {
         if (this.transactionalMessageBridge.putOpMessage(msgExt, TransactionalMessageUtil.REMOVETAG)) {
+            getOpIndex(msgExt.getQueueId()).markCommitted(msgExt.getQueueOffset());
             log.debug("Transaction op message write successfully. messageId={}, queueId={} msgExt:{}", msgExt.getMsgId(), msgExt.getQueueId(), msgExt);
             return true;
         } else {
@@ -491,7 +576,11 @@ public class TransactionalMessageServiceImpl implements TransactionalMessageServ
 
     @Override
     public void close() {
-
+        synchronized (this) {
+            if (checkExecutor != null) {
+                checkExecutor.shutdown();
+            }
+        }
     }
 
 }
@@ -62,4 +62,46 @@ public class BrokerFastFailureTest {
         assertThat(((FutureTaskExt) queue.peek()).getRunnable()).isEqualTo(requestTask);
     }
 
+    @Test
+    public void testCleanRequestByCoDel() throws Exception {
+        BrokerFastFailure brokerFastFailure = new BrokerFastFailure(null);
+        QueueCoDel coDel = new QueueCoDel();
+        Runnable runnable = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+
+        BlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+        queue.add(new FutureTaskExt<>(new RequestTask(runnable, null, null), null));
+        queue.add(new FutureTaskExt<>(new RequestTask(runnable, null, null), null));
+        TimeUnit.MILLISECONDS.sleep(50);
+
+        // above the target, but not for a whole interval yet
+        brokerFastFailure.cleanRequestByCoDel(queue, coDel, 10, 30);
+        assertThat(queue.size()).isEqualTo(2);
+        assertThat(coDel.isDropping()).isFalse();
+
+        TimeUnit.MILLISECONDS.sleep(50);
+        brokerFastFailure.cleanRequestByCoDel(queue, coDel, 10, 30);
+        assertThat(coDel.isDropping()).isTrue();
+        assertThat(queue.size()).isEqualTo(1);
+
+        queue.clear();
+        brokerFastFailure.cleanRequestByCoDel(queue, coDel, 10, 30);
+        assertThat(coDel.isDropping()).isFalse();
+    }
+
+    @Test
+    public void testQueueCoDelDropPace() {
+        QueueCoDel coDel = new QueueCoDel();
+        assertThat(coDel.shouldDrop(50, 1000, 10, 100)).isFalse();
+        assertThat(coDel.shouldDrop(50, 1050, 10, 100)).isFalse();
+        assertThat(coDel.shouldDrop(50, 1100, 10, 100)).isTrue();
+        // next drop after interval / sqrt(2)
+        assertThat(coDel.shouldDrop(50, 1150, 10, 100)).isFalse();
+        assertThat(coDel.shouldDrop(50, 1171, 10, 100)).isTrue();
+        assertThat(coDel.shouldDrop(5, 1180, 10, 100)).isFalse();
+        assertThat(coDel.isDropping()).isFalse();
+    }
 }
\ No newline at end of file
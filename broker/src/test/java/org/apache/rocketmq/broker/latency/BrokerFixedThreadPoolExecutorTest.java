@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.broker.latency;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.remoting.netty.RequestTask;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BrokerFixedThreadPoolExecutorTest {
+    private BrokerFixedThreadPoolExecutor executor;
+
+    @After
+    public void terminate() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testGrowWhenServiceTimeKeepsQueue() throws Exception {
+        executor = new BrokerFixedThreadPoolExecutor(1, 1, 1000 * 60, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        for (int i = 0; i < 20; i++) {
+            executor.submit(new RequestTask(() -> sleep(50), null, null));
+        }
+        TimeUnit.MILLISECONDS.sleep(80);
+        // the first task did not wait, start a new window without resizing
+        executor.adjustPoolSize(10, 1);
+        TimeUnit.MILLISECONDS.sleep(120);
+
+        assertThat(executor.adjustPoolSize(10, 4)).isEqualTo(2);
+        assertThat(executor.getCorePoolSize()).isEqualTo(2);
+    }
+
+    @Test
+    public void testNotGrowWhenQueueDrainsWithinTarget() throws Exception {
+        executor = new BrokerFixedThreadPoolExecutor(1, 1, 1000 * 60, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        long beginTime = System.currentTimeMillis();
+        // the tasks start every 30ms, the last one at 270ms
+        for (int i = 0; i < 10; i++) {
+            executor.submit(new RequestTask(() -> sleep(30), null, null));
+        }
+        sleepUntil(beginTime + 105);
+        executor.adjustPoolSize(100, 1);
+        sleepUntil(beginTime + 220);
+
+        // every task of the window waited longer than the target, but the ones left are served within it
+        assertThat(executor.getQueue().size()).isBetween(1, 3);
+        assertThat(executor.adjustPoolSize(100, 4)).isEqualTo(1);
+    }
+
+    @Test
+    public void testShrinkWhenIdle() throws Exception {
+        executor = new BrokerFixedThreadPoolExecutor(1, 1, 1000 * 60, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        executor.setMaximumPoolSize(3);
+        executor.setCorePoolSize(3);
+        TimeUnit.MILLISECONDS.sleep(20);
+
+        assertThat(executor.adjustPoolSize(10, 4)).isEqualTo(2);
+        TimeUnit.MILLISECONDS.sleep(20);
+        assertThat(executor.adjustPoolSize(10, 4)).isEqualTo(1);
+        assertThat(executor.adjustPoolSize(10, 4)).isEqualTo(1);
+    }
+
+    private static void sleepUntil(long timestamp) {
+        sleep(timestamp - System.currentTimeMillis());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException ignored) {
+        }
+    }
+}
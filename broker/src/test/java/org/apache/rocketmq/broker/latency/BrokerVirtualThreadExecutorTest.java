@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.broker.latency;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+public class BrokerVirtualThreadExecutorTest {
+    @Test
+    public void testUnsupported() {
+        assumeFalse(BrokerVirtualThreadExecutor.isSupported());
+        assertThatThrownBy(() -> new BrokerVirtualThreadExecutor("Test_", 1, 1))
+            .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    public void testConcurrencyAndPendingLimit() throws Exception {
+        assumeTrue(BrokerVirtualThreadExecutor.isSupported());
+        BrokerVirtualThreadExecutor executor = new BrokerVirtualThreadExecutor("Test_", 1, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger done = new AtomicInteger();
+        Runnable blocking = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+            done.incrementAndGet();
+        };
+
+        executor.execute(blocking);
+        executor.execute(blocking);
+        executor.execute(blocking);
+        long deadline = System.currentTimeMillis() + 3000;
+        while (executor.getActiveCount() != 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(executor.getActiveCount()).isEqualTo(1);
+        assertThat(executor.getPendingCount()).isEqualTo(2);
+        assertThatThrownBy(() -> executor.execute(blocking)).isInstanceOf(RejectedExecutionException.class);
+
+        release.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(3, TimeUnit.SECONDS)).isTrue();
+        assertThat(done.get()).isEqualTo(3);
+    }
+}
@@ -18,8 +18,13 @@ package org.apache.rocketmq.broker.processor;
 
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
+import java.lang.reflect.Field;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.rocketmq.broker.BrokerController;
 import org.apache.rocketmq.broker.client.ClientChannelInfo;
 import org.apache.rocketmq.common.BrokerConfig;
@@ -157,6 +162,70 @@ public class PopMessageProcessorTest {
         assertThat(response).isNull();
     }
 
+    @Test
+    public void testQueueLockManager_TryLockAndUnLock() {
+        PopMessageProcessor.QueueLockManager lockManager = new PopMessageProcessor.QueueLockManager();
+        assertThat(lockManager.tryLock(topic, group, 0)).isTrue();
+        assertThat(lockManager.tryLock(topic, group, 0)).isFalse();
+        assertThat(lockManager.tryLock(topic, group, 1)).isTrue();
+        assertThat(lockManager.tryLock(topic, group, 100)).isTrue();
+        assertThat(lockManager.tryLock(topic, "OtherGroup", 0)).isTrue();
+        lockManager.unLock(topic, group, 0);
+        assertThat(lockManager.tryLock(topic, group, 0)).isTrue();
+    }
+
+    @Test
+    public void testQueueLockManager_LeaseExpired() throws InterruptedException {
+        PopMessageProcessor.QueueLockManager lockManager = new PopMessageProcessor.QueueLockManager(10);
+        assertThat(lockManager.tryLock(topic, group, 0)).isTrue();
+        Thread.sleep(50);
+        final AtomicBoolean preempted = new AtomicBoolean(false);
+        Thread thread = new Thread(() -> preempted.set(lockManager.tryLock(topic, group, 0)));
+        thread.start();
+        thread.join();
+        assertThat(preempted.get()).isTrue();
+    }
+
+    @Test
+    public void testQueueLockManager_CleanUnusedLock() throws Exception {
+        PopMessageProcessor.QueueLockManager lockManager = new PopMessageProcessor.QueueLockManager();
+        assertThat(lockManager.tryLock(topic, group, 0)).isTrue();
+        assertThat(lockManager.tryLock(topic, group, 1)).isTrue();
+        lockManager.unLock(topic, group, 1);
+        Thread.sleep(10);
+        // the held one must survive cleaning
+        assertThat(lockManager.cleanUnusedLock(0)).isEqualTo(1);
+        assertThat(lockManager.tryLock(topic, group, 0)).isFalse();
+        lockManager.unLock(topic, group, 0);
+        Thread.sleep(10);
+        assertThat(lockManager.cleanUnusedLock(0)).isEqualTo(0);
+        // no map is left behind for the topic
+        assertThat(getLockTable(lockManager)).isEmpty();
+        assertThat(lockManager.tryLock(topic, group, 0)).isTrue();
+        assertThat(getLockTable(lockManager).keySet()).containsOnly(topic);
+    }
+
+    private Map<?, ?> getLockTable(PopMessageProcessor.QueueLockManager lockManager) throws Exception {
+        Field field = PopMessageProcessor.QueueLockManager.class.getDeclaredField("lockTable");
+        field.setAccessible(true);
+        return (Map<?, ?>) field.get(lockManager);
+    }
+
+    @Test
+    public void testQueueLockManager_WaiterFirst() throws InterruptedException {
+        PopMessageProcessor.QueueLockManager lockManager = new PopMessageProcessor.QueueLockManager();
+        assertThat(lockManager.tryLock(topic, group, 0)).isTrue();
+        final CountDownLatch locked = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            lockManager.lock(topic, group, 0);
+            locked.countDown();
+        });
+        waiter.start();
+        Thread.sleep(50);
+        lockManager.unLock(topic, group, 0);
+        assertThat(locked.await(3, TimeUnit.SECONDS)).isTrue();
+        assertThat(lockManager.tryLock(topic, group, 0)).isFalse();
+    }
 
     private RemotingCommand createPopMsgCommand() {
         PopMessageRequestHeader requestHeader = new PopMessageRequestHeader();
@@ -16,10 +16,14 @@
  */
 package org.apache.rocketmq.broker.processor;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
@@ -31,15 +35,21 @@ import org.apache.rocketmq.broker.mqtrace.SendMessageHook;
 import org.apache.rocketmq.broker.transaction.TransactionalMessageService;
 import org.apache.rocketmq.common.BrokerConfig;
 import org.apache.rocketmq.common.TopicConfig;
+import org.apache.rocketmq.common.compression.CompressionType;
+import org.apache.rocketmq.common.compression.CompressorFactory;
 import org.apache.rocketmq.common.constant.PermName;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageBatch;
 import org.apache.rocketmq.common.message.MessageConst;
 import org.apache.rocketmq.common.message.MessageDecoder;
 import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageExtBatch;
 import org.apache.rocketmq.common.message.MessageQueue;
 import org.apache.rocketmq.common.protocol.RequestCode;
 import org.apache.rocketmq.common.protocol.ResponseCode;
 import org.apache.rocketmq.common.protocol.header.ConsumerSendMsgBackRequestHeader;
 import org.apache.rocketmq.common.protocol.header.SendMessageRequestHeader;
+import org.apache.rocketmq.common.protocol.header.SendMessageRequestHeaderV2;
 import org.apache.rocketmq.common.protocol.route.LogicalQueueRouteData;
 import org.apache.rocketmq.common.protocol.route.MessageQueueRouteState;
 import org.apache.rocketmq.common.sysflag.MessageSysFlag;
@@ -285,6 +295,77 @@ public class SendMessageProcessorTest {
         assertThat(responseToReturn.getExtFields()).containsKey(MessageConst.PROPERTY_REDIRECT);
     }
 
+    @Test
+    public void testProcessRequest_CompressedBatch() throws Exception {
+        final MessageExtBatch[] stored = new MessageExtBatch[1];
+        doAnswer(invocation -> {
+            stored[0] = invocation.getArgument(0);
+            return CompletableFuture.completedFuture(new PutMessageResult(PutMessageStatus.PUT_OK, new AppendMessageResult(AppendMessageStatus.PUT_OK)));
+        }).when(messageStore).asyncPutMessages(any(MessageExtBatch.class));
+        doAnswer(invocation -> null).when(handlerContext).writeAndFlush(any(Object.class));
+
+        List<Message> messages = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            messages.add(new Message(topic, ("compressed batch body " + i).getBytes()));
+        }
+        MessageBatch batch = MessageBatch.generateFromList(messages);
+        byte[] body = batch.encode();
+
+        SendMessageRequestHeader requestHeader = createSendMsgRequestHeader();
+        requestHeader.setBatch(true);
+        requestHeader.setSysFlag(MessageSysFlag.COMPRESSED_FLAG | CompressionType.LZ4.getCompressionFlag());
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.SEND_BATCH_MESSAGE,
+            SendMessageRequestHeaderV2.createSendMessageRequestHeaderV2(requestHeader));
+        request.setBody(CompressorFactory.getCompressor(CompressionType.LZ4).compress(body, 5));
+        request.makeCustomHeaderToNet();
+
+        RemotingCommand response = sendMessageProcessor.processRequest(handlerContext, request);
+        assertThat(response).isNull();
+        assertThat(stored[0]).isNotNull();
+        assertThat(stored[0].getBody()).isEqualTo(body);
+        assertThat(stored[0].getSysFlag() & MessageSysFlag.COMPRESSED_FLAG).isZero();
+        assertThat(stored[0].getSysFlag() & MessageSysFlag.COMPRESSION_TYPE_COMPARATOR).isZero();
+
+        request.setBody(new byte[] {1, 2, 3});
+        response = sendMessageProcessor.processRequest(handlerContext, request);
+        assertThat(response.getCode()).isEqualTo(ResponseCode.MESSAGE_ILLEGAL);
+
+        // a tiny body claiming to decompress to 2 GB
+        request.setBody(new byte[] {0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xF0, 0, 0, 0, 0});
+        response = sendMessageProcessor.processRequest(handlerContext, request);
+        assertThat(response.getCode()).isEqualTo(ResponseCode.MESSAGE_ILLEGAL);
+    }
+
+    @Test
+    public void testProcessRequest_RetainedBody() throws Exception {
+        RemotingCommand sent = createSendMsgCommand(RequestCode.SEND_MESSAGE);
+        sent.setBody("retained body".getBytes());
+        ByteBuffer encoded = sent.encode();
+        final ByteBuf frame = Unpooled.directBuffer(encoded.remaining());
+        frame.writeBytes(encoded);
+        frame.skipBytes(4);
+        RemotingCommand request = RemotingCommand.decode(frame, Collections.singleton(RequestCode.SEND_MESSAGE));
+        // released by the decoder, the command still holds the body
+        frame.release();
+
+        final byte[][] stored = new byte[1][];
+        doAnswer(invocation -> {
+            MessageExtBrokerInner msgInner = invocation.getArgument(0);
+            assertThat(frame.refCnt()).isEqualTo(1);
+            assertThat(msgInner.getBodyBuffer()).isNotNull();
+            stored[0] = new byte[msgInner.getBodyLength()];
+            msgInner.getBodyBuffer().duplicate().get(stored[0]);
+            return CompletableFuture.completedFuture(new PutMessageResult(PutMessageStatus.PUT_OK, new AppendMessageResult(AppendMessageStatus.PUT_OK)));
+        }).when(messageStore).asyncPutMessage(any(MessageExtBrokerInner.class));
+        doAnswer(invocation -> null).when(handlerContext).writeAndFlush(any(Object.class));
+
+        RemotingCommand response = sendMessageProcessor.processRequest(handlerContext, request);
+        assertThat(response).isNull();
+        assertThat(stored[0]).isEqualTo("retained body".getBytes());
+        // given back once the put completed
+        assertThat(frame.refCnt()).isZero();
+    }
+
     private RemotingCommand createSendTransactionMsgCommand(int requestCode) {
         SendMessageRequestHeader header = createSendMsgRequestHeader();
         int sysFlag = header.getSysFlag();
@@ -16,12 +16,17 @@
  */
 package org.apache.rocketmq.broker.transaction.queue;
 
+import io.netty.channel.Channel;
 import java.net.InetSocketAddress;
+import java.util.List;
 import org.apache.rocketmq.broker.BrokerController;
+import org.apache.rocketmq.broker.client.ProducerManager;
+import org.apache.rocketmq.broker.client.net.Broker2Client;
 import org.apache.rocketmq.common.BrokerConfig;
 import org.apache.rocketmq.common.message.MessageAccessor;
 import org.apache.rocketmq.common.message.MessageConst;
 import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.protocol.header.CheckTransactionStateRequestHeader;
 import org.apache.rocketmq.common.topic.TopicValidator;
 import org.apache.rocketmq.remoting.netty.NettyClientConfig;
 import org.apache.rocketmq.remoting.netty.NettyServerConfig;
@@ -32,10 +37,22 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
 @RunWith(MockitoJUnitRunner.class)
 public class DefaultTransactionalMessageCheckListenerTest {
 
@@ -72,6 +89,37 @@ public class DefaultTransactionalMessageCheckListenerTest {
         listener.sendCheckMessage(messageExt);
     }
 
+    @Test
+    public void testResolveHalfMsgInBatch() throws Exception {
+        brokerController.getBrokerConfig().setTransactionCheckBatchEnable(true);
+        brokerController.getBrokerConfig().setTransactionCheckBatchSize(2);
+        String group = "PID_TEST_CHECK_BATCH";
+        Channel channel = mock(Channel.class);
+        ProducerManager producerManager = mock(ProducerManager.class);
+        Broker2Client broker2Client = mock(Broker2Client.class);
+        when(producerManager.getAvailableChannel(group)).thenReturn(channel);
+        doReturn(producerManager).when(brokerController).getProducerManager();
+        doReturn(broker2Client).when(brokerController).getBroker2Client();
+
+        for (int i = 0; i < 3; i++) {
+            MessageExtBrokerInner msgExt = createMessageExt();
+            MessageAccessor.putProperty(msgExt, MessageConst.PROPERTY_PRODUCER_GROUP, group);
+            listener.resolveHalfMsg(msgExt);
+        }
+        listener.flushPendingCheck();
+
+        ArgumentCaptor<List> batchCaptor = ArgumentCaptor.forClass(List.class);
+        verify(broker2Client, timeout(3000).times(2)).checkProducerTransactionStateBatch(eq(group), eq(channel), batchCaptor.capture());
+        int total = 0;
+        for (List batch : batchCaptor.getAllValues()) {
+            assertThat(batch.size()).isLessThanOrEqualTo(2);
+            total += batch.size();
+        }
+        assertThat(total).isEqualTo(3);
+        verify(broker2Client, never()).checkProducerTransactionState(anyString(), any(Channel.class),
+            any(CheckTransactionStateRequestHeader.class), any(MessageExt.class));
+    }
+
     @Test
     public void sendCheckMessage() {
         listener.resolveDiscardMsg(createMessageExt());
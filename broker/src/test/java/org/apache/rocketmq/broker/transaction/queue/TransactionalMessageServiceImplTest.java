@@ -47,9 +47,11 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 
+import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -58,7 +60,11 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -150,6 +156,63 @@ public class TransactionalMessageServiceImplTest {
         assertThat(checkMessage.get()).isEqualTo(1);
     }
 
+    @Test
+    public void testCheck_skipCommittedHalfWithoutRead() {
+        when(bridge.fetchMessageQueues(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC)).thenReturn(createMessageQueueSet(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC));
+        when(bridge.putOpMessage(any(MessageExt.class), anyString())).thenReturn(true);
+        when(bridge.getOpMessage(anyInt(), anyLong(), anyInt())).thenReturn(createPullResult(TopicValidator.RMQ_SYS_TRANS_OP_HALF_TOPIC, 1, "5", 0));
+        when(bridge.getHalfMessage(0, 1, 1)).thenReturn(createPullResult(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC, 6, "hellp", 0));
+
+        // committed, but the op message is not visible in the op queue yet
+        assertThat(queueTransactionMsgService.deletePrepareMessage(createMessageBrokerInner(0, "testTopic", "hello"))).isTrue();
+        long timeOut = this.brokerController.getBrokerConfig().getTransactionTimeOut();
+        int checkMax = this.brokerController.getBrokerConfig().getTransactionCheckMax();
+        queueTransactionMsgService.check(timeOut, checkMax, listener);
+
+        verify(bridge, never()).getHalfMessage(0, 0, 1);
+        verify(listener, never()).resolveHalfMsg(any(MessageExt.class));
+        verify(bridge).updateConsumeOffset(any(MessageQueue.class), eq(1L));
+    }
+
+    @Test
+    public void testCheck_readOpQueueIncrementally() {
+        when(bridge.fetchMessageQueues(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC)).thenReturn(createMessageQueueSet(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC));
+        // half offset then op offset of each check
+        when(bridge.fetchConsumeOffset(any(MessageQueue.class))).thenReturn(0L, 0L, 1L, 1L);
+        when(bridge.getOpMessage(0, 0, 32)).thenReturn(createOpPulResult(TopicValidator.RMQ_SYS_TRANS_OP_HALF_TOPIC, 0, "0", 1));
+        when(bridge.getOpMessage(0, 1, 32)).thenReturn(createPullResult(TopicValidator.RMQ_SYS_TRANS_OP_HALF_TOPIC, 1, "5", 0));
+        when(bridge.getHalfMessage(0, 1, 1)).thenReturn(createPullResult(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC, 6, "hellp", 0));
+        long timeOut = this.brokerController.getBrokerConfig().getTransactionTimeOut();
+        int checkMax = this.brokerController.getBrokerConfig().getTransactionCheckMax();
+
+        queueTransactionMsgService.check(timeOut, checkMax, listener);
+        queueTransactionMsgService.check(timeOut, checkMax, listener);
+
+        verify(bridge, times(1)).getOpMessage(0, 0, 32);
+        verify(bridge, times(1)).getOpMessage(0, 1, 32);
+        verify(bridge, never()).getHalfMessage(0, 0, 1);
+    }
+
+    @Test
+    public void testCheck_pruneCommittedOnceOpRead() throws Exception {
+        when(bridge.fetchMessageQueues(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC)).thenReturn(createMessageQueueSet(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC));
+        when(bridge.putOpMessage(any(MessageExt.class), anyString())).thenReturn(true);
+        when(bridge.getOpMessage(0, 0, 32)).thenReturn(createOpPulResult(TopicValidator.RMQ_SYS_TRANS_OP_HALF_TOPIC, 0, "5", 1));
+        when(bridge.getHalfMessage(0, 0, 1)).thenReturn(createPullResult(TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC, 0, "hellp", 0));
+
+        assertThat(queueTransactionMsgService.deletePrepareMessage(createMessageBrokerInner(5, "testTopic", "hello"))).isTrue();
+        HalfQueueOpIndex opIndex = getOpIndex(0);
+        assertThat(opIndex.getCommittedSize()).isEqualTo(1);
+
+        long timeOut = this.brokerController.getBrokerConfig().getTransactionTimeOut();
+        int checkMax = this.brokerController.getBrokerConfig().getTransactionCheckMax();
+        queueTransactionMsgService.check(timeOut, checkMax, listener);
+
+        // the half consume offset did not reach 5, the op message read is what drops it
+        assertThat(opIndex.getCommittedSize()).isZero();
+        assertThat(opIndex.getRemoveMap()).containsKey(5L);
+    }
+
     @Test
     public void testDeletePrepareMessage() {
         when(bridge.putOpMessage(any(MessageExt.class), anyString())).thenReturn(true);
@@ -163,6 +226,13 @@ public class TransactionalMessageServiceImplTest {
         assertThat(isOpen).isTrue();
     }
 
+    @SuppressWarnings("unchecked")
+    private HalfQueueOpIndex getOpIndex(int queueId) throws Exception {
+        Field field = TransactionalMessageServiceImpl.class.getDeclaredField("opIndexTable");
+        field.setAccessible(true);
+        return ((Map<Integer, HalfQueueOpIndex>) field.get(queueTransactionMsgService)).get(queueId);
+    }
+
     private PullResult createDiscardPullResult(String topic, long queueOffset, String body, int size) {
         PullResult result = createPullResult(topic, queueOffset, body, size);
         List<MessageExt> msgs = result.getMsgFoundList();
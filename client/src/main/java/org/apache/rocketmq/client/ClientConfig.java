@@ -45,6 +45,11 @@ public class ClientConfig {
      * Pulling topic information interval from the named server
      */
     private int pollNameServerInterval = 1000 * 30;
+    /**
+     * Wait on the name server for the routes to change instead of reading them every pollNameServerInterval. Falls
+     * back to reading them while the name server does not support it.
+     */
+    private boolean routeLongPollingEnable = false;
     /**
      * Heartbeat interval in microseconds with message broker
      */
@@ -54,6 +59,11 @@ public class ClientConfig {
      */
     private int persistConsumerOffsetInterval = 1000 * 5;
     private long pullTimeDelayMillsWhenException = 1000;
+    /**
+     * Limit of the message bodies cached by all the push consumers of the client instance, -1 (default) means
+     * unlimited. Only the config of the first client creating the instance is used.
+     */
+    private int pullMemoryBudgetInMiB = -1;
     private boolean unitMode = false;
     private String unitName;
     private boolean vipChannelEnabled = Boolean.parseBoolean(System.getProperty(SEND_MESSAGE_WITH_VIP_CHANNEL_PROPERTY, "false"));
@@ -62,6 +72,12 @@ public class ClientConfig {
 
     private int mqClientApiTimeout = 3 * 1000;
 
+    /**
+     * Send heartbeats and read topic routes in the compact binary format instead of json, once the broker or name
+     * server announced it supports it.
+     */
+    private boolean useBinaryBody = false;
+
     private LanguageCode language = LanguageCode.JAVA;
 
     public String buildMQClientId() {
@@ -149,9 +165,11 @@ public class ClientConfig {
         this.instanceName = cc.instanceName;
         this.clientCallbackExecutorThreads = cc.clientCallbackExecutorThreads;
         this.pollNameServerInterval = cc.pollNameServerInterval;
+        this.routeLongPollingEnable = cc.routeLongPollingEnable;
         this.heartbeatBrokerInterval = cc.heartbeatBrokerInterval;
         this.persistConsumerOffsetInterval = cc.persistConsumerOffsetInterval;
         this.pullTimeDelayMillsWhenException = cc.pullTimeDelayMillsWhenException;
+        this.pullMemoryBudgetInMiB = cc.pullMemoryBudgetInMiB;
         this.unitMode = cc.unitMode;
         this.unitName = cc.unitName;
         this.vipChannelEnabled = cc.vipChannelEnabled;
@@ -159,6 +177,7 @@ public class ClientConfig {
         this.namespace = cc.namespace;
         this.language = cc.language;
         this.mqClientApiTimeout = cc.mqClientApiTimeout;
+        this.useBinaryBody = cc.useBinaryBody;
     }
 
     public ClientConfig cloneClientConfig() {
@@ -168,9 +187,11 @@ public class ClientConfig {
         cc.instanceName = instanceName;
         cc.clientCallbackExecutorThreads = clientCallbackExecutorThreads;
         cc.pollNameServerInterval = pollNameServerInterval;
+        cc.routeLongPollingEnable = routeLongPollingEnable;
         cc.heartbeatBrokerInterval = heartbeatBrokerInterval;
         cc.persistConsumerOffsetInterval = persistConsumerOffsetInterval;
         cc.pullTimeDelayMillsWhenException = pullTimeDelayMillsWhenException;
+        cc.pullMemoryBudgetInMiB = pullMemoryBudgetInMiB;
         cc.unitMode = unitMode;
         cc.unitName = unitName;
         cc.vipChannelEnabled = vipChannelEnabled;
@@ -178,6 +199,7 @@ public class ClientConfig {
         cc.namespace = namespace;
         cc.language = language;
         cc.mqClientApiTimeout = mqClientApiTimeout;
+        cc.useBinaryBody = useBinaryBody;
         return cc;
     }
 
@@ -213,6 +235,14 @@ public class ClientConfig {
         this.pollNameServerInterval = pollNameServerInterval;
     }
 
+    public boolean isRouteLongPollingEnable() {
+        return routeLongPollingEnable;
+    }
+
+    public void setRouteLongPollingEnable(boolean routeLongPollingEnable) {
+        this.routeLongPollingEnable = routeLongPollingEnable;
+    }
+
     public int getHeartbeatBrokerInterval() {
         return heartbeatBrokerInterval;
     }
@@ -237,6 +267,14 @@ public class ClientConfig {
         this.pullTimeDelayMillsWhenException = pullTimeDelayMillsWhenException;
     }
 
+    public int getPullMemoryBudgetInMiB() {
+        return pullMemoryBudgetInMiB;
+    }
+
+    public void setPullMemoryBudgetInMiB(int pullMemoryBudgetInMiB) {
+        this.pullMemoryBudgetInMiB = pullMemoryBudgetInMiB;
+    }
+
     public String getUnitName() {
         return unitName;
     }
@@ -310,12 +348,21 @@ public class ClientConfig {
         this.mqClientApiTimeout = mqClientApiTimeout;
     }
 
+    public boolean isUseBinaryBody() {
+        return useBinaryBody;
+    }
+
+    public void setUseBinaryBody(boolean useBinaryBody) {
+        this.useBinaryBody = useBinaryBody;
+    }
+
     @Override
     public String toString() {
         return "ClientConfig [namesrvAddr=" + namesrvAddr + ", clientIP=" + clientIP + ", instanceName=" + instanceName
             + ", clientCallbackExecutorThreads=" + clientCallbackExecutorThreads + ", pollNameServerInterval=" + pollNameServerInterval
+            + ", routeLongPollingEnable=" + routeLongPollingEnable
             + ", heartbeatBrokerInterval=" + heartbeatBrokerInterval + ", persistConsumerOffsetInterval=" + persistConsumerOffsetInterval
-            + ", pullTimeDelayMillsWhenException=" + pullTimeDelayMillsWhenException + ", unitMode=" + unitMode + ", unitName=" + unitName + ", vipChannelEnabled="
-            + vipChannelEnabled + ", useTLS=" + useTLS + ", language=" + language.name() + ", namespace=" + namespace + ", mqClientApiTimeout=" + mqClientApiTimeout + "]";
+            + ", pullTimeDelayMillsWhenException=" + pullTimeDelayMillsWhenException + ", pullMemoryBudgetInMiB=" + pullMemoryBudgetInMiB + ", unitMode=" + unitMode + ", unitName=" + unitName + ", vipChannelEnabled="
+            + vipChannelEnabled + ", useTLS=" + useTLS + ", language=" + language.name() + ", namespace=" + namespace + ", mqClientApiTimeout=" + mqClientApiTimeout + ", useBinaryBody=" + useBinaryBody + "]";
     }
 }
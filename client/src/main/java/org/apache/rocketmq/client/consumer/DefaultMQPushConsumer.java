@@ -36,6 +36,7 @@ import org.apache.rocketmq.client.trace.hook.ConsumeMessageTraceHookImpl;
 import org.apache.rocketmq.common.MixAll;
 import org.apache.rocketmq.common.UtilAll;
 import org.apache.rocketmq.common.consumer.ConsumeFromWhere;
+import org.apache.rocketmq.common.message.MessageConst;
 import org.apache.rocketmq.common.message.MessageDecoder;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.common.message.MessageQueue;
@@ -221,6 +222,20 @@ public class DefaultMQPushConsumer extends ClientConfig implements MQPushConsume
      */
     private long pullInterval = 0;
 
+    /**
+     * Whether to size each pull from the consume rate and pull latency of its queue. The queue then caches about the
+     * messages consumed during two pulls, at least {@link #pullBatchSize} and at most {@link #pullThresholdForQueue},
+     * and each pull at most {@link #pullBatchSize} messages.
+     */
+    private boolean pullAdaptiveEnable = false;
+
+    /**
+     * Weight of the queues of this consumer in the memory budget of the client instance, see
+     * {@link ClientConfig#getPullMemoryBudgetInMiB()}. A queue gets a share of the budget in proportion to its weight,
+     * at least 1. A weight changed while running is applied from the next pull of each queue.
+     */
+    private int pullMemoryBudgetWeight = 1;
+
     /**
      * Batch consumption size
      */
@@ -283,6 +298,26 @@ public class DefaultMQPushConsumer extends ClientConfig implements MQPushConsume
     // force to use client rebalance
     private boolean clientRebalance = true;
 
+    /**
+     * Whether a message queue moving to another consumer in clustering mode is handed off: the previous owner commits
+     * its offset before releasing the broker lock of the queue, and the new owner starts pulling only once it holds the
+     * lock. All the consumers of the group should enable it. Orderly consumption always hands off.
+     */
+    private boolean cooperativeRebalance = false;
+
+    /**
+     * Number of lanes each message queue is consumed with in orderly mode. Messages are dispatched to a lane by the
+     * hash of their {@link #consumeOrderlyKeyProperty}, so messages of the same key are consumed in order while
+     * different keys are consumed in parallel. 1 (default) consumes the whole queue in order.
+     */
+    private int consumeOrderlyKeyParallelism = 1;
+
+    /**
+     * Property holding the ordering key of a message when {@link #consumeOrderlyKeyParallelism} is above 1, the
+     * message keys by default. Messages without the property are not ordered against each other.
+     */
+    private String consumeOrderlyKeyProperty = MessageConst.PROPERTY_KEYS;
+
     /**
      * Default constructor.
      */
@@ -609,6 +644,22 @@ public class DefaultMQPushConsumer extends ClientConfig implements MQPushConsume
         this.pullBatchSize = pullBatchSize;
     }
 
+    public boolean isPullAdaptiveEnable() {
+        return pullAdaptiveEnable;
+    }
+
+    public void setPullAdaptiveEnable(boolean pullAdaptiveEnable) {
+        this.pullAdaptiveEnable = pullAdaptiveEnable;
+    }
+
+    public int getPullMemoryBudgetWeight() {
+        return pullMemoryBudgetWeight;
+    }
+
+    public void setPullMemoryBudgetWeight(int pullMemoryBudgetWeight) {
+        this.pullMemoryBudgetWeight = pullMemoryBudgetWeight;
+    }
+
     public long getPullInterval() {
         return pullInterval;
     }
@@ -961,4 +1012,28 @@ public class DefaultMQPushConsumer extends ClientConfig implements MQPushConsume
     public void setClientRebalance(boolean clientRebalance) {
         this.clientRebalance = clientRebalance;
     }
+
+    public boolean isCooperativeRebalance() {
+        return cooperativeRebalance;
+    }
+
+    public void setCooperativeRebalance(boolean cooperativeRebalance) {
+        this.cooperativeRebalance = cooperativeRebalance;
+    }
+
+    public int getConsumeOrderlyKeyParallelism() {
+        return consumeOrderlyKeyParallelism;
+    }
+
+    public void setConsumeOrderlyKeyParallelism(int consumeOrderlyKeyParallelism) {
+        this.consumeOrderlyKeyParallelism = consumeOrderlyKeyParallelism;
+    }
+
+    public String getConsumeOrderlyKeyProperty() {
+        return consumeOrderlyKeyProperty;
+    }
+
+    public void setConsumeOrderlyKeyProperty(String consumeOrderlyKeyProperty) {
+        this.consumeOrderlyKeyProperty = consumeOrderlyKeyProperty;
+    }
 }
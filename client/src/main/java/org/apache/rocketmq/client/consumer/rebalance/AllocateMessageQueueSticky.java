@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.consumer.rebalance;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import org.apache.rocketmq.client.consumer.AllocateMessageQueueStrategy;
+import org.apache.rocketmq.client.log.ClientLogger;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.logging.InternalLogger;
+
+/**
+ * Sticky queue algorithm, balanced as {@link AllocateMessageQueueAveragely} but moving few queues when consumers join
+ * or leave.
+ * <p>
+ * Every pair of queue and consumer has a score hashed from both, a queue goes to the consumer of highest score that
+ * still has room, the pairs of highest score being served first. The score of a pair does not depend on the other
+ * consumers, so a consumer joining mostly takes the queues it scores highest, and the queues of a consumer leaving
+ * mostly go to their second best. All the consumers compute the same allocation without sharing the previous one.
+ */
+public class AllocateMessageQueueSticky implements AllocateMessageQueueStrategy {
+    private InternalLogger log;
+
+    public AllocateMessageQueueSticky() {
+        log = ClientLogger.getLog();
+    }
+
+    public AllocateMessageQueueSticky(InternalLogger log) {
+        this.log = log;
+    }
+
+    @Override
+    public List<MessageQueue> allocate(String consumerGroup, String currentCID, List<MessageQueue> mqAll,
+        List<String> cidAll) {
+        if (currentCID == null || currentCID.length() < 1) {
+            throw new IllegalArgumentException("currentCID is empty");
+        }
+        if (mqAll == null || mqAll.isEmpty()) {
+            throw new IllegalArgumentException("mqAll is null or mqAll empty");
+        }
+        if (cidAll == null || cidAll.isEmpty()) {
+            throw new IllegalArgumentException("cidAll is null or cidAll empty");
+        }
+
+        List<MessageQueue> result = new ArrayList<MessageQueue>();
+        int index = cidAll.indexOf(currentCID);
+        if (index < 0) {
+            log.info("[BUG] ConsumerGroup: {} The consumerId: {} not in cidAll: {}",
+                consumerGroup,
+                currentCID,
+                cidAll);
+            return result;
+        }
+
+        int[] owners = assign(mqAll, cidAll);
+        for (int i = 0; i < owners.length; i++) {
+            if (owners[i] == index) {
+                result.add(mqAll.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the index in {@code cidAll} of the owner of each queue of {@code mqAll}
+     */
+    static int[] assign(final List<MessageQueue> mqAll, final List<String> cidAll) {
+        final int mqNums = mqAll.size();
+        final int cidNums = cidAll.size();
+        final int minLoad = mqNums / cidNums;
+        int extraNums = mqNums % cidNums;
+
+        int[] mqHashes = new int[mqNums];
+        for (int i = 0; i < mqNums; i++) {
+            mqHashes[i] = mqAll.get(i).hashCode();
+        }
+        int[] cidHashes = new int[cidNums];
+        for (int i = 0; i < cidNums; i++) {
+            cidHashes[i] = cidAll.get(i).hashCode();
+        }
+
+        // the best consumer with room of each queue, its score in the high bits and its index in the low ones
+        int[] loads = new int[cidNums];
+        final long[] candidates = new long[mqNums];
+        for (int i = 0; i < mqNums; i++) {
+            candidates[i] = bestCandidate(mqHashes[i], cidHashes, loads, minLoad, extraNums);
+        }
+
+        PriorityQueue<Integer> pending = new PriorityQueue<Integer>(mqNums, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                if (candidates[o1] != candidates[o2]) {
+                    return candidates[o1] > candidates[o2] ? -1 : 1;
+                }
+                return o1 - o2;
+            }
+        });
+        for (int i = 0; i < mqNums; i++) {
+            pending.add(i);
+        }
+
+        int[] owners = new int[mqNums];
+        while (!pending.isEmpty()) {
+            int mq = pending.poll();
+            int cid = (int) candidates[mq];
+            if (hasRoom(loads[cid], minLoad, extraNums)) {
+                if (loads[cid] == minLoad) {
+                    extraNums--;
+                }
+                loads[cid]++;
+                owners[mq] = cid;
+            } else {
+                // the consumers only fill up, the queue is tried again on the best one left
+                candidates[mq] = bestCandidate(mqHashes[mq], cidHashes, loads, minLoad, extraNums);
+                pending.add(mq);
+            }
+        }
+        return owners;
+    }
+
+    private static long bestCandidate(final int mqHash, final int[] cidHashes, final int[] loads, final int minLoad,
+        final int extraNums) {
+        long best = -1;
+        for (int j = 0; j < cidHashes.length; j++) {
+            if (hasRoom(loads[j], minLoad, extraNums)) {
+                long score = mix(((long) mqHash << 32) | (cidHashes[j] & 0xFFFFFFFFL)) >>> 33;
+                best = Math.max(best, score << 32 | j);
+            }
+        }
+        return best;
+    }
+
+    private static boolean hasRoom(final int load, final int minLoad, final int extraNums) {
+        return load < minLoad || load == minLoad && extraNums > 0;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    @Override
+    public String getName() {
+        return "STICKY";
+    }
+}
@@ -16,6 +16,7 @@
  */
 package org.apache.rocketmq.client.consumer.store;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -32,19 +33,41 @@ import org.apache.rocketmq.common.MixAll;
 import org.apache.rocketmq.common.UtilAll;
 import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.common.protocol.ResponseCode;
+import org.apache.rocketmq.common.protocol.body.UpdateConsumerOffsetBatchRequestBody;
 import org.apache.rocketmq.common.protocol.header.QueryConsumerOffsetRequestHeader;
 import org.apache.rocketmq.common.protocol.header.UpdateConsumerOffsetRequestHeader;
+import org.apache.rocketmq.remoting.InvokeCallback;
 import org.apache.rocketmq.remoting.exception.RemotingException;
+import org.apache.rocketmq.remoting.netty.ResponseFuture;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.remoting.protocol.RemotingSysResponseCode;
 
 /**
  * Remote storage implementation
  */
 public class RemoteBrokerOffsetStore implements OffsetStore {
     private final static InternalLogger log = ClientLogger.getLog();
+    /**
+     * Interval to commit every offset again, even the unchanged ones, in case the broker lost them
+     */
+    private final static long FULL_PERSIST_INTERVAL =
+        Long.parseLong(System.getProperty("rocketmq.client.offset.fullPersistInterval", "60000"));
     private final MQClientInstance mQClientFactory;
     private final String groupName;
     private ConcurrentMap<MessageQueue, AtomicLong> offsetTable =
         new ConcurrentHashMap<MessageQueue, AtomicLong>();
+    /**
+     * Offsets the broker acknowledged in a batch commit, only the ones changed since are committed again
+     */
+    private final ConcurrentMap<MessageQueue, Long> persistedOffsetTable =
+        new ConcurrentHashMap<MessageQueue, Long>();
+    /**
+     * Brokers which do not support the batch commit, their offsets are committed one by one
+     */
+    private final Set<String/* addr */> batchUnsupportedBrokers =
+        Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private volatile long lastFullPersistTimestamp = 0;
 
     public RemoteBrokerOffsetStore(MQClientInstance mQClientFactory, String groupName) {
         this.mQClientFactory = mQClientFactory;
@@ -117,21 +140,28 @@ public class RemoteBrokerOffsetStore implements OffsetStore {
             return;
 
         final HashSet<MessageQueue> unusedMQ = new HashSet<MessageQueue>();
+        final Map<String/* brokerName */, Map<MessageQueue, Long>> dirtyOffsetTable = new HashMap<String, Map<MessageQueue, Long>>();
+        final long now = System.currentTimeMillis();
+        final boolean fullPersist = now - this.lastFullPersistTimestamp >= FULL_PERSIST_INTERVAL;
+        if (fullPersist) {
+            this.lastFullPersistTimestamp = now;
+            this.batchUnsupportedBrokers.clear();
+        }
 
         for (Map.Entry<MessageQueue, AtomicLong> entry : this.offsetTable.entrySet()) {
             MessageQueue mq = entry.getKey();
             AtomicLong offset = entry.getValue();
             if (offset != null) {
                 if (mqs.contains(mq)) {
-                    try {
-                        this.updateConsumeOffsetToBroker(mq, offset.get());
-                        log.info("[persistAll] Group: {} ClientId: {} updateConsumeOffsetToBroker {} {}",
-                            this.groupName,
-                            this.mQClientFactory.getClientId(),
-                            mq,
-                            offset.get());
-                    } catch (Exception e) {
-                        log.error("updateConsumeOffsetToBroker exception, " + mq.toString(), e);
+                    long offsetValue = offset.get();
+                    Long persisted = this.persistedOffsetTable.get(mq);
+                    if (fullPersist || null == persisted || persisted != offsetValue) {
+                        Map<MessageQueue, Long> brokerOffsetTable = dirtyOffsetTable.get(mq.getBrokerName());
+                        if (null == brokerOffsetTable) {
+                            brokerOffsetTable = new HashMap<MessageQueue, Long>();
+                            dirtyOffsetTable.put(mq.getBrokerName(), brokerOffsetTable);
+                        }
+                        brokerOffsetTable.put(mq, offsetValue);
                     }
                 } else {
                     unusedMQ.add(mq);
@@ -139,9 +169,23 @@ public class RemoteBrokerOffsetStore implements OffsetStore {
             }
         }
 
+        for (Map.Entry<String, Map<MessageQueue, Long>> entry : dirtyOffsetTable.entrySet()) {
+            try {
+                this.updateConsumeOffsetToBroker(entry.getKey(), entry.getValue());
+                log.info("[persistAll] Group: {} ClientId: {} updateConsumeOffsetToBroker {} {}",
+                    this.groupName,
+                    this.mQClientFactory.getClientId(),
+                    entry.getKey(),
+                    entry.getValue());
+            } catch (Exception e) {
+                log.error("updateConsumeOffsetToBroker exception, " + entry.getKey(), e);
+            }
+        }
+
         if (!unusedMQ.isEmpty()) {
             for (MessageQueue mq : unusedMQ) {
                 this.offsetTable.remove(mq);
+                this.persistedOffsetTable.remove(mq);
                 log.info("remove unused mq, {}, {}", mq, this.groupName);
             }
         }
@@ -167,6 +211,7 @@ public class RemoteBrokerOffsetStore implements OffsetStore {
     public void removeOffset(MessageQueue mq) {
         if (mq != null) {
             this.offsetTable.remove(mq);
+            this.persistedOffsetTable.remove(mq);
             log.info("remove unnecessary messageQueue offset. group={}, mq={}, offsetTableSize={}", this.groupName, mq,
                 offsetTable.size());
         }
@@ -185,6 +230,84 @@ public class RemoteBrokerOffsetStore implements OffsetStore {
         return cloneOffsetTable;
     }
 
+    /**
+     * Commit the offsets of the queues of one broker in one asynchronous request, or one by one in one way if the
+     * broker does not support it. Only the offsets of a batch commit are remembered as persisted, the one way ones are
+     * sent again.
+     */
+    private void updateConsumeOffsetToBroker(String brokerName, final Map<MessageQueue, Long> offsets)
+        throws RemotingException, InterruptedException, MQClientException {
+        FindBrokerResult findBrokerResult = this.mQClientFactory.findBrokerAddressInAdmin(brokerName);
+        if (null == findBrokerResult) {
+            this.mQClientFactory.updateTopicRouteInfoFromNameServer(offsets.keySet().iterator().next().getTopic());
+            findBrokerResult = this.mQClientFactory.findBrokerAddressInAdmin(brokerName);
+        }
+        if (null == findBrokerResult) {
+            throw new MQClientException("The broker[" + brokerName + "] not exist", null);
+        }
+
+        final String brokerAddr = findBrokerResult.getBrokerAddr();
+        if (this.batchUnsupportedBrokers.contains(brokerAddr)) {
+            this.updateConsumeOffsetToBrokerOneByOne(brokerAddr, offsets);
+            return;
+        }
+
+        UpdateConsumerOffsetBatchRequestBody requestBody = new UpdateConsumerOffsetBatchRequestBody();
+        requestBody.setConsumerGroup(this.groupName);
+        requestBody.setOffsetTable(offsets);
+        this.mQClientFactory.getMQClientAPIImpl().updateConsumerOffsetBatchAsync(brokerAddr, requestBody, 1000 * 5,
+            new InvokeCallback() {
+                @Override
+                public void operationComplete(ResponseFuture responseFuture) {
+                    onBatchResponse(brokerAddr, offsets, responseFuture);
+                }
+            });
+    }
+
+    private void onBatchResponse(String brokerAddr, Map<MessageQueue, Long> offsets, ResponseFuture responseFuture) {
+        RemotingCommand response = responseFuture.getResponseCommand();
+        if (null == response) {
+            log.warn("updateConsumeOffsetToBroker in batch failed, broker: {}", brokerAddr, responseFuture.getCause());
+            return;
+        }
+
+        switch (response.getCode()) {
+            case ResponseCode.SUCCESS:
+                for (Map.Entry<MessageQueue, Long> entry : offsets.entrySet()) {
+                    // skip the queues removed in the meantime
+                    if (this.offsetTable.containsKey(entry.getKey())) {
+                        this.persistedOffsetTable.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                break;
+            case RemotingSysResponseCode.REQUEST_CODE_NOT_SUPPORTED:
+                log.info("broker {} does not support the batch offset commit, commit one by one", brokerAddr);
+                this.batchUnsupportedBrokers.add(brokerAddr);
+                try {
+                    this.updateConsumeOffsetToBrokerOneByOne(brokerAddr, offsets);
+                } catch (Exception e) {
+                    log.error("updateConsumeOffsetToBroker exception, " + brokerAddr, e);
+                }
+                break;
+            default:
+                log.warn("updateConsumeOffsetToBroker in batch failed, broker: {}, code: {}, remark: {}",
+                    brokerAddr, response.getCode(), response.getRemark());
+                break;
+        }
+    }
+
+    private void updateConsumeOffsetToBrokerOneByOne(String brokerAddr, Map<MessageQueue, Long> offsets)
+        throws RemotingException, InterruptedException {
+        for (Map.Entry<MessageQueue, Long> entry : offsets.entrySet()) {
+            UpdateConsumerOffsetRequestHeader requestHeader = new UpdateConsumerOffsetRequestHeader();
+            requestHeader.setTopic(entry.getKey().getTopic());
+            requestHeader.setConsumerGroup(this.groupName);
+            requestHeader.setQueueId(entry.getKey().getQueueId());
+            requestHeader.setCommitOffset(entry.getValue());
+            this.mQClientFactory.getMQClientAPIImpl().updateConsumerOffsetOneway(brokerAddr, requestHeader, 1000 * 5);
+        }
+    }
+
     /**
      * Update the Consumer Offset in one way, once the Master is off, updated to Slave, here need to be optimized.
      */
@@ -19,7 +19,9 @@ package org.apache.rocketmq.client.impl;
 import io.netty.channel.ChannelHandlerContext;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.rocketmq.client.impl.factory.MQClientInstance;
@@ -28,6 +30,7 @@ import org.apache.rocketmq.client.log.ClientLogger;
 import org.apache.rocketmq.client.producer.RequestFutureTable;
 import org.apache.rocketmq.client.producer.RequestResponseFuture;
 import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.compression.CompressorFactory;
 import org.apache.rocketmq.common.message.MessageAccessor;
 import org.apache.rocketmq.common.message.MessageConst;
 import org.apache.rocketmq.common.message.MessageDecoder;
@@ -40,6 +43,7 @@ import org.apache.rocketmq.common.protocol.body.ConsumeMessageDirectlyResult;
 import org.apache.rocketmq.common.protocol.body.ConsumerRunningInfo;
 import org.apache.rocketmq.common.protocol.body.GetConsumerStatusBody;
 import org.apache.rocketmq.common.protocol.body.ResetOffsetBody;
+import org.apache.rocketmq.common.protocol.header.CheckTransactionStateBatchRequestHeader;
 import org.apache.rocketmq.common.protocol.header.CheckTransactionStateRequestHeader;
 import org.apache.rocketmq.common.protocol.header.ConsumeMessageDirectlyResultRequestHeader;
 import org.apache.rocketmq.common.protocol.header.GetConsumerRunningInfoRequestHeader;
@@ -70,6 +74,8 @@ public class ClientRemotingProcessor extends AsyncNettyRequestProcessor implemen
         switch (request.getCode()) {
             case RequestCode.CHECK_TRANSACTION_STATE:
                 return this.checkTransactionState(ctx, request);
+            case RequestCode.CHECK_TRANSACTION_STATE_BATCH:
+                return this.checkTransactionStateBatch(ctx, request);
             case RequestCode.NOTIFY_CONSUMER_IDS_CHANGED:
                 return this.notifyConsumerIdsChanged(ctx, request);
             case RequestCode.RESET_CONSUMER_CLIENT_OFFSET:
@@ -130,6 +136,50 @@ public class ClientRemotingProcessor extends AsyncNettyRequestProcessor implemen
         return null;
     }
 
+    public RemotingCommand checkTransactionStateBatch(ChannelHandlerContext ctx,
+        RemotingCommand request) throws RemotingCommandException {
+        final CheckTransactionStateBatchRequestHeader requestHeader =
+            (CheckTransactionStateBatchRequestHeader) request.decodeCommandCustomHeader(CheckTransactionStateBatchRequestHeader.class);
+        final String group = requestHeader.getProducerGroup();
+        MQProducerInner producer = this.mqClientFactory.selectProducer(group);
+        if (producer == null) {
+            log.debug("checkTransactionStateBatch, pick producer by group[{}] failed", group);
+            return null;
+        }
+
+        final List<MessageExt> messageExts = request.getBody() == null
+            ? null : MessageDecoder.decodes(ByteBuffer.wrap(request.getBody()));
+        if (messageExts == null || messageExts.isEmpty()) {
+            log.warn("checkTransactionStateBatch, decode message failed");
+            return null;
+        }
+
+        final List<CheckTransactionStateRequestHeader> checkRequestHeaders =
+            new ArrayList<CheckTransactionStateRequestHeader>(messageExts.size());
+        for (MessageExt messageExt : messageExts) {
+            if (StringUtils.isNotEmpty(this.mqClientFactory.getClientConfig().getNamespace())) {
+                messageExt.setTopic(NamespaceUtil
+                    .withoutNamespace(messageExt.getTopic(), this.mqClientFactory.getClientConfig().getNamespace()));
+            }
+            String transactionId = messageExt.getProperty(MessageConst.PROPERTY_UNIQ_CLIENT_MESSAGE_ID_KEYIDX);
+            if (null != transactionId && !"".equals(transactionId)) {
+                messageExt.setTransactionId(transactionId);
+            }
+
+            CheckTransactionStateRequestHeader checkRequestHeader = new CheckTransactionStateRequestHeader();
+            checkRequestHeader.setCommitLogOffset(messageExt.getCommitLogOffset());
+            checkRequestHeader.setTranStateTableOffset(messageExt.getQueueOffset());
+            checkRequestHeader.setOffsetMsgId(messageExt.getMsgId());
+            checkRequestHeader.setMsgId(transactionId);
+            checkRequestHeader.setTransactionId(transactionId);
+            checkRequestHeaders.add(checkRequestHeader);
+        }
+
+        final String addr = RemotingHelper.parseChannelRemoteAddr(ctx.channel());
+        producer.checkTransactionState(addr, messageExts, checkRequestHeaders);
+        return null;
+    }
+
     public RemotingCommand notifyConsumerIdsChanged(ChannelHandlerContext ctx,
         RemotingCommand request) throws RemotingCommandException {
         try {
@@ -247,7 +297,7 @@ public class ClientRemotingProcessor extends AsyncNettyRequestProcessor implemen
             byte[] body = request.getBody();
             if ((requestHeader.getSysFlag() & MessageSysFlag.COMPRESSED_FLAG) == MessageSysFlag.COMPRESSED_FLAG) {
                 try {
-                    body = UtilAll.uncompress(body);
+                    body = CompressorFactory.decompress(body, requestHeader.getSysFlag());
                 } catch (IOException e) {
                     log.warn("err when uncompress constant", e);
                 }
@@ -28,6 +28,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.rocketmq.client.ClientConfig;
@@ -103,7 +105,9 @@ import org.apache.rocketmq.common.protocol.body.SealTopicLogicalQueueRequestBody
 import org.apache.rocketmq.common.protocol.body.SubscriptionGroupWrapper;
 import org.apache.rocketmq.common.protocol.body.TopicConfigSerializeWrapper;
 import org.apache.rocketmq.common.protocol.body.TopicList;
+import org.apache.rocketmq.common.protocol.body.TopicRouteChangesBody;
 import org.apache.rocketmq.common.protocol.body.UnlockBatchRequestBody;
+import org.apache.rocketmq.common.protocol.body.UpdateConsumerOffsetBatchRequestBody;
 import org.apache.rocketmq.common.protocol.body.UpdateTopicLogicalQueueMappingRequestBody;
 import org.apache.rocketmq.common.protocol.header.AckMessageRequestHeader;
 import org.apache.rocketmq.common.protocol.header.ChangeInvisibleTimeRequestHeader;
@@ -169,6 +173,7 @@ import org.apache.rocketmq.common.protocol.header.namesrv.DeleteKVConfigRequestH
 import org.apache.rocketmq.common.protocol.header.namesrv.GetKVConfigRequestHeader;
 import org.apache.rocketmq.common.protocol.header.namesrv.GetKVConfigResponseHeader;
 import org.apache.rocketmq.common.protocol.header.namesrv.GetKVListByNamespaceRequestHeader;
+import org.apache.rocketmq.common.protocol.header.namesrv.GetRouteChangesRequestHeader;
 import org.apache.rocketmq.common.protocol.header.namesrv.GetRouteInfoRequestHeader;
 import org.apache.rocketmq.common.protocol.header.namesrv.PutKVConfigRequestHeader;
 import org.apache.rocketmq.common.protocol.header.namesrv.WipeWritePermOfBrokerRequestHeader;
@@ -218,18 +223,30 @@ public class MQClientAPIImpl {
     private final ClientRemotingProcessor clientRemotingProcessor;
     private String nameSrvAddr = null;
     private ClientConfig clientConfig;
+    /**
+     * Brokers which answered a heartbeat with {@link RemotingCommand#isAcceptBinaryBody()}.
+     */
+    private final ConcurrentMap<String/* addr */, Boolean> binaryBodyBrokerTable = new ConcurrentHashMap<String, Boolean>();
 
     public MQClientAPIImpl(final NettyClientConfig nettyClientConfig,
         final ClientRemotingProcessor clientRemotingProcessor,
         RPCHook rpcHook, final ClientConfig clientConfig) {
         this.clientConfig = clientConfig;
         topAddressing = new TopAddressing(MixAll.getWSAddr(), clientConfig.getUnitName());
-        this.remotingClient = new NettyRemotingClient(nettyClientConfig, null);
+        NettyRemotingClient nettyRemotingClient = new NettyRemotingClient(nettyClientConfig, null);
+        // the broker binds the client to the channel its heartbeat came from
+        nettyRemotingClient.registerPinnedRequestCode(RequestCode.HEART_BEAT);
+        nettyRemotingClient.registerPinnedRequestCode(RequestCode.UNREGISTER_CLIENT);
+        nettyRemotingClient.registerBulkRequestCode(RequestCode.PULL_MESSAGE);
+        nettyRemotingClient.registerBulkRequestCode(RequestCode.POP_MESSAGE);
+        this.remotingClient = nettyRemotingClient;
         this.clientRemotingProcessor = clientRemotingProcessor;
 
         this.remotingClient.registerRPCHook(rpcHook);
         this.remotingClient.registerProcessor(RequestCode.CHECK_TRANSACTION_STATE, this.clientRemotingProcessor, null);
 
+        this.remotingClient.registerProcessor(RequestCode.CHECK_TRANSACTION_STATE_BATCH, this.clientRemotingProcessor, null);
+
         this.remotingClient.registerProcessor(RequestCode.NOTIFY_CONSUMER_IDS_CHANGED, this.clientRemotingProcessor, null);
 
         this.remotingClient.registerProcessor(RequestCode.RESET_CONSUMER_CLIENT_OFFSET, this.clientRemotingProcessor, null);
@@ -552,7 +569,12 @@ public class MQClientAPIImpl {
                 if (timeoutMillis < costTimeSync) {
                     throw new RemotingTooMuchRequestException("sendMessage call timeout");
                 }
-                return this.sendMessageSync(addr, brokerName, msg, timeoutMillis - costTimeSync, request);
+                producer.sendStarted(brokerName);
+                try {
+                    return this.sendMessageSync(addr, brokerName, msg, timeoutMillis - costTimeSync, request);
+                } finally {
+                    producer.sendFinished(brokerName);
+                }
             default:
                 assert false;
                 break;
@@ -588,9 +610,10 @@ public class MQClientAPIImpl {
         final DefaultMQProducerImpl producer
     ) throws InterruptedException, RemotingException {
         final long beginStartTime = System.currentTimeMillis();
-        this.remotingClient.invokeAsync(addr, request, timeoutMillis, new InvokeCallback() {
+        InvokeCallback invokeCallback = new InvokeCallback() {
             @Override
             public void operationComplete(ResponseFuture responseFuture) {
+                producer.sendFinished(brokerName);
                 long cost = System.currentTimeMillis() - beginStartTime;
                 RemotingCommand response = responseFuture.getResponseCommand();
                 if (null == sendCallback && response != null) {
@@ -650,7 +673,15 @@ public class MQClientAPIImpl {
                     }
                 }
             }
-        });
+        };
+
+        producer.sendStarted(brokerName);
+        try {
+            this.remotingClient.invokeAsync(addr, request, timeoutMillis, invokeCallback);
+        } catch (InterruptedException | RemotingException | RuntimeException e) {
+            producer.sendFinished(brokerName);
+            throw e;
+        }
     }
 
     private void onExceptionImpl(final String brokerName,
@@ -1289,6 +1320,19 @@ public class MQClientAPIImpl {
         throw new MQBrokerException(response.getCode(), response.getRemark(), addr);
     }
 
+    public void updateConsumerOffsetBatchAsync(
+        final String addr,
+        final UpdateConsumerOffsetBatchRequestBody requestBody,
+        final long timeoutMillis,
+        final InvokeCallback invokeCallback
+    ) throws RemotingException, InterruptedException {
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.UPDATE_CONSUMER_OFFSET_BATCH, null);
+        request.setBody(requestBody.encode());
+
+        this.remotingClient.invokeAsync(MixAll.brokerVIPChannel(this.clientConfig.isVipChannelEnabled(), addr),
+            request, timeoutMillis, invokeCallback);
+    }
+
     public void updateConsumerOffsetOneway(
         final String addr,
         final UpdateConsumerOffsetRequestHeader requestHeader,
@@ -1305,20 +1349,48 @@ public class MQClientAPIImpl {
         final HeartbeatData heartbeatData,
         final long timeoutMillis
     ) throws RemotingException, MQBrokerException, InterruptedException {
+        if (this.clientConfig.isUseBinaryBody() && this.binaryBodyBrokerTable.containsKey(addr)) {
+            RemotingCommand response = this.invokeHeartbeat(addr, heartbeatData.encodeBinary(), true, timeoutMillis);
+            if (response.getCode() == ResponseCode.SUCCESS) {
+                return this.processHeartbeatResponse(addr, response);
+            }
+            if (response.getCode() != ResponseCode.SYSTEM_ERROR) {
+                throw new MQBrokerException(response.getCode(), response.getRemark(), addr);
+            }
+            // a broker downgraded to a version that does not read binary bodies fails to parse the body, fall back
+            // to json until it announces the support again
+            log.warn("broker[{}] rejected the binary heartbeat, retry with json, {}", addr, response.getRemark());
+            this.binaryBodyBrokerTable.remove(addr);
+        }
+
+        RemotingCommand response = this.invokeHeartbeat(addr, heartbeatData.encode(), false, timeoutMillis);
+        if (response.getCode() == ResponseCode.SUCCESS) {
+            return this.processHeartbeatResponse(addr, response);
+        }
+
+        throw new MQBrokerException(response.getCode(), response.getRemark(), addr);
+    }
+
+    private RemotingCommand invokeHeartbeat(final String addr, final byte[] body, final boolean binaryBody,
+        final long timeoutMillis) throws RemotingException, InterruptedException {
         RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.HEART_BEAT, null);
         request.setLanguage(clientConfig.getLanguage());
-        request.setBody(heartbeatData.encode());
+        request.setBody(body);
+        if (binaryBody) {
+            request.markBinaryBody();
+        }
         RemotingCommand response = this.remotingClient.invokeSync(addr, request, timeoutMillis);
         assert response != null;
-        switch (response.getCode()) {
-            case ResponseCode.SUCCESS: {
-                return response.getVersion();
-            }
-            default:
-                break;
-        }
+        return response;
+    }
 
-        throw new MQBrokerException(response.getCode(), response.getRemark(), addr);
+    private int processHeartbeatResponse(final String addr, final RemotingCommand response) {
+        if (response.isAcceptBinaryBody()) {
+            this.binaryBodyBrokerTable.put(addr, Boolean.TRUE);
+        } else {
+            this.binaryBodyBrokerTable.remove(addr);
+        }
+        return response.getVersion();
     }
 
     public void unregisterClient(
@@ -1660,6 +1732,9 @@ public class MQClientAPIImpl {
         requestHeader.setLogicalQueueIdsFilter(logicalQueueIdsFilter);
 
         RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.GET_ROUTEINFO_BY_TOPIC, requestHeader);
+        if (this.clientConfig.isUseBinaryBody()) {
+            request.markAcceptBinaryBody();
+        }
 
         RemotingCommand response = this.remotingClient.invokeSync(null, request, timeoutMillis);
         assert response != null;
@@ -1673,6 +1748,9 @@ public class MQClientAPIImpl {
             }
             case ResponseCode.SUCCESS: {
                 byte[] body = response.getBody();
+                if (body != null && response.isBinaryBody()) {
+                    return TopicRouteData.decodeBinary(body);
+                }
                 if (body != null) {
                     return fromNullable(RemotingSerializable.decode(body, TopicRouteDataNameSrv.class)).transform(new Function<TopicRouteDataNameSrv, TopicRouteData>() {
                         @Override public TopicRouteData apply(TopicRouteDataNameSrv srv) {
@@ -1688,6 +1766,39 @@ public class MQClientAPIImpl {
         throw new MQClientException(response.getCode(), response.getRemark());
     }
 
+    /**
+     * Reads the routes changed of the topics, the name server holding the request up to {@code pollTimeoutMillis}
+     * while none changed.
+     *
+     * @param topicVersionTable the route version known of each topic
+     */
+    public TopicRouteChangesBody getRouteChangesFromNameServer(final Map<String, Long> topicVersionTable,
+        final long pollTimeoutMillis, final long timeoutMillis)
+        throws RemotingException, MQClientException, InterruptedException {
+        GetRouteChangesRequestHeader requestHeader = new GetRouteChangesRequestHeader();
+        requestHeader.setPollTimeoutMillis(pollTimeoutMillis);
+        TopicRouteChangesBody requestBody = new TopicRouteChangesBody();
+        requestBody.setTopicVersionTable(topicVersionTable);
+
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.GET_ROUTEINFO_CHANGES_BY_TOPICS, requestHeader);
+        request.setBody(requestBody.encode());
+
+        RemotingCommand response = this.remotingClient.invokeSync(null, request, pollTimeoutMillis + timeoutMillis);
+        assert response != null;
+        switch (response.getCode()) {
+            case ResponseCode.SUCCESS: {
+                byte[] body = response.getBody();
+                if (body != null) {
+                    return TopicRouteChangesBody.decode(body, TopicRouteChangesBody.class);
+                }
+            }
+            default:
+                break;
+        }
+
+        throw new MQClientException(response.getCode(), response.getRemark());
+    }
+
     public TopicList getTopicListFromNameServer(final long timeoutMillis)
         throws RemotingException, MQClientException, InterruptedException {
         RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.GET_ALL_TOPIC_LIST_FROM_NAMESERVER, null);
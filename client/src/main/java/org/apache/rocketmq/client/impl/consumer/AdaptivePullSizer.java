@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.client.impl.consumer;
+
+/**
+ * Sizes the pulls of one {@link ProcessQueue} from its consume rate and pull latency.
+ * <p>
+ * To keep the consumption busy the queue must cache the messages consumed during one pull, so the prefetch depth is
+ * twice the consume rate times the pull latency. The rate measured can not exceed what was cached, so a depth too
+ * small doubles at each sample until the consumption stops speeding up, and a slow consumption only caches a batch.
+ */
+class AdaptivePullSizer {
+    /**
+     * Shortest period the consume rate is measured over
+     */
+    static final long SAMPLE_INTERVAL_MILLIS = 100;
+    /**
+     * Longest pull latency sampled, a pull held by the broker waiting for new messages is not a slow pull
+     */
+    private static final long MAX_PULL_RT_MILLIS = 1000;
+    private static final double ALPHA = 0.5;
+
+    /**
+     * Messages consumed per millisecond
+     */
+    private double consumeRate = 0;
+    private double pullRT = 0;
+    private long lastConsumedCount = 0;
+    private long lastSampleTimestamp = System.currentTimeMillis();
+
+    synchronized void onPullRT(final long rtMillis) {
+        double rt = Math.min(Math.max(rtMillis, 1), MAX_PULL_RT_MILLIS);
+        this.pullRT = this.pullRT == 0 ? rt : this.pullRT * (1 - ALPHA) + rt * ALPHA;
+    }
+
+    synchronized void sample(final long consumedCount, final long now) {
+        long elapsed = now - this.lastSampleTimestamp;
+        if (elapsed < SAMPLE_INTERVAL_MILLIS) {
+            return;
+        }
+        double rate = (consumedCount - this.lastConsumedCount) / (double) elapsed;
+        this.consumeRate = this.consumeRate == 0 ? rate : this.consumeRate * (1 - ALPHA) + rate * ALPHA;
+        this.lastConsumedCount = consumedCount;
+        this.lastSampleTimestamp = now;
+    }
+
+    /**
+     * @return the messages to cache, within [{@code min}, {@code max}]
+     */
+    synchronized int prefetchDepth(final int min, final int max) {
+        double depth = Math.ceil(2 * this.consumeRate * Math.max(this.pullRT, 1));
+        return (int) Math.max(min, Math.min(max, depth));
+    }
+
+    /**
+     * @return the messages to pull to fill the prefetch depth, within [1, {@code maxBatchSize}]
+     */
+    int batchSize(final long cachedCount, final int depth, final int maxBatchSize) {
+        return (int) Math.max(1, Math.min(maxBatchSize, depth - cachedCount));
+    }
+
+    synchronized double getConsumeRate() {
+        return consumeRate;
+    }
+
+    synchronized double getPullRT() {
+        return pullRT;
+    }
+}
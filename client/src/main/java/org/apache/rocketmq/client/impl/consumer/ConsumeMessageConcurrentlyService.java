@@ -90,6 +90,15 @@ public class ConsumeMessageConcurrentlyService implements ConsumeMessageService
             }
 
         }, this.defaultMQPushConsumer.getConsumeTimeout(), this.defaultMQPushConsumer.getConsumeTimeout(), TimeUnit.MINUTES);
+
+        if (this.defaultMQPushConsumerImpl.isCooperativeRebalance()) {
+            this.scheduledExecutorService.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    ConsumeMessageConcurrentlyService.this.defaultMQPushConsumerImpl.getRebalanceImpl().lockAll();
+                }
+            }, 1000 * 1, ProcessQueue.REBALANCE_LOCK_INTERVAL, TimeUnit.MILLISECONDS);
+        }
     }
 
     public void shutdown(long awaitTerminateMillis) {
@@ -0,0 +1,418 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.impl.consumer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
+import org.apache.rocketmq.client.log.ClientLogger;
+import org.apache.rocketmq.client.stat.ConsumerStatsManager;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.common.protocol.body.ConsumeMessageDirectlyResult;
+import org.apache.rocketmq.common.protocol.heartbeat.MessageModel;
+import org.apache.rocketmq.common.utils.ThreadUtils;
+import org.apache.rocketmq.logging.InternalLogger;
+
+/**
+ * Orderly consumption that keeps the order per message key instead of per message queue.
+ * <p>
+ * The messages of a queue are dispatched to {@link DefaultMQPushConsumer#getConsumeOrderlyKeyParallelism()} lanes by
+ * the hash of their key, each lane is consumed by at most one thread at a time, so the messages of a key are consumed
+ * in order and the lanes of a queue in parallel. A failed batch suspends its lane only. The consumed offset is the
+ * lowest offset not consumed yet in the {@link ProcessQueue}, so it never passes a message still waiting in a lane.
+ * <p>
+ * Like {@link ConsumeMessageOrderlyService} the queues are locked on the broker in clustering mode, so a queue is only
+ * consumed by one client at a time. The lanes consume under {@link ProcessQueue#getConsumeSharedLock()}, so the
+ * rebalance does not release the queue while one of them is in the listener.
+ */
+public class ConsumeMessageKeyOrderlyService implements ConsumeMessageService {
+    private static final InternalLogger log = ClientLogger.getLog();
+    private final static long MAX_TIME_CONSUME_CONTINUOUSLY =
+        Long.parseLong(System.getProperty("rocketmq.client.maxTimeConsumeContinuously", "60000"));
+    private final DefaultMQPushConsumerImpl defaultMQPushConsumerImpl;
+    private final DefaultMQPushConsumer defaultMQPushConsumer;
+    private final ConsumeMessageOrderlySupport orderlySupport;
+    private final BlockingQueue<Runnable> consumeRequestQueue;
+    private final ThreadPoolExecutor consumeExecutor;
+    private final String consumerGroup;
+    private final ConcurrentMap<ProcessQueue, ConsumeRequest[]> laneTable =
+        new ConcurrentHashMap<ProcessQueue, ConsumeRequest[]>();
+    private final ScheduledExecutorService scheduledExecutorService;
+    private volatile boolean stopped = false;
+
+    public ConsumeMessageKeyOrderlyService(DefaultMQPushConsumerImpl defaultMQPushConsumerImpl,
+        MessageListenerOrderly messageListener) {
+        this.defaultMQPushConsumerImpl = defaultMQPushConsumerImpl;
+        this.orderlySupport = new ConsumeMessageOrderlySupport(defaultMQPushConsumerImpl, messageListener);
+
+        this.defaultMQPushConsumer = this.defaultMQPushConsumerImpl.getDefaultMQPushConsumer();
+        this.consumerGroup = this.defaultMQPushConsumer.getConsumerGroup();
+        this.consumeRequestQueue = new LinkedBlockingQueue<Runnable>();
+
+        this.consumeExecutor = new ThreadPoolExecutor(
+            this.defaultMQPushConsumer.getConsumeThreadMin(),
+            this.defaultMQPushConsumer.getConsumeThreadMax(),
+            1000 * 60,
+            TimeUnit.MILLISECONDS,
+            this.consumeRequestQueue,
+            new ThreadFactoryImpl("ConsumeMessageThread_"));
+
+        this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryImpl("ConsumeMessageScheduledThread_"));
+    }
+
+    public void start() {
+        if (MessageModel.CLUSTERING.equals(ConsumeMessageKeyOrderlyService.this.defaultMQPushConsumerImpl.messageModel())) {
+            this.scheduledExecutorService.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    ConsumeMessageKeyOrderlyService.this.lockMQPeriodically();
+                }
+            }, 1000 * 1, ProcessQueue.REBALANCE_LOCK_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+
+        this.scheduledExecutorService.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                ConsumeMessageKeyOrderlyService.this.cleanDroppedLanes();
+            }
+        }, 1000 * 10, 1000 * 10, TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown(long awaitTerminateMillis) {
+        this.stopped = true;
+        this.scheduledExecutorService.shutdown();
+        ThreadUtils.shutdownGracefully(this.consumeExecutor, awaitTerminateMillis, TimeUnit.MILLISECONDS);
+        if (MessageModel.CLUSTERING.equals(this.defaultMQPushConsumerImpl.messageModel())) {
+            this.unlockAllMQ();
+        }
+    }
+
+    public synchronized void unlockAllMQ() {
+        this.defaultMQPushConsumerImpl.getRebalanceImpl().unlockAll(false);
+    }
+
+    @Override
+    public void updateCorePoolSize(int corePoolSize) {
+        if (corePoolSize > 0
+            && corePoolSize <= Short.MAX_VALUE
+            && corePoolSize < this.defaultMQPushConsumer.getConsumeThreadMax()) {
+            this.consumeExecutor.setCorePoolSize(corePoolSize);
+        }
+    }
+
+    @Override
+    public void incCorePoolSize() {
+    }
+
+    @Override
+    public void decCorePoolSize() {
+    }
+
+    @Override
+    public int getCorePoolSize() {
+        return this.consumeExecutor.getCorePoolSize();
+    }
+
+    @Override
+    public ConsumeMessageDirectlyResult consumeMessageDirectly(MessageExt msg, String brokerName) {
+        return this.orderlySupport.consumeMessageDirectly(msg, brokerName);
+    }
+
+    @Override
+    public void submitConsumeRequest(
+        final List<MessageExt> msgs,
+        final ProcessQueue processQueue,
+        final MessageQueue messageQueue,
+        final boolean dispathToConsume) {
+        if (null == msgs || msgs.isEmpty()) {
+            return;
+        }
+
+        ConsumeRequest[] lanes = this.laneTable.get(processQueue);
+        if (null == lanes) {
+            lanes = new ConsumeRequest[this.defaultMQPushConsumer.getConsumeOrderlyKeyParallelism()];
+            for (int i = 0; i < lanes.length; i++) {
+                lanes[i] = new ConsumeRequest(processQueue, messageQueue);
+            }
+            ConsumeRequest[] prev = this.laneTable.putIfAbsent(processQueue, lanes);
+            if (prev != null) {
+                lanes = prev;
+            }
+        }
+
+        boolean[] touched = new boolean[lanes.length];
+        for (MessageExt msg : msgs) {
+            int index = this.laneOf(msg, lanes.length);
+            lanes[index].add(msg);
+            touched[index] = true;
+        }
+        for (int i = 0; i < lanes.length; i++) {
+            if (touched[i]) {
+                lanes[i].dispatch();
+            }
+        }
+    }
+
+    @Override
+    public void submitPopConsumeRequest(final List<MessageExt> msgs,
+                                        final PopProcessQueue processQueue,
+                                        final MessageQueue messageQueue) {
+        throw new UnsupportedOperationException();
+    }
+
+    private int laneOf(final MessageExt msg, final int laneNums) {
+        String key = msg.getProperty(this.defaultMQPushConsumer.getConsumeOrderlyKeyProperty());
+        // messages without key are not ordered against each other, spread them over the lanes
+        int hash = UtilAll.isBlank(key) ? (int) msg.getQueueOffset() : key.hashCode();
+        return (hash & Integer.MAX_VALUE) % laneNums;
+    }
+
+    private void cleanDroppedLanes() {
+        Iterator<Map.Entry<ProcessQueue, ConsumeRequest[]>> it = this.laneTable.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getKey().isDropped()) {
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void lockMQPeriodically() {
+        if (!this.stopped) {
+            this.defaultMQPushConsumerImpl.getRebalanceImpl().lockAll();
+        }
+    }
+
+    public synchronized boolean lockOneMQ(final MessageQueue mq) {
+        if (!this.stopped) {
+            return this.defaultMQPushConsumerImpl.getRebalanceImpl().lock(mq);
+        }
+
+        return false;
+    }
+
+    private void tryLockLaterAndReconsume(final ConsumeRequest consumeRequest, final long delayMills) {
+        this.scheduledExecutorService.schedule(new Runnable() {
+            @Override
+            public void run() {
+                boolean lockOK = ConsumeMessageKeyOrderlyService.this.lockOneMQ(consumeRequest.getMessageQueue());
+                if (lockOK) {
+                    ConsumeMessageKeyOrderlyService.this.submitConsumeRequestLater(consumeRequest, 10);
+                } else {
+                    ConsumeMessageKeyOrderlyService.this.submitConsumeRequestLater(consumeRequest, 3000);
+                }
+            }
+        }, delayMills, TimeUnit.MILLISECONDS);
+    }
+
+    private void submitConsumeRequestLater(final ConsumeRequest consumeRequest, final long suspendTimeMillis) {
+        long timeMillis = suspendTimeMillis;
+        if (timeMillis == -1) {
+            timeMillis = this.defaultMQPushConsumer.getSuspendCurrentQueueTimeMillis();
+        }
+
+        if (timeMillis < 10) {
+            timeMillis = 10;
+        } else if (timeMillis > 30000) {
+            timeMillis = 30000;
+        }
+
+        this.scheduledExecutorService.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                ConsumeMessageKeyOrderlyService.this.consumeExecutor.submit(consumeRequest);
+            }
+        }, timeMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return true if the lane can go on with its next messages
+     */
+    public boolean processConsumeResult(
+        final List<MessageExt> msgs,
+        final ConsumeOrderlyStatus status,
+        final ConsumeOrderlyContext context,
+        final ConsumeRequest consumeRequest
+    ) {
+        switch (status) {
+            case COMMIT:
+            case ROLLBACK:
+                log.warn("the message queue consume result is illegal, we think you want to ack these message {}",
+                    consumeRequest.getMessageQueue());
+            case SUCCESS:
+                this.getConsumerStatsManager().incConsumeOKTPS(consumerGroup, consumeRequest.getMessageQueue().getTopic(), msgs.size());
+                break;
+            case SUSPEND_CURRENT_QUEUE_A_MOMENT:
+                this.getConsumerStatsManager().incConsumeFailedTPS(consumerGroup, consumeRequest.getMessageQueue().getTopic(), msgs.size());
+                if (checkReconsumeTimes(msgs)) {
+                    consumeRequest.putBack(msgs);
+                    this.submitConsumeRequestLater(consumeRequest, context.getSuspendCurrentQueueTimeMillis());
+                    return false;
+                }
+                break;
+            default:
+                break;
+        }
+
+        long offset = consumeRequest.getProcessQueue().removeMessage(msgs);
+        if (offset >= 0 && !consumeRequest.getProcessQueue().isDropped()) {
+            this.defaultMQPushConsumerImpl.getOffsetStore().updateOffset(consumeRequest.getMessageQueue(), offset, true);
+        }
+        return true;
+    }
+
+    public ConsumerStatsManager getConsumerStatsManager() {
+        return this.defaultMQPushConsumerImpl.getConsumerStatsManager();
+    }
+
+    private boolean checkReconsumeTimes(List<MessageExt> msgs) {
+        return this.orderlySupport.checkReconsumeTimes(msgs);
+    }
+
+    public boolean sendMessageBack(final MessageExt msg) {
+        return this.orderlySupport.sendMessageBack(msg);
+    }
+
+    /**
+     * One lane of a message queue, its messages are consumed in the order they were added
+     */
+    class ConsumeRequest implements Runnable {
+        private final ProcessQueue processQueue;
+        private final MessageQueue messageQueue;
+        private final LinkedList<MessageExt> msgs = new LinkedList<MessageExt>();
+        /**
+         * Whether the lane is submitted, running or waiting to run again, guarded by this
+         */
+        private boolean running = false;
+
+        public ConsumeRequest(ProcessQueue processQueue, MessageQueue messageQueue) {
+            this.processQueue = processQueue;
+            this.messageQueue = messageQueue;
+        }
+
+        public ProcessQueue getProcessQueue() {
+            return processQueue;
+        }
+
+        public MessageQueue getMessageQueue() {
+            return messageQueue;
+        }
+
+        synchronized void add(final MessageExt msg) {
+            this.msgs.add(msg);
+        }
+
+        synchronized void putBack(final List<MessageExt> consumed) {
+            this.msgs.addAll(0, consumed);
+        }
+
+        void dispatch() {
+            synchronized (this) {
+                if (this.running || this.msgs.isEmpty()) {
+                    return;
+                }
+                this.running = true;
+            }
+            ConsumeMessageKeyOrderlyService.this.consumeExecutor.submit(this);
+        }
+
+        /**
+         * @return up to {@code batchSize} messages, the lane stops running if there is none
+         */
+        private synchronized List<MessageExt> take(final int batchSize) {
+            List<MessageExt> result = new ArrayList<MessageExt>(Math.min(batchSize, this.msgs.size()));
+            while (result.size() < batchSize && !this.msgs.isEmpty()) {
+                result.add(this.msgs.poll());
+            }
+            if (result.isEmpty()) {
+                this.running = false;
+            }
+            return result;
+        }
+
+        private boolean isLockValid() {
+            return MessageModel.BROADCASTING.equals(ConsumeMessageKeyOrderlyService.this.defaultMQPushConsumerImpl.messageModel())
+                || (this.processQueue.isLocked() && !this.processQueue.isLockExpired());
+        }
+
+        @Override
+        public void run() {
+            final long beginTime = System.currentTimeMillis();
+            while (true) {
+                if (this.processQueue.isDropped()) {
+                    log.warn("the message queue not be able to consume, because it's dropped. {}", this.messageQueue);
+                    return;
+                }
+
+                if (!this.isLockValid()) {
+                    log.warn("the message queue not locked or lock expired, so consume later, {}", this.messageQueue);
+                    ConsumeMessageKeyOrderlyService.this.tryLockLaterAndReconsume(this, 10);
+                    return;
+                }
+
+                long interval = System.currentTimeMillis() - beginTime;
+                if (interval > MAX_TIME_CONSUME_CONTINUOUSLY) {
+                    ConsumeMessageKeyOrderlyService.this.submitConsumeRequestLater(this, 10);
+                    return;
+                }
+
+                final int consumeBatchSize =
+                    ConsumeMessageKeyOrderlyService.this.defaultMQPushConsumer.getConsumeMessageBatchMaxSize();
+                List<MessageExt> msgs = this.take(consumeBatchSize);
+                if (msgs.isEmpty()) {
+                    return;
+                }
+                defaultMQPushConsumerImpl.resetRetryAndNamespace(msgs, defaultMQPushConsumer.getConsumerGroup());
+
+                final ConsumeOrderlyContext context = new ConsumeOrderlyContext(this.messageQueue);
+                // the lanes of a queue share the consume lock, the rebalance takes it exclusively before unlocking
+                // the queue on the broker
+                ConsumeOrderlyStatus status = ConsumeMessageKeyOrderlyService.this.orderlySupport.consumeMessage(
+                    this.processQueue, this.messageQueue, this.processQueue.getConsumeSharedLock(), msgs, context);
+                if (null == status) {
+                    return;
+                }
+
+                if (this.processQueue.isDropped()) {
+                    log.warn("processQueue is dropped without process consume result. messageQueue={}, msgs={}", messageQueue, msgs);
+                    return;
+                }
+
+                if (!ConsumeMessageKeyOrderlyService.this.processConsumeResult(msgs, status, context, this)) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.impl.consumer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
+import org.apache.rocketmq.client.consumer.listener.ConsumeReturnType;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
+import org.apache.rocketmq.client.hook.ConsumeMessageContext;
+import org.apache.rocketmq.client.log.ClientLogger;
+import org.apache.rocketmq.common.MixAll;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.common.protocol.body.CMResult;
+import org.apache.rocketmq.common.protocol.body.ConsumeMessageDirectlyResult;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.remoting.common.RemotingHelper;
+
+/**
+ * The parts of the orderly consumption shared by {@link ConsumeMessageOrderlyService} and
+ * {@link ConsumeMessageKeyOrderlyService}: calling the listener with the consume hooks, the reconsume times check and
+ * sending the messages over the max reconsume times back to the broker.
+ */
+class ConsumeMessageOrderlySupport {
+    private static final InternalLogger log = ClientLogger.getLog();
+    private final DefaultMQPushConsumerImpl defaultMQPushConsumerImpl;
+    private final DefaultMQPushConsumer defaultMQPushConsumer;
+    private final MessageListenerOrderly messageListener;
+    private final String consumerGroup;
+
+    ConsumeMessageOrderlySupport(DefaultMQPushConsumerImpl defaultMQPushConsumerImpl,
+        MessageListenerOrderly messageListener) {
+        this.defaultMQPushConsumerImpl = defaultMQPushConsumerImpl;
+        this.defaultMQPushConsumer = defaultMQPushConsumerImpl.getDefaultMQPushConsumer();
+        this.messageListener = messageListener;
+        this.consumerGroup = this.defaultMQPushConsumer.getConsumerGroup();
+    }
+
+    public ConsumeMessageDirectlyResult consumeMessageDirectly(MessageExt msg, String brokerName) {
+        ConsumeMessageDirectlyResult result = new ConsumeMessageDirectlyResult();
+        result.setOrder(true);
+
+        List<MessageExt> msgs = new ArrayList<MessageExt>();
+        msgs.add(msg);
+        MessageQueue mq = new MessageQueue();
+        mq.setBrokerName(brokerName);
+        mq.setTopic(msg.getTopic());
+        mq.setQueueId(msg.getQueueId());
+
+        ConsumeOrderlyContext context = new ConsumeOrderlyContext(mq);
+
+        this.defaultMQPushConsumerImpl.resetRetryAndNamespace(msgs, this.consumerGroup);
+
+        final long beginTime = System.currentTimeMillis();
+
+        log.info("consumeMessageDirectly receive new message: {}", msg);
+
+        try {
+            ConsumeOrderlyStatus status = this.messageListener.consumeMessage(msgs, context);
+            if (status != null) {
+                switch (status) {
+                    case COMMIT:
+                        result.setConsumeResult(CMResult.CR_COMMIT);
+                        break;
+                    case ROLLBACK:
+                        result.setConsumeResult(CMResult.CR_ROLLBACK);
+                        break;
+                    case SUCCESS:
+                        result.setConsumeResult(CMResult.CR_SUCCESS);
+                        break;
+                    case SUSPEND_CURRENT_QUEUE_A_MOMENT:
+                        result.setConsumeResult(CMResult.CR_LATER);
+                        break;
+                    default:
+                        break;
+                }
+            } else {
+                result.setConsumeResult(CMResult.CR_RETURN_NULL);
+            }
+        } catch (Throwable e) {
+            result.setConsumeResult(CMResult.CR_THROW_EXCEPTION);
+            result.setRemark(RemotingHelper.exceptionSimpleDesc(e));
+
+            log.warn(String.format("consumeMessageDirectly exception: %s Group: %s Msgs: %s MQ: %s",
+                RemotingHelper.exceptionSimpleDesc(e),
+                this.consumerGroup,
+                msgs,
+                mq), e);
+        }
+
+        result.setAutoCommit(context.isAutoCommit());
+        result.setSpentTimeMills(System.currentTimeMillis() - beginTime);
+
+        log.info("consumeMessageDirectly Result: {}", result);
+
+        return result;
+    }
+
+    /**
+     * Run the listener on the messages between the consume hooks, holding the consume lock of the queue so that the
+     * rebalance does not unlock the queue on the broker meanwhile.
+     *
+     * @param consumeLock {@link ProcessQueue#getConsumeLock()} or {@link ProcessQueue#getConsumeSharedLock()}
+     * @return the consume status, a failure is turned into {@link ConsumeOrderlyStatus#SUSPEND_CURRENT_QUEUE_A_MOMENT},
+     * or null if the queue was dropped before the listener was called
+     */
+    public ConsumeOrderlyStatus consumeMessage(final ProcessQueue processQueue, final MessageQueue messageQueue,
+        final Lock consumeLock, final List<MessageExt> msgs, final ConsumeOrderlyContext context) {
+        ConsumeOrderlyStatus status = null;
+
+        ConsumeMessageContext consumeMessageContext = null;
+        if (this.defaultMQPushConsumerImpl.hasHook()) {
+            consumeMessageContext = new ConsumeMessageContext();
+            consumeMessageContext.setConsumerGroup(this.defaultMQPushConsumer.getConsumerGroup());
+            consumeMessageContext.setNamespace(this.defaultMQPushConsumer.getNamespace());
+            consumeMessageContext.setMq(messageQueue);
+            consumeMessageContext.setMsgList(msgs);
+            consumeMessageContext.setSuccess(false);
+            // init the consume context type
+            consumeMessageContext.setProps(new HashMap<String, String>());
+            this.defaultMQPushConsumerImpl.executeHookBefore(consumeMessageContext);
+        }
+
+        long beginTimestamp = System.currentTimeMillis();
+        ConsumeReturnType returnType = ConsumeReturnType.SUCCESS;
+        boolean hasException = false;
+        try {
+            consumeLock.lock();
+            if (processQueue.isDropped()) {
+                log.warn("consumeMessage, the message queue not be able to consume, because it's dropped. {}",
+                    messageQueue);
+                return null;
+            }
+
+            status = this.messageListener.consumeMessage(Collections.unmodifiableList(msgs), context);
+        } catch (Throwable e) {
+            log.warn(String.format("consumeMessage exception: %s Group: %s Msgs: %s MQ: %s",
+                RemotingHelper.exceptionSimpleDesc(e),
+                this.consumerGroup,
+                msgs,
+                messageQueue), e);
+            hasException = true;
+        } finally {
+            consumeLock.unlock();
+        }
+
+        if (null == status
+            || ConsumeOrderlyStatus.ROLLBACK == status
+            || ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT == status) {
+            log.warn("consumeMessage Orderly return not OK, Group: {} Msgs: {} MQ: {}",
+                this.consumerGroup,
+                msgs,
+                messageQueue);
+        }
+
+        long consumeRT = System.currentTimeMillis() - beginTimestamp;
+        if (null == status) {
+            if (hasException) {
+                returnType = ConsumeReturnType.EXCEPTION;
+            } else {
+                returnType = ConsumeReturnType.RETURNNULL;
+            }
+        } else if (consumeRT >= this.defaultMQPushConsumer.getConsumeTimeout() * 60 * 1000) {
+            returnType = ConsumeReturnType.TIME_OUT;
+        } else if (ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT == status) {
+            returnType = ConsumeReturnType.FAILED;
+        } else if (ConsumeOrderlyStatus.SUCCESS == status) {
+            returnType = ConsumeReturnType.SUCCESS;
+        }
+
+        if (this.defaultMQPushConsumerImpl.hasHook()) {
+            consumeMessageContext.getProps().put(MixAll.CONSUME_CONTEXT_TYPE, returnType.name());
+        }
+
+        if (null == status) {
+            status = ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT;
+        }
+
+        if (this.defaultMQPushConsumerImpl.hasHook()) {
+            consumeMessageContext.setStatus(status.toString());
+            consumeMessageContext
+                .setSuccess(ConsumeOrderlyStatus.SUCCESS == status || ConsumeOrderlyStatus.COMMIT == status);
+            this.defaultMQPushConsumerImpl.executeHookAfter(consumeMessageContext);
+        }
+
+        this.defaultMQPushConsumerImpl.getConsumerStatsManager()
+            .incConsumeRT(this.consumerGroup, messageQueue.getTopic(), consumeRT);
+        return status;
+    }
+
+    private int getMaxReconsumeTimes() {
+        // default reconsume times: Integer.MAX_VALUE
+        if (this.defaultMQPushConsumer.getMaxReconsumeTimes() == -1) {
+            return Integer.MAX_VALUE;
+        } else {
+            return this.defaultMQPushConsumer.getMaxReconsumeTimes();
+        }
+    }
+
+    /**
+     * @return true if the messages have to be consumed again, the messages over the max reconsume times are sent
+     * back to the broker instead
+     */
+    public boolean checkReconsumeTimes(List<MessageExt> msgs) {
+        boolean suspend = false;
+        if (msgs != null && !msgs.isEmpty()) {
+            for (MessageExt msg : msgs) {
+                if (msg.getReconsumeTimes() >= getMaxReconsumeTimes()) {
+                    MessageAccessor.setReconsumeTime(msg, String.valueOf(msg.getReconsumeTimes()));
+                    if (!sendMessageBack(msg)) {
+                        suspend = true;
+                        msg.setReconsumeTimes(msg.getReconsumeTimes() + 1);
+                    }
+                } else {
+                    suspend = true;
+                    msg.setReconsumeTimes(msg.getReconsumeTimes() + 1);
+                }
+            }
+        }
+        return suspend;
+    }
+
+    public boolean sendMessageBack(final MessageExt msg) {
+        try {
+            // max reconsume times exceeded then send to dead letter queue.
+            Message newMsg = new Message(MixAll.getRetryTopic(this.defaultMQPushConsumer.getConsumerGroup()), msg.getBody());
+            String originMsgId = MessageAccessor.getOriginMessageId(msg);
+            MessageAccessor.setOriginMessageId(newMsg, UtilAll.isBlank(originMsgId) ? msg.getMsgId() : originMsgId);
+            newMsg.setFlag(msg.getFlag());
+            MessageAccessor.setProperties(newMsg, msg.getProperties());
+            MessageAccessor.putProperty(newMsg, MessageConst.PROPERTY_RETRY_TOPIC, msg.getTopic());
+            MessageAccessor.setReconsumeTime(newMsg, String.valueOf(msg.getReconsumeTimes()));
+            MessageAccessor.setMaxReconsumeTimes(newMsg, String.valueOf(getMaxReconsumeTimes()));
+            MessageAccessor.clearProperty(newMsg, MessageConst.PROPERTY_TRANSACTION_PREPARED);
+            newMsg.setDelayTimeLevel(3 + msg.getReconsumeTimes());
+
+            this.defaultMQPushConsumer.getDefaultMQPushConsumerImpl().getmQClientFactory().getDefaultMQProducer().send(newMsg);
+            return true;
+        } catch (Exception e) {
+            log.error("sendMessageBack exception, group: " + this.consumerGroup + " msg: " + msg.toString(), e);
+        }
+
+        return false;
+    }
+}
@@ -101,6 +101,10 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
      * Flow control interval
      */
     private static final long PULL_TIME_DELAY_MILLS_WHEN_FLOW_CONTROL = 50;
+    /**
+     * Longest time a pull request is suspended by flow control, it is resumed sooner when the messages are consumed
+     */
+    private static final long PULL_RESUME_TIMEOUT_MILLS_WHEN_FLOW_CONTROL = 1000;
     /**
      * Delay some time when suspend pull service
      */
@@ -125,6 +129,7 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
     private ConsumeMessageService consumeMessagePopService;
     private long queueFlowControlTimes = 0;
     private long queueMaxSpanFlowControlTimes = 0;
+    private long memoryBudgetFlowControlTimes = 0;
 
     //10s 30s 1m 2m 3m 4m 5m 6m 7m 8m 9m 10m 20m 30m 1h 2h
     private int[] popDelayLevel = new int[] {10, 30, 60, 120, 180, 240, 300, 360, 420, 480, 540, 600, 1200, 1800, 3600, 7200};
@@ -260,33 +265,44 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
         long cachedMessageCount = processQueue.getMsgCount().get();
         long cachedMessageSizeInMiB = processQueue.getMsgSize().get() / (1024 * 1024);
 
-        if (cachedMessageCount > this.defaultMQPushConsumer.getPullThresholdForQueue()) {
-            this.executePullRequestLater(pullRequest, PULL_TIME_DELAY_MILLS_WHEN_FLOW_CONTROL);
+        int pullThresholdForQueue = this.defaultMQPushConsumer.getPullThresholdForQueue();
+        int pullBatchSize = this.defaultMQPushConsumer.getPullBatchSize();
+        if (this.defaultMQPushConsumer.isPullAdaptiveEnable()) {
+            AdaptivePullSizer pullSizer = processQueue.getPullSizer();
+            pullSizer.sample(processQueue.getMsgConsumedTotal(), System.currentTimeMillis());
+            int prefetchDepth = pullSizer.prefetchDepth(pullBatchSize, pullThresholdForQueue);
+            // leave room for half a batch at least, not to pull a few messages each time one is consumed
+            pullThresholdForQueue = prefetchDepth - pullBatchSize / 2;
+            pullBatchSize = pullSizer.batchSize(cachedMessageCount, prefetchDepth, pullBatchSize);
+        }
+
+        if (cachedMessageCount > pullThresholdForQueue) {
+            this.suspendPullRequest(pullRequest, pullThresholdForQueue);
             if ((queueFlowControlTimes++ % 1000) == 0) {
                 log.warn(
                     "the cached message count exceeds the threshold {}, so do flow control, minOffset={}, maxOffset={}, count={}, size={} MiB, pullRequest={}, flowControlTimes={}",
-                    this.defaultMQPushConsumer.getPullThresholdForQueue(), processQueue.getMsgTreeMap().firstKey(), processQueue.getMsgTreeMap().lastKey(), cachedMessageCount, cachedMessageSizeInMiB, pullRequest, queueFlowControlTimes);
+                    pullThresholdForQueue, processQueue.getCachedMsgMinOffset(), processQueue.getCachedMsgMaxOffset(), cachedMessageCount, cachedMessageSizeInMiB, pullRequest, queueFlowControlTimes);
             }
             return;
         }
 
         if (cachedMessageSizeInMiB > this.defaultMQPushConsumer.getPullThresholdSizeForQueue()) {
-            this.executePullRequestLater(pullRequest, PULL_TIME_DELAY_MILLS_WHEN_FLOW_CONTROL);
+            this.suspendPullRequest(pullRequest, cachedMessageCount / 2);
             if ((queueFlowControlTimes++ % 1000) == 0) {
                 log.warn(
                     "the cached message size exceeds the threshold {} MiB, so do flow control, minOffset={}, maxOffset={}, count={}, size={} MiB, pullRequest={}, flowControlTimes={}",
-                    this.defaultMQPushConsumer.getPullThresholdSizeForQueue(), processQueue.getMsgTreeMap().firstKey(), processQueue.getMsgTreeMap().lastKey(), cachedMessageCount, cachedMessageSizeInMiB, pullRequest, queueFlowControlTimes);
+                    this.defaultMQPushConsumer.getPullThresholdSizeForQueue(), processQueue.getCachedMsgMinOffset(), processQueue.getCachedMsgMaxOffset(), cachedMessageCount, cachedMessageSizeInMiB, pullRequest, queueFlowControlTimes);
             }
             return;
         }
 
         if (!this.consumeOrderly) {
             if (processQueue.getMaxSpan() > this.defaultMQPushConsumer.getConsumeConcurrentlyMaxSpan()) {
-                this.executePullRequestLater(pullRequest, PULL_TIME_DELAY_MILLS_WHEN_FLOW_CONTROL);
+                this.suspendPullRequest(pullRequest, cachedMessageCount / 2);
                 if ((queueMaxSpanFlowControlTimes++ % 1000) == 0) {
                     log.warn(
                         "the queue's messages, span too long, so do flow control, minOffset={}, maxOffset={}, maxSpan={}, pullRequest={}, flowControlTimes={}",
-                        processQueue.getMsgTreeMap().firstKey(), processQueue.getMsgTreeMap().lastKey(), processQueue.getMaxSpan(),
+                        processQueue.getCachedMsgMinOffset(), processQueue.getCachedMsgMaxOffset(), processQueue.getMaxSpan(),
                         pullRequest, queueMaxSpanFlowControlTimes);
                 }
                 return;
@@ -327,14 +343,37 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
             return;
         }
 
+        long reserved = 0;
+        PullMemoryBudget pullMemoryBudget = this.mQClientFactory.getPullMemoryBudget();
+        if (pullMemoryBudget != null) {
+            reserved = pullMemoryBudget.tryReserve(processQueue, this.defaultMQPushConsumer.getPullMemoryBudgetWeight(), pullBatchSize);
+            if (reserved < 0) {
+                if (cachedMessageCount > 0) {
+                    this.suspendPullRequest(pullRequest, cachedMessageCount / 2);
+                } else {
+                    this.executePullRequestLater(pullRequest, PULL_TIME_DELAY_MILLS_WHEN_FLOW_CONTROL);
+                }
+                if ((memoryBudgetFlowControlTimes++ % 1000) == 0) {
+                    log.warn(
+                        "the memory budget of the client is exhausted, so do flow control, capacity={}, used={}, reserved={}, count={}, size={} MiB, pullRequest={}, flowControlTimes={}",
+                        pullMemoryBudget.getCapacity(), pullMemoryBudget.getUsed(), pullMemoryBudget.getReserved(), cachedMessageCount, cachedMessageSizeInMiB, pullRequest, memoryBudgetFlowControlTimes);
+                }
+                return;
+            }
+        }
+        final long reservedBytes = reserved;
+
         final long beginTimestamp = System.currentTimeMillis();
 
         PullCallback pullCallback = new PullCallback() {
             @Override
             public void onSuccess(PullResult pullResult) {
-                if (pullResult != null) {
+                if (null == pullResult) {
+                    DefaultMQPushConsumerImpl.this.releasePullMemory(reservedBytes, null);
+                } else {
                     pullResult = DefaultMQPushConsumerImpl.this.pullAPIWrapper.processPullResult(pullRequest.getMessageQueue(), pullResult,
                         subscriptionData);
+                    DefaultMQPushConsumerImpl.this.releasePullMemory(reservedBytes, pullResult.getMsgFoundList());
 
                     switch (pullResult.getPullStatus()) {
                         case FOUND:
@@ -343,6 +382,7 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
                             long pullRT = System.currentTimeMillis() - beginTimestamp;
                             DefaultMQPushConsumerImpl.this.getConsumerStatsManager().incPullRT(pullRequest.getConsumerGroup(),
                                 pullRequest.getMessageQueue().getTopic(), pullRT);
+                            processQueue.getPullSizer().onPullRT(pullRT);
 
                             long firstMsgOffset = Long.MAX_VALUE;
                             if (pullResult.getMsgFoundList() == null || pullResult.getMsgFoundList().isEmpty()) {
@@ -419,6 +459,7 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
 
             @Override
             public void onException(Throwable e) {
+                DefaultMQPushConsumerImpl.this.releasePullMemory(reservedBytes, null);
                 if (!pullRequest.getMessageQueue().getTopic().startsWith(MixAll.RETRY_GROUP_TOPIC_PREFIX)) {
                     log.warn("execute the pull request exception", e);
                 }
@@ -460,7 +501,7 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
                 subscriptionData.getExpressionType(),
                 subscriptionData.getSubVersion(),
                 pullRequest.getNextOffset(),
-                this.defaultMQPushConsumer.getPullBatchSize(),
+                pullBatchSize,
                 sysFlag,
                 commitOffsetValue,
                 BROKER_SUSPEND_MAX_TIME_MILLIS,
@@ -470,10 +511,25 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
             );
         } catch (Exception e) {
             log.error("pullKernelImpl exception", e);
+            this.releasePullMemory(reservedBytes, null);
             this.executePullRequestLater(pullRequest, pullTimeDelayMillsWhenException);
         }
     }
 
+    private void releasePullMemory(final long reservedBytes, final List<MessageExt> msgs) {
+        PullMemoryBudget pullMemoryBudget = this.mQClientFactory.getPullMemoryBudget();
+        if (null == pullMemoryBudget) {
+            return;
+        }
+        long pulledBytes = 0;
+        if (msgs != null) {
+            for (MessageExt msg : msgs) {
+                pulledBytes += msg.getBody().length;
+            }
+        }
+        pullMemoryBudget.release(reservedBytes, pulledBytes);
+    }
+
     void popMessage(final PopRequest popRequest) {
         final PopProcessQueue processQueue = popRequest.getPopProcessQueue();
         if (processQueue.isDropped()) {
@@ -646,6 +702,26 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
         }
     }
 
+    /**
+     * Suspends the pull request until its process queue drops to {@code resumeCount} cached messages, or for
+     * {@link #PULL_RESUME_TIMEOUT_MILLS_WHEN_FLOW_CONTROL} at most.
+     */
+    private void suspendPullRequest(final PullRequest pullRequest, final long resumeCount) {
+        final ProcessQueue processQueue = pullRequest.getProcessQueue();
+        processQueue.suspendPull(resumeCount, new Runnable() {
+            @Override
+            public void run() {
+                DefaultMQPushConsumerImpl.this.executePullRequestImmediately(pullRequest);
+            }
+        });
+        this.executeTaskLater(new Runnable() {
+            @Override
+            public void run() {
+                processQueue.resumePull();
+            }
+        }, PULL_RESUME_TIMEOUT_MILLS_WHEN_FLOW_CONTROL);
+    }
+
     void executePullRequestLater(final PullRequest pullRequest, final long timeDelay) {
         this.mQClientFactory.getPullMessageService().executePullRequestLater(pullRequest, timeDelay);
     }
@@ -824,6 +900,9 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
             case RUNNING:
                 this.consumeMessageService.shutdown(awaitTerminateMillis);
                 this.persistConsumerOffset();
+                if (this.isCooperativeRebalance()) {
+                    this.rebalanceImpl.unlockAll(false);
+                }
                 this.mQClientFactory.unregisterConsumer(this.defaultMQPushConsumer.getConsumerGroup());
                 this.mQClientFactory.shutdown();
                 log.info("the consumer [{}] shutdown OK", this.defaultMQPushConsumer.getConsumerGroup());
@@ -885,8 +964,13 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
 
                 if (this.getMessageListenerInner() instanceof MessageListenerOrderly) {
                     this.consumeOrderly = true;
-                    this.consumeMessageService =
-                        new ConsumeMessageOrderlyService(this, (MessageListenerOrderly) this.getMessageListenerInner());
+                    if (this.defaultMQPushConsumer.getConsumeOrderlyKeyParallelism() > 1) {
+                        this.consumeMessageService =
+                            new ConsumeMessageKeyOrderlyService(this, (MessageListenerOrderly) this.getMessageListenerInner());
+                    } else {
+                        this.consumeMessageService =
+                            new ConsumeMessageOrderlyService(this, (MessageListenerOrderly) this.getMessageListenerInner());
+                    }
                     //POPTODO reuse Executor ?
                     this.consumeMessagePopService = new ConsumeMessagePopOrderlyService(this, (MessageListenerOrderly) this.getMessageListenerInner());
                 } else if (this.getMessageListenerInner() instanceof MessageListenerConcurrently) {
@@ -1093,6 +1177,23 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
                 null);
         }
 
+        // consumeOrderlyKeyParallelism
+        if (this.defaultMQPushConsumer.getConsumeOrderlyKeyParallelism() < 1
+            || this.defaultMQPushConsumer.getConsumeOrderlyKeyParallelism() > 1024) {
+            throw new MQClientException(
+                "consumeOrderlyKeyParallelism Out of range [1, 1024]"
+                    + FAQUrl.suggestTodo(FAQUrl.CLIENT_PARAMETER_CHECK_URL),
+                null);
+        }
+
+        // pullMemoryBudgetWeight
+        if (this.defaultMQPushConsumer.getPullMemoryBudgetWeight() < 1) {
+            throw new MQClientException(
+                "pullMemoryBudgetWeight Out of range [1, Integer.MAX_VALUE]"
+                    + FAQUrl.suggestTodo(FAQUrl.CLIENT_PARAMETER_CHECK_URL),
+                null);
+        }
+
         // pullBatchSize
         if (this.defaultMQPushConsumer.getPullBatchSize() < 1 || this.defaultMQPushConsumer.getPullBatchSize() > 1024) {
             throw new MQClientException(
@@ -1253,6 +1354,14 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
         this.consumeOrderly = consumeOrderly;
     }
 
+    /**
+     * @return whether the queues consumed concurrently are handed off through their broker locks
+     */
+    public boolean isCooperativeRebalance() {
+        return !this.consumeOrderly && this.defaultMQPushConsumer.isCooperativeRebalance()
+            && MessageModel.CLUSTERING.equals(this.defaultMQPushConsumer.getMessageModel());
+    }
+
     public void resetOffsetByTimeStamp(long timeStamp)
         throws RemotingException, MQBrokerException, InterruptedException, MQClientException {
         for (String topic : rebalanceImpl.getSubscriptionInner().keySet()) {
@@ -1304,7 +1413,7 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
     @Override
     public void doRebalance() {
         if (!this.pause) {
-            this.rebalanceImpl.doRebalance(this.isConsumeOrderly());
+            this.rebalanceImpl.doRebalance(this.isConsumeOrderly() || this.isCooperativeRebalance());
         }
     }
 
@@ -1358,6 +1467,13 @@ public class DefaultMQPushConsumerImpl implements MQConsumerInner {
         prop.put(ConsumerRunningInfo.PROP_CONSUME_ORDERLY, String.valueOf(this.consumeOrderly));
         prop.put(ConsumerRunningInfo.PROP_THREADPOOL_CORE_SIZE, String.valueOf(this.consumeMessageService.getCorePoolSize()));
         prop.put(ConsumerRunningInfo.PROP_CONSUMER_START_TIMESTAMP, String.valueOf(this.consumerStartTimestamp));
+        PullMemoryBudget pullMemoryBudget = this.mQClientFactory != null ? this.mQClientFactory.getPullMemoryBudget() : null;
+        if (pullMemoryBudget != null) {
+            prop.put(ConsumerRunningInfo.PROP_PULL_MEMORY_BUDGET_CAPACITY, String.valueOf(pullMemoryBudget.getCapacity()));
+            prop.put(ConsumerRunningInfo.PROP_PULL_MEMORY_BUDGET_USED, String.valueOf(pullMemoryBudget.getUsed()));
+            prop.put(ConsumerRunningInfo.PROP_PULL_MEMORY_BUDGET_RESERVED, String.valueOf(pullMemoryBudget.getReserved()));
+            prop.put(ConsumerRunningInfo.PROP_PULL_MEMORY_BUDGET_REJECTED_TIMES, String.valueOf(pullMemoryBudget.getRejectedTimes()));
+        }
 
         info.setProperties(prop);
 
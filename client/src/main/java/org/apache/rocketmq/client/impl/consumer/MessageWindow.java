@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.client.impl.consumer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.apache.rocketmq.common.message.MessageExt;
+
+/**
+ * Messages cached by a {@link ProcessQueue}, each one in the slot of its queue offset. Slots are allocated in segments
+ * of {@link #SEGMENT_SIZE}, so the offsets the broker skips, e.g. filtered by tag, cost at most an empty slot.
+ * <p>
+ * Appends come in increasing offset order and must be serialized by the caller. A message is completed by clearing
+ * its slot, and the lowest offset not completed yet is found by moving a cursor over the cleared slots, so completing
+ * and reading the committed offset take no lock and cost O(1) amortized.
+ * <p>
+ * For orderly consumption a take cursor marks the messages handed out but not committed yet, they keep their slot
+ * until {@link #commit()} clears them and move back on {@link #rollback()}. The take methods must be serialized by
+ * the caller too.
+ */
+class MessageWindow {
+    static final int SEGMENT_SHIFT = 10;
+    static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final ConcurrentSkipListMap<Long /* offset >> SEGMENT_SHIFT */, AtomicReferenceArray<MessageExt>> segments =
+        new ConcurrentSkipListMap<Long, AtomicReferenceArray<MessageExt>>();
+
+    /**
+     * Every offset below is completed
+     */
+    private final AtomicLong ackCursor = new AtomicLong(-1);
+    private volatile long maxOffset = -1;
+
+    private AtomicReferenceArray<MessageExt> lastSegment;
+    private long lastSegmentIndex = -1;
+
+    /**
+     * Every offset below is taken, only used by orderly consumption
+     */
+    private long takeCursor = -1;
+    private int takenCount;
+    private long takenMaxOffset = -1;
+
+    /**
+     * @return false if the offset of the message is not above the ones already appended
+     */
+    boolean append(final MessageExt msg) {
+        long offset = msg.getQueueOffset();
+        if (offset <= this.maxOffset) {
+            return false;
+        }
+
+        long index = offset >> SEGMENT_SHIFT;
+        if (index != this.lastSegmentIndex) {
+            this.lastSegment = new AtomicReferenceArray<MessageExt>(SEGMENT_SIZE);
+            this.lastSegmentIndex = index;
+            this.segments.put(index, this.lastSegment);
+        }
+        this.lastSegment.set((int) (offset & SEGMENT_MASK), msg);
+
+        if (this.ackCursor.get() < 0) {
+            this.ackCursor.set(offset);
+            this.takeCursor = offset;
+        }
+        this.maxOffset = offset;
+        return true;
+    }
+
+    /**
+     * @return the message completed, null if it is not in the window
+     */
+    MessageExt complete(final long offset) {
+        AtomicReferenceArray<MessageExt> segment = this.segments.get(offset >> SEGMENT_SHIFT);
+        if (null == segment) {
+            return null;
+        }
+        return segment.getAndSet((int) (offset & SEGMENT_MASK), null);
+    }
+
+    /**
+     * @return the lowest offset not completed, {@link #getMaxOffset()} + 1 if every message is completed
+     */
+    long firstPendingOffset() {
+        long max = this.maxOffset;
+        long start = this.ackCursor.get();
+        if (start < 0) {
+            return max + 1;
+        }
+
+        long cursor = this.firstOffset(start, max);
+        long current = start;
+        while (cursor > current && !this.ackCursor.compareAndSet(current, cursor)) {
+            current = this.ackCursor.get();
+        }
+        if ((cursor >> SEGMENT_SHIFT) > (start >> SEGMENT_SHIFT)) {
+            // the segments passed are empty and never appended to again
+            this.segments.headMap(cursor >> SEGMENT_SHIFT).clear();
+        }
+        return cursor;
+    }
+
+    /**
+     * @return the first offset from {@code from} whose slot is filled, or {@code max} + 1
+     */
+    private long firstOffset(final long from, final long max) {
+        long cursor = from;
+        AtomicReferenceArray<MessageExt> segment = null;
+        long segmentIndex = -1;
+        while (cursor <= max) {
+            long index = cursor >> SEGMENT_SHIFT;
+            if (index != segmentIndex) {
+                segmentIndex = index;
+                segment = this.segments.get(index);
+                if (null == segment) {
+                    Long next = this.segments.higherKey(index);
+                    if (null == next) {
+                        return max + 1;
+                    }
+                    cursor = next << SEGMENT_SHIFT;
+                    continue;
+                }
+            }
+            if (segment.get((int) (cursor & SEGMENT_MASK)) != null) {
+                return cursor;
+            }
+            cursor++;
+        }
+        return max + 1;
+    }
+
+    MessageExt get(final long offset) {
+        AtomicReferenceArray<MessageExt> segment = this.segments.get(offset >> SEGMENT_SHIFT);
+        return segment != null ? segment.get((int) (offset & SEGMENT_MASK)) : null;
+    }
+
+    long getMaxOffset() {
+        return maxOffset;
+    }
+
+    /**
+     * @return up to {@code batchSize} messages from the take cursor, which moves past them
+     */
+    List<MessageExt> take(final int batchSize) {
+        List<MessageExt> result = new ArrayList<MessageExt>(batchSize);
+        long max = this.maxOffset;
+        long cursor = Math.max(this.takeCursor, this.ackCursor.get());
+        while (result.size() < batchSize) {
+            cursor = this.firstOffset(cursor, max);
+            if (cursor > max) {
+                break;
+            }
+            MessageExt msg = this.get(cursor);
+            if (msg != null) {
+                result.add(msg);
+                this.takenMaxOffset = cursor;
+            }
+            cursor++;
+        }
+        this.takeCursor = cursor;
+        this.takenCount += result.size();
+        return result;
+    }
+
+    boolean hasUntaken() {
+        long max = this.maxOffset;
+        return this.firstOffset(Math.max(this.takeCursor, this.firstPendingOffset()), max) <= max;
+    }
+
+    /**
+     * Completes the messages taken
+     *
+     * @return the messages completed
+     */
+    List<MessageExt> commit() {
+        List<MessageExt> result = new ArrayList<MessageExt>(this.takenCount);
+        long cursor = this.ackCursor.get();
+        while (cursor >= 0 && cursor < this.takeCursor) {
+            cursor = this.firstOffset(cursor, this.takeCursor - 1);
+            if (cursor >= this.takeCursor) {
+                break;
+            }
+            MessageExt msg = this.complete(cursor);
+            if (msg != null) {
+                result.add(msg);
+            }
+            cursor++;
+        }
+        this.takenCount = 0;
+        this.takenMaxOffset = -1;
+        this.firstPendingOffset();
+        return result;
+    }
+
+    void rollback() {
+        this.takeCursor = this.ackCursor.get();
+        this.takenCount = 0;
+        this.takenMaxOffset = -1;
+    }
+
+    /**
+     * Moves the take cursor back to the first of the messages, the messages taken after are taken again too.
+     */
+    void untake(final List<MessageExt> msgs) {
+        for (MessageExt msg : msgs) {
+            if (msg.getQueueOffset() < this.takeCursor && this.get(msg.getQueueOffset()) != null) {
+                this.takeCursor = msg.getQueueOffset();
+            }
+        }
+        this.takenCount = 0;
+        this.takenMaxOffset = -1;
+        long cursor = this.ackCursor.get();
+        while (cursor >= 0 && cursor < this.takeCursor) {
+            cursor = this.firstOffset(cursor, this.takeCursor - 1);
+            if (cursor < this.takeCursor) {
+                this.takenCount++;
+                this.takenMaxOffset = cursor;
+                cursor++;
+            }
+        }
+    }
+
+    int getTakenCount() {
+        return takenCount;
+    }
+
+    long getTakenMaxOffset() {
+        return takenMaxOffset;
+    }
+
+    long getTakeCursor() {
+        return Math.max(this.takeCursor, this.ackCursor.get());
+    }
+
+    /**
+     * @return the messages from {@code from}, in offset order
+     */
+    TreeMap<Long, MessageExt> snapshot(final long from) {
+        TreeMap<Long, MessageExt> result = new TreeMap<Long, MessageExt>();
+        for (Map.Entry<Long, AtomicReferenceArray<MessageExt>> entry : this.segments.entrySet()) {
+            AtomicReferenceArray<MessageExt> segment = entry.getValue();
+            for (int i = 0; i < SEGMENT_SIZE; i++) {
+                MessageExt msg = segment.get(i);
+                if (msg != null && msg.getQueueOffset() >= from) {
+                    result.put(msg.getQueueOffset(), msg);
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -16,15 +16,13 @@
  */
 package org.apache.rocketmq.client.impl.consumer;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
@@ -44,17 +42,20 @@ public class ProcessQueue {
     public final static long REBALANCE_LOCK_INTERVAL = Long.parseLong(System.getProperty("rocketmq.client.rebalance.lockInterval", "20000"));
     private final static long PULL_MAX_IDLE_TIME = Long.parseLong(System.getProperty("rocketmq.client.pull.pullMaxIdleTime", "120000"));
     private final InternalLogger log = ClientLogger.getLog();
-    private final ReadWriteLock treeMapLock = new ReentrantReadWriteLock();
-    private final TreeMap<Long, MessageExt> msgTreeMap = new TreeMap<Long, MessageExt>();
+    /**
+     * Serializes the appends and the orderly takes of {@link #msgWindow}, the concurrent consumption completes
+     * messages without it
+     */
+    private final ReadWriteLock windowLock = new ReentrantReadWriteLock();
+    private volatile MessageWindow msgWindow = new MessageWindow();
     private final AtomicLong msgCount = new AtomicLong();
     private final AtomicLong msgSize = new AtomicLong();
-    private final Lock consumeLock = new ReentrantLock();
     /**
-     * A subset of msgTreeMap, will only be used when orderly consume
+     * Held while the listener consumes the messages of an orderly queue, exclusively by the orderly consumption and
+     * by the rebalance before unlocking the queue on the broker, shared by the lanes of the key orderly consumption
      */
-    private final TreeMap<Long, MessageExt> consumingMsgOrderlyTreeMap = new TreeMap<Long, MessageExt>();
+    private final ReadWriteLock consumeLock = new ReentrantReadWriteLock();
     private final AtomicLong tryUnlockTimes = new AtomicLong(0);
-    private volatile long queueOffsetMax = 0L;
     private volatile boolean dropped = false;
     private volatile long lastPullTimestamp = System.currentTimeMillis();
     private volatile long lastConsumeTimestamp = System.currentTimeMillis();
@@ -62,6 +63,16 @@ public class ProcessQueue {
     private volatile long lastLockTimestamp = System.currentTimeMillis();
     private volatile boolean consuming = false;
     private volatile long msgAccCnt = 0;
+    /**
+     * Messages consumed since the queue was assigned
+     */
+    private final AtomicLong msgConsumedTotal = new AtomicLong();
+    private final AdaptivePullSizer pullSizer = new AdaptivePullSizer();
+    /**
+     * Pull suspended by flow control, run once the cached messages drop to {@link #pullResumeCount}
+     */
+    private final AtomicReference<Runnable> pullResumeTask = new AtomicReference<Runnable>();
+    private volatile long pullResumeCount = -1;
 
     public boolean isLockExpired() {
         return (System.currentTimeMillis() - this.lastLockTimestamp) > REBALANCE_LOCK_MAX_LIVE_TIME;
@@ -79,45 +90,19 @@ public class ProcessQueue {
             return;
         }
 
-        int loop = msgTreeMap.size() < 16 ? msgTreeMap.size() : 16;
+        int loop = msgCount.get() < 16 ? (int) msgCount.get() : 16;
         for (int i = 0; i < loop; i++) {
-            MessageExt msg = null;
-            try {
-                this.treeMapLock.readLock().lockInterruptibly();
-                try {
-                    if (!msgTreeMap.isEmpty() && System.currentTimeMillis() - Long.parseLong(MessageAccessor.getConsumeStartTimeStamp(msgTreeMap.firstEntry().getValue())) > pushConsumer.getConsumeTimeout() * 60 * 1000) {
-                        msg = msgTreeMap.firstEntry().getValue();
-                    } else {
-
-                        break;
-                    }
-                } finally {
-                    this.treeMapLock.readLock().unlock();
-                }
-            } catch (InterruptedException e) {
-                log.error("getExpiredMsg exception", e);
+            final MessageWindow window = this.msgWindow;
+            MessageExt msg = window.get(window.firstPendingOffset());
+            if (null == msg || System.currentTimeMillis() - Long.parseLong(MessageAccessor.getConsumeStartTimeStamp(msg)) <= pushConsumer.getConsumeTimeout() * 60 * 1000) {
+                break;
             }
 
             try {
 
                 pushConsumer.sendMessageBack(msg, 3);
                 log.info("send expire msg back. topic={}, msgId={}, storeHost={}, queueId={}, queueOffset={}", msg.getTopic(), msg.getMsgId(), msg.getStoreHost(), msg.getQueueId(), msg.getQueueOffset());
-                try {
-                    this.treeMapLock.writeLock().lockInterruptibly();
-                    try {
-                        if (!msgTreeMap.isEmpty() && msg.getQueueOffset() == msgTreeMap.firstKey()) {
-                            try {
-                                removeMessage(Collections.singletonList(msg));
-                            } catch (Exception e) {
-                                log.error("send expired msg exception", e);
-                            }
-                        }
-                    } finally {
-                        this.treeMapLock.writeLock().unlock();
-                    }
-                } catch (InterruptedException e) {
-                    log.error("getExpiredMsg exception", e);
-                }
+                removeMessage(Collections.singletonList(msg));
             } catch (Exception e) {
                 log.error("send expired msg exception", e);
             }
@@ -127,20 +112,18 @@ public class ProcessQueue {
     public boolean putMessage(final List<MessageExt> msgs) {
         boolean dispatchToConsume = false;
         try {
-            this.treeMapLock.writeLock().lockInterruptibly();
+            this.windowLock.writeLock().lockInterruptibly();
             try {
                 int validMsgCnt = 0;
                 for (MessageExt msg : msgs) {
-                    MessageExt old = msgTreeMap.put(msg.getQueueOffset(), msg);
-                    if (null == old) {
+                    if (this.msgWindow.append(msg)) {
                         validMsgCnt++;
-                        this.queueOffsetMax = msg.getQueueOffset();
                         msgSize.addAndGet(msg.getBody().length);
                     }
                 }
                 msgCount.addAndGet(validMsgCnt);
 
-                if (!msgTreeMap.isEmpty() && !this.consuming) {
+                if (!this.consuming && this.msgWindow.hasUntaken()) {
                     dispatchToConsume = true;
                     this.consuming = true;
                 }
@@ -156,7 +139,7 @@ public class ProcessQueue {
                     }
                 }
             } finally {
-                this.treeMapLock.writeLock().unlock();
+                this.windowLock.writeLock().unlock();
             }
         } catch (InterruptedException e) {
             log.error("putMessage exception", e);
@@ -166,63 +149,112 @@ public class ProcessQueue {
     }
 
     public long getMaxSpan() {
-        try {
-            this.treeMapLock.readLock().lockInterruptibly();
-            try {
-                if (!this.msgTreeMap.isEmpty()) {
-                    return this.msgTreeMap.lastKey() - this.msgTreeMap.firstKey();
-                }
-            } finally {
-                this.treeMapLock.readLock().unlock();
-            }
-        } catch (InterruptedException e) {
-            log.error("getMaxSpan exception", e);
-        }
-
-        return 0;
+        final MessageWindow window = this.msgWindow;
+        long maxOffset = window.getMaxOffset();
+        long firstOffset = window.firstPendingOffset();
+        return firstOffset <= maxOffset ? maxOffset - firstOffset : 0;
     }
 
     public long removeMessage(final List<MessageExt> msgs) {
         long result = -1;
         final long now = System.currentTimeMillis();
+        this.lastConsumeTimestamp = now;
         try {
-            this.treeMapLock.writeLock().lockInterruptibly();
-            this.lastConsumeTimestamp = now;
-            try {
-                if (!msgTreeMap.isEmpty()) {
-                    result = this.queueOffsetMax + 1;
-                    int removedCnt = 0;
-                    for (MessageExt msg : msgs) {
-                        MessageExt prev = msgTreeMap.remove(msg.getQueueOffset());
-                        if (prev != null) {
-                            removedCnt--;
-                            msgSize.addAndGet(0 - msg.getBody().length);
-                        }
-                    }
-                    msgCount.addAndGet(removedCnt);
-
-                    if (!msgTreeMap.isEmpty()) {
-                        result = msgTreeMap.firstKey();
+            if (msgCount.get() > 0) {
+                final MessageWindow window = this.msgWindow;
+                int removedCnt = 0;
+                for (MessageExt msg : msgs) {
+                    MessageExt prev = window.complete(msg.getQueueOffset());
+                    if (prev != null) {
+                        removedCnt--;
+                        msgSize.addAndGet(0 - msg.getBody().length);
                     }
                 }
-            } finally {
-                this.treeMapLock.writeLock().unlock();
+                msgCount.addAndGet(removedCnt);
+                msgConsumedTotal.addAndGet(0 - removedCnt);
+
+                result = window.firstPendingOffset();
             }
         } catch (Throwable t) {
             log.error("removeMessage exception", t);
         }
+        this.tryResumePull();
 
         return result;
     }
 
+    /**
+     * @return a copy of the messages cached and not taken by the orderly consumption, in offset order
+     * @deprecated it copies the whole cache, use {@link #getMsgCount()}, {@link #getCachedMsgMinOffset()} and
+     * {@link #getCachedMsgMaxOffset()} instead
+     */
+    @Deprecated
     public TreeMap<Long, MessageExt> getMsgTreeMap() {
-        return msgTreeMap;
+        final MessageWindow window = this.msgWindow;
+        return window.snapshot(window.getTakeCursor());
+    }
+
+    /**
+     * @return the lowest offset cached and not taken by the orderly consumption, -1 if there is none
+     */
+    public long getCachedMsgMinOffset() {
+        final MessageWindow window = this.msgWindow;
+        window.firstPendingOffset();
+        long offset = window.getTakeCursor();
+        return offset >= 0 && offset <= window.getMaxOffset() ? offset : -1;
+    }
+
+    /**
+     * @return the highest offset cached, -1 if there is none
+     */
+    public long getCachedMsgMaxOffset() {
+        return msgCount.get() > 0 ? this.msgWindow.getMaxOffset() : -1;
     }
 
     public AtomicLong getMsgCount() {
         return msgCount;
     }
 
+    public long getMsgConsumedTotal() {
+        return msgConsumedTotal.get();
+    }
+
+    AdaptivePullSizer getPullSizer() {
+        return pullSizer;
+    }
+
+    /**
+     * Suspends the pull of this queue until the messages cached drop to {@code resumeCount}, instead of retrying it
+     * periodically while flow controlled.
+     *
+     * @param resumeTask run once, by the thread consuming the message that resumes the pull or by
+     * {@link #resumePull()}
+     */
+    public void suspendPull(final long resumeCount, final Runnable resumeTask) {
+        this.pullResumeCount = resumeCount;
+        this.pullResumeTask.set(resumeTask);
+        // the messages may have been consumed before the task was set
+        this.tryResumePull();
+    }
+
+    /**
+     * @return false if the pull is not suspended
+     */
+    public boolean resumePull() {
+        Runnable task = this.pullResumeTask.getAndSet(null);
+        if (null == task) {
+            return false;
+        }
+        task.run();
+        return true;
+    }
+
+    private void tryResumePull() {
+        if (this.pullResumeTask.get() != null && this.msgCount.get() <= this.pullResumeCount) {
+            this.resumePull();
+        }
+    }
+
     public AtomicLong getMsgSize() {
         return msgSize;
     }
@@ -245,12 +277,11 @@ public class ProcessQueue {
 
     public void rollback() {
         try {
-            this.treeMapLock.writeLock().lockInterruptibly();
+            this.windowLock.writeLock().lockInterruptibly();
             try {
-                this.msgTreeMap.putAll(this.consumingMsgOrderlyTreeMap);
-                this.consumingMsgOrderlyTreeMap.clear();
+                this.msgWindow.rollback();
             } finally {
-                this.treeMapLock.writeLock().unlock();
+                this.windowLock.writeLock().unlock();
             }
         } catch (InterruptedException e) {
             log.error("rollback exception", e);
@@ -259,19 +290,21 @@ public class ProcessQueue {
 
     public long commit() {
         try {
-            this.treeMapLock.writeLock().lockInterruptibly();
+            this.windowLock.writeLock().lockInterruptibly();
             try {
-                Long offset = this.consumingMsgOrderlyTreeMap.lastKey();
-                msgCount.addAndGet(0 - this.consumingMsgOrderlyTreeMap.size());
-                for (MessageExt msg : this.consumingMsgOrderlyTreeMap.values()) {
+                long offset = this.msgWindow.getTakenMaxOffset();
+                List<MessageExt> committed = this.msgWindow.commit();
+                msgCount.addAndGet(0 - committed.size());
+                msgConsumedTotal.addAndGet(committed.size());
+                for (MessageExt msg : committed) {
                     msgSize.addAndGet(0 - msg.getBody().length);
                 }
-                this.consumingMsgOrderlyTreeMap.clear();
-                if (offset != null) {
+                if (offset >= 0) {
                     return offset + 1;
                 }
             } finally {
-                this.treeMapLock.writeLock().unlock();
+                this.windowLock.writeLock().unlock();
+                this.tryResumePull();
             }
         } catch (InterruptedException e) {
             log.error("commit exception", e);
@@ -282,14 +315,11 @@ public class ProcessQueue {
 
     public void makeMessageToConsumeAgain(List<MessageExt> msgs) {
         try {
-            this.treeMapLock.writeLock().lockInterruptibly();
+            this.windowLock.writeLock().lockInterruptibly();
             try {
-                for (MessageExt msg : msgs) {
-                    this.consumingMsgOrderlyTreeMap.remove(msg.getQueueOffset());
-                    this.msgTreeMap.put(msg.getQueueOffset(), msg);
-                }
+                this.msgWindow.untake(msgs);
             } finally {
-                this.treeMapLock.writeLock().unlock();
+                this.windowLock.writeLock().unlock();
             }
         } catch (InterruptedException e) {
             log.error("makeMessageToCosumeAgain exception", e);
@@ -297,29 +327,19 @@ public class ProcessQueue {
     }
 
     public List<MessageExt> takeMessages(final int batchSize) {
-        List<MessageExt> result = new ArrayList<MessageExt>(batchSize);
+        List<MessageExt> result = Collections.emptyList();
         final long now = System.currentTimeMillis();
         try {
-            this.treeMapLock.writeLock().lockInterruptibly();
+            this.windowLock.writeLock().lockInterruptibly();
             this.lastConsumeTimestamp = now;
             try {
-                if (!this.msgTreeMap.isEmpty()) {
-                    for (int i = 0; i < batchSize; i++) {
-                        Map.Entry<Long, MessageExt> entry = this.msgTreeMap.pollFirstEntry();
-                        if (entry != null) {
-                            result.add(entry.getValue());
-                            consumingMsgOrderlyTreeMap.put(entry.getKey(), entry.getValue());
-                        } else {
-                            break;
-                        }
-                    }
-                }
+                result = this.msgWindow.take(batchSize);
 
                 if (result.isEmpty()) {
                     consuming = false;
                 }
             } finally {
-                this.treeMapLock.writeLock().unlock();
+                this.windowLock.writeLock().unlock();
             }
         } catch (InterruptedException e) {
             log.error("take Messages exception", e);
@@ -330,11 +350,11 @@ public class ProcessQueue {
 
     public boolean hasTempMessage() {
         try {
-            this.treeMapLock.readLock().lockInterruptibly();
+            this.windowLock.readLock().lockInterruptibly();
             try {
-                return !this.msgTreeMap.isEmpty();
+                return this.msgWindow.hasUntaken();
             } finally {
-                this.treeMapLock.readLock().unlock();
+                this.windowLock.readLock().unlock();
             }
         } catch (InterruptedException e) {
         }
@@ -344,15 +364,13 @@ public class ProcessQueue {
 
     public void clear() {
         try {
-            this.treeMapLock.writeLock().lockInterruptibly();
+            this.windowLock.writeLock().lockInterruptibly();
             try {
-                this.msgTreeMap.clear();
-                this.consumingMsgOrderlyTreeMap.clear();
+                this.msgWindow = new MessageWindow();
                 this.msgCount.set(0);
                 this.msgSize.set(0);
-                this.queueOffsetMax = 0L;
             } finally {
-                this.treeMapLock.writeLock().unlock();
+                this.windowLock.writeLock().unlock();
             }
         } catch (InterruptedException e) {
             log.error("rollback exception", e);
@@ -368,7 +386,11 @@ public class ProcessQueue {
     }
 
     public Lock getConsumeLock() {
-        return consumeLock;
+        return consumeLock.writeLock();
+    }
+
+    public Lock getConsumeSharedLock() {
+        return consumeLock.readLock();
     }
 
     public long getLastPullTimestamp() {
@@ -397,19 +419,22 @@ public class ProcessQueue {
 
     public void fillProcessQueueInfo(final ProcessQueueInfo info) {
         try {
-            this.treeMapLock.readLock().lockInterruptibly();
-
-            if (!this.msgTreeMap.isEmpty()) {
-                info.setCachedMsgMinOffset(this.msgTreeMap.firstKey());
-                info.setCachedMsgMaxOffset(this.msgTreeMap.lastKey());
-                info.setCachedMsgCount(this.msgTreeMap.size());
+            this.windowLock.readLock().lockInterruptibly();
+
+            final MessageWindow window = this.msgWindow;
+            int takenCount = window.getTakenCount();
+            long cachedMsgMinOffset = this.getCachedMsgMinOffset();
+            if (cachedMsgMinOffset >= 0) {
+                info.setCachedMsgMinOffset(cachedMsgMinOffset);
+                info.setCachedMsgMaxOffset(window.getMaxOffset());
+                info.setCachedMsgCount((int) (this.msgCount.get() - takenCount));
                 info.setCachedMsgSizeInMiB((int) (this.msgSize.get() / (1024 * 1024)));
             }
 
-            if (!this.consumingMsgOrderlyTreeMap.isEmpty()) {
-                info.setTransactionMsgMinOffset(this.consumingMsgOrderlyTreeMap.firstKey());
-                info.setTransactionMsgMaxOffset(this.consumingMsgOrderlyTreeMap.lastKey());
-                info.setTransactionMsgCount(this.consumingMsgOrderlyTreeMap.size());
+            if (takenCount > 0) {
+                info.setTransactionMsgMinOffset(window.firstPendingOffset());
+                info.setTransactionMsgMaxOffset(window.getTakenMaxOffset());
+                info.setTransactionMsgCount(takenCount);
             }
 
             info.setLocked(this.locked);
@@ -421,7 +446,7 @@ public class ProcessQueue {
             info.setLastConsumeTimestamp(this.lastConsumeTimestamp);
         } catch (Exception e) {
         } finally {
-            this.treeMapLock.readLock().unlock();
+            this.windowLock.readLock().unlock();
         }
     }
 
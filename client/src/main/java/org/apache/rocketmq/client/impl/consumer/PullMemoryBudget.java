@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.client.impl.consumer;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the message bodies cached by the {@link ProcessQueue}s of all the push consumers of a client instance.
+ * <p>
+ * A pull reserves the bytes it may bring before it is sent, and releases them when its result is cached. Each queue
+ * has a fair share of the budget, in proportion to the weight of its consumer. A queue may go over its share only
+ * while {@link #SHARED_RATIO} of the budget is not used, the rest is left to the queues under their share.
+ * <p>
+ * The bytes cached are summed over the queues at most every {@link #REFRESH_INTERVAL_MILLIS}, the bytes pulled since
+ * are counted on release, so the budget only lags behind the consumption.
+ */
+public class PullMemoryBudget {
+    static final long REFRESH_INTERVAL_MILLIS = 100;
+    static final double SHARED_RATIO = 0.8;
+    /**
+     * Size assumed for a message of a queue that caches none
+     */
+    static final long DEFAULT_MSG_SIZE = 1024;
+
+    private final long capacity;
+    private final ConcurrentMap<ProcessQueue, Integer> queueWeightTable = new ConcurrentHashMap<ProcessQueue, Integer>();
+    private final AtomicLong reserved = new AtomicLong(0);
+    private final AtomicLong pulledSinceRefresh = new AtomicLong(0);
+    private final AtomicLong rejectedTimes = new AtomicLong(0);
+    private volatile long cached = 0;
+    private volatile long totalWeight = 0;
+    private volatile long lastRefreshTimestamp = 0;
+
+    public PullMemoryBudget(final long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Reserves the bytes of a pull of {@code batchSize} messages for the queue. The weight of the queue is the one of
+     * its latest reserve, a weight changed by its consumer is taken into the shares at once.
+     *
+     * @param weight at least 1, a smaller one is taken as 1
+     * @return the bytes reserved, to give back to {@link #release(long, long)}, -1 if the budget is exhausted
+     */
+    public long tryReserve(final ProcessQueue processQueue, final int weight, final int batchSize) {
+        final int queueWeight = Math.max(weight, 1);
+        Integer prev = this.queueWeightTable.get(processQueue);
+        if (null == prev || prev != queueWeight) {
+            this.queueWeightTable.put(processQueue, queueWeight);
+            this.lastRefreshTimestamp = 0;
+        }
+        this.refreshIfNecessary(System.currentTimeMillis());
+
+        long cachedCount = processQueue.getMsgCount().get();
+        long queueSize = processQueue.getMsgSize().get();
+        long bytes = batchSize * (cachedCount > 0 ? Math.max(queueSize / cachedCount, 1) : DEFAULT_MSG_SIZE);
+
+        long used = this.getUsed() + this.reserved.get();
+        boolean overShare = queueSize + bytes > this.capacity * queueWeight / Math.max(this.totalWeight, queueWeight);
+        if (used + bytes > this.capacity || overShare && used + bytes > this.capacity * SHARED_RATIO) {
+            this.rejectedTimes.incrementAndGet();
+            return -1;
+        }
+
+        this.reserved.addAndGet(bytes);
+        return bytes;
+    }
+
+    /**
+     * @param reservedBytes what {@link #tryReserve(ProcessQueue, int, int)} returned
+     * @param pulledBytes the bodies of the messages pulled
+     */
+    public void release(final long reservedBytes, final long pulledBytes) {
+        if (reservedBytes > 0) {
+            this.reserved.addAndGet(0 - reservedBytes);
+        }
+        this.pulledSinceRefresh.addAndGet(pulledBytes);
+    }
+
+    private synchronized void refreshIfNecessary(final long now) {
+        if (now - this.lastRefreshTimestamp < REFRESH_INTERVAL_MILLIS) {
+            return;
+        }
+
+        // reset first, bytes pulled meanwhile are counted twice rather than missed
+        this.pulledSinceRefresh.set(0);
+        long cachedSum = 0;
+        long weightSum = 0;
+        Iterator<Map.Entry<ProcessQueue, Integer>> it = this.queueWeightTable.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<ProcessQueue, Integer> next = it.next();
+            if (next.getKey().isDropped()) {
+                it.remove();
+                continue;
+            }
+            cachedSum += next.getKey().getMsgSize().get();
+            weightSum += next.getValue();
+        }
+        this.cached = cachedSum;
+        this.totalWeight = weightSum;
+        this.lastRefreshTimestamp = now;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the bytes cached by the queues
+     */
+    public long getUsed() {
+        return this.cached + this.pulledSinceRefresh.get();
+    }
+
+    public long getReserved() {
+        return reserved.get();
+    }
+
+    public long getRejectedTimes() {
+        return rejectedTimes.get();
+    }
+
+    public int getQueueNums() {
+        return queueWeightTable.size();
+    }
+}
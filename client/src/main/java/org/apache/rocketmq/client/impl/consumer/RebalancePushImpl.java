@@ -85,6 +85,10 @@ public class RebalancePushImpl extends RebalanceImpl {
 
     @Override
     public boolean removeUnnecessaryMessageQueue(MessageQueue mq, ProcessQueue pq) {
+        if (this.defaultMQPushConsumerImpl.isCooperativeRebalance()) {
+            return this.handOff(mq);
+        }
+
         this.defaultMQPushConsumerImpl.getOffsetStore().persist(mq);
         this.defaultMQPushConsumerImpl.getOffsetStore().removeOffset(mq);
         if (this.defaultMQPushConsumerImpl.isConsumeOrderly()
@@ -115,13 +119,36 @@ public class RebalancePushImpl extends RebalanceImpl {
     @Override
     public boolean clientRebalance(String topic) {
         // POPTODO order pop consume not implement yet
-        return defaultMQPushConsumerImpl.getDefaultMQPushConsumer().isClientRebalance() || defaultMQPushConsumerImpl.isConsumeOrderly() || MessageModel.BROADCASTING.equals(messageModel);
+        return defaultMQPushConsumerImpl.getDefaultMQPushConsumer().isClientRebalance() || defaultMQPushConsumerImpl.isConsumeOrderly()
+            || defaultMQPushConsumerImpl.isCooperativeRebalance() || MessageModel.BROADCASTING.equals(messageModel);
     }
 
     public boolean removeUnnecessaryPopMessageQueue(final MessageQueue mq, final PopProcessQueue pq) {
         return true;
     }
 
+    /**
+     * Commits the offset of a queue given up before releasing its lock, so the next owner reads it when it gets the
+     * lock. The messages still being consumed are not committed as the queue is dropped, the next owner consumes them
+     * again.
+     */
+    private boolean handOff(final MessageQueue mq) {
+        OffsetStore offsetStore = this.defaultMQPushConsumerImpl.getOffsetStore();
+        long offset = offsetStore.readOffset(mq, ReadOffsetType.READ_FROM_MEMORY);
+        if (offset >= 0) {
+            try {
+                offsetStore.updateConsumeOffsetToBroker(mq, offset, false);
+            } catch (Exception e) {
+                // keep the lock, the commit is retried by the next rebalance
+                log.warn("hand off mq failed, commit offset {} exception, {}", offset, mq, e);
+                return false;
+            }
+        }
+        offsetStore.removeOffset(mq);
+        this.unlock(mq, true);
+        return true;
+    }
+
     private boolean unlockDelay(final MessageQueue mq, final ProcessQueue pq) {
 
         if (pq.hasTempMessage()) {
@@ -50,6 +50,7 @@ import org.apache.rocketmq.client.impl.consumer.DefaultMQPullConsumerImpl;
 import org.apache.rocketmq.client.impl.consumer.DefaultMQPushConsumerImpl;
 import org.apache.rocketmq.client.impl.consumer.MQConsumerInner;
 import org.apache.rocketmq.client.impl.consumer.ProcessQueue;
+import org.apache.rocketmq.client.impl.consumer.PullMemoryBudget;
 import org.apache.rocketmq.client.impl.consumer.PullMessageService;
 import org.apache.rocketmq.client.impl.consumer.RebalanceService;
 import org.apache.rocketmq.client.impl.producer.DefaultMQProducerImpl;
@@ -70,6 +71,7 @@ import org.apache.rocketmq.common.message.MessageQueueAssignment;
 import org.apache.rocketmq.common.protocol.NamespaceUtil;
 import org.apache.rocketmq.common.protocol.body.ConsumeMessageDirectlyResult;
 import org.apache.rocketmq.common.protocol.body.ConsumerRunningInfo;
+import org.apache.rocketmq.common.protocol.body.TopicRouteChangesBody;
 import org.apache.rocketmq.common.protocol.heartbeat.ConsumeType;
 import org.apache.rocketmq.common.protocol.heartbeat.ConsumerData;
 import org.apache.rocketmq.common.protocol.heartbeat.HeartbeatData;
@@ -81,6 +83,7 @@ import org.apache.rocketmq.common.protocol.route.LogicalQueueRouteData;
 import org.apache.rocketmq.common.protocol.route.LogicalQueuesInfo;
 import org.apache.rocketmq.common.protocol.route.QueueData;
 import org.apache.rocketmq.common.protocol.route.TopicRouteData;
+import org.apache.rocketmq.common.protocol.route.TopicRouteDataNameSrv;
 import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.remoting.RPCHook;
 import org.apache.rocketmq.remoting.common.RemotingHelper;
@@ -103,6 +106,10 @@ public class MQClientInstance {
     private final MQClientAPIImpl mQClientAPIImpl;
     private final MQAdminImpl mQAdminImpl;
     private final ConcurrentMap<String/* Topic */, TopicRouteData> topicRouteTable = new ConcurrentHashMap<String, TopicRouteData>();
+    /**
+     * Version of the routes read by {@link #pollTopicRouteChanges(long)}
+     */
+    private final ConcurrentMap<String/* Topic */, Long> topicRouteVersionTable = new ConcurrentHashMap<String, Long>();
     private final Lock lockNamesrv = new ReentrantLock();
     private final Lock lockHeartbeat = new ReentrantLock();
     private final ConcurrentMap<String/* Broker Name */, HashMap<Long/* brokerId */, String/* address */>> brokerAddrTable =
@@ -117,7 +124,15 @@ public class MQClientInstance {
     });
     private final ClientRemotingProcessor clientRemotingProcessor;
     private final PullMessageService pullMessageService;
+    /**
+     * Null if the memory of the push consumers is not limited
+     */
+    private final PullMemoryBudget pullMemoryBudget;
     private final RebalanceService rebalanceService;
+    /**
+     * Null if the routes are only read periodically
+     */
+    private final RouteChangePollService routeChangePollService;
     private final DefaultMQProducer defaultMQProducer;
     private final ConsumerStatsManager consumerStatsManager;
     private final AtomicLong sendHeartbeatTimesTotal = new AtomicLong(0);
@@ -147,8 +162,12 @@ public class MQClientInstance {
         this.mQAdminImpl = new MQAdminImpl(this);
 
         this.pullMessageService = new PullMessageService(this);
+        this.pullMemoryBudget = clientConfig.getPullMemoryBudgetInMiB() > 0
+            ? new PullMemoryBudget(clientConfig.getPullMemoryBudgetInMiB() * 1024L * 1024L) : null;
 
         this.rebalanceService = new RebalanceService(this);
+        this.routeChangePollService = clientConfig.isRouteLongPollingEnable()
+            ? new RouteChangePollService(this, clientConfig.getPollNameServerInterval()) : null;
 
         this.defaultMQProducer = new DefaultMQProducer(MixAll.CLIENT_INNER_PRODUCER_GROUP);
         this.defaultMQProducer.resetClientConfig(clientConfig);
@@ -291,6 +310,9 @@ public class MQClientInstance {
                     this.pullMessageService.start();
                     // Start rebalance service
                     this.rebalanceService.start();
+                    if (this.routeChangePollService != null) {
+                        this.routeChangePollService.start();
+                    }
                     // Start push service
                     this.defaultMQProducer.getDefaultMQProducerImpl().start(false);
                     log.info("the client factory [{}] start OK", this.clientId);
@@ -324,7 +346,10 @@ public class MQClientInstance {
             @Override
             public void run() {
                 try {
-                    MQClientInstance.this.updateTopicRouteInfoFromNameServer();
+                    if (null == MQClientInstance.this.routeChangePollService
+                        || !MQClientInstance.this.routeChangePollService.isWorking()) {
+                        MQClientInstance.this.updateTopicRouteInfoFromNameServer();
+                    }
                 } catch (Exception e) {
                     log.error("ScheduledTask updateTopicRouteInfoFromNameServer exception", e);
                 }
@@ -374,6 +399,46 @@ public class MQClientInstance {
     }
 
     public void updateTopicRouteInfoFromNameServer() {
+        for (String topic : this.getTopicsOfClients()) {
+            this.updateTopicRouteInfoFromNameServer(topic);
+        }
+    }
+
+    /**
+     * Waits on the name server for the routes of the topics of the producers and consumers to change, and updates
+     * them. Returns after the routes changed or {@code pollTimeoutMillis}.
+     */
+    public void pollTopicRouteChanges(final long pollTimeoutMillis)
+        throws MQClientException, RemotingException, InterruptedException {
+        Set<String> topicList = this.getTopicsOfClients();
+        this.topicRouteVersionTable.keySet().retainAll(topicList);
+        Map<String, Long> topicVersionTable = new HashMap<String, Long>(topicList.size());
+        for (String topic : topicList) {
+            Long version = this.topicRouteVersionTable.get(topic);
+            topicVersionTable.put(topic, version != null ? version : TopicRouteChangesBody.VERSION_UNKNOWN);
+        }
+
+        TopicRouteChangesBody changes = this.mQClientAPIImpl.getRouteChangesFromNameServer(topicVersionTable,
+            pollTimeoutMillis, clientConfig.getMqClientApiTimeout());
+        for (Entry<String, Long> entry : changes.getTopicVersionTable().entrySet()) {
+            String topic = entry.getKey();
+            TopicRouteDataNameSrv topicRouteData = changes.getTopicRouteDataTable().get(topic);
+            if (topicRouteData != null) {
+                if (!this.lockNamesrv.tryLock(LOCK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    log.warn("pollTopicRouteChanges tryLock timeout {}ms. [{}]", LOCK_TIMEOUT_MILLIS, this.clientId);
+                    continue;
+                }
+                try {
+                    this.updateTopicRouteInfo(topic, topicRouteData.toTopicRouteData(), null);
+                } finally {
+                    this.lockNamesrv.unlock();
+                }
+            }
+            this.topicRouteVersionTable.put(topic, entry.getValue());
+        }
+    }
+
+    private Set<String> getTopicsOfClients() {
         Set<String> topicList = new HashSet<String>();
 
         // Consumer
@@ -406,9 +471,7 @@ public class MQClientInstance {
             }
         }
 
-        for (String topic : topicList) {
-            this.updateTopicRouteInfoFromNameServer(topic);
-        }
+        return topicList;
     }
 
     /**
@@ -679,70 +742,7 @@ public class MQClientInstance {
                         topicRouteData = this.mQClientAPIImpl.getTopicRouteInfoFromNameServer(topic, clientConfig.getMqClientApiTimeout(), true, logicalQueueIdsFilter);
                     }
                     if (topicRouteData != null) {
-                        TopicRouteData old = this.topicRouteTable.get(topic);
-                        boolean changed = topicRouteDataIsChange(old, topicRouteData);
-                        if (!changed) {
-                            changed = this.isNeedUpdateTopicRouteInfo(topic);
-                        } else {
-                            log.info("the topic[{}] route info changed, old[{}] ,new[{}]", topic, old, topicRouteData);
-                        }
-
-                        if (changed) {
-                            TopicRouteData cloneTopicRouteData = new TopicRouteData(topicRouteData);
-                            if (logicalQueueIdsFilter != null && cloneTopicRouteData.getLogicalQueuesInfo() != null) {
-                                TopicRouteData curTopicRouteData = this.topicRouteTable.get(topic);
-                                if (curTopicRouteData != null) {
-                                    LogicalQueuesInfo curLogicalQueuesInfo = curTopicRouteData.getLogicalQueuesInfo();
-                                    if (curLogicalQueuesInfo != null) {
-                                        LogicalQueuesInfo cloneLogicalQueuesInfo = cloneTopicRouteData.getLogicalQueuesInfo();
-                                        curLogicalQueuesInfo.readLock().lock();
-                                        try {
-                                            for (Entry<Integer, List<LogicalQueueRouteData>> entry : curLogicalQueuesInfo.entrySet()) {
-                                                if (!cloneLogicalQueuesInfo.containsKey(entry.getKey())) {
-                                                    cloneLogicalQueuesInfo.put(entry.getKey(), entry.getValue());
-                                                }
-                                            }
-                                        } finally {
-                                            curLogicalQueuesInfo.readLock().unlock();
-                                        }
-                                    }
-                                }
-                            }
-
-                            for (BrokerData bd : topicRouteData.getBrokerDatas()) {
-                                this.brokerAddrTable.put(bd.getBrokerName(), bd.getBrokerAddrs());
-                            }
-
-                            // Update Pub info
-                            {
-                                TopicPublishInfo publishInfo = topicRouteData2TopicPublishInfo(topic, topicRouteData);
-                                publishInfo.setHaveTopicRouterInfo(true);
-                                Iterator<Entry<String, MQProducerInner>> it = this.producerTable.entrySet().iterator();
-                                while (it.hasNext()) {
-                                    Entry<String, MQProducerInner> entry = it.next();
-                                    MQProducerInner impl = entry.getValue();
-                                    if (impl != null) {
-                                        impl.updateTopicPublishInfo(topic, publishInfo);
-                                    }
-                                }
-                            }
-
-                            // Update sub info
-                            {
-                                Set<MessageQueue> subscribeInfo = topicRouteData2TopicSubscribeInfo(topic, topicRouteData);
-                                Iterator<Entry<String, MQConsumerInner>> it = this.consumerTable.entrySet().iterator();
-                                while (it.hasNext()) {
-                                    Entry<String, MQConsumerInner> entry = it.next();
-                                    MQConsumerInner impl = entry.getValue();
-                                    if (impl != null) {
-                                        impl.updateTopicSubscribeInfo(topic, subscribeInfo);
-                                    }
-                                }
-                            }
-                            log.info("topicRouteTable.put. Topic = {}, TopicRouteData[{}]", topic, cloneTopicRouteData);
-                            this.topicRouteTable.put(topic, cloneTopicRouteData);
-                            return true;
-                        }
+                        return this.updateTopicRouteInfo(topic, topicRouteData, logicalQueueIdsFilter);
                     } else {
                         log.warn("updateTopicRouteInfoFromNameServer, getTopicRouteInfoFromNameServer return null, Topic: {}. [{}]", topic, this.clientId);
                     }
@@ -766,6 +766,80 @@ public class MQClientInstance {
         return false;
     }
 
+    /**
+     * Replaces the route of the topic and the publish and subscribe info built from it if it changed, must be called
+     * holding lockNamesrv.
+     */
+    private boolean updateTopicRouteInfo(final String topic, final TopicRouteData topicRouteData,
+        final Set<Integer> logicalQueueIdsFilter) {
+        TopicRouteData old = this.topicRouteTable.get(topic);
+        boolean changed = topicRouteDataIsChange(old, topicRouteData);
+        if (!changed) {
+            changed = this.isNeedUpdateTopicRouteInfo(topic);
+        } else {
+            log.info("the topic[{}] route info changed, old[{}] ,new[{}]", topic, old, topicRouteData);
+        }
+
+        if (changed) {
+            TopicRouteData cloneTopicRouteData = new TopicRouteData(topicRouteData);
+            if (logicalQueueIdsFilter != null && cloneTopicRouteData.getLogicalQueuesInfo() != null) {
+                TopicRouteData curTopicRouteData = this.topicRouteTable.get(topic);
+                if (curTopicRouteData != null) {
+                    LogicalQueuesInfo curLogicalQueuesInfo = curTopicRouteData.getLogicalQueuesInfo();
+                    if (curLogicalQueuesInfo != null) {
+                        LogicalQueuesInfo cloneLogicalQueuesInfo = cloneTopicRouteData.getLogicalQueuesInfo();
+                        curLogicalQueuesInfo.readLock().lock();
+                        try {
+                            for (Entry<Integer, List<LogicalQueueRouteData>> entry : curLogicalQueuesInfo.entrySet()) {
+                                if (!cloneLogicalQueuesInfo.containsKey(entry.getKey())) {
+                                    cloneLogicalQueuesInfo.put(entry.getKey(), entry.getValue());
+                                }
+                            }
+                        } finally {
+                            curLogicalQueuesInfo.readLock().unlock();
+                        }
+                    }
+                }
+            }
+
+            for (BrokerData bd : topicRouteData.getBrokerDatas()) {
+                this.brokerAddrTable.put(bd.getBrokerName(), bd.getBrokerAddrs());
+            }
+
+            // Update Pub info
+            {
+                TopicPublishInfo publishInfo = topicRouteData2TopicPublishInfo(topic, topicRouteData);
+                publishInfo.setHaveTopicRouterInfo(true);
+                Iterator<Entry<String, MQProducerInner>> it = this.producerTable.entrySet().iterator();
+                while (it.hasNext()) {
+                    Entry<String, MQProducerInner> entry = it.next();
+                    MQProducerInner impl = entry.getValue();
+                    if (impl != null) {
+                        impl.updateTopicPublishInfo(topic, publishInfo);
+                    }
+                }
+            }
+
+            // Update sub info
+            {
+                Set<MessageQueue> subscribeInfo = topicRouteData2TopicSubscribeInfo(topic, topicRouteData);
+                Iterator<Entry<String, MQConsumerInner>> it = this.consumerTable.entrySet().iterator();
+                while (it.hasNext()) {
+                    Entry<String, MQConsumerInner> entry = it.next();
+                    MQConsumerInner impl = entry.getValue();
+                    if (impl != null) {
+                        impl.updateTopicSubscribeInfo(topic, subscribeInfo);
+                    }
+                }
+            }
+            log.info("topicRouteTable.put. Topic = {}, TopicRouteData[{}]", topic, cloneTopicRouteData);
+            this.topicRouteTable.put(topic, cloneTopicRouteData);
+            return true;
+        }
+
+        return false;
+    }
+
     private HeartbeatData prepareHeartbeatData() {
         HeartbeatData heartbeatData = new HeartbeatData();
 
@@ -936,6 +1010,9 @@ public class MQClientInstance {
                     this.serviceState = ServiceState.SHUTDOWN_ALREADY;
                     this.pullMessageService.shutdown(true);
                     this.scheduledExecutorService.shutdown();
+                    if (this.routeChangePollService != null) {
+                        this.routeChangePollService.shutdown(true);
+                    }
                     this.mQClientAPIImpl.shutdown();
                     this.rebalanceService.shutdown();
 
@@ -1284,6 +1361,10 @@ public class MQClientInstance {
         return pullMessageService;
     }
 
+    public PullMemoryBudget getPullMemoryBudget() {
+        return pullMemoryBudget;
+    }
+
     public DefaultMQProducer getDefaultMQProducer() {
         return defaultMQProducer;
     }
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.impl.factory;
+
+import org.apache.rocketmq.client.log.ClientLogger;
+import org.apache.rocketmq.common.ServiceThread;
+import org.apache.rocketmq.logging.InternalLogger;
+
+/**
+ * Keeps a request for route changes held on the name server, so that the routes are updated as soon as they change.
+ * While the name server fails to answer, the routes are read every pollNameServerInterval as before.
+ */
+public class RouteChangePollService extends ServiceThread {
+    private final InternalLogger log = ClientLogger.getLog();
+    private final MQClientInstance mqClientFactory;
+    private final long pollTimeoutMillis;
+    private volatile boolean working = false;
+
+    public RouteChangePollService(MQClientInstance mqClientFactory, long pollTimeoutMillis) {
+        this.mqClientFactory = mqClientFactory;
+        this.pollTimeoutMillis = pollTimeoutMillis;
+    }
+
+    @Override
+    public void run() {
+        log.info(this.getServiceName() + " service started");
+
+        while (!this.isStopped()) {
+            try {
+                this.mqClientFactory.pollTopicRouteChanges(this.pollTimeoutMillis);
+                this.working = true;
+            } catch (InterruptedException e) {
+                log.info(this.getServiceName() + " service interrupted");
+            } catch (Throwable e) {
+                // a name server not supporting it leaves the request unanswered until it times out
+                log.warn(this.getServiceName() + " service has exception, read the routes periodically. ", e);
+                this.working = false;
+                this.waitForRunning(this.pollTimeoutMillis);
+            }
+        }
+
+        log.info(this.getServiceName() + " service end");
+    }
+
+    /**
+     * @return whether the routes are updated by the last request held on the name server
+     */
+    public boolean isWorking() {
+        return working;
+    }
+
+    @Override
+    public String getServiceName() {
+        return RouteChangePollService.class.getSimpleName();
+    }
+}
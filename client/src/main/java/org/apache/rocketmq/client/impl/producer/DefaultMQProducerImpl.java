@@ -26,6 +26,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
@@ -75,7 +76,9 @@ import org.apache.rocketmq.client.producer.TransactionMQProducer;
 import org.apache.rocketmq.client.producer.TransactionSendResult;
 import org.apache.rocketmq.common.MixAll;
 import org.apache.rocketmq.common.ServiceState;
-import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.compression.CompressionType;
+import org.apache.rocketmq.common.compression.Compressor;
+import org.apache.rocketmq.common.compression.CompressorFactory;
 import org.apache.rocketmq.common.help.FAQUrl;
 import org.apache.rocketmq.common.message.Message;
 import org.apache.rocketmq.common.message.MessageAccessor;
@@ -132,6 +135,7 @@ public class DefaultMQProducerImpl implements MQProducerInner {
     private int zipCompressLevel = Integer.parseInt(System.getProperty(MixAll.MESSAGE_COMPRESS_LEVEL, "5"));
     private MQFaultStrategy mqFaultStrategy = new MQFaultStrategy();
     private ExecutorService asyncSenderExecutor;
+    private ProduceAccumulator produceAccumulator;
 
     public DefaultMQProducerImpl(final DefaultMQProducer defaultMQProducer) {
         this(defaultMQProducer, null);
@@ -222,6 +226,10 @@ public class DefaultMQProducerImpl implements MQProducerInner {
 
                 this.topicPublishInfoTable.put(this.defaultMQProducer.getCreateTopicKey(), new TopicPublishInfo());
 
+                if (this.defaultMQProducer.isAutoBatch()) {
+                    this.produceAccumulator = new ProduceAccumulator(this, this.defaultMQProducer);
+                }
+
                 if (startFactory) {
                     mQClientFactory.start();
                 }
@@ -285,6 +293,9 @@ public class DefaultMQProducerImpl implements MQProducerInner {
                 break;
             case RUNNING:
                 this.mQClientFactory.unregisterProducer(this.defaultMQProducer.getProducerGroup());
+                if (this.produceAccumulator != null) {
+                    this.produceAccumulator.shutdown();
+                }
                 this.defaultAsyncSenderExecutor.shutdown();
                 if (shutdownFactory) {
                     this.mQClientFactory.shutdown();
@@ -348,89 +359,111 @@ public class DefaultMQProducerImpl implements MQProducerInner {
     public void checkTransactionState(final String addr, final MessageExt msg,
         final CheckTransactionStateRequestHeader header) {
         Runnable request = new Runnable() {
-            private final String brokerAddr = addr;
-            private final MessageExt message = msg;
-            private final CheckTransactionStateRequestHeader checkRequestHeader = header;
-            private final String group = DefaultMQProducerImpl.this.defaultMQProducer.getProducerGroup();
+            @Override
+            public void run() {
+                DefaultMQProducerImpl.this.doCheckTransactionState(addr, msg, header);
+            }
+        };
 
+        this.checkExecutor.submit(request);
+    }
+
+    @Override
+    public void checkTransactionState(final String addr, final List<MessageExt> msgs,
+        final List<CheckTransactionStateRequestHeader> headers) {
+        Runnable request = new Runnable() {
             @Override
             public void run() {
-                TransactionCheckListener transactionCheckListener = DefaultMQProducerImpl.this.checkListener();
-                TransactionListener transactionListener = getCheckListener();
-                if (transactionCheckListener != null || transactionListener != null) {
-                    LocalTransactionState localTransactionState = LocalTransactionState.UNKNOW;
-                    Throwable exception = null;
-                    try {
-                        if (transactionCheckListener != null) {
-                            localTransactionState = transactionCheckListener.checkLocalTransactionState(message);
-                        } else if (transactionListener != null) {
-                            log.debug("Used new check API in transaction message");
-                            localTransactionState = transactionListener.checkLocalTransaction(message);
-                        } else {
-                            log.warn("CheckTransactionState, pick transactionListener by group[{}] failed", group);
-                        }
-                    } catch (Throwable e) {
-                        log.error("Broker call checkTransactionState, but checkLocalTransactionState exception", e);
-                        exception = e;
-                    }
+                for (int i = 0; i < msgs.size(); i++) {
+                    DefaultMQProducerImpl.this.doCheckTransactionState(addr, msgs.get(i), headers.get(i));
+                }
+            }
+        };
 
-                    this.processTransactionState(
-                        localTransactionState,
-                        group,
-                        exception);
+        this.checkExecutor.submit(request);
+    }
+
+    private void doCheckTransactionState(final String brokerAddr, final MessageExt message,
+        final CheckTransactionStateRequestHeader checkRequestHeader) {
+        final String group = this.defaultMQProducer.getProducerGroup();
+        TransactionCheckListener transactionCheckListener = this.checkListener();
+        TransactionListener transactionListener = getCheckListener();
+        if (transactionCheckListener != null || transactionListener != null) {
+            LocalTransactionState localTransactionState = LocalTransactionState.UNKNOW;
+            Throwable exception = null;
+            try {
+                if (transactionCheckListener != null) {
+                    localTransactionState = transactionCheckListener.checkLocalTransactionState(message);
+                } else if (transactionListener != null) {
+                    log.debug("Used new check API in transaction message");
+                    localTransactionState = transactionListener.checkLocalTransaction(message);
                 } else {
-                    log.warn("CheckTransactionState, pick transactionCheckListener by group[{}] failed", group);
+                    log.warn("CheckTransactionState, pick transactionListener by group[{}] failed", group);
                 }
+            } catch (Throwable e) {
+                log.error("Broker call checkTransactionState, but checkLocalTransactionState exception", e);
+                exception = e;
             }
 
-            private void processTransactionState(
-                final LocalTransactionState localTransactionState,
-                final String producerGroup,
-                final Throwable exception) {
-                final EndTransactionRequestHeader thisHeader = new EndTransactionRequestHeader();
-                thisHeader.setCommitLogOffset(checkRequestHeader.getCommitLogOffset());
-                thisHeader.setProducerGroup(producerGroup);
-                thisHeader.setTranStateTableOffset(checkRequestHeader.getTranStateTableOffset());
-                thisHeader.setFromTransactionCheck(true);
-
-                String uniqueKey = message.getProperties().get(MessageConst.PROPERTY_UNIQ_CLIENT_MESSAGE_ID_KEYIDX);
-                if (uniqueKey == null) {
-                    uniqueKey = message.getMsgId();
-                }
-                thisHeader.setMsgId(uniqueKey);
-                thisHeader.setTransactionId(checkRequestHeader.getTransactionId());
-                switch (localTransactionState) {
-                    case COMMIT_MESSAGE:
-                        thisHeader.setCommitOrRollback(MessageSysFlag.TRANSACTION_COMMIT_TYPE);
-                        break;
-                    case ROLLBACK_MESSAGE:
-                        thisHeader.setCommitOrRollback(MessageSysFlag.TRANSACTION_ROLLBACK_TYPE);
-                        log.warn("when broker check, client rollback this transaction, {}", thisHeader);
-                        break;
-                    case UNKNOW:
-                        thisHeader.setCommitOrRollback(MessageSysFlag.TRANSACTION_NOT_TYPE);
-                        log.warn("when broker check, client does not know this transaction state, {}", thisHeader);
-                        break;
-                    default:
-                        break;
-                }
+            this.processTransactionState(
+                brokerAddr,
+                message,
+                checkRequestHeader,
+                localTransactionState,
+                group,
+                exception);
+        } else {
+            log.warn("CheckTransactionState, pick transactionCheckListener by group[{}] failed", group);
+        }
+    }
 
-                String remark = null;
-                if (exception != null) {
-                    remark = "checkLocalTransactionState Exception: " + RemotingHelper.exceptionSimpleDesc(exception);
-                }
-                doExecuteEndTransactionHook(msg, uniqueKey, brokerAddr, localTransactionState, true);
+    private void processTransactionState(
+        final String brokerAddr,
+        final MessageExt message,
+        final CheckTransactionStateRequestHeader checkRequestHeader,
+        final LocalTransactionState localTransactionState,
+        final String producerGroup,
+        final Throwable exception) {
+        final EndTransactionRequestHeader thisHeader = new EndTransactionRequestHeader();
+        thisHeader.setCommitLogOffset(checkRequestHeader.getCommitLogOffset());
+        thisHeader.setProducerGroup(producerGroup);
+        thisHeader.setTranStateTableOffset(checkRequestHeader.getTranStateTableOffset());
+        thisHeader.setFromTransactionCheck(true);
+
+        String uniqueKey = message.getProperties().get(MessageConst.PROPERTY_UNIQ_CLIENT_MESSAGE_ID_KEYIDX);
+        if (uniqueKey == null) {
+            uniqueKey = message.getMsgId();
+        }
+        thisHeader.setMsgId(uniqueKey);
+        thisHeader.setTransactionId(checkRequestHeader.getTransactionId());
+        switch (localTransactionState) {
+            case COMMIT_MESSAGE:
+                thisHeader.setCommitOrRollback(MessageSysFlag.TRANSACTION_COMMIT_TYPE);
+                break;
+            case ROLLBACK_MESSAGE:
+                thisHeader.setCommitOrRollback(MessageSysFlag.TRANSACTION_ROLLBACK_TYPE);
+                log.warn("when broker check, client rollback this transaction, {}", thisHeader);
+                break;
+            case UNKNOW:
+                thisHeader.setCommitOrRollback(MessageSysFlag.TRANSACTION_NOT_TYPE);
+                log.warn("when broker check, client does not know this transaction state, {}", thisHeader);
+                break;
+            default:
+                break;
+        }
 
-                try {
-                    DefaultMQProducerImpl.this.mQClientFactory.getMQClientAPIImpl().endTransactionOneway(brokerAddr, thisHeader, remark,
-                        3000);
-                } catch (Exception e) {
-                    log.error("endTransactionOneway exception", e);
-                }
-            }
-        };
+        String remark = null;
+        if (exception != null) {
+            remark = "checkLocalTransactionState Exception: " + RemotingHelper.exceptionSimpleDesc(exception);
+        }
+        doExecuteEndTransactionHook(message, uniqueKey, brokerAddr, localTransactionState, true);
 
-        this.checkExecutor.submit(request);
+        try {
+            this.mQClientFactory.getMQClientAPIImpl().endTransactionOneway(brokerAddr, thisHeader, remark,
+                3000);
+        } catch (Exception e) {
+            log.error("endTransactionOneway exception", e);
+        }
     }
 
     @Override
@@ -533,6 +566,18 @@ public class DefaultMQProducerImpl implements MQProducerInner {
     @Deprecated
     public void send(final Message msg, final SendCallback sendCallback, final long timeout)
         throws MQClientException, RemotingException, InterruptedException {
+        this.makeSureStateOK();
+        if (this.produceAccumulator != null && this.produceAccumulator.tryAppend(msg, sendCallback, timeout)) {
+            return;
+        }
+        this.sendDefaultAsync(msg, sendCallback, timeout);
+    }
+
+    /**
+     * Send asynchronously in the async sender executor, by-passing the accumulator.
+     */
+    void sendDefaultAsync(final Message msg, final SendCallback sendCallback, final long timeout)
+        throws MQClientException {
         final long beginStartTime = System.currentTimeMillis();
         ExecutorService executor = this.getAsyncSenderExecutor();
         try {
@@ -567,6 +612,14 @@ public class DefaultMQProducerImpl implements MQProducerInner {
         this.mqFaultStrategy.updateFaultItem(brokerName, currentLatency, isolation);
     }
 
+    public void sendStarted(final String brokerName) {
+        this.mqFaultStrategy.sendStarted(brokerName);
+    }
+
+    public void sendFinished(final String brokerName) {
+        this.mqFaultStrategy.sendFinished(brokerName);
+    }
+
     private void validateNameServerSetting() throws MQClientException {
         List<String> nsList = this.getmQClientFactory().getMQClientAPIImpl().getNameServerAddressList();
         if (null == nsList || nsList.isEmpty()) {
@@ -617,7 +670,10 @@ public class DefaultMQProducerImpl implements MQProducerInner {
 
                         sendResult = this.sendKernelImpl(msg, mq, communicationMode, sendCallback, topicPublishInfo, timeout - costTime);
                         endTimestamp = System.currentTimeMillis();
-                        this.updateFaultItem(mq.getBrokerName(), endTimestamp - beginTimestampPrev, false);
+                        if (communicationMode != CommunicationMode.ASYNC) {
+                            // the latency of an asynchronous send is recorded when its response arrives
+                            this.updateFaultItem(mq.getBrokerName(), endTimestamp - beginTimestampPrev, false);
+                        }
                         switch (communicationMode) {
                             case ASYNC:
                                 return null;
@@ -788,8 +844,9 @@ public class DefaultMQProducerImpl implements MQProducerInner {
 
                 int sysFlag = 0;
                 boolean msgBodyCompressed = false;
-                if (this.tryToCompressMessage(msg)) {
-                    sysFlag |= MessageSysFlag.COMPRESSED_FLAG;
+                int compressionFlag = this.tryToCompressMessage(msg);
+                if (compressionFlag != 0) {
+                    sysFlag |= compressionFlag;
                     msgBodyCompressed = true;
                 }
 
@@ -948,19 +1005,28 @@ public class DefaultMQProducerImpl implements MQProducerInner {
         return mQClientFactory;
     }
 
-    private boolean tryToCompressMessage(final Message msg) {
-        if (msg instanceof MessageBatch) {
-            //batch dose not support compressing right now
-            return false;
+    /**
+     * @return the compression bits of the sys flag, 0 if the body is left as it is
+     */
+    private int tryToCompressMessage(final Message msg) {
+        if (msg instanceof MessageBatch && !this.defaultMQProducer.isCompressBatchEnable()) {
+            return 0;
         }
         byte[] body = msg.getBody();
         if (body != null) {
             if (body.length >= this.defaultMQProducer.getCompressMsgBodyOverHowmuch()) {
                 try {
-                    byte[] data = UtilAll.compress(body, zipCompressLevel);
+                    CompressionType compressType = this.defaultMQProducer.getCompressType();
+                    Compressor compressor = CompressorFactory.getCompressor(compressType);
+                    if (null == compressor) {
+                        log.warn("no compressor registered for {}, compress with zlib instead", compressType);
+                        compressType = CompressionType.ZLIB;
+                        compressor = CompressorFactory.getCompressor(compressType);
+                    }
+                    byte[] data = compressor.compress(body, zipCompressLevel);
                     if (data != null) {
                         msg.setBody(data);
-                        return true;
+                        return MessageSysFlag.COMPRESSED_FLAG | compressType.getCompressionFlag();
                     }
                 } catch (IOException e) {
                     log.error("tryToCompressMessage exception", e);
@@ -969,7 +1035,7 @@ public class DefaultMQProducerImpl implements MQProducerInner {
             }
         }
 
-        return false;
+        return 0;
     }
 
     public boolean hasCheckForbiddenHook() {
@@ -1679,6 +1745,18 @@ public class DefaultMQProducerImpl implements MQProducerInner {
         this.mqFaultStrategy.setSendLatencyFaultEnable(sendLatencyFaultEnable);
     }
 
+    public boolean isSendAdaptiveSelectEnable() {
+        return this.mqFaultStrategy.isSendAdaptiveSelectEnable();
+    }
+
+    public void setSendAdaptiveSelectEnable(final boolean sendAdaptiveSelectEnable) {
+        this.mqFaultStrategy.setSendAdaptiveSelectEnable(sendAdaptiveSelectEnable);
+    }
+
+    public Map<String, Double> getBrokerLatencyScores() {
+        return this.mqFaultStrategy.getBrokerScores();
+    }
+
     public DefaultMQProducer getDefaultMQProducer() {
         return defaultMQProducer;
     }
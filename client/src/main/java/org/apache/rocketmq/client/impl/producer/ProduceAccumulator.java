@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.impl.producer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.rocketmq.client.Validators;
+import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.client.log.ClientLogger;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.common.MixAll;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageBatch;
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.logging.InternalLogger;
+
+/**
+ * Gathers the asynchronous sends of a topic into {@link MessageBatch}es, a batch is sent when it reaches
+ * {@link DefaultMQProducer#getBatchMaxBytes()} or when its first message waited {@link DefaultMQProducer#getBatchMaxDelayMs()}.
+ * The queue of a batch is selected when it is sent, so every batch ends up in one message queue, and the result of the
+ * batch is split back into one {@link SendResult} per message.
+ */
+public class ProduceAccumulator {
+    private final InternalLogger log = ClientLogger.getLog();
+
+    /**
+     * Size of the fixed fields of a message encoded in a batch, see MessageDecoder#encodeMessage
+     */
+    private static final int MESSAGE_OVERHEAD = 4 + 4 + 4 + 4 + 4 + 2;
+
+    private final DefaultMQProducerImpl producerImpl;
+    private final DefaultMQProducer producer;
+    private final ConcurrentMap<String /* topic@waitStoreMsgOK */, Accumulation> accumulations =
+        new ConcurrentHashMap<String, Accumulation>();
+    private final AtomicLong totalBytes = new AtomicLong(0);
+    private final ScheduledExecutorService lingerService =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactoryImpl("ProduceAccumulatorLingerThread_"));
+    private volatile boolean stopped = false;
+
+    public ProduceAccumulator(final DefaultMQProducerImpl producerImpl, final DefaultMQProducer producer) {
+        this.producerImpl = producerImpl;
+        this.producer = producer;
+    }
+
+    /**
+     * @return false if the message can not be batched or the accumulator is stopped, it has to be sent on its own
+     */
+    public boolean tryAppend(final Message msg, final SendCallback sendCallback, final long timeout) throws MQClientException {
+        if (this.stopped || !isBatchable(msg) || null == sendCallback) {
+            return false;
+        }
+
+        int size = estimateSize(msg);
+        if (size >= this.producer.getBatchMaxBytes()
+            || this.totalBytes.get() + size > this.producer.getTotalBatchMaxBytes()) {
+            return false;
+        }
+
+        Validators.checkMessage(msg, this.producer);
+        MessageClientIDSetter.setUniqID(msg);
+
+        String key = msg.getTopic() + "@" + msg.isWaitStoreMsgOK();
+        long deadline = System.currentTimeMillis() + timeout;
+        while (true) {
+            Accumulation accumulation = this.accumulations.get(key);
+            boolean lingering = true;
+            if (null == accumulation) {
+                accumulation = new Accumulation(key);
+                Accumulation prev = this.accumulations.putIfAbsent(key, accumulation);
+                if (prev != null) {
+                    accumulation = prev;
+                } else {
+                    lingering = this.scheduleLinger(accumulation);
+                }
+            }
+
+            boolean flushNow;
+            synchronized (accumulation) {
+                if (accumulation.closed) {
+                    continue;
+                }
+                accumulation.add(msg, sendCallback, deadline, size);
+                this.totalBytes.addAndGet(size);
+                // nothing would flush the batch if its linger could not be scheduled
+                flushNow = !lingering || accumulation.bytes >= this.producer.getBatchMaxBytes();
+                if (flushNow) {
+                    accumulation.closed = true;
+                }
+            }
+
+            if (flushNow) {
+                this.accumulations.remove(key, accumulation);
+                this.flush(accumulation);
+            }
+            return true;
+        }
+    }
+
+    public void shutdown() {
+        this.stopped = true;
+        this.lingerService.shutdown();
+        for (Map.Entry<String, Accumulation> entry : this.accumulations.entrySet()) {
+            Accumulation accumulation = entry.getValue();
+            if (this.close(accumulation)) {
+                this.accumulations.remove(entry.getKey(), accumulation);
+                this.flush(accumulation);
+            }
+        }
+    }
+
+    public long getTotalBytes() {
+        return totalBytes.get();
+    }
+
+    private static boolean isBatchable(final Message msg) {
+        return !(msg instanceof MessageBatch)
+            && msg.getDelayTimeLevel() <= 0
+            && !msg.getTopic().startsWith(MixAll.RETRY_GROUP_TOPIC_PREFIX)
+            && msg.getProperty(MessageConst.PROPERTY_TRANSACTION_PREPARED) == null;
+    }
+
+    private static int estimateSize(final Message msg) {
+        int size = MESSAGE_OVERHEAD + (msg.getBody() == null ? 0 : msg.getBody().length);
+        if (msg.getProperties() != null) {
+            for (Map.Entry<String, String> entry : msg.getProperties().entrySet()) {
+                size += entry.getKey().length() + (entry.getValue() == null ? 0 : entry.getValue().length()) + 2;
+            }
+        }
+        // the unique key is set right before accumulating
+        return size + 64;
+    }
+
+    /**
+     * @return false if the linger service rejected the task, the batch has to be flushed by the caller
+     */
+    private boolean scheduleLinger(final Accumulation accumulation) {
+        try {
+            this.lingerService.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (close(accumulation)) {
+                        accumulations.remove(accumulation.key, accumulation);
+                        flush(accumulation);
+                    }
+                }
+            }, this.producer.getBatchMaxDelayMs(), TimeUnit.MILLISECONDS);
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.warn("schedule the linger of batch {} failed, flush it right away", accumulation.key, e);
+            return false;
+        }
+    }
+
+    private boolean close(final Accumulation accumulation) {
+        synchronized (accumulation) {
+            if (accumulation.closed) {
+                return false;
+            }
+            accumulation.closed = true;
+            return true;
+        }
+    }
+
+    private void flush(final Accumulation accumulation) {
+        this.totalBytes.addAndGet(-accumulation.bytes);
+        final List<Message> messages = accumulation.messages;
+        final List<SendCallback> callbacks = accumulation.callbacks;
+        long timeout = accumulation.deadline - System.currentTimeMillis();
+
+        try {
+            if (messages.size() == 1) {
+                this.producerImpl.sendDefaultAsync(messages.get(0), callbacks.get(0), timeout);
+                return;
+            }
+
+            MessageBatch batch = MessageBatch.generateFromList(messages);
+            batch.setBody(batch.encode());
+            this.producerImpl.sendDefaultAsync(batch, new SendCallback() {
+                @Override
+                public void onSuccess(SendResult sendResult) {
+                    String[] offsetMsgIds = sendResult.getOffsetMsgId() != null ? sendResult.getOffsetMsgId().split(",") : null;
+                    for (int i = 0; i < messages.size(); i++) {
+                        String offsetMsgId = offsetMsgIds != null && offsetMsgIds.length == messages.size()
+                            ? offsetMsgIds[i] : sendResult.getOffsetMsgId();
+                        SendResult result = new SendResult(sendResult.getSendStatus(),
+                            MessageClientIDSetter.getUniqID(messages.get(i)), sendResult.getMessageQueue(),
+                            sendResult.getQueueOffset() + i, sendResult.getTransactionId(), offsetMsgId,
+                            sendResult.getRegionId());
+                        result.setTraceOn(sendResult.isTraceOn());
+                        try {
+                            callbacks.get(i).onSuccess(result);
+                        } catch (Throwable e) {
+                            log.warn("execute the send callback of message {} failed", result.getMsgId(), e);
+                        }
+                    }
+                }
+
+                @Override
+                public void onException(Throwable e) {
+                    failAll(callbacks, e);
+                }
+            }, timeout);
+        } catch (Throwable e) {
+            failAll(callbacks, e);
+        }
+    }
+
+    private void failAll(final List<SendCallback> callbacks, final Throwable e) {
+        for (SendCallback callback : callbacks) {
+            try {
+                callback.onException(e);
+            } catch (Throwable t) {
+                log.warn("execute the send callback failed", t);
+            }
+        }
+    }
+
+    static class Accumulation {
+        private final String key;
+        private final List<Message> messages = new ArrayList<Message>();
+        private final List<SendCallback> callbacks = new ArrayList<SendCallback>();
+        private long deadline = Long.MAX_VALUE;
+        private int bytes;
+        private boolean closed;
+
+        Accumulation(final String key) {
+            this.key = key;
+        }
+
+        void add(final Message msg, final SendCallback sendCallback, final long deadline, final int size) {
+            this.messages.add(msg);
+            this.callbacks.add(sendCallback);
+            this.deadline = Math.min(this.deadline, deadline);
+            this.bytes += size;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.client.latency;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load of one broker as seen by a producer: a peak sensitive moving average of the send latency, which jumps to a
+ * slower sample at once and decays towards faster samples, and the number of sends in flight.
+ * <p>
+ * The average also decays towards zero while no sample arrives, so a broker that was slow or failing is probed again
+ * after a while instead of being isolated for a fixed duration.
+ */
+public class BrokerLatencyStats {
+    /**
+     * Score of a broker without latency sample but with sends in flight, it loses against any measured broker
+     */
+    private static final double PENALTY = 1e6;
+
+    private final String brokerName;
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private double latency;
+    private long stamp = System.nanoTime();
+
+    public BrokerLatencyStats(final String brokerName) {
+        this.brokerName = brokerName;
+    }
+
+    public synchronized void observe(final long latencyMillis, final long decayNanos) {
+        long now = System.nanoTime();
+        double weight = Math.exp(-Math.max(now - this.stamp, 0) / (double) decayNanos);
+        this.stamp = now;
+        if (latencyMillis > this.latency) {
+            this.latency = latencyMillis;
+        } else {
+            this.latency = this.latency * weight + latencyMillis * (1 - weight);
+        }
+    }
+
+    public synchronized double getLatency(final long decayNanos) {
+        long elapsed = Math.max(System.nanoTime() - this.stamp, 0);
+        return this.latency * Math.exp(-elapsed / (double) decayNanos);
+    }
+
+    /**
+     * @return the expected cost of one more send, the lower the better
+     */
+    public double score(final long decayNanos) {
+        int pending = this.inFlight.get();
+        double latency = this.getLatency(decayNanos);
+        if (latency == 0 && pending > 0) {
+            return PENALTY + pending;
+        }
+        return latency * (pending + 1);
+    }
+
+    public void incInFlight() {
+        this.inFlight.incrementAndGet();
+    }
+
+    public void decInFlight() {
+        if (this.inFlight.decrementAndGet() < 0) {
+            this.inFlight.set(0);
+        }
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public String getBrokerName() {
+        return brokerName;
+    }
+
+    @Override
+    public String toString() {
+        return "BrokerLatencyStats{" +
+            "brokerName='" + brokerName + '\'' +
+            ", latency=" + latency +
+            ", inFlight=" + inFlight +
+            '}';
+    }
+}
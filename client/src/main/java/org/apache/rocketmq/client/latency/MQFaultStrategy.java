@@ -17,6 +17,13 @@
 
 package org.apache.rocketmq.client.latency;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import org.apache.rocketmq.client.impl.producer.TopicPublishInfo;
 import org.apache.rocketmq.client.log.ClientLogger;
 import org.apache.rocketmq.common.message.MessageQueue;
@@ -26,8 +33,27 @@ public class MQFaultStrategy {
     private final static InternalLogger log = ClientLogger.getLog();
     private final LatencyFaultTolerance<String> latencyFaultTolerance = new LatencyFaultToleranceImpl();
 
+    private final ConcurrentMap<String /* brokerName */, BrokerLatencyStats> brokerStatsTable =
+        new ConcurrentHashMap<String, BrokerLatencyStats>(16);
+
     private boolean sendLatencyFaultEnable = false;
 
+    /**
+     * Select queues by the latency and the sends in flight of their brokers instead of round robin, takes
+     * precedence over {@link #sendLatencyFaultEnable}
+     */
+    private boolean sendAdaptiveSelectEnable = false;
+
+    /**
+     * Time constant of the broker latency average, also the time a failed broker needs to win back most of its traffic
+     */
+    private long adaptiveDecayTimeMillis = 10000;
+
+    /**
+     * Latency recorded for a failed send
+     */
+    private long adaptiveFailurePenaltyMillis = 3000;
+
     private long[] latencyMax = {50L, 100L, 550L, 1000L, 2000L, 3000L, 15000L};
     private long[] notAvailableDuration = {0L, 0L, 30000L, 60000L, 120000L, 180000L, 600000L};
 
@@ -55,7 +81,43 @@ public class MQFaultStrategy {
         this.sendLatencyFaultEnable = sendLatencyFaultEnable;
     }
 
+    public boolean isSendAdaptiveSelectEnable() {
+        return sendAdaptiveSelectEnable;
+    }
+
+    public void setSendAdaptiveSelectEnable(final boolean sendAdaptiveSelectEnable) {
+        this.sendAdaptiveSelectEnable = sendAdaptiveSelectEnable;
+    }
+
+    public long getAdaptiveDecayTimeMillis() {
+        return adaptiveDecayTimeMillis;
+    }
+
+    public void setAdaptiveDecayTimeMillis(final long adaptiveDecayTimeMillis) {
+        this.adaptiveDecayTimeMillis = adaptiveDecayTimeMillis;
+    }
+
+    public long getAdaptiveFailurePenaltyMillis() {
+        return adaptiveFailurePenaltyMillis;
+    }
+
+    public void setAdaptiveFailurePenaltyMillis(final long adaptiveFailurePenaltyMillis) {
+        this.adaptiveFailurePenaltyMillis = adaptiveFailurePenaltyMillis;
+    }
+
     public MessageQueue selectOneMessageQueue(final TopicPublishInfo tpInfo, final String lastBrokerName) {
+        if (this.sendAdaptiveSelectEnable) {
+            try {
+                MessageQueue mq = this.selectByPowerOfTwoChoices(tpInfo.getMessageQueueList(), lastBrokerName);
+                if (lastBrokerName == null || !lastBrokerName.equals(mq.getBrokerName())) {
+                    return mq;
+                }
+            } catch (Exception e) {
+                log.error("Error occurred when selecting message queue", e);
+            }
+            return tpInfo.selectOneMessageQueue(lastBrokerName);
+        }
+
         if (this.sendLatencyFaultEnable) {
             try {
                 int index = tpInfo.getSendWhichQueue().incrementAndGet();
@@ -90,8 +152,77 @@ public class MQFaultStrategy {
         return tpInfo.selectOneMessageQueue(lastBrokerName);
     }
 
+    /**
+     * Picks two distinct queues at random and keeps the one whose broker has the lower score, the queues of the
+     * broker tried last are avoided when there is another choice.
+     */
+    private MessageQueue selectByPowerOfTwoChoices(final List<MessageQueue> mqs, final String lastBrokerName) {
+        int size = mqs.size();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        if (size == 1) {
+            return mqs.get(first);
+        }
+        int second = (first + 1 + random.nextInt(size - 1)) % size;
+        MessageQueue a = mqs.get(first);
+        MessageQueue b = mqs.get(second);
+
+        if (lastBrokerName != null) {
+            boolean aRetried = lastBrokerName.equals(a.getBrokerName());
+            boolean bRetried = lastBrokerName.equals(b.getBrokerName());
+            if (aRetried != bRetried) {
+                return aRetried ? b : a;
+            }
+        }
+
+        if (a.getBrokerName().equals(b.getBrokerName())) {
+            return a;
+        }
+        long decayNanos = TimeUnit.MILLISECONDS.toNanos(this.adaptiveDecayTimeMillis);
+        return this.brokerStats(b.getBrokerName()).score(decayNanos) < this.brokerStats(a.getBrokerName()).score(decayNanos) ? b : a;
+    }
+
+    private BrokerLatencyStats brokerStats(final String brokerName) {
+        BrokerLatencyStats stats = this.brokerStatsTable.get(brokerName);
+        if (null == stats) {
+            stats = new BrokerLatencyStats(brokerName);
+            BrokerLatencyStats prev = this.brokerStatsTable.putIfAbsent(brokerName, stats);
+            if (prev != null) {
+                stats = prev;
+            }
+        }
+        return stats;
+    }
+
+    public void sendStarted(final String brokerName) {
+        if (this.sendAdaptiveSelectEnable) {
+            this.brokerStats(brokerName).incInFlight();
+        }
+    }
+
+    public void sendFinished(final String brokerName) {
+        if (this.sendAdaptiveSelectEnable) {
+            this.brokerStats(brokerName).decInFlight();
+        }
+    }
+
+    /**
+     * @return the current score of every broker sent to, the expected cost of one more send in milliseconds
+     */
+    public Map<String, Double> getBrokerScores() {
+        long decayNanos = TimeUnit.MILLISECONDS.toNanos(this.adaptiveDecayTimeMillis);
+        Map<String, Double> scores = new HashMap<String, Double>();
+        for (Map.Entry<String, BrokerLatencyStats> entry : this.brokerStatsTable.entrySet()) {
+            scores.put(entry.getKey(), entry.getValue().score(decayNanos));
+        }
+        return scores;
+    }
+
     public void updateFaultItem(final String brokerName, final long currentLatency, boolean isolation) {
-        if (this.sendLatencyFaultEnable) {
+        if (this.sendAdaptiveSelectEnable) {
+            long latency = isolation ? Math.max(currentLatency, this.adaptiveFailurePenaltyMillis) : currentLatency;
+            this.brokerStats(brokerName).observe(latency, TimeUnit.MILLISECONDS.toNanos(this.adaptiveDecayTimeMillis));
+        } else if (this.sendLatencyFaultEnable) {
             long duration = computeNotAvailableDuration(isolation ? 30000 : currentLatency);
             this.latencyFaultTolerance.updateFaultItem(brokerName, currentLatency, duration);
         }
@@ -19,6 +19,7 @@ package org.apache.rocketmq.client.producer;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutorService;
@@ -35,6 +36,7 @@ import org.apache.rocketmq.client.trace.TraceDispatcher;
 import org.apache.rocketmq.client.trace.hook.EndTransactionTraceHookImpl;
 import org.apache.rocketmq.client.trace.hook.SendMessageTraceHookImpl;
 import org.apache.rocketmq.common.MixAll;
+import org.apache.rocketmq.common.compression.CompressionType;
 import org.apache.rocketmq.common.message.Message;
 import org.apache.rocketmq.common.message.MessageBatch;
 import org.apache.rocketmq.common.message.MessageClientIDSetter;
@@ -106,6 +108,17 @@ public class DefaultMQProducer extends ClientConfig implements MQProducer {
      */
     private int compressMsgBodyOverHowmuch = 1024 * 4;
 
+    /**
+     * Codec of compressed message bodies, consumers have to know it as well, so only change it once they are upgraded.
+     */
+    private CompressionType compressType = CompressionType.of(System.getProperty(MixAll.MESSAGE_COMPRESS_TYPE, "ZLIB"));
+
+    /**
+     * Compress the body of a message batch as a whole, the broker decompresses it before storing. Needs brokers that
+     * understand compressed batches.
+     */
+    private boolean compressBatchEnable = false;
+
     /**
      * Maximum number of retry to perform internally before claiming sending failure in synchronous mode. </p>
      *
@@ -135,6 +148,26 @@ public class DefaultMQProducer extends ClientConfig implements MQProducer {
      */
     private TraceDispatcher traceDispatcher = null;
 
+    /**
+     * Gather asynchronous sends of the same topic into batches transparently, see {@link #send(Message, SendCallback)}.
+     */
+    private boolean autoBatch = false;
+
+    /**
+     * Longest time in milliseconds a message may wait in the accumulator for its batch to fill up.
+     */
+    private int batchMaxDelayMs = 10;
+
+    /**
+     * A batch is sent as soon as its messages reach this size in bytes.
+     */
+    private int batchMaxBytes = 1024 * 32;
+
+    /**
+     * Upper bound of the bytes held by all the batches, messages beyond it are sent one by one.
+     */
+    private long totalBatchMaxBytes = 1024 * 1024 * 32;
+
     /**
      * Default constructor.
      */
@@ -362,7 +395,10 @@ public class DefaultMQProducer extends ClientConfig implements MQProducer {
      *
      * Similar to {@link #send(Message)}, internal implementation would potentially retry up to {@link
      * #retryTimesWhenSendAsyncFailed} times before claiming sending failure, which may yield message duplication and
-     * application developers are the one to resolve this potential issue.
+     * application developers are the one to resolve this potential issue. </p>
+     *
+     * With {@link #autoBatch} enabled, the message may wait up to {@link #batchMaxDelayMs} to be sent in one batch
+     * together with other messages of the topic, <code>sendCallback</code> still gets the result of this very message.
      *
      * @param msg Message to send.
      * @param sendCallback Callback to execute on sending completed, either successful or unsuccessful.
@@ -1029,6 +1065,22 @@ public class DefaultMQProducer extends ClientConfig implements MQProducer {
         this.compressMsgBodyOverHowmuch = compressMsgBodyOverHowmuch;
     }
 
+    public CompressionType getCompressType() {
+        return compressType;
+    }
+
+    public void setCompressType(CompressionType compressType) {
+        this.compressType = compressType;
+    }
+
+    public boolean isCompressBatchEnable() {
+        return compressBatchEnable;
+    }
+
+    public void setCompressBatchEnable(boolean compressBatchEnable) {
+        this.compressBatchEnable = compressBatchEnable;
+    }
+
     @Deprecated
     public DefaultMQProducerImpl getDefaultMQProducerImpl() {
         return defaultMQProducerImpl;
@@ -1098,6 +1150,27 @@ public class DefaultMQProducer extends ClientConfig implements MQProducer {
         this.defaultMQProducerImpl.setSendLatencyFaultEnable(sendLatencyFaultEnable);
     }
 
+    public boolean isSendAdaptiveSelectEnable() {
+        return this.defaultMQProducerImpl.isSendAdaptiveSelectEnable();
+    }
+
+    /**
+     * Select the queue of each send by the latency and the sends in flight of the brokers, so that the traffic moves
+     * away from a degrading broker gradually instead of after a fixed latency threshold.
+     *
+     * @param sendAdaptiveSelectEnable true to enable, takes precedence over {@link #setSendLatencyFaultEnable(boolean)}
+     */
+    public void setSendAdaptiveSelectEnable(final boolean sendAdaptiveSelectEnable) {
+        this.defaultMQProducerImpl.setSendAdaptiveSelectEnable(sendAdaptiveSelectEnable);
+    }
+
+    /**
+     * @return the score of every broker sent to, the expected cost of one more send in milliseconds
+     */
+    public Map<String, Double> getBrokerLatencyScores() {
+        return this.defaultMQProducerImpl.getBrokerLatencyScores();
+    }
+
     public int getRetryTimesWhenSendAsyncFailed() {
         return retryTimesWhenSendAsyncFailed;
     }
@@ -1113,4 +1186,36 @@ public class DefaultMQProducer extends ClientConfig implements MQProducer {
     public Set<Integer> getRetryResponseCodes() {
         return retryResponseCodes;
     }
+
+    public boolean isAutoBatch() {
+        return autoBatch;
+    }
+
+    public void setAutoBatch(boolean autoBatch) {
+        this.autoBatch = autoBatch;
+    }
+
+    public int getBatchMaxDelayMs() {
+        return batchMaxDelayMs;
+    }
+
+    public void setBatchMaxDelayMs(int batchMaxDelayMs) {
+        this.batchMaxDelayMs = batchMaxDelayMs;
+    }
+
+    public int getBatchMaxBytes() {
+        return batchMaxBytes;
+    }
+
+    public void setBatchMaxBytes(int batchMaxBytes) {
+        this.batchMaxBytes = batchMaxBytes;
+    }
+
+    public long getTotalBatchMaxBytes() {
+        return totalBatchMaxBytes;
+    }
+
+    public void setTotalBatchMaxBytes(long totalBatchMaxBytes) {
+        this.totalBatchMaxBytes = totalBatchMaxBytes;
+    }
 }
@@ -276,6 +276,15 @@ public class DefaultMQPushConsumerTest {
         } catch (MQClientException e) {
             assertThat(e).hasMessageContaining("pullThresholdSizeForTopic Out of range [1, 102400]");
         }
+
+        pushConsumer = createPushConsumer();
+        pushConsumer.setPullMemoryBudgetWeight(0);
+        try {
+            pushConsumer.start();
+            failBecauseExceptionWasNotThrown(MQClientException.class);
+        } catch (MQClientException e) {
+            assertThat(e).hasMessageContaining("pullMemoryBudgetWeight Out of range");
+        }
     }
 
     @Test(timeout = 20000)
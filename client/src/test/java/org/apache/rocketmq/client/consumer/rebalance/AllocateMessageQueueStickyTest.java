@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.consumer.rebalance;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.rocketmq.client.consumer.AllocateMessageQueueStrategy;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AllocateMessageQueueStickyTest {
+    private final AllocateMessageQueueStrategy strategy = new AllocateMessageQueueSticky();
+
+    @Test
+    public void testCurrentCIDNotExists() {
+        List<MessageQueue> result = strategy.allocate("", "127.0.0.1@2", createMessageQueueList(8), createConsumerIdList(2));
+        assertThat(result).isEmpty();
+    }
+
+    @Test
+    public void testAllocateBalanced() {
+        int[][] cases = {{8, 3}, {16, 4}, {64, 7}, {3, 5}, {1, 1}, {256, 100}};
+        for (int[] c : cases) {
+            List<MessageQueue> mqAll = createMessageQueueList(c[0]);
+            Map<MessageQueue, String> owners = allocateAll(strategy, mqAll, createConsumerIdList(c[1]));
+            assertThat(owners).hasSize(mqAll.size());
+
+            Map<String, Integer> loads = new HashMap<String, Integer>();
+            for (String cid : owners.values()) {
+                loads.put(cid, loads.containsKey(cid) ? loads.get(cid) + 1 : 1);
+            }
+            for (int load : loads.values()) {
+                assertThat(load).isBetween(c[0] / c[1], (c[0] + c[1] - 1) / c[1]);
+            }
+        }
+    }
+
+    @Test
+    public void testFewQueuesMovedWhenConsumerJoins() {
+        List<MessageQueue> mqAll = createMessageQueueList(128);
+        List<String> cidAll = createConsumerIdList(16);
+        List<String> joined = new ArrayList<String>(cidAll);
+        joined.add("127.0.0.1@16");
+
+        int moved = countMoved(strategy, mqAll, cidAll, joined);
+        int movedAveragely = countMoved(new AllocateMessageQueueAveragely(), mqAll, cidAll, joined);
+        // the consumer joining takes 7 or 8 queues, a few more move to make room for them
+        assertThat(moved).isLessThanOrEqualTo(16).isLessThan(movedAveragely);
+    }
+
+    @Test
+    public void testFewQueuesMovedWhenConsumerLeaves() {
+        List<MessageQueue> mqAll = createMessageQueueList(128);
+        List<String> cidAll = createConsumerIdList(16);
+        List<String> left = new ArrayList<String>(cidAll);
+        left.remove(5);
+
+        int moved = countMoved(strategy, mqAll, cidAll, left);
+        int movedAveragely = countMoved(new AllocateMessageQueueAveragely(), mqAll, cidAll, left);
+        // the consumer leaving gives up 8 queues, a few more move to make room for them
+        assertThat(moved).isLessThanOrEqualTo(16).isLessThan(movedAveragely);
+    }
+
+    private int countMoved(AllocateMessageQueueStrategy strategy, List<MessageQueue> mqAll, List<String> before,
+        List<String> after) {
+        Map<MessageQueue, String> ownersBefore = allocateAll(strategy, mqAll, before);
+        Map<MessageQueue, String> ownersAfter = allocateAll(strategy, mqAll, after);
+        int moved = 0;
+        for (MessageQueue mq : mqAll) {
+            if (!ownersBefore.get(mq).equals(ownersAfter.get(mq))) {
+                moved++;
+            }
+        }
+        return moved;
+    }
+
+    private Map<MessageQueue, String> allocateAll(AllocateMessageQueueStrategy strategy, List<MessageQueue> mqAll,
+        List<String> cidAll) {
+        Map<MessageQueue, String> owners = new HashMap<MessageQueue, String>();
+        for (String cid : cidAll) {
+            for (MessageQueue mq : strategy.allocate("", cid, mqAll, cidAll)) {
+                assertThat(owners.put(mq, cid)).isNull();
+            }
+        }
+        return owners;
+    }
+
+    private List<String> createConsumerIdList(int size) {
+        List<String> consumerIdList = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++) {
+            consumerIdList.add("127.0.0.1@" + i);
+        }
+        return consumerIdList;
+    }
+
+    private List<MessageQueue> createMessageQueueList(int size) {
+        List<MessageQueue> messageQueueList = new ArrayList<MessageQueue>(size);
+        for (int i = 0; i < size; i++) {
+            messageQueueList.add(new MessageQueue("topic_test", "broker-" + i % 4, i / 4));
+        }
+        return messageQueueList;
+    }
+}
@@ -16,17 +16,26 @@
  */
 package org.apache.rocketmq.client.consumer.store;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import org.apache.rocketmq.client.ClientConfig;
 import org.apache.rocketmq.client.exception.MQBrokerException;
 import org.apache.rocketmq.client.impl.FindBrokerResult;
 import org.apache.rocketmq.client.impl.MQClientAPIImpl;
 import org.apache.rocketmq.client.impl.factory.MQClientInstance;
 import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.common.protocol.ResponseCode;
+import org.apache.rocketmq.common.protocol.body.UpdateConsumerOffsetBatchRequestBody;
 import org.apache.rocketmq.common.protocol.header.QueryConsumerOffsetRequestHeader;
 import org.apache.rocketmq.common.protocol.header.UpdateConsumerOffsetRequestHeader;
+import org.apache.rocketmq.remoting.InvokeCallback;
 import org.apache.rocketmq.remoting.exception.RemotingException;
+import org.apache.rocketmq.remoting.netty.ResponseFuture;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.remoting.protocol.RemotingSysResponseCode;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -41,6 +50,9 @@ import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -106,6 +118,14 @@ public class RemoteBrokerOffsetStoreTest {
                 return null;
             }
         }).when(mqClientAPI).updateConsumerOffsetOneway(any(String.class), any(UpdateConsumerOffsetRequestHeader.class), any(Long.class));
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock mock) throws Throwable {
+                UpdateConsumerOffsetBatchRequestBody requestBody = mock.getArgument(1);
+                when(mqClientAPI.queryConsumerOffset(anyString(), any(QueryConsumerOffsetRequestHeader.class), anyLong())).thenReturn(requestBody.getOffsetTable().get(messageQueue));
+                return respond(mock.<InvokeCallback>getArgument(3), ResponseCode.SUCCESS);
+            }
+        }).when(mqClientAPI).updateConsumerOffsetBatchAsync(anyString(), any(UpdateConsumerOffsetBatchRequestBody.class), anyLong(), any(InvokeCallback.class));
 
         offsetStore.updateOffset(messageQueue, 1024, false);
         offsetStore.persist(messageQueue);
@@ -124,6 +144,90 @@ public class RemoteBrokerOffsetStoreTest {
         assertThat(offsetStore.readOffset(messageQueue, ReadOffsetType.READ_FROM_STORE)).isEqualTo(1025);
     }
 
+    @Test
+    public void testPersistAllInBatch() throws Exception {
+        when(mQClientFactory.findBrokerAddressInAdmin("AnotherBrokerName")).thenReturn(new FindBrokerResult("127.0.0.2", false));
+        OffsetStore offsetStore = new RemoteBrokerOffsetStore(mQClientFactory, group);
+        Set<MessageQueue> mqs = new HashSet<MessageQueue>();
+        for (int i = 0; i < 4; i++) {
+            MessageQueue mq = new MessageQueue(topic, i % 2 == 0 ? brokerName : "AnotherBrokerName", i);
+            offsetStore.updateOffset(mq, 100, false);
+            mqs.add(mq);
+        }
+
+        final List<UpdateConsumerOffsetBatchRequestBody> requests = new ArrayList<UpdateConsumerOffsetBatchRequestBody>();
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock mock) throws Throwable {
+                requests.add(mock.<UpdateConsumerOffsetBatchRequestBody>getArgument(1));
+                return respond(mock.<InvokeCallback>getArgument(3), ResponseCode.SUCCESS);
+            }
+        }).when(mqClientAPI).updateConsumerOffsetBatchAsync(anyString(), any(UpdateConsumerOffsetBatchRequestBody.class), anyLong(), any(InvokeCallback.class));
+
+        offsetStore.persistAll(mqs);
+        assertThat(requests).hasSize(2);
+        assertThat(requests.get(0).getOffsetTable()).hasSize(2);
+        assertThat(requests.get(0).getConsumerGroup()).isEqualTo(group);
+
+        // unchanged offsets are not committed again
+        requests.clear();
+        offsetStore.persistAll(mqs);
+        assertThat(requests).isEmpty();
+
+        MessageQueue changed = new MessageQueue(topic, brokerName, 2);
+        offsetStore.updateOffset(changed, 101, false);
+        offsetStore.persistAll(mqs);
+        assertThat(requests).hasSize(1);
+        assertThat(requests.get(0).getOffsetTable()).containsOnlyKeys(changed);
+        verify(mqClientAPI, never()).updateConsumerOffsetOneway(any(String.class), any(UpdateConsumerOffsetRequestHeader.class), any(Long.class));
+    }
+
+    @Test
+    public void testPersistAllOneByOneIfBatchUnsupported() throws Exception {
+        OffsetStore offsetStore = new RemoteBrokerOffsetStore(mQClientFactory, group);
+        Set<MessageQueue> mqs = new HashSet<MessageQueue>();
+        for (int i = 0; i < 4; i++) {
+            MessageQueue mq = new MessageQueue(topic, brokerName, i);
+            offsetStore.updateOffset(mq, 100, false);
+            mqs.add(mq);
+        }
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock mock) throws Throwable {
+                return respond(mock.<InvokeCallback>getArgument(3), RemotingSysResponseCode.REQUEST_CODE_NOT_SUPPORTED);
+            }
+        }).when(mqClientAPI).updateConsumerOffsetBatchAsync(anyString(), any(UpdateConsumerOffsetBatchRequestBody.class), anyLong(), any(InvokeCallback.class));
+
+        offsetStore.persistAll(mqs);
+        offsetStore.persistAll(mqs);
+        verify(mqClientAPI, times(1)).updateConsumerOffsetBatchAsync(anyString(), any(UpdateConsumerOffsetBatchRequestBody.class), anyLong(), any(InvokeCallback.class));
+        verify(mqClientAPI, times(8)).updateConsumerOffsetOneway(any(String.class), any(UpdateConsumerOffsetRequestHeader.class), any(Long.class));
+    }
+
+    @Test
+    public void testPersistAllBatchFailed() throws Exception {
+        OffsetStore offsetStore = new RemoteBrokerOffsetStore(mQClientFactory, group);
+        Set<MessageQueue> mqs = new HashSet<MessageQueue>();
+        MessageQueue mq = new MessageQueue(topic, brokerName, 0);
+        offsetStore.updateOffset(mq, 100, false);
+        mqs.add(mq);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock mock) throws Throwable {
+                InvokeCallback invokeCallback = mock.getArgument(3);
+                // timed out without a response
+                invokeCallback.operationComplete(new ResponseFuture(null, 0, 3000, null, null));
+                return null;
+            }
+        }).when(mqClientAPI).updateConsumerOffsetBatchAsync(anyString(), any(UpdateConsumerOffsetBatchRequestBody.class), anyLong(), any(InvokeCallback.class));
+
+        // the offsets not acknowledged are committed again in the next round
+        offsetStore.persistAll(mqs);
+        offsetStore.persistAll(mqs);
+        verify(mqClientAPI, times(2)).updateConsumerOffsetBatchAsync(anyString(), any(UpdateConsumerOffsetBatchRequestBody.class), anyLong(), any(InvokeCallback.class));
+        verify(mqClientAPI, never()).updateConsumerOffsetOneway(any(String.class), any(UpdateConsumerOffsetRequestHeader.class), any(Long.class));
+    }
+
     @Test
     public void testRemoveOffset() throws Exception {
         OffsetStore offsetStore = new RemoteBrokerOffsetStore(mQClientFactory, group);
@@ -135,4 +239,11 @@ public class RemoteBrokerOffsetStoreTest {
         offsetStore.removeOffset(messageQueue);
         assertThat(offsetStore.readOffset(messageQueue, ReadOffsetType.READ_FROM_MEMORY)).isEqualTo(-1);
     }
-}
\ No newline at end of file
+
+    private static Object respond(InvokeCallback invokeCallback, int code) {
+        ResponseFuture responseFuture = new ResponseFuture(null, 0, 3000, null, null);
+        responseFuture.setResponseCommand(RemotingCommand.createResponseCommand(code, null));
+        invokeCallback.operationComplete(responseFuture);
+        return null;
+    }
+}
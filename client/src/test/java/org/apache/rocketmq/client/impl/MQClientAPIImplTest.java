@@ -18,10 +18,12 @@ package org.apache.rocketmq.client.impl;
 
 import java.lang.reflect.Field;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.rocketmq.client.ClientConfig;
 import org.apache.rocketmq.client.consumer.AckCallback;
 import org.apache.rocketmq.client.consumer.AckResult;
@@ -73,6 +75,7 @@ import org.apache.rocketmq.common.protocol.header.SendMessageResponseHeader;
 import org.apache.rocketmq.common.protocol.header.namesrv.AddWritePermOfBrokerResponseHeader;
 import org.apache.rocketmq.common.protocol.header.UpdateConsumerOffsetRequestHeader;
 import org.apache.rocketmq.common.protocol.header.UpdateConsumerOffsetResponseHeader;
+import org.apache.rocketmq.common.protocol.heartbeat.HeartbeatData;
 import org.apache.rocketmq.common.protocol.heartbeat.MessageModel;
 import org.apache.rocketmq.common.subscription.SubscriptionGroupConfig;
 import org.apache.rocketmq.remoting.InvokeCallback;
@@ -951,4 +954,85 @@ public class MQClientAPIImplTest {
         int topicCnt = mqClientAPI.addWritePermOfBroker("127.0.0.1", "default-broker", 1000);
         assertThat(topicCnt).isEqualTo(7);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSendHeartbeat_FallbackToJsonAfterBrokerDowngrade() throws Exception {
+        ClientConfig clientConfig = new ClientConfig();
+        clientConfig.setUseBinaryBody(true);
+        MQClientAPIImpl binaryClientAPI = new MQClientAPIImpl(new NettyClientConfig(), null, null, clientConfig);
+        Field field = MQClientAPIImpl.class.getDeclaredField("remotingClient");
+        field.setAccessible(true);
+        field.set(binaryClientAPI, remotingClient);
+
+        final List<Boolean> sentBinary = new ArrayList<Boolean>();
+        final AtomicBoolean downgraded = new AtomicBoolean(false);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock mock) throws Throwable {
+                RemotingCommand request = mock.getArgument(1);
+                sentBinary.add(request.isBinaryBody());
+                RemotingCommand response = RemotingCommand.createResponseCommand(ResponseCode.SUCCESS, null);
+                if (!downgraded.get()) {
+                    response.markAcceptBinaryBody();
+                } else if (request.isBinaryBody()) {
+                    response.setCode(ResponseCode.SYSTEM_ERROR);
+                }
+                return response;
+            }
+        }).when(remotingClient).invokeSync(anyString(), any(RemotingCommand.class), anyLong());
+
+        HeartbeatData heartbeatData = new HeartbeatData();
+        heartbeatData.setClientID(clientId);
+        binaryClientAPI.sendHearbeat(brokerAddr, heartbeatData, 3000);
+        binaryClientAPI.sendHearbeat(brokerAddr, heartbeatData, 3000);
+        assertThat(sentBinary).containsExactly(false, true);
+
+        // the broker is rolled back and rejects the binary body, the same heartbeat is retried as json
+        downgraded.set(true);
+        sentBinary.clear();
+        binaryClientAPI.sendHearbeat(brokerAddr, heartbeatData, 3000);
+        binaryClientAPI.sendHearbeat(brokerAddr, heartbeatData, 3000);
+        assertThat(sentBinary).containsExactly(true, false, false);
+    }
+
+    @Test
+    public void testSendHeartbeat_NoFallbackAfterBinaryRemotingException() throws Exception {
+        ClientConfig clientConfig = new ClientConfig();
+        clientConfig.setUseBinaryBody(true);
+        MQClientAPIImpl binaryClientAPI = new MQClientAPIImpl(new NettyClientConfig(), null, null, clientConfig);
+        Field field = MQClientAPIImpl.class.getDeclaredField("remotingClient");
+        field.setAccessible(true);
+        field.set(binaryClientAPI, remotingClient);
+
+        final List<Boolean> sentBinary = new ArrayList<Boolean>();
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock mock) throws Throwable {
+                RemotingCommand request = mock.getArgument(1);
+                sentBinary.add(request.isBinaryBody());
+                if (request.isBinaryBody()) {
+                    throw new RemotingTimeoutException("wait response timeout");
+                }
+                RemotingCommand response = RemotingCommand.createResponseCommand(ResponseCode.SUCCESS, null);
+                response.markAcceptBinaryBody();
+                return response;
+            }
+        }).when(remotingClient).invokeSync(anyString(), any(RemotingCommand.class), anyLong());
+
+        HeartbeatData heartbeatData = new HeartbeatData();
+        heartbeatData.setClientID(clientId);
+        binaryClientAPI.sendHearbeat(brokerAddr, heartbeatData, 3000);
+        try {
+            binaryClientAPI.sendHearbeat(brokerAddr, heartbeatData, 3000);
+            failBecauseExceptionWasNotThrown(RemotingTimeoutException.class);
+        } catch (RemotingTimeoutException ignored) {
+        }
+        // a timeout says nothing about the body format, the broker keeps receiving binary heartbeats
+        try {
+            binaryClientAPI.sendHearbeat(brokerAddr, heartbeatData, 3000);
+            failBecauseExceptionWasNotThrown(RemotingTimeoutException.class);
+        } catch (RemotingTimeoutException ignored) {
+        }
+        assertThat(sentBinary).containsExactly(false, true, true);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.client.impl.consumer;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdaptivePullSizerTest {
+
+    @Test
+    public void testDepthFollowsConsumeRate() {
+        AdaptivePullSizer pullSizer = new AdaptivePullSizer();
+        assertThat(pullSizer.prefetchDepth(32, 1000)).isEqualTo(32);
+
+        long now = System.currentTimeMillis();
+        pullSizer.onPullRT(10);
+        // 5 messages per millisecond, 50 consumed during a pull
+        pullSizer.sample(1000, now + 200);
+        assertThat(pullSizer.prefetchDepth(32, 1000)).isEqualTo(100);
+        assertThat(pullSizer.prefetchDepth(32, 64)).isEqualTo(64);
+
+        // the consumption stops
+        pullSizer.sample(1000, now + 400);
+        pullSizer.sample(1000, now + 600);
+        pullSizer.sample(1000, now + 800);
+        assertThat(pullSizer.prefetchDepth(32, 1000)).isEqualTo(32);
+    }
+
+    @Test
+    public void testSampleIgnoresShortPeriod() {
+        AdaptivePullSizer pullSizer = new AdaptivePullSizer();
+        pullSizer.sample(1000, System.currentTimeMillis() + AdaptivePullSizer.SAMPLE_INTERVAL_MILLIS / 2);
+        assertThat(pullSizer.getConsumeRate()).isZero();
+    }
+
+    @Test
+    public void testLongPullIsCapped() {
+        AdaptivePullSizer pullSizer = new AdaptivePullSizer();
+        pullSizer.onPullRT(15000);
+        assertThat(pullSizer.getPullRT()).isEqualTo(1000d);
+    }
+
+    @Test
+    public void testBatchSize() {
+        AdaptivePullSizer pullSizer = new AdaptivePullSizer();
+        assertThat(pullSizer.batchSize(0, 100, 32)).isEqualTo(32);
+        assertThat(pullSizer.batchSize(90, 100, 32)).isEqualTo(10);
+        assertThat(pullSizer.batchSize(120, 100, 32)).isEqualTo(1);
+    }
+}
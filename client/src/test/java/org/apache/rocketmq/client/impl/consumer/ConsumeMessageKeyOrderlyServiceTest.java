@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.client.impl.consumer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyContext;
+import org.apache.rocketmq.client.consumer.listener.ConsumeOrderlyStatus;
+import org.apache.rocketmq.client.consumer.listener.MessageListenerOrderly;
+import org.apache.rocketmq.client.consumer.store.OffsetStore;
+import org.apache.rocketmq.client.impl.factory.MQClientInstance;
+import org.apache.rocketmq.client.stat.ConsumerStatsManager;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.apache.rocketmq.common.protocol.heartbeat.MessageModel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ConsumeMessageKeyOrderlyServiceTest {
+    private String topic = "FooBar";
+    private String brokerName = "BrokerA";
+    private DefaultMQPushConsumer pushConsumer;
+    private ScheduledExecutorService scheduledExecutorService;
+    private ConsumeMessageKeyOrderlyService consumeMessageService;
+    private final AtomicLong committedOffset = new AtomicLong(-1);
+
+    @Before
+    public void init() throws Exception {
+        pushConsumer = new DefaultMQPushConsumer("FooBarGroup" + System.currentTimeMillis());
+        pushConsumer.setMessageModel(MessageModel.BROADCASTING);
+        pushConsumer.setConsumeOrderlyKeyParallelism(4);
+        pushConsumer.setConsumeThreadMin(4);
+
+        scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
+        MQClientInstance mQClientFactory = mock(MQClientInstance.class);
+        when(mQClientFactory.getConsumerStatsManager()).thenReturn(new ConsumerStatsManager(scheduledExecutorService));
+        pushConsumer.getDefaultMQPushConsumerImpl().setmQClientFactory(mQClientFactory);
+
+        OffsetStore offsetStore = mock(OffsetStore.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock mock) throws Throwable {
+                long offset = mock.getArgument(1);
+                long prev = committedOffset.get();
+                while (offset > prev && !committedOffset.compareAndSet(prev, offset)) {
+                    prev = committedOffset.get();
+                }
+                return null;
+            }
+        }).when(offsetStore).updateOffset(any(MessageQueue.class), anyLong(), anyBoolean());
+        pushConsumer.getDefaultMQPushConsumerImpl().setOffsetStore(offsetStore);
+    }
+
+    @After
+    public void terminate() {
+        if (consumeMessageService != null) {
+            consumeMessageService.shutdown(0);
+        }
+        scheduledExecutorService.shutdown();
+    }
+
+    @Test
+    public void testConsumeInOrderPerKey() throws Exception {
+        final Map<String, List<Long>> consumed = new ConcurrentHashMap<String, List<Long>>();
+        final CountDownLatch latch = new CountDownLatch(200);
+        consumeMessageService = new ConsumeMessageKeyOrderlyService(pushConsumer.getDefaultMQPushConsumerImpl(), new MessageListenerOrderly() {
+            @Override
+            public ConsumeOrderlyStatus consumeMessage(List<MessageExt> msgs, ConsumeOrderlyContext context) {
+                for (MessageExt msg : msgs) {
+                    consumed.get(msg.getKeys()).add(msg.getQueueOffset());
+                    latch.countDown();
+                }
+                return ConsumeOrderlyStatus.SUCCESS;
+            }
+        });
+
+        ProcessQueue processQueue = new ProcessQueue();
+        MessageQueue messageQueue = new MessageQueue(topic, brokerName, 0);
+        for (int i = 0; i < 8; i++) {
+            consumed.put("Key" + i, new CopyOnWriteArrayList<Long>());
+        }
+        for (int offset = 0; offset < 200; offset += 20) {
+            List<MessageExt> msgs = createMessages(offset, 20, 8);
+            processQueue.putMessage(msgs);
+            consumeMessageService.submitConsumeRequest(msgs, processQueue, messageQueue, true);
+        }
+
+        assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+        for (List<Long> offsets : consumed.values()) {
+            assertThat(offsets).hasSize(25).isSorted();
+        }
+        // the offset is committed after the listener returns
+        assertThat(awaitCommittedOffset(200L, 5000)).isEqualTo(200L);
+        assertThat(processQueue.getMsgCount().get()).isZero();
+    }
+
+    @Test
+    public void testSuspendOnlyFailedKey() throws Exception {
+        final AtomicBoolean failed = new AtomicBoolean(false);
+        final List<Long> consumed = new CopyOnWriteArrayList<Long>();
+        final CountDownLatch othersConsumed = new CountDownLatch(12);
+        final CountDownLatch allConsumed = new CountDownLatch(13);
+        consumeMessageService = new ConsumeMessageKeyOrderlyService(pushConsumer.getDefaultMQPushConsumerImpl(), new MessageListenerOrderly() {
+            @Override
+            public ConsumeOrderlyStatus consumeMessage(List<MessageExt> msgs, ConsumeOrderlyContext context) {
+                MessageExt msg = msgs.get(0);
+                if (msg.getQueueOffset() == 0 && failed.compareAndSet(false, true)) {
+                    context.setSuspendCurrentQueueTimeMillis(1000);
+                    return ConsumeOrderlyStatus.SUSPEND_CURRENT_QUEUE_A_MOMENT;
+                }
+                consumed.add(msg.getQueueOffset());
+                if (msg.getQueueOffset() != 0) {
+                    othersConsumed.countDown();
+                }
+                allConsumed.countDown();
+                return ConsumeOrderlyStatus.SUCCESS;
+            }
+        });
+
+        ProcessQueue processQueue = new ProcessQueue();
+        MessageQueue messageQueue = new MessageQueue(topic, brokerName, 0);
+        List<MessageExt> msgs = new ArrayList<MessageExt>();
+        for (MessageExt msg : createMessages(0, 16, 16)) {
+            // Key4, Key8 and Key13 share the lane of Key0
+            if (msg.getQueueOffset() != 4 && msg.getQueueOffset() != 8 && msg.getQueueOffset() != 13) {
+                msgs.add(msg);
+            }
+        }
+        processQueue.putMessage(msgs);
+        consumeMessageService.submitConsumeRequest(msgs, processQueue, messageQueue, true);
+
+        assertThat(othersConsumed.await(900, TimeUnit.MILLISECONDS)).isTrue();
+        assertThat(consumed).doesNotContain(0L);
+        assertThat(committedOffset.get()).isLessThanOrEqualTo(0L);
+
+        assertThat(allConsumed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(msgs.get(0).getReconsumeTimes()).isEqualTo(1);
+        assertThat(awaitCommittedOffset(16L, 5000)).isEqualTo(16L);
+    }
+
+    @Test
+    public void testRebalanceWaitsForConsumingLanes() throws Exception {
+        pushConsumer.setMessageModel(MessageModel.CLUSTERING);
+        pushConsumer.getDefaultMQPushConsumerImpl().setConsumeOrderly(true);
+        final CountDownLatch consuming = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch allConsumed = new CountDownLatch(4);
+        consumeMessageService = new ConsumeMessageKeyOrderlyService(pushConsumer.getDefaultMQPushConsumerImpl(), new MessageListenerOrderly() {
+            @Override
+            public ConsumeOrderlyStatus consumeMessage(List<MessageExt> msgs, ConsumeOrderlyContext context) {
+                consuming.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ignored) {
+                }
+                allConsumed.countDown();
+                return ConsumeOrderlyStatus.SUCCESS;
+            }
+        });
+
+        ProcessQueue processQueue = new ProcessQueue();
+        processQueue.setLocked(true);
+        processQueue.setLastLockTimestamp(System.currentTimeMillis());
+        MessageQueue messageQueue = new MessageQueue(topic, brokerName, 0);
+        List<MessageExt> msgs = createMessages(0, 4, 2);
+        processQueue.putMessage(msgs);
+        consumeMessageService.submitConsumeRequest(msgs, processQueue, messageQueue, true);
+        assertThat(consuming.await(5, TimeUnit.SECONDS)).isTrue();
+
+        RebalancePushImpl rebalancePush = new RebalancePushImpl(pushConsumer.getConsumerGroup(), MessageModel.CLUSTERING,
+            null, mock(MQClientInstance.class), pushConsumer.getDefaultMQPushConsumerImpl());
+        // the queue must not be unlocked on the broker while the lanes are in the listener
+        assertThat(rebalancePush.removeUnnecessaryMessageQueue(messageQueue, processQueue)).isFalse();
+        assertThat(processQueue.getTryUnlockTimes()).isEqualTo(1);
+
+        release.countDown();
+        assertThat(allConsumed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(awaitCommittedOffset(4L, 5000)).isEqualTo(4L);
+        assertThat(rebalancePush.removeUnnecessaryMessageQueue(messageQueue, processQueue)).isTrue();
+    }
+
+    private long awaitCommittedOffset(final long expected, final long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (committedOffset.get() < expected && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        return committedOffset.get();
+    }
+
+    private List<MessageExt> createMessages(final long firstOffset, final int count, final int keyNums) {
+        List<MessageExt> msgs = new ArrayList<MessageExt>(count);
+        for (int i = 0; i < count; i++) {
+            MessageExt msg = new MessageExt();
+            msg.setTopic(topic);
+            msg.setQueueOffset(firstOffset + i);
+            msg.setKeys("Key" + ((firstOffset + i) % keyNums));
+            msg.setBody(new byte[] {'a'});
+            msgs.add(msg);
+        }
+        return msgs;
+    }
+}
@@ -19,6 +19,9 @@ package org.apache.rocketmq.client.impl.consumer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.common.protocol.body.ProcessQueueInfo;
 import org.junit.Test;
@@ -90,6 +93,145 @@ public class ProcessQueueTest {
         assertThat(processQueueInfo.getCachedMsgSizeInMiB()).isEqualTo(0);
     }
 
+    @Test
+    public void testRemoveMessageOutOfOrder() {
+        ProcessQueue pq = new ProcessQueue();
+        List<MessageExt> msgs = createMessageList();
+        pq.putMessage(msgs);
+        assertThat(pq.getMaxSpan()).isEqualTo(99);
+
+        assertThat(pq.removeMessage(msgs.subList(1, 10))).isEqualTo(0);
+        assertThat(pq.removeMessage(Collections.singletonList(msgs.get(0)))).isEqualTo(10);
+        assertThat(pq.getMaxSpan()).isEqualTo(89);
+        assertThat(pq.getCachedMsgMinOffset()).isEqualTo(10);
+        assertThat(pq.getCachedMsgMaxOffset()).isEqualTo(99);
+
+        // removed twice or never put
+        assertThat(pq.removeMessage(Collections.singletonList(msgs.get(0)))).isEqualTo(10);
+        assertThat(pq.getMsgCount().get()).isEqualTo(90);
+
+        assertThat(pq.removeMessage(msgs.subList(10, 100))).isEqualTo(100);
+        assertThat(pq.getMsgCount().get()).isZero();
+        assertThat(pq.getMsgSize().get()).isZero();
+        assertThat(pq.hasTempMessage()).isFalse();
+        assertThat(pq.getCachedMsgMaxOffset()).isEqualTo(-1);
+    }
+
+    @Test
+    public void testPutMessageWithGaps() {
+        ProcessQueue pq = new ProcessQueue();
+        List<MessageExt> msgs = new ArrayList<MessageExt>();
+        long[] offsets = {5, 6, 5000, 100000, 100001};
+        for (long offset : offsets) {
+            MessageExt messageExt = new MessageExt();
+            messageExt.setQueueOffset(offset);
+            messageExt.setBody(new byte[123]);
+            msgs.add(messageExt);
+        }
+        pq.putMessage(msgs);
+        // offsets not above the last one are duplicates
+        pq.putMessage(createMessageList(10));
+        assertThat(pq.getMsgCount().get()).isEqualTo(5);
+        assertThat(pq.getMaxSpan()).isEqualTo(100001 - 5);
+
+        assertThat(pq.removeMessage(msgs.subList(0, 2))).isEqualTo(5000);
+        assertThat(pq.removeMessage(msgs.subList(2, 3))).isEqualTo(100000);
+        assertThat(pq.getMsgTreeMap().keySet()).containsExactly(100000L, 100001L);
+        assertThat(pq.removeMessage(msgs.subList(3, 5))).isEqualTo(100002);
+    }
+
+    @Test
+    public void testRemoveMessageConcurrently() throws Exception {
+        final ProcessQueue pq = new ProcessQueue();
+        final List<MessageExt> msgs = createMessageList(100000);
+        pq.putMessage(msgs);
+        final List<MessageExt> shuffled = new ArrayList<MessageExt>(msgs);
+        Collections.shuffle(shuffled);
+
+        final int threadCount = 8;
+        final CountDownLatch latch = new CountDownLatch(threadCount);
+        final AtomicLong committed = new AtomicLong(-1);
+        for (int i = 0; i < threadCount; i++) {
+            final int index = i;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = index; j < shuffled.size(); j += threadCount) {
+                        long offset = pq.removeMessage(Collections.singletonList(shuffled.get(j)));
+                        long prev = committed.get();
+                        while (offset > prev && !committed.compareAndSet(prev, offset)) {
+                            prev = committed.get();
+                        }
+                    }
+                    latch.countDown();
+                }
+            }).start();
+        }
+
+        assertThat(latch.await(30, TimeUnit.SECONDS)).isTrue();
+        assertThat(committed.get()).isEqualTo(100000);
+        assertThat(pq.getMsgCount().get()).isZero();
+        assertThat(pq.getMaxSpan()).isZero();
+    }
+
+    @Test
+    public void testOrderlyRollbackAndConsumeAgain() {
+        ProcessQueue pq = new ProcessQueue();
+        pq.putMessage(createMessageList());
+
+        List<MessageExt> first = pq.takeMessages(10);
+        List<MessageExt> second = pq.takeMessages(10);
+        assertThat(second.get(0).getQueueOffset()).isEqualTo(10);
+
+        pq.makeMessageToConsumeAgain(second);
+        assertThat(pq.takeMessages(10)).isEqualTo(second);
+
+        pq.rollback();
+        assertThat(pq.takeMessages(10)).isEqualTo(first);
+        assertThat(pq.commit()).isEqualTo(10);
+        assertThat(pq.getMsgCount().get()).isEqualTo(90);
+
+        ProcessQueueInfo processQueueInfo = new ProcessQueueInfo();
+        pq.takeMessages(5);
+        pq.fillProcessQueueInfo(processQueueInfo);
+        assertThat(processQueueInfo.getTransactionMsgCount()).isEqualTo(5);
+        assertThat(processQueueInfo.getTransactionMsgMinOffset()).isEqualTo(10);
+        assertThat(processQueueInfo.getTransactionMsgMaxOffset()).isEqualTo(14);
+        assertThat(processQueueInfo.getCachedMsgMinOffset()).isEqualTo(15);
+        assertThat(processQueueInfo.getCachedMsgCount()).isEqualTo(85);
+    }
+
+    @Test
+    public void testSuspendPullResumedByConsumption() {
+        ProcessQueue pq = new ProcessQueue();
+        List<MessageExt> msgs = createMessageList(10);
+        pq.putMessage(msgs);
+
+        final AtomicLong resumed = new AtomicLong(0);
+        Runnable resumeTask = new Runnable() {
+            @Override
+            public void run() {
+                resumed.incrementAndGet();
+            }
+        };
+        pq.suspendPull(5, resumeTask);
+        pq.removeMessage(msgs.subList(0, 4));
+        assertThat(resumed.get()).isZero();
+
+        pq.removeMessage(msgs.subList(4, 6));
+        assertThat(resumed.get()).isEqualTo(1);
+        assertThat(pq.resumePull()).isFalse();
+
+        // already below the resume count
+        pq.suspendPull(5, resumeTask);
+        assertThat(resumed.get()).isEqualTo(2);
+
+        pq.suspendPull(0, resumeTask);
+        assertThat(pq.resumePull()).isTrue();
+        assertThat(resumed.get()).isEqualTo(3);
+        assertThat(pq.getMsgConsumedTotal()).isEqualTo(6);
+    }
+
     private List<MessageExt> createMessageList() {
         return createMessageList(100);
     }
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.client.impl.consumer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PullMemoryBudgetTest {
+    private static final int MSG_SIZE = 1000;
+
+    @Test
+    public void testReserveAndRelease() {
+        PullMemoryBudget budget = new PullMemoryBudget(100 * MSG_SIZE);
+        ProcessQueue pq = new ProcessQueue();
+        pq.putMessage(createMessages(0, 10));
+
+        long reserved = budget.tryReserve(pq, 1, 80);
+        assertThat(reserved).isEqualTo(80 * MSG_SIZE);
+        assertThat(budget.tryReserve(pq, 1, 20)).isEqualTo(-1);
+        assertThat(budget.getRejectedTimes()).isEqualTo(1);
+
+        List<MessageExt> pulled = createMessages(10, 80);
+        budget.release(reserved, 80 * MSG_SIZE);
+        pq.putMessage(pulled);
+        assertThat(budget.getReserved()).isZero();
+        assertThat(budget.getUsed()).isEqualTo(90 * MSG_SIZE);
+        assertThat(budget.tryReserve(pq, 1, 20)).isEqualTo(-1);
+    }
+
+    @Test
+    public void testUsedRefreshedFromQueues() throws Exception {
+        PullMemoryBudget budget = new PullMemoryBudget(100 * MSG_SIZE);
+        ProcessQueue pq = new ProcessQueue();
+        List<MessageExt> msgs = createMessages(0, 90);
+        pq.putMessage(msgs);
+        budget.tryReserve(pq, 1, 0);
+        assertThat(budget.getUsed()).isEqualTo(90 * MSG_SIZE);
+
+        pq.removeMessage(msgs);
+        TimeUnit.MILLISECONDS.sleep(PullMemoryBudget.REFRESH_INTERVAL_MILLIS + 50);
+        assertThat(budget.tryReserve(pq, 1, 20)).isEqualTo(20 * PullMemoryBudget.DEFAULT_MSG_SIZE);
+
+        ProcessQueue other = new ProcessQueue();
+        other.putMessage(createMessages(0, 70));
+        budget.tryReserve(other, 1, 0);
+        other.setDropped(true);
+        TimeUnit.MILLISECONDS.sleep(PullMemoryBudget.REFRESH_INTERVAL_MILLIS + 50);
+        budget.tryReserve(pq, 1, 0);
+        assertThat(budget.getUsed()).isZero();
+        assertThat(budget.getQueueNums()).isEqualTo(1);
+    }
+
+    @Test
+    public void testFairShare() {
+        PullMemoryBudget budget = new PullMemoryBudget(100 * MSG_SIZE);
+        ProcessQueue busy = new ProcessQueue();
+        ProcessQueue idle = new ProcessQueue();
+        budget.tryReserve(idle, 1, 0);
+        busy.putMessage(createMessages(0, 60));
+
+        // busy is over its half and the shared part of the budget is used
+        assertThat(budget.tryReserve(busy, 1, 30)).isEqualTo(-1);
+        assertThat(budget.tryReserve(idle, 1, 30)).isEqualTo(30 * PullMemoryBudget.DEFAULT_MSG_SIZE);
+    }
+
+    @Test
+    public void testWeightedShare() {
+        PullMemoryBudget budget = new PullMemoryBudget(100 * MSG_SIZE);
+        ProcessQueue heavy = new ProcessQueue();
+        ProcessQueue light = new ProcessQueue();
+        budget.tryReserve(light, 1, 0);
+        heavy.putMessage(createMessages(0, 60));
+
+        // three quarters of the budget are the share of heavy
+        assertThat(budget.tryReserve(heavy, 3, 30)).isEqualTo(-1);
+        assertThat(budget.tryReserve(heavy, 3, 15)).isEqualTo(15 * MSG_SIZE);
+    }
+
+    @Test
+    public void testWeightUpdated() {
+        PullMemoryBudget budget = new PullMemoryBudget(100 * MSG_SIZE);
+        ProcessQueue heavy = new ProcessQueue();
+        ProcessQueue light = new ProcessQueue();
+        light.putMessage(createMessages(0, 10));
+        budget.tryReserve(light, 1, 0);
+        heavy.putMessage(createMessages(0, 65));
+
+        assertThat(budget.tryReserve(heavy, 1, 6)).isEqualTo(-1);
+        // the new weight of heavy raises its share to three quarters of the budget
+        assertThat(budget.tryReserve(heavy, 3, 6)).isEqualTo(6 * MSG_SIZE);
+    }
+
+    @Test
+    public void testWeightBelowOne() {
+        PullMemoryBudget budget = new PullMemoryBudget(100 * MSG_SIZE);
+        ProcessQueue pq = new ProcessQueue();
+        assertThat(budget.tryReserve(pq, 0, 10)).isEqualTo(10 * PullMemoryBudget.DEFAULT_MSG_SIZE);
+    }
+
+    private List<MessageExt> createMessages(final long firstOffset, final int count) {
+        List<MessageExt> msgs = new ArrayList<MessageExt>(count);
+        for (int i = 0; i < count; i++) {
+            MessageExt msg = new MessageExt();
+            msg.setQueueOffset(firstOffset + i);
+            msg.setBody(new byte[MSG_SIZE]);
+            msgs.add(msg);
+        }
+        return msgs;
+    }
+}
@@ -21,13 +21,19 @@ import java.util.HashSet;
 import java.util.Set;
 import org.apache.rocketmq.client.consumer.DefaultMQPushConsumer;
 import org.apache.rocketmq.client.consumer.rebalance.AllocateMessageQueueAveragely;
+import org.apache.rocketmq.client.consumer.rebalance.AllocateMessageQueueSticky;
 import org.apache.rocketmq.client.consumer.store.OffsetStore;
+import org.apache.rocketmq.client.consumer.store.ReadOffsetType;
 import org.apache.rocketmq.client.exception.MQBrokerException;
 import org.apache.rocketmq.client.exception.MQClientException;
+import org.apache.rocketmq.client.impl.FindBrokerResult;
+import org.apache.rocketmq.client.impl.MQClientAPIImpl;
 import org.apache.rocketmq.client.impl.factory.MQClientInstance;
+import org.apache.rocketmq.common.MixAll;
 import org.apache.rocketmq.common.message.MessageQueue;
 import org.apache.rocketmq.common.message.MessageQueueAssignment;
 import org.apache.rocketmq.common.message.MessageRequestMode;
+import org.apache.rocketmq.common.protocol.body.UnlockBatchRequestBody;
 import org.apache.rocketmq.common.protocol.heartbeat.MessageModel;
 import org.apache.rocketmq.common.protocol.heartbeat.SubscriptionData;
 import org.apache.rocketmq.remoting.exception.RemotingException;
@@ -35,6 +41,7 @@ import org.apache.rocketmq.remoting.exception.RemotingTimeoutException;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
@@ -44,7 +51,13 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -189,4 +202,39 @@ public class RebalancePushImplTest {
 
         assertThat(rebalancePush.doRebalance(false)).isTrue();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testHandOffCommitsOffsetBeforeUnlock() throws Exception {
+        defaultMQPushConsumer.getDefaultMQPushConsumer().setCooperativeRebalance(true);
+        RebalancePushImpl rebalancePush = new RebalancePushImpl(consumerGroup, MessageModel.CLUSTERING,
+            new AllocateMessageQueueSticky(), mqClientInstance, defaultMQPushConsumer);
+        MQClientAPIImpl mqClientAPI = mock(MQClientAPIImpl.class);
+        when(defaultMQPushConsumer.getOffsetStore()).thenReturn(offsetStore);
+        when(mqClientInstance.findBrokerAddressInSubscribe(brokerName, MixAll.MASTER_ID, true)).thenReturn(new FindBrokerResult("127.0.0.1:10911", false));
+        when(mqClientInstance.getMQClientAPIImpl()).thenReturn(mqClientAPI);
+        MessageQueue mq = new MessageQueue(topic, brokerName, 0);
+        when(offsetStore.readOffset(mq, ReadOffsetType.READ_FROM_MEMORY)).thenReturn(100L);
+
+        assertThat(rebalancePush.removeUnnecessaryMessageQueue(mq, new ProcessQueue())).isTrue();
+        InOrder inOrder = inOrder(offsetStore, mqClientAPI);
+        inOrder.verify(offsetStore).updateConsumeOffsetToBroker(mq, 100L, false);
+        inOrder.verify(offsetStore).removeOffset(mq);
+        inOrder.verify(mqClientAPI).unlockBatchMQ(anyString(), any(UnlockBatchRequestBody.class), anyLong(), eq(true));
+    }
+
+    @Test
+    public void testHandOffKeepsLockIfCommitFailed() throws Exception {
+        defaultMQPushConsumer.getDefaultMQPushConsumer().setCooperativeRebalance(true);
+        RebalancePushImpl rebalancePush = new RebalancePushImpl(consumerGroup, MessageModel.CLUSTERING,
+            new AllocateMessageQueueSticky(), mqClientInstance, defaultMQPushConsumer);
+        when(defaultMQPushConsumer.getOffsetStore()).thenReturn(offsetStore);
+        MessageQueue mq = new MessageQueue(topic, brokerName, 0);
+        when(offsetStore.readOffset(mq, ReadOffsetType.READ_FROM_MEMORY)).thenReturn(100L);
+        doThrow(new MQClientException("The broker[" + brokerName + "] not exist", null))
+            .when(offsetStore).updateConsumeOffsetToBroker(mq, 100L, false);
+
+        assertThat(rebalancePush.removeUnnecessaryMessageQueue(mq, new ProcessQueue())).isFalse();
+        verify(offsetStore, never()).removeOffset(mq);
+        verify(mqClientInstance, never()).getMQClientAPIImpl();
+    }
+}
@@ -17,8 +17,10 @@
 package org.apache.rocketmq.client.impl.factory;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -27,23 +29,31 @@ import org.apache.rocketmq.client.ClientConfig;
 import org.apache.rocketmq.client.admin.MQAdminExtInner;
 import org.apache.rocketmq.client.exception.MQBrokerException;
 import org.apache.rocketmq.client.impl.FindBrokerResult;
+import org.apache.rocketmq.client.impl.MQClientAPIImpl;
 import org.apache.rocketmq.client.impl.MQClientManager;
 import org.apache.rocketmq.client.impl.consumer.MQConsumerInner;
 import org.apache.rocketmq.client.impl.producer.DefaultMQProducerImpl;
 import org.apache.rocketmq.client.impl.producer.TopicPublishInfo;
 import org.apache.rocketmq.common.protocol.body.ConsumerRunningInfo;
+import org.apache.rocketmq.common.protocol.body.TopicRouteChangesBody;
 import org.apache.rocketmq.common.protocol.heartbeat.ConsumeType;
 import org.apache.rocketmq.common.protocol.route.BrokerData;
 import org.apache.rocketmq.common.protocol.route.QueueData;
 import org.apache.rocketmq.common.protocol.route.TopicRouteData;
+import org.apache.rocketmq.common.protocol.route.TopicRouteDataNameSrv;
 import org.apache.rocketmq.remoting.exception.RemotingException;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -168,6 +178,42 @@ public class MQClientInstanceTest {
         assertThat(flag).isTrue();
     }
 
+    @Test
+    public void testPollTopicRouteChanges() throws Exception {
+        MQClientInstance clientInstance = new MQClientInstance(new ClientConfig(), 0, "routeChangesTest");
+        MQClientAPIImpl mqClientAPIImpl = mock(MQClientAPIImpl.class);
+        FieldUtils.writeDeclaredField(clientInstance, "mQClientAPIImpl", mqClientAPIImpl, true);
+        DefaultMQProducerImpl producer = mock(DefaultMQProducerImpl.class);
+        when(producer.getPublishTopicList()).thenReturn(Collections.singleton(topic));
+        clientInstance.registerProducer(group, producer);
+
+        TopicRouteDataNameSrv topicRouteData = new TopicRouteDataNameSrv();
+        topicRouteData.setBrokerDatas(Collections.singletonList(new BrokerData("DefaultCluster", "BrokerA",
+            new HashMap<Long, String>(Collections.singletonMap(0L, "127.0.0.1:10911")))));
+        QueueData queueData = new QueueData();
+        queueData.setBrokerName("BrokerA");
+        queueData.setPerm(6);
+        queueData.setReadQueueNums(4);
+        queueData.setWriteQueueNums(4);
+        topicRouteData.setQueueDatas(Collections.singletonList(queueData));
+        topicRouteData.setFilterServerTable(new HashMap<String, List<String>>());
+        TopicRouteChangesBody changes = new TopicRouteChangesBody();
+        changes.getTopicVersionTable().put(topic, 5L);
+        changes.getTopicRouteDataTable().put(topic, topicRouteData);
+
+        ArgumentCaptor<Map<String, Long>> versions = ArgumentCaptor.forClass(Map.class);
+        when(mqClientAPIImpl.getRouteChangesFromNameServer(versions.capture(), anyLong(), anyLong()))
+            .thenReturn(changes, new TopicRouteChangesBody());
+
+        clientInstance.pollTopicRouteChanges(1000);
+        assertThat(versions.getValue()).containsEntry(topic, TopicRouteChangesBody.VERSION_UNKNOWN);
+        assertThat(clientInstance.getTopicRouteTable()).containsKey(topic);
+        verify(producer).updateTopicPublishInfo(eq(topic), any(TopicPublishInfo.class));
+
+        clientInstance.pollTopicRouteChanges(1000);
+        assertThat(versions.getValue()).containsEntry(topic, 5L);
+    }
+
     @Test
     public void testRegisterAdminExt() {
         boolean flag = mqClientInstance.registerAdminExt(group, mock(MQAdminExtInner.class));
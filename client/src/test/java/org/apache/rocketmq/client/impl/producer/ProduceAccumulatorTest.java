@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.client.impl.producer;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
+import org.apache.rocketmq.client.producer.SendStatus;
+import org.apache.rocketmq.common.message.Message;
+import org.apache.rocketmq.common.message.MessageBatch;
+import org.apache.rocketmq.common.message.MessageClientIDSetter;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class ProduceAccumulatorTest {
+    private static final String TOPIC = "accumulator-test";
+
+    private DefaultMQProducer producer;
+    private DefaultMQProducerImpl producerImpl;
+    private ProduceAccumulator accumulator;
+    private final List<Message> sent = Collections.synchronizedList(new ArrayList<Message>());
+
+    @Before
+    public void init() {
+        producer = new DefaultMQProducer("accumulator-test-group");
+        producer.setBatchMaxDelayMs(500);
+        producer.setBatchMaxBytes(1024);
+        producerImpl = mock(DefaultMQProducerImpl.class);
+        accumulator = new ProduceAccumulator(producerImpl, producer);
+        // warm up the unique key generator, its first call is slow
+        MessageClientIDSetter.createUniqID();
+    }
+
+    @After
+    public void destroy() {
+        accumulator.shutdown();
+    }
+
+    @Test
+    public void testBatchSplitResult() throws Exception {
+        mockSendSuccess();
+        final int count = 5;
+        final List<SendResult> results = Collections.synchronizedList(new ArrayList<SendResult>());
+        final CountDownLatch latch = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            assertThat(accumulator.tryAppend(new Message(TOPIC, new byte[10]), new SendCallback() {
+                @Override
+                public void onSuccess(SendResult sendResult) {
+                    results.add(sendResult);
+                    latch.countDown();
+                }
+
+                @Override
+                public void onException(Throwable e) {
+                }
+            }, 3000)).isTrue();
+        }
+
+        assertThat(latch.await(3, TimeUnit.SECONDS)).isTrue();
+        assertThat(sent).hasSize(1);
+        assertThat(sent.get(0)).isInstanceOf(MessageBatch.class);
+        assertThat(accumulator.getTotalBytes()).isZero();
+
+        List<String> msgIds = new ArrayList<String>();
+        List<Long> offsets = new ArrayList<Long>();
+        for (SendResult result : results) {
+            msgIds.add(result.getMsgId());
+            offsets.add(result.getQueueOffset());
+            assertThat(result.getSendStatus()).isEqualTo(SendStatus.SEND_OK);
+            assertThat(result.getMsgId()).doesNotContain(",");
+            assertThat(result.getOffsetMsgId()).doesNotContain(",");
+        }
+        assertThat(msgIds).doesNotHaveDuplicates();
+        assertThat(offsets).containsExactlyInAnyOrder(100L, 101L, 102L, 103L, 104L);
+    }
+
+    @Test
+    public void testFlushWhenFull() throws Exception {
+        mockSendSuccess();
+        final CountDownLatch latch = new CountDownLatch(3);
+        SendCallback callback = new SendCallback() {
+            @Override
+            public void onSuccess(SendResult sendResult) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onException(Throwable e) {
+            }
+        };
+        producer.setBatchMaxDelayMs(60 * 1000);
+        for (int i = 0; i < 3; i++) {
+            assertThat(accumulator.tryAppend(new Message(TOPIC, new byte[600]), callback, 3000)).isTrue();
+        }
+        // the first two fill the batch, the third one waits in the next one
+        assertThat(sent).hasSize(1);
+        accumulator.shutdown();
+        assertThat(latch.await(3, TimeUnit.SECONDS)).isTrue();
+        assertThat(sent).hasSize(2);
+    }
+
+    @Test
+    public void testNotBatchable() throws Exception {
+        Message delay = new Message(TOPIC, new byte[10]);
+        delay.setDelayTimeLevel(1);
+        SendCallback callback = mock(SendCallback.class);
+        assertThat(accumulator.tryAppend(delay, callback, 3000)).isFalse();
+        assertThat(accumulator.tryAppend(new Message(TOPIC, new byte[2048]), callback, 3000)).isFalse();
+        assertThat(accumulator.tryAppend(new Message(TOPIC, new byte[10]), null, 3000)).isFalse();
+    }
+
+    @Test
+    public void testNotAppendAfterShutdown() throws Exception {
+        accumulator.shutdown();
+        assertThat(accumulator.tryAppend(new Message(TOPIC, new byte[10]), mock(SendCallback.class), 3000)).isFalse();
+        assertThat(accumulator.getTotalBytes()).isZero();
+    }
+
+    @Test
+    public void testFlushWhenLingerRejected() throws Exception {
+        mockSendSuccess();
+        Field field = ProduceAccumulator.class.getDeclaredField("lingerService");
+        field.setAccessible(true);
+        ((ScheduledExecutorService) field.get(accumulator)).shutdown();
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        assertThat(accumulator.tryAppend(new Message(TOPIC, new byte[10]), new SendCallback() {
+            @Override
+            public void onSuccess(SendResult sendResult) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onException(Throwable e) {
+            }
+        }, 3000)).isTrue();
+        // no linger would ever flush it, so it is sent right away
+        assertThat(latch.getCount()).isZero();
+        assertThat(sent).hasSize(1);
+        assertThat(accumulator.getTotalBytes()).isZero();
+    }
+
+    private void mockSendSuccess() throws Exception {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                Message msg = invocation.getArgument(0);
+                SendCallback callback = invocation.getArgument(1);
+                sent.add(msg);
+                int size = 1;
+                if (msg instanceof MessageBatch) {
+                    size = 0;
+                    for (Message ignored : (MessageBatch) msg) {
+                        size++;
+                    }
+                }
+                StringBuilder offsetMsgIds = new StringBuilder();
+                for (int i = 0; i < size; i++) {
+                    offsetMsgIds.append(i == 0 ? "" : ",").append("OFFSET").append(i);
+                }
+                SendResult result = new SendResult(SendStatus.SEND_OK, "batch", offsetMsgIds.toString(),
+                    new MessageQueue(TOPIC, "broker-a", 0), 100);
+                callback.onSuccess(result);
+                return null;
+            }
+        }).when(producerImpl).sendDefaultAsync(any(Message.class), any(SendCallback.class), anyLong());
+    }
+}
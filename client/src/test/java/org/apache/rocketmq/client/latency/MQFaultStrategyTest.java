@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.client.latency;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.client.impl.producer.TopicPublishInfo;
+import org.apache.rocketmq.common.message.MessageQueue;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.offset;
+
+public class MQFaultStrategyTest {
+    private static final String BROKER_A = "BrokerA";
+    private static final String BROKER_B = "BrokerB";
+
+    private MQFaultStrategy mqFaultStrategy;
+    private TopicPublishInfo topicPublishInfo;
+
+    @Before
+    public void init() {
+        mqFaultStrategy = new MQFaultStrategy();
+        mqFaultStrategy.setSendAdaptiveSelectEnable(true);
+
+        List<MessageQueue> mqs = new ArrayList<MessageQueue>();
+        for (int i = 0; i < 4; i++) {
+            mqs.add(new MessageQueue("TopicTest", BROKER_A, i));
+            mqs.add(new MessageQueue("TopicTest", BROKER_B, i));
+        }
+        topicPublishInfo = new TopicPublishInfo();
+        topicPublishInfo.setMessageQueueList(mqs);
+    }
+
+    @Test
+    public void testSelectAvoidsSlowBroker() {
+        mqFaultStrategy.updateFaultItem(BROKER_A, 500, false);
+        mqFaultStrategy.updateFaultItem(BROKER_B, 10, false);
+
+        // broker a is only selected when both choices are its queues
+        assertThat(countSelected(BROKER_B, null, 1000)).isGreaterThan(700);
+    }
+
+    @Test
+    public void testSelectAvoidsBusyBroker() {
+        mqFaultStrategy.updateFaultItem(BROKER_A, 10, false);
+        mqFaultStrategy.updateFaultItem(BROKER_B, 10, false);
+        for (int i = 0; i < 10; i++) {
+            mqFaultStrategy.sendStarted(BROKER_A);
+        }
+        assertThat(countSelected(BROKER_B, null, 1000)).isGreaterThan(700);
+
+        for (int i = 0; i < 10; i++) {
+            mqFaultStrategy.sendFinished(BROKER_A);
+        }
+        assertThat(mqFaultStrategy.getBrokerScores().get(BROKER_A))
+            .isEqualTo(mqFaultStrategy.getBrokerScores().get(BROKER_B), offset(1d));
+    }
+
+    @Test
+    public void testSelectAvoidsLastBroker() {
+        assertThat(countSelected(BROKER_B, BROKER_A, 100)).isEqualTo(100);
+    }
+
+    @Test
+    public void testFailedBrokerRecovers() throws Exception {
+        mqFaultStrategy.setAdaptiveDecayTimeMillis(100);
+        mqFaultStrategy.updateFaultItem(BROKER_A, 10, true);
+        assertThat(mqFaultStrategy.getBrokerScores().get(BROKER_A)).isGreaterThan(1000d);
+
+        TimeUnit.MILLISECONDS.sleep(1000);
+        assertThat(mqFaultStrategy.getBrokerScores().get(BROKER_A)).isLessThan(1d);
+    }
+
+    private int countSelected(final String brokerName, final String lastBrokerName, final int times) {
+        int count = 0;
+        for (int i = 0; i < times; i++) {
+            if (mqFaultStrategy.selectOneMessageQueue(topicPublishInfo, lastBrokerName).getBrokerName().equals(brokerName)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -129,6 +129,38 @@ public class BrokerConfig {
     private long waitTimeMillsInHeartbeatQueue = 31 * 1000;
     private long waitTimeMillsInTransactionQueue = 3 * 1000;
 
+    /**
+     * Reject queued requests once the queueing time stays above the target for a whole interval, CoDel style,
+     * on top of the fixed waitTimeMillsIn*Queue limits.
+     */
+    private boolean brokerFastFailureCoDelEnable = false;
+    private long coDelTargetMillis = 20;
+    private long coDelIntervalMillis = 200;
+
+    /**
+     * Grow the request executors while requests keep waiting longer than coDelTargetMillis, up to
+     * adaptiveThreadPoolMaxRatio times the configured thread nums, and shrink them back when idle.
+     */
+    private boolean adaptiveThreadPoolEnable = false;
+    private int adaptiveThreadPoolMaxRatio = 2;
+
+    /**
+     * Record queueing and service time per request code in the broker stats.
+     */
+    private boolean requestTimeStatsEnable = false;
+
+    /**
+     * Run query, admin, end transaction and client/consumer manage requests on virtual threads when the JVM supports
+     * them, the thread pool nums then limit how many run at the same time and the queue capacities how many may wait.
+     */
+    private boolean virtualThreadExecutorEnable = false;
+
+    /**
+     * Keep the body of a send message request in the received frame and write it to the commit log from there
+     * instead of copying it into the heap first. The frame is held until the put completes.
+     */
+    private boolean sendMessageRetainBodyEnable = false;
+
     private long startAcceptSendRequestTimeStamp = 0L;
 
     private boolean traceOn = true;
@@ -212,6 +244,24 @@ public class BrokerConfig {
     @ImportantField
     private long transactionCheckInterval = 60 * 1000;
 
+    /**
+     * Group the transactions to check by producer group and send them in one request,
+     * only enable it when all the producers understand the batched check request.
+     */
+    private boolean transactionCheckBatchEnable = false;
+
+    private int transactionCheckBatchSize = 32;
+
+    /**
+     * Half queues checked in parallel in one round of transaction check.
+     */
+    private int transactionCheckParallelism = 1;
+
+    /**
+     * Max transactions checked back per second for one producer group, no limit if not positive.
+     */
+    private int transactionCheckMaxRatePerGroup = 0;
+
     /**
      * Acl feature switch
      */
@@ -882,6 +932,38 @@ public class BrokerConfig {
         this.transactionTimeOut = transactionTimeOut;
     }
 
+    public boolean isTransactionCheckBatchEnable() {
+        return transactionCheckBatchEnable;
+    }
+
+    public void setTransactionCheckBatchEnable(boolean transactionCheckBatchEnable) {
+        this.transactionCheckBatchEnable = transactionCheckBatchEnable;
+    }
+
+    public int getTransactionCheckBatchSize() {
+        return transactionCheckBatchSize;
+    }
+
+    public void setTransactionCheckBatchSize(int transactionCheckBatchSize) {
+        this.transactionCheckBatchSize = transactionCheckBatchSize;
+    }
+
+    public int getTransactionCheckParallelism() {
+        return transactionCheckParallelism;
+    }
+
+    public void setTransactionCheckParallelism(int transactionCheckParallelism) {
+        this.transactionCheckParallelism = transactionCheckParallelism;
+    }
+
+    public int getTransactionCheckMaxRatePerGroup() {
+        return transactionCheckMaxRatePerGroup;
+    }
+
+    public void setTransactionCheckMaxRatePerGroup(int transactionCheckMaxRatePerGroup) {
+        this.transactionCheckMaxRatePerGroup = transactionCheckMaxRatePerGroup;
+    }
+
     public int getTransactionCheckMax() {
         return transactionCheckMax;
     }
@@ -1017,4 +1099,68 @@ public class BrokerConfig {
     public void setForwardTimeout(long timeout) {
         this.forwardTimeout = timeout;
     }
+
+    public boolean isBrokerFastFailureCoDelEnable() {
+        return brokerFastFailureCoDelEnable;
+    }
+
+    public void setBrokerFastFailureCoDelEnable(boolean brokerFastFailureCoDelEnable) {
+        this.brokerFastFailureCoDelEnable = brokerFastFailureCoDelEnable;
+    }
+
+    public long getCoDelTargetMillis() {
+        return coDelTargetMillis;
+    }
+
+    public void setCoDelTargetMillis(long coDelTargetMillis) {
+        this.coDelTargetMillis = coDelTargetMillis;
+    }
+
+    public long getCoDelIntervalMillis() {
+        return coDelIntervalMillis;
+    }
+
+    public void setCoDelIntervalMillis(long coDelIntervalMillis) {
+        this.coDelIntervalMillis = coDelIntervalMillis;
+    }
+
+    public boolean isAdaptiveThreadPoolEnable() {
+        return adaptiveThreadPoolEnable;
+    }
+
+    public void setAdaptiveThreadPoolEnable(boolean adaptiveThreadPoolEnable) {
+        this.adaptiveThreadPoolEnable = adaptiveThreadPoolEnable;
+    }
+
+    public int getAdaptiveThreadPoolMaxRatio() {
+        return adaptiveThreadPoolMaxRatio;
+    }
+
+    public void setAdaptiveThreadPoolMaxRatio(int adaptiveThreadPoolMaxRatio) {
+        this.adaptiveThreadPoolMaxRatio = adaptiveThreadPoolMaxRatio;
+    }
+
+    public boolean isRequestTimeStatsEnable() {
+        return requestTimeStatsEnable;
+    }
+
+    public void setRequestTimeStatsEnable(boolean requestTimeStatsEnable) {
+        this.requestTimeStatsEnable = requestTimeStatsEnable;
+    }
+
+    public boolean isVirtualThreadExecutorEnable() {
+        return virtualThreadExecutorEnable;
+    }
+
+    public void setVirtualThreadExecutorEnable(boolean virtualThreadExecutorEnable) {
+        this.virtualThreadExecutorEnable = virtualThreadExecutorEnable;
+    }
+
+    public boolean isSendMessageRetainBodyEnable() {
+        return sendMessageRetainBodyEnable;
+    }
+
+    public void setSendMessageRetainBodyEnable(boolean sendMessageRetainBodyEnable) {
+        this.sendMessageRetainBodyEnable = sendMessageRetainBodyEnable;
+    }
 }
@@ -18,6 +18,7 @@ package org.apache.rocketmq.common;
 
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 import org.apache.rocketmq.common.constant.LoggerName;
 import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.logging.InternalLoggerFactory;
@@ -25,6 +26,11 @@ import org.apache.rocketmq.logging.InternalLoggerFactory;
 public abstract class ConfigManager {
     private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.COMMON_LOGGER_NAME);
 
+    /**
+     * Not synchronized on this, so that a thread writing the file does not pin the carrier of a virtual thread.
+     */
+    private final ReentrantLock persistLock = new ReentrantLock();
+
     public abstract String encode();
 
     public boolean load() {
@@ -68,25 +74,30 @@ public abstract class ConfigManager {
 
     public abstract void decode(final String jsonString);
 
-    public synchronized <T> void persist(String topicName, T t) {
+    public <T> void persist(String topicName, T t) {
         // stub for future
         this.persist();
     }
 
-    public synchronized <T> void persist(Map<String, T> m) {
+    public <T> void persist(Map<String, T> m) {
         // stub for future
         this.persist();
     }
 
-    public synchronized void persist() {
-        String jsonString = this.encode(true);
-        if (jsonString != null) {
-            String fileName = this.configFilePath();
-            try {
-                MixAll.string2File(jsonString, fileName);
-            } catch (IOException e) {
-                log.error("persist file " + fileName + " exception", e);
+    public void persist() {
+        this.persistLock.lock();
+        try {
+            String jsonString = this.encode(true);
+            if (jsonString != null) {
+                String fileName = this.configFilePath();
+                try {
+                    MixAll.string2File(jsonString, fileName);
+                } catch (IOException e) {
+                    log.error("persist file " + fileName + " exception", e);
+                }
             }
+        } finally {
+            this.persistLock.unlock();
         }
     }
 
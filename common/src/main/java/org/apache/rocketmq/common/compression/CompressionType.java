@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.common.compression;
+
+import org.apache.rocketmq.common.sysflag.MessageSysFlag;
+
+/**
+ * Codec of a compressed message body, carried in the {@link MessageSysFlag#COMPRESSION_TYPE_COMPARATOR} bits of the
+ * sys flag. Bodies compressed before the type bits existed have them all zero and are zlib.
+ */
+public enum CompressionType {
+    LZ4(1),
+    ZSTD(2),
+    ZLIB(3);
+
+    private final int value;
+
+    CompressionType(int value) {
+        this.value = value;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    public int getCompressionFlag() {
+        return this.value << MessageSysFlag.COMPRESSION_TYPE_SHIFT;
+    }
+
+    public static CompressionType of(String name) {
+        for (CompressionType type : values()) {
+            if (type.name().equalsIgnoreCase(name)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown compression type " + name);
+    }
+
+    public static CompressionType findByValue(int value) {
+        if (value == 0) {
+            return ZLIB;
+        }
+        for (CompressionType type : values()) {
+            if (type.value == value) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown compression type value " + value);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.common.compression;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import org.apache.rocketmq.common.sysflag.MessageSysFlag;
+
+/**
+ * Zlib and lz4 come built in, other codecs such as zstd have to be registered by the application together with the
+ * library they rely on, on both the producer and the consumer side.
+ */
+public class CompressorFactory {
+    private static volatile Map<CompressionType, Compressor> compressors;
+
+    static {
+        Map<CompressionType, Compressor> builtIn = new EnumMap<CompressionType, Compressor>(CompressionType.class);
+        builtIn.put(CompressionType.ZLIB, new ZlibCompressor());
+        builtIn.put(CompressionType.LZ4, new Lz4Compressor());
+        compressors = builtIn;
+    }
+
+    public static synchronized void register(CompressionType type, Compressor compressor) {
+        Map<CompressionType, Compressor> updated = new EnumMap<CompressionType, Compressor>(compressors);
+        updated.put(type, compressor);
+        compressors = updated;
+    }
+
+    /**
+     * @return null if no codec is available for the type
+     */
+    public static Compressor getCompressor(CompressionType type) {
+        return compressors.get(type);
+    }
+
+    /**
+     * Decompress a body according to the compression type bits of its sys flag.
+     */
+    public static byte[] decompress(byte[] body, int sysFlag) throws IOException {
+        return decompress(body, sysFlag, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Decompress a body according to the compression type bits of its sys flag, bodies decoding to more than maxLength
+     * bytes being rejected.
+     */
+    public static byte[] decompress(byte[] body, int sysFlag, int maxLength) throws IOException {
+        CompressionType type;
+        try {
+            type = MessageSysFlag.getCompressionType(sysFlag);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+        Compressor compressor = getCompressor(type);
+        if (null == compressor) {
+            throw new IOException("No compressor registered for " + type);
+        }
+        return compressor.decompress(body, maxLength);
+    }
+}
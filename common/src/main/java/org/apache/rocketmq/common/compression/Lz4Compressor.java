@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.common.compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * LZ4 block format with the original length in front as a big endian int, so the body is decoded into an array of the
+ * exact size in one pass. The level is ignored, compression is always the fast greedy one.
+ */
+public class Lz4Compressor implements Compressor {
+    private static final int HEADER_LENGTH = 4;
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MF_LIMIT = 12;
+    private static final int MAX_DISTANCE = 65535;
+    private static final int RUN_MASK = 15;
+    private static final int HASH_LOG = 14;
+
+    private final ThreadLocal<int[]> hashTable = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[1 << HASH_LOG];
+        }
+    };
+
+    @Override
+    public byte[] compress(byte[] src, int level) throws IOException {
+        final int length = src.length;
+        byte[] dst = new byte[HEADER_LENGTH + length + length / 255 + 16];
+        writeIntBE(dst, 0, length);
+        int op = HEADER_LENGTH;
+        int anchor = 0;
+
+        if (length >= MF_LIMIT + 1) {
+            // positions are stored plus one, zero is empty
+            int[] table = this.hashTable.get();
+            Arrays.fill(table, 0);
+            final int limit = length - MF_LIMIT;
+            final int matchLimit = length - LAST_LITERALS;
+            int ip = 0;
+            while (ip < limit) {
+                int sequence = readIntLE(src, ip);
+                int hash = hash(sequence);
+                int ref = table[hash] - 1;
+                table[hash] = ip + 1;
+                if (ref < 0 || ip - ref > MAX_DISTANCE || readIntLE(src, ref) != sequence) {
+                    ip++;
+                    continue;
+                }
+
+                while (ip > anchor && ref > 0 && src[ip - 1] == src[ref - 1]) {
+                    ip--;
+                    ref--;
+                }
+                int matchLength = MIN_MATCH;
+                while (ip + matchLength < matchLimit && src[ref + matchLength] == src[ip + matchLength]) {
+                    matchLength++;
+                }
+
+                op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref, matchLength);
+                ip += matchLength;
+                anchor = ip;
+            }
+        }
+
+        op = writeLastLiterals(src, anchor, length - anchor, dst, op);
+        return Arrays.copyOf(dst, op);
+    }
+
+    @Override
+    public byte[] decompress(byte[] src, int maxLength) throws IOException {
+        if (src.length < HEADER_LENGTH + 1) {
+            throw new IOException("Malformed lz4 body, length " + src.length);
+        }
+        final int length = readIntBE(src, 0);
+        if (length < 0) {
+            throw new IOException("Malformed lz4 body, original length " + length);
+        }
+        if (length > maxLength) {
+            throw new IOException("Lz4 body of " + length + " bytes exceeds the max length " + maxLength);
+        }
+        byte[] dst = new byte[length];
+        int ip = HEADER_LENGTH;
+        int op = 0;
+        try {
+            while (true) {
+                int token = src[ip++] & 0xFF;
+
+                int literalLength = token >>> 4;
+                if (literalLength == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        literalLength += b;
+                    } while (b == 255);
+                }
+                if (literalLength > length - op || literalLength > src.length - ip) {
+                    throw new IOException("Malformed lz4 body, literals overflow at " + ip);
+                }
+                System.arraycopy(src, ip, dst, op, literalLength);
+                ip += literalLength;
+                op += literalLength;
+                if (ip == src.length) {
+                    break;
+                }
+
+                int offset = (src[ip] & 0xFF) | (src[ip + 1] & 0xFF) << 8;
+                ip += 2;
+                if (offset == 0 || offset > op) {
+                    throw new IOException("Malformed lz4 body, offset " + offset + " at " + ip);
+                }
+                int matchLength = token & RUN_MASK;
+                if (matchLength == RUN_MASK) {
+                    int b;
+                    do {
+                        b = src[ip++] & 0xFF;
+                        matchLength += b;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                if (matchLength > length - op) {
+                    throw new IOException("Malformed lz4 body, match overflow at " + ip);
+                }
+                int ref = op - offset;
+                if (offset >= matchLength) {
+                    System.arraycopy(dst, ref, dst, op, matchLength);
+                    op += matchLength;
+                } else {
+                    for (int i = 0; i < matchLength; i++) {
+                        dst[op++] = dst[ref++];
+                    }
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Malformed lz4 body, truncated");
+        }
+        if (op != length) {
+            throw new IOException("Malformed lz4 body, decoded " + op + " of " + length + " bytes");
+        }
+        return dst;
+    }
+
+    private static int writeSequence(byte[] src, int literalOffset, int literalLength, byte[] dst, int op, int offset,
+        int matchLength) {
+        int tokenPos = op++;
+        int token;
+        if (literalLength >= RUN_MASK) {
+            token = RUN_MASK << 4;
+            op = writeLength(dst, op, literalLength - RUN_MASK);
+        } else {
+            token = literalLength << 4;
+        }
+        System.arraycopy(src, literalOffset, dst, op, literalLength);
+        op += literalLength;
+
+        dst[op++] = (byte) offset;
+        dst[op++] = (byte) (offset >>> 8);
+
+        int length = matchLength - MIN_MATCH;
+        if (length >= RUN_MASK) {
+            token |= RUN_MASK;
+            op = writeLength(dst, op, length - RUN_MASK);
+        } else {
+            token |= length;
+        }
+        dst[tokenPos] = (byte) token;
+        return op;
+    }
+
+    private static int writeLastLiterals(byte[] src, int literalOffset, int literalLength, byte[] dst, int op) {
+        if (literalLength >= RUN_MASK) {
+            dst[op++] = (byte) (RUN_MASK << 4);
+            op = writeLength(dst, op, literalLength - RUN_MASK);
+        } else {
+            dst[op++] = (byte) (literalLength << 4);
+        }
+        System.arraycopy(src, literalOffset, dst, op, literalLength);
+        return op + literalLength;
+    }
+
+    private static int writeLength(byte[] dst, int op, int length) {
+        while (length >= 255) {
+            dst[op++] = (byte) 255;
+            length -= 255;
+        }
+        dst[op++] = (byte) length;
+        return op;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+
+    private static int readIntLE(byte[] buf, int i) {
+        return (buf[i] & 0xFF) | (buf[i + 1] & 0xFF) << 8 | (buf[i + 2] & 0xFF) << 16 | (buf[i + 3] & 0xFF) << 24;
+    }
+
+    private static int readIntBE(byte[] buf, int i) {
+        return (buf[i] & 0xFF) << 24 | (buf[i + 1] & 0xFF) << 16 | (buf[i + 2] & 0xFF) << 8 | (buf[i + 3] & 0xFF);
+    }
+
+    private static void writeIntBE(byte[] buf, int i, int value) {
+        buf[i] = (byte) (value >>> 24);
+        buf[i + 1] = (byte) (value >>> 16);
+        buf[i + 2] = (byte) (value >>> 8);
+        buf[i + 3] = (byte) value;
+    }
+}
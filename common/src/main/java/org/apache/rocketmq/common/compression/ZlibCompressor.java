@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.common.compression;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Same format as {@link org.apache.rocketmq.common.UtilAll#compress(byte[], int)}, with the deflater, the inflater and
+ * the scratch buffer kept per thread instead of allocated for every body.
+ */
+public class ZlibCompressor implements Compressor {
+    /**
+     * Scratch buffers larger than this are not kept for the next call
+     */
+    private static final int MAX_CACHED_BUFFER_SIZE = 1024 * 1024 * 4;
+
+    private final ThreadLocal<Deflater> deflater = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater();
+        }
+    };
+
+    private final ThreadLocal<Inflater> inflater = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater();
+        }
+    };
+
+    private final ThreadLocal<byte[]> buffer = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[1024 * 8];
+        }
+    };
+
+    @Override
+    public byte[] compress(byte[] src, int level) throws IOException {
+        Deflater deflater = this.deflater.get();
+        deflater.reset();
+        deflater.setLevel(level);
+        deflater.setInput(src);
+        deflater.finish();
+
+        byte[] out = this.buffer.get();
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == out.length) {
+                out = this.grow(out);
+            }
+            length += deflater.deflate(out, length, out.length - length);
+        }
+        return this.result(out, length);
+    }
+
+    @Override
+    public byte[] decompress(byte[] src, int maxLength) throws IOException {
+        Inflater inflater = this.inflater.get();
+        inflater.reset();
+        inflater.setInput(src);
+
+        byte[] out = this.buffer.get();
+        int length = 0;
+        // one byte beyond the max length tells a body too long from one of exactly the max length
+        long limit = (long) maxLength + 1;
+        try {
+            while (!inflater.finished()) {
+                if (length > maxLength) {
+                    throw new IOException("Zlib body exceeds the max length " + maxLength);
+                }
+                if (length == out.length) {
+                    out = this.grow(out);
+                }
+                int n = inflater.inflate(out, length, (int) Math.min(out.length, limit) - length);
+                if (n == 0 && !inflater.finished() && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated zlib body");
+                }
+                length += n;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        }
+        if (length > maxLength) {
+            throw new IOException("Zlib body exceeds the max length " + maxLength);
+        }
+        return this.result(out, length);
+    }
+
+    private byte[] grow(byte[] out) {
+        byte[] grown = Arrays.copyOf(out, out.length * 2);
+        if (grown.length <= MAX_CACHED_BUFFER_SIZE) {
+            this.buffer.set(grown);
+        }
+        return grown;
+    }
+
+    private byte[] result(byte[] out, int length) {
+        return Arrays.copyOf(out, length);
+    }
+}
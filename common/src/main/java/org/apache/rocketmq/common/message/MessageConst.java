@@ -56,6 +56,8 @@ public class MessageConst {
     public static final String PROPERTY_FIRST_POP_TIME = "1ST_POP_TIME";
     public static final String PROPERTY_FORWARD_QUEUE_ID = "PROPERTY_FORWARD_QUEUE_ID";
     public static final String PROPERTY_REDIRECT = "REDIRECT";
+    public static final String PROPERTY_TIMER_DELIVER_MS = "TIMER_DELIVER_MS";
+    public static final String PROPERTY_TIMER_DELAY_MS = "TIMER_DELAY_MS";
 
     public static final String KEY_SEPARATOR = " ";
 
@@ -94,5 +96,7 @@ public class MessageConst {
         STRING_HASH_SET.add(PROPERTY_PUSH_REPLY_TIME);
         STRING_HASH_SET.add(PROPERTY_CLUSTER);
         STRING_HASH_SET.add(PROPERTY_MESSAGE_TYPE);
+        STRING_HASH_SET.add(PROPERTY_TIMER_DELIVER_MS);
+        STRING_HASH_SET.add(PROPERTY_TIMER_DELAY_MS);
     }
 }
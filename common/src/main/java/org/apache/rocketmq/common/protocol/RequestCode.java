@@ -195,6 +195,21 @@ public class RequestCode {
 
     public static final int ADD_WRITE_PERM_OF_BROKER = 327;
 
+    /**
+     * Check the state of several transactions of one producer group at once.
+     */
+    public static final int CHECK_TRANSACTION_STATE_BATCH = 328;
+
+    /**
+     * Commit the offsets of several queues of one consumer group at once.
+     */
+    public static final int UPDATE_CONSUMER_OFFSET_BATCH = 329;
+
+    /**
+     * Get the routes changed of several topics, the name server holding the request until one changes.
+     */
+    public static final int GET_ROUTEINFO_CHANGES_BY_TOPICS = 330;
+
     public static final int GET_TOPIC_CONFIG = 351;
 
     public static final int QUERY_ASSIGNMENT = 400;
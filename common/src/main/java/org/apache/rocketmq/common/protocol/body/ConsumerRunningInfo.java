@@ -34,6 +34,10 @@ public class ConsumerRunningInfo extends RemotingSerializable {
     public static final String PROP_CONSUME_TYPE = "PROP_CONSUME_TYPE";
     public static final String PROP_CLIENT_VERSION = "PROP_CLIENT_VERSION";
     public static final String PROP_CONSUMER_START_TIMESTAMP = "PROP_CONSUMER_START_TIMESTAMP";
+    public static final String PROP_PULL_MEMORY_BUDGET_CAPACITY = "PROP_PULL_MEMORY_BUDGET_CAPACITY";
+    public static final String PROP_PULL_MEMORY_BUDGET_USED = "PROP_PULL_MEMORY_BUDGET_USED";
+    public static final String PROP_PULL_MEMORY_BUDGET_RESERVED = "PROP_PULL_MEMORY_BUDGET_RESERVED";
+    public static final String PROP_PULL_MEMORY_BUDGET_REJECTED_TIMES = "PROP_PULL_MEMORY_BUDGET_REJECTED_TIMES";
 
     private Properties properties = new Properties();
 
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.common.protocol.body;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.rocketmq.common.protocol.route.TopicRouteDataNameSrv;
+import org.apache.rocketmq.remoting.protocol.RemotingSerializable;
+
+/**
+ * Body of {@link org.apache.rocketmq.common.protocol.RequestCode#GET_ROUTEINFO_CHANGES_BY_TOPICS}.
+ * <p>
+ * The request carries the route version known of each topic, {@link #VERSION_UNKNOWN} if none. The response carries
+ * the current version of the topics whose version differs, and the route of those that exist.
+ */
+public class TopicRouteChangesBody extends RemotingSerializable {
+    public static final long VERSION_UNKNOWN = -1;
+    /**
+     * Version of a topic without route
+     */
+    public static final long VERSION_NOT_EXIST = 0;
+
+    private Map<String/* topic */, Long> topicVersionTable = new HashMap<String, Long>();
+    private Map<String/* topic */, TopicRouteDataNameSrv> topicRouteDataTable = new HashMap<String, TopicRouteDataNameSrv>();
+
+    public Map<String, Long> getTopicVersionTable() {
+        return topicVersionTable;
+    }
+
+    public void setTopicVersionTable(Map<String, Long> topicVersionTable) {
+        this.topicVersionTable = topicVersionTable;
+    }
+
+    public Map<String, TopicRouteDataNameSrv> getTopicRouteDataTable() {
+        return topicRouteDataTable;
+    }
+
+    public void setTopicRouteDataTable(Map<String, TopicRouteDataNameSrv> topicRouteDataTable) {
+        this.topicRouteDataTable = topicRouteDataTable;
+    }
+}
@@ -22,6 +22,10 @@ package org.apache.rocketmq.common.protocol.heartbeat;
 
 import java.util.HashSet;
 import java.util.Set;
+import org.apache.rocketmq.common.consumer.ConsumeFromWhere;
+import org.apache.rocketmq.remoting.protocol.BinaryBodyReader;
+import org.apache.rocketmq.remoting.protocol.BinaryBodyWriter;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
 import org.apache.rocketmq.remoting.protocol.RemotingSerializable;
 
 public class HeartbeatData extends RemotingSerializable {
@@ -29,6 +33,176 @@ public class HeartbeatData extends RemotingSerializable {
     private Set<ProducerData> producerDataSet = new HashSet<ProducerData>();
     private Set<ConsumerData> consumerDataSet = new HashSet<ConsumerData>();
 
+    /**
+     * Wire codes of the enums in the binary format, a constant is written as its index in the table and 0 stands
+     * for null. The tables are part of the protocol, new constants may only be appended.
+     */
+    private static final ConsumeType[] CONSUME_TYPE_CODES = {
+        null,
+        ConsumeType.CONSUME_ACTIVELY,
+        ConsumeType.CONSUME_PASSIVELY
+    };
+    private static final MessageModel[] MESSAGE_MODEL_CODES = {
+        null,
+        MessageModel.BROADCASTING,
+        MessageModel.CLUSTERING
+    };
+    @SuppressWarnings("deprecation")
+    private static final ConsumeFromWhere[] CONSUME_FROM_WHERE_CODES = {
+        null,
+        ConsumeFromWhere.CONSUME_FROM_LAST_OFFSET,
+        ConsumeFromWhere.CONSUME_FROM_LAST_OFFSET_AND_FROM_MIN_WHEN_BOOT_FIRST,
+        ConsumeFromWhere.CONSUME_FROM_MIN_OFFSET,
+        ConsumeFromWhere.CONSUME_FROM_MAX_OFFSET,
+        ConsumeFromWhere.CONSUME_FROM_FIRST_OFFSET,
+        ConsumeFromWhere.CONSUME_FROM_TIMESTAMP
+    };
+
+    /**
+     * Encode in the compact binary format, only for brokers which accept it, see
+     * {@link org.apache.rocketmq.remoting.protocol.RemotingCommand#isAcceptBinaryBody()}.
+     */
+    public byte[] encodeBinary() {
+        BinaryBodyWriter writer = new BinaryBodyWriter(256);
+        writer.writeString(this.clientID);
+        writer.writeSize(this.producerDataSet == null ? -1 : this.producerDataSet.size());
+        if (this.producerDataSet != null) {
+            for (ProducerData producerData : this.producerDataSet) {
+                writer.writeString(producerData.getGroupName());
+            }
+        }
+        writer.writeSize(this.consumerDataSet == null ? -1 : this.consumerDataSet.size());
+        if (this.consumerDataSet != null) {
+            for (ConsumerData consumerData : this.consumerDataSet) {
+                writer.writeString(consumerData.getGroupName());
+                writeCode(writer, consumerData.getConsumeType(), CONSUME_TYPE_CODES);
+                writeCode(writer, consumerData.getMessageModel(), MESSAGE_MODEL_CODES);
+                writeCode(writer, consumerData.getConsumeFromWhere(), CONSUME_FROM_WHERE_CODES);
+                writer.writeBoolean(consumerData.isUnitMode());
+                Set<SubscriptionData> subscriptionDataSet = consumerData.getSubscriptionDataSet();
+                writer.writeSize(subscriptionDataSet == null ? -1 : subscriptionDataSet.size());
+                if (subscriptionDataSet != null) {
+                    for (SubscriptionData subscriptionData : subscriptionDataSet) {
+                        encodeSubscription(writer, subscriptionData);
+                    }
+                }
+            }
+        }
+        return writer.toByteArray();
+    }
+
+    private static <E extends Enum<E>> void writeCode(BinaryBodyWriter writer, E value, E[] codes) {
+        for (int code = 0; code < codes.length; code++) {
+            if (codes[code] == value) {
+                writer.writeVarInt(code);
+                return;
+            }
+        }
+        throw new IllegalArgumentException("no binary code for " + value);
+    }
+
+    private static <E extends Enum<E>> E readCode(BinaryBodyReader reader, E[] codes) {
+        int code = reader.readVarInt();
+        if (code < 0 || code >= codes.length) {
+            throw new IllegalArgumentException("unknown binary code " + code);
+        }
+        return codes[code];
+    }
+
+    private static void encodeSubscription(BinaryBodyWriter writer, SubscriptionData subscriptionData) {
+        writer.writeBoolean(subscriptionData.isClassFilterMode());
+        writer.writeString(subscriptionData.getTopic());
+        writer.writeString(subscriptionData.getSubString());
+        Set<String> tagsSet = subscriptionData.getTagsSet();
+        writer.writeSize(tagsSet == null ? -1 : tagsSet.size());
+        if (tagsSet != null) {
+            for (String tag : tagsSet) {
+                writer.writeString(tag);
+            }
+        }
+        Set<Integer> codeSet = subscriptionData.getCodeSet();
+        writer.writeSize(codeSet == null ? -1 : codeSet.size());
+        if (codeSet != null) {
+            for (Integer code : codeSet) {
+                writer.writeVarInt(code);
+            }
+        }
+        writer.writeLong(subscriptionData.getSubVersion());
+        writer.writeString(subscriptionData.getExpressionType());
+    }
+
+    /**
+     * Decode the body of a heartbeat request, either json or binary depending on the request flag.
+     */
+    public static HeartbeatData decode(final RemotingCommand request) {
+        if (request.isBinaryBody()) {
+            return decodeBinary(request.getBody());
+        }
+        return decode(request.getBody(), HeartbeatData.class);
+    }
+
+    public static HeartbeatData decodeBinary(final byte[] data) {
+        BinaryBodyReader reader = new BinaryBodyReader(data);
+        HeartbeatData heartbeatData = new HeartbeatData();
+        heartbeatData.setClientID(reader.readString());
+
+        int producerSize = reader.readSize();
+        if (producerSize < 0) {
+            heartbeatData.setProducerDataSet(null);
+        }
+        for (int i = 0; i < producerSize; i++) {
+            ProducerData producerData = new ProducerData();
+            producerData.setGroupName(reader.readString());
+            heartbeatData.getProducerDataSet().add(producerData);
+        }
+
+        int consumerSize = reader.readSize();
+        if (consumerSize < 0) {
+            heartbeatData.setConsumerDataSet(null);
+        }
+        for (int i = 0; i < consumerSize; i++) {
+            ConsumerData consumerData = new ConsumerData();
+            consumerData.setGroupName(reader.readString());
+            consumerData.setConsumeType(readCode(reader, CONSUME_TYPE_CODES));
+            consumerData.setMessageModel(readCode(reader, MESSAGE_MODEL_CODES));
+            consumerData.setConsumeFromWhere(readCode(reader, CONSUME_FROM_WHERE_CODES));
+            consumerData.setUnitMode(reader.readBoolean());
+            int subscriptionSize = reader.readSize();
+            if (subscriptionSize < 0) {
+                consumerData.setSubscriptionDataSet(null);
+            }
+            for (int j = 0; j < subscriptionSize; j++) {
+                consumerData.getSubscriptionDataSet().add(decodeSubscription(reader));
+            }
+            heartbeatData.getConsumerDataSet().add(consumerData);
+        }
+        return heartbeatData;
+    }
+
+    private static SubscriptionData decodeSubscription(BinaryBodyReader reader) {
+        SubscriptionData subscriptionData = new SubscriptionData();
+        subscriptionData.setClassFilterMode(reader.readBoolean());
+        subscriptionData.setTopic(reader.readString());
+        subscriptionData.setSubString(reader.readString());
+        int tagsSize = reader.readSize();
+        if (tagsSize < 0) {
+            subscriptionData.setTagsSet(null);
+        }
+        for (int i = 0; i < tagsSize; i++) {
+            subscriptionData.getTagsSet().add(reader.readString());
+        }
+        int codeSize = reader.readSize();
+        if (codeSize < 0) {
+            subscriptionData.setCodeSet(null);
+        }
+        for (int i = 0; i < codeSize; i++) {
+            subscriptionData.getCodeSet().add(reader.readVarInt());
+        }
+        subscriptionData.setSubVersion(reader.readLong());
+        subscriptionData.setExpressionType(reader.readString());
+        return subscriptionData;
+    }
+
     public String getClientID() {
         return clientID;
     }
@@ -23,6 +23,9 @@ package org.apache.rocketmq.common.protocol.route;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import org.apache.rocketmq.remoting.protocol.BinaryBodyReader;
+import org.apache.rocketmq.remoting.protocol.BinaryBodyWriter;
 import org.apache.rocketmq.remoting.protocol.RemotingSerializable;
 
 public class TopicRouteData extends RemotingSerializable {
@@ -58,6 +61,123 @@ public class TopicRouteData extends RemotingSerializable {
         }
     }
 
+    /**
+     * Encode in the compact binary format, only for clients which accept it, see
+     * {@link org.apache.rocketmq.remoting.protocol.RemotingCommand#isAcceptBinaryBody()}. The logical queues info is
+     * not part of the format, routes carrying it are kept in json.
+     */
+    public byte[] encodeBinary() {
+        BinaryBodyWriter writer = new BinaryBodyWriter(256);
+        writer.writeString(this.orderTopicConf);
+        writer.writeSize(this.queueDatas == null ? -1 : this.queueDatas.size());
+        if (this.queueDatas != null) {
+            for (QueueData queueData : this.queueDatas) {
+                writer.writeString(queueData.getBrokerName());
+                writer.writeVarInt(queueData.getReadQueueNums());
+                writer.writeVarInt(queueData.getWriteQueueNums());
+                writer.writeVarInt(queueData.getPerm());
+                writer.writeVarInt(queueData.getTopicSysFlag());
+            }
+        }
+        writer.writeSize(this.brokerDatas == null ? -1 : this.brokerDatas.size());
+        if (this.brokerDatas != null) {
+            for (BrokerData brokerData : this.brokerDatas) {
+                writer.writeString(brokerData.getCluster());
+                writer.writeString(brokerData.getBrokerName());
+                HashMap<Long, String> brokerAddrs = brokerData.getBrokerAddrs();
+                writer.writeSize(brokerAddrs == null ? -1 : brokerAddrs.size());
+                if (brokerAddrs != null) {
+                    for (Map.Entry<Long, String> entry : brokerAddrs.entrySet()) {
+                        writer.writeVarLong(entry.getKey());
+                        writer.writeString(entry.getValue());
+                    }
+                }
+            }
+        }
+        if (this.filterServerTable == null) {
+            writer.writeSize(-1);
+        } else {
+            // like json, leave out the brokers without filter server
+            int filterServerSize = 0;
+            for (List<String> filterServers : this.filterServerTable.values()) {
+                if (filterServers != null) {
+                    filterServerSize++;
+                }
+            }
+            writer.writeSize(filterServerSize);
+            for (Map.Entry<String, List<String>> entry : this.filterServerTable.entrySet()) {
+                List<String> filterServers = entry.getValue();
+                if (filterServers == null) {
+                    continue;
+                }
+                writer.writeString(entry.getKey());
+                writer.writeSize(filterServers.size());
+                for (String filterServer : filterServers) {
+                    writer.writeString(filterServer);
+                }
+            }
+        }
+        return writer.toByteArray();
+    }
+
+    public static TopicRouteData decodeBinary(final byte[] data) {
+        BinaryBodyReader reader = new BinaryBodyReader(data);
+        TopicRouteData topicRouteData = new TopicRouteData();
+        topicRouteData.setOrderTopicConf(reader.readString());
+
+        int queueSize = reader.readSize();
+        if (queueSize >= 0) {
+            List<QueueData> queueDatas = new ArrayList<QueueData>(queueSize);
+            for (int i = 0; i < queueSize; i++) {
+                QueueData queueData = new QueueData();
+                queueData.setBrokerName(reader.readString());
+                queueData.setReadQueueNums(reader.readVarInt());
+                queueData.setWriteQueueNums(reader.readVarInt());
+                queueData.setPerm(reader.readVarInt());
+                queueData.setTopicSysFlag(reader.readVarInt());
+                queueDatas.add(queueData);
+            }
+            topicRouteData.setQueueDatas(queueDatas);
+        }
+
+        int brokerSize = reader.readSize();
+        if (brokerSize >= 0) {
+            List<BrokerData> brokerDatas = new ArrayList<BrokerData>(brokerSize);
+            for (int i = 0; i < brokerSize; i++) {
+                BrokerData brokerData = new BrokerData();
+                brokerData.setCluster(reader.readString());
+                brokerData.setBrokerName(reader.readString());
+                int addrSize = reader.readSize();
+                if (addrSize >= 0) {
+                    HashMap<Long, String> brokerAddrs = new HashMap<Long, String>();
+                    for (int j = 0; j < addrSize; j++) {
+                        long brokerId = reader.readVarLong();
+                        brokerAddrs.put(brokerId, reader.readString());
+                    }
+                    brokerData.setBrokerAddrs(brokerAddrs);
+                }
+                brokerDatas.add(brokerData);
+            }
+            topicRouteData.setBrokerDatas(brokerDatas);
+        }
+
+        int filterServerSize = reader.readSize();
+        if (filterServerSize >= 0) {
+            HashMap<String, List<String>> filterServerTable = new HashMap<String, List<String>>();
+            for (int i = 0; i < filterServerSize; i++) {
+                String brokerAddr = reader.readString();
+                int size = reader.readSize();
+                List<String> filterServers = new ArrayList<String>(Math.max(size, 0));
+                for (int j = 0; j < size; j++) {
+                    filterServers.add(reader.readString());
+                }
+                filterServerTable.put(brokerAddr, filterServers);
+            }
+            topicRouteData.setFilterServerTable(filterServerTable);
+        }
+        return topicRouteData;
+    }
+
     public List<QueueData> getQueueDatas() {
         return queueDatas;
     }
@@ -16,6 +16,8 @@
  */
 package org.apache.rocketmq.common.sysflag;
 
+import org.apache.rocketmq.common.compression.CompressionType;
+
 public class MessageSysFlag {
     public final static int COMPRESSED_FLAG = 0x1;
     public final static int MULTI_TAGS_FLAG = 0x1 << 1;
@@ -27,6 +29,15 @@ public class MessageSysFlag {
     public final static int STOREHOSTADDRESS_V6_FLAG = 0x1 << 5;
     public final static int LOGICAL_QUEUE_FLAG = 0x1 << 6;
 
+    /**
+     * Bits 8-10 carry the {@link CompressionType} of a compressed body
+     */
+    public final static int COMPRESSION_TYPE_SHIFT = 8;
+    public final static int COMPRESSION_TYPE_COMPARATOR = 0x7 << COMPRESSION_TYPE_SHIFT;
+    public final static int COMPRESSION_LZ4_TYPE = 0x1 << COMPRESSION_TYPE_SHIFT;
+    public final static int COMPRESSION_ZSTD_TYPE = 0x2 << COMPRESSION_TYPE_SHIFT;
+    public final static int COMPRESSION_ZLIB_TYPE = 0x3 << COMPRESSION_TYPE_SHIFT;
+
     public static int getTransactionValue(final int flag) {
         return flag & TRANSACTION_ROLLBACK_TYPE;
     }
@@ -39,4 +50,12 @@ public class MessageSysFlag {
         return flag & (~COMPRESSED_FLAG);
     }
 
+    public static CompressionType getCompressionType(final int flag) {
+        return CompressionType.findByValue((flag & COMPRESSION_TYPE_COMPARATOR) >> COMPRESSION_TYPE_SHIFT);
+    }
+
+    public static int clearCompressionFlags(final int flag) {
+        return flag & ~(COMPRESSED_FLAG | COMPRESSION_TYPE_COMPARATOR);
+    }
+
 }
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.common.compression;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.sysflag.MessageSysFlag;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class CompressorTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (CompressionType type : new CompressionType[] {CompressionType.ZLIB, CompressionType.LZ4}) {
+            Compressor compressor = CompressorFactory.getCompressor(type);
+            for (byte[] body : bodies()) {
+                byte[] compressed = compressor.compress(body, 5);
+                assertThat(compressor.decompress(compressed, body.length)).isEqualTo(body);
+            }
+        }
+    }
+
+    @Test
+    public void testCompressRatio() throws IOException {
+        byte[] body = repeated(64 * 1024);
+        assertThat(CompressorFactory.getCompressor(CompressionType.LZ4).compress(body, 5).length).isLessThan(body.length / 4);
+        assertThat(CompressorFactory.getCompressor(CompressionType.ZLIB).compress(body, 5).length).isLessThan(body.length / 4);
+    }
+
+    @Test
+    public void testDecompressBySysFlag() throws IOException {
+        byte[] body = repeated(8 * 1024);
+        // bodies compressed before the compression type bits existed
+        assertThat(CompressorFactory.decompress(UtilAll.compress(body, 5), MessageSysFlag.COMPRESSED_FLAG)).isEqualTo(body);
+
+        byte[] lz4 = CompressorFactory.getCompressor(CompressionType.LZ4).compress(body, 5);
+        int sysFlag = MessageSysFlag.COMPRESSED_FLAG | CompressionType.LZ4.getCompressionFlag();
+        assertThat(MessageSysFlag.getCompressionType(sysFlag)).isEqualTo(CompressionType.LZ4);
+        assertThat(CompressorFactory.decompress(lz4, sysFlag)).isEqualTo(body);
+        assertThat(MessageSysFlag.clearCompressionFlags(sysFlag | MessageSysFlag.MULTI_TAGS_FLAG)).isEqualTo(MessageSysFlag.MULTI_TAGS_FLAG);
+
+        try {
+            CompressorFactory.decompress(lz4, MessageSysFlag.COMPRESSED_FLAG | MessageSysFlag.COMPRESSION_ZSTD_TYPE);
+            fail("no zstd compressor is registered");
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Test
+    public void testMalformedLz4() throws IOException {
+        Compressor compressor = CompressorFactory.getCompressor(CompressionType.LZ4);
+        byte[] compressed = compressor.compress(repeated(4096), 5);
+        try {
+            compressor.decompress(Arrays.copyOf(compressed, compressed.length - 3), Integer.MAX_VALUE);
+            fail("truncated body");
+        } catch (IOException ignored) {
+        }
+        compressed[compressed.length / 2] ^= 0x55;
+        try {
+            byte[] decoded = compressor.decompress(compressed, Integer.MAX_VALUE);
+            assertThat(decoded).hasSize(4096);
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Test
+    public void testDecompressOverMaxLength() throws IOException {
+        // a few bytes claiming a body of 2 GB
+        byte[] hostile = new byte[] {0x7F, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xF0, 0, 0, 0, 0};
+        try {
+            CompressorFactory.getCompressor(CompressionType.LZ4).decompress(hostile, 4 * 1024 * 1024);
+            fail("the claimed length is over the max length");
+        } catch (IOException ignored) {
+        }
+
+        byte[] body = new byte[1024 * 1024];
+        for (CompressionType type : new CompressionType[] {CompressionType.ZLIB, CompressionType.LZ4}) {
+            Compressor compressor = CompressorFactory.getCompressor(type);
+            byte[] compressed = compressor.compress(body, 5);
+            assertThat(compressor.decompress(compressed, body.length)).isEqualTo(body);
+            try {
+                compressor.decompress(compressed, body.length - 1);
+                fail("the body of " + type + " is over the max length");
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    @Test
+    public void testRegister() throws IOException {
+        Compressor identity = new Compressor() {
+            @Override
+            public byte[] compress(byte[] src, int level) {
+                return src;
+            }
+
+            @Override
+            public byte[] decompress(byte[] src, int maxLength) {
+                return src;
+            }
+        };
+        CompressorFactory.register(CompressionType.ZSTD, identity);
+        try {
+            assertThat(CompressorFactory.getCompressor(CompressionType.ZSTD)).isSameAs(identity);
+            assertThat(CompressorFactory.decompress(new byte[] {1, 2}, MessageSysFlag.COMPRESSED_FLAG | MessageSysFlag.COMPRESSION_ZSTD_TYPE))
+                .containsExactly(1, 2);
+        } finally {
+            CompressorFactory.register(CompressionType.ZSTD, null);
+        }
+    }
+
+    private static byte[][] bodies() {
+        Random random = new Random(7);
+        byte[] randomBody = new byte[100 * 1024];
+        random.nextBytes(randomBody);
+        byte[] mixed = new byte[300 * 1024];
+        for (int i = 0; i < mixed.length; i++) {
+            mixed[i] = (byte) (random.nextInt(100) < 80 ? 'a' + i % 7 : random.nextInt());
+        }
+        return new byte[][] {
+            new byte[0],
+            "a".getBytes(StandardCharsets.UTF_8),
+            "hello, hello, hello!".getBytes(StandardCharsets.UTF_8),
+            new byte[1024 * 1024],
+            repeated(5000),
+            randomBody,
+            mixed
+        };
+    }
+
+    private static byte[] repeated(int size) {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (sb.length() < size) {
+            sb.append("{\"orderId\":").append(i++).append(",\"status\":\"PAID\"},");
+        }
+        return sb.substring(0, size).getBytes(StandardCharsets.UTF_8);
+    }
+}
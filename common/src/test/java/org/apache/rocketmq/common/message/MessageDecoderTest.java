@@ -17,6 +17,8 @@
 
 package org.apache.rocketmq.common.message;
 
+import org.apache.rocketmq.common.compression.CompressionType;
+import org.apache.rocketmq.common.sysflag.MessageSysFlag;
 import org.junit.Test;
 
 import java.net.InetAddress;
@@ -373,4 +375,25 @@ public class MessageDecoderTest {
         assertThat(m.get("1")).isEqualTo("1");
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testDecodeCompressedBody() throws Exception {
+        MessageExt messageExt = new MessageExt();
+        messageExt.setTopic("abc");
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 512; i++) {
+            body.append("hello!q!");
+        }
+        messageExt.setBody(body.toString().getBytes());
+        messageExt.setBornHost(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+        messageExt.setStoreHost(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+        messageExt.setBornTimestamp(System.currentTimeMillis());
+        messageExt.setSysFlag(MessageSysFlag.COMPRESSED_FLAG | CompressionType.LZ4.getCompressionFlag());
+
+        byte[] msgBytes = MessageDecoder.encode(messageExt, true);
+        assertThat(msgBytes.length).isLessThan(messageExt.getBody().length);
+
+        MessageExt decoded = MessageDecoder.decode(ByteBuffer.wrap(msgBytes), true, true);
+        assertThat(decoded.getBody()).isEqualTo(messageExt.getBody());
+        assertThat(MessageSysFlag.getCompressionType(decoded.getSysFlag())).isEqualTo(CompressionType.LZ4);
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.common.protocol.heartbeat;
+
+import org.apache.rocketmq.common.consumer.ConsumeFromWhere;
+import org.apache.rocketmq.remoting.protocol.BinaryBodyWriter;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.assertj.core.util.Sets;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HeartbeatDataTest {
+
+    @Test
+    public void testBinarySerialize() {
+        HeartbeatData heartbeatData = new HeartbeatData();
+        heartbeatData.setClientID("127.0.0.1@1234");
+        ProducerData producerData = new ProducerData();
+        producerData.setGroupName("ProducerGroup");
+        heartbeatData.getProducerDataSet().add(producerData);
+
+        SubscriptionData subscriptionData = new SubscriptionData("TOPICA", "TAGA || TAGB");
+        subscriptionData.setTagsSet(Sets.newLinkedHashSet("TAGA", "TAGB"));
+        subscriptionData.setCodeSet(Sets.newLinkedHashSet("TAGA".hashCode(), "TAGB".hashCode()));
+        ConsumerData consumerData = new ConsumerData();
+        consumerData.setGroupName("ConsumerGroup");
+        consumerData.setConsumeType(ConsumeType.CONSUME_PASSIVELY);
+        consumerData.setMessageModel(MessageModel.CLUSTERING);
+        consumerData.setConsumeFromWhere(ConsumeFromWhere.CONSUME_FROM_LAST_OFFSET);
+        consumerData.getSubscriptionDataSet().add(subscriptionData);
+        heartbeatData.getConsumerDataSet().add(consumerData);
+
+        byte[] binary = heartbeatData.encodeBinary();
+        assertThat(binary.length).isLessThan(heartbeatData.encode().length);
+
+        HeartbeatData decoded = HeartbeatData.decodeBinary(binary);
+        assertThat(decoded.getClientID()).isEqualTo("127.0.0.1@1234");
+        assertThat(decoded.getProducerDataSet()).hasSize(1);
+        assertThat(decoded.getProducerDataSet().iterator().next().getGroupName()).isEqualTo("ProducerGroup");
+        assertThat(decoded.getConsumerDataSet()).hasSize(1);
+        ConsumerData decodedConsumer = decoded.getConsumerDataSet().iterator().next();
+        assertThat(decodedConsumer.getGroupName()).isEqualTo("ConsumerGroup");
+        assertThat(decodedConsumer.getConsumeType()).isEqualTo(ConsumeType.CONSUME_PASSIVELY);
+        assertThat(decodedConsumer.getMessageModel()).isEqualTo(MessageModel.CLUSTERING);
+        assertThat(decodedConsumer.getConsumeFromWhere()).isEqualTo(ConsumeFromWhere.CONSUME_FROM_LAST_OFFSET);
+        assertThat(decodedConsumer.isUnitMode()).isFalse();
+        assertThat(decodedConsumer.getSubscriptionDataSet()).containsExactly(subscriptionData);
+        assertThat(decodedConsumer.getSubscriptionDataSet().iterator().next().getSubVersion())
+            .isEqualTo(subscriptionData.getSubVersion());
+    }
+
+    @Test
+    public void testBinaryEnumCodes() {
+        HeartbeatData heartbeatData = new HeartbeatData();
+        ConsumerData consumerData = new ConsumerData();
+        consumerData.setGroupName("ConsumerGroup");
+        consumerData.setConsumeType(ConsumeType.CONSUME_ACTIVELY);
+        consumerData.setMessageModel(MessageModel.BROADCASTING);
+        consumerData.setConsumeFromWhere(ConsumeFromWhere.CONSUME_FROM_TIMESTAMP);
+        heartbeatData.getConsumerDataSet().add(consumerData);
+
+        // the enums are written as fixed codes, not as ordinals
+        byte[] expected = new BinaryBodyWriter(64)
+            .writeString(null)
+            .writeSize(0)
+            .writeSize(1)
+            .writeString("ConsumerGroup")
+            .writeVarInt(1)
+            .writeVarInt(1)
+            .writeVarInt(6)
+            .writeBoolean(false)
+            .writeSize(0)
+            .toByteArray();
+        assertThat(heartbeatData.encodeBinary()).isEqualTo(expected);
+
+        for (ConsumeFromWhere consumeFromWhere : ConsumeFromWhere.values()) {
+            consumerData.setConsumeFromWhere(consumeFromWhere);
+            ConsumerData decoded = HeartbeatData.decodeBinary(heartbeatData.encodeBinary())
+                .getConsumerDataSet().iterator().next();
+            assertThat(decoded.getConsumeFromWhere()).isEqualTo(consumeFromWhere);
+        }
+
+        consumerData.setConsumeType(null);
+        consumerData.setMessageModel(null);
+        consumerData.setConsumeFromWhere(null);
+        ConsumerData decoded = HeartbeatData.decodeBinary(heartbeatData.encodeBinary())
+            .getConsumerDataSet().iterator().next();
+        assertThat(decoded.getConsumeType()).isNull();
+        assertThat(decoded.getMessageModel()).isNull();
+        assertThat(decoded.getConsumeFromWhere()).isNull();
+    }
+
+    @Test
+    public void testDecodeRequest() {
+        HeartbeatData heartbeatData = new HeartbeatData();
+        heartbeatData.setClientID("127.0.0.1@1234");
+
+        RemotingCommand jsonRequest = RemotingCommand.createRequestCommand(0, null);
+        jsonRequest.setBody(heartbeatData.encode());
+        assertThat(HeartbeatData.decode(jsonRequest).getClientID()).isEqualTo("127.0.0.1@1234");
+
+        RemotingCommand binaryRequest = RemotingCommand.createRequestCommand(0, null);
+        binaryRequest.setBody(heartbeatData.encodeBinary());
+        binaryRequest.markBinaryBody();
+        assertThat(HeartbeatData.decode(binaryRequest).getClientID()).isEqualTo("127.0.0.1@1234");
+    }
+}
@@ -19,6 +19,7 @@ package org.apache.rocketmq.common.protocol.route;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import org.apache.rocketmq.remoting.protocol.RemotingSerializable;
@@ -103,4 +104,46 @@ public class TopicRouteDataTest {
         assertThat(topicRouteDataFromJson.getQueueDatas()).isEqualTo(topicRouteData.getQueueDatas());
 
     }
+
+    @Test
+    public void testTopicRouteDataBinarySerialize() throws Exception {
+        TopicRouteData topicRouteData = new TopicRouteData();
+
+        QueueData queueData = new QueueData();
+        queueData.setBrokerName("broker-a");
+        queueData.setPerm(6);
+        queueData.setReadQueueNums(8);
+        queueData.setWriteQueueNums(8);
+        queueData.setTopicSysFlag(0);
+
+        List<QueueData> queueDataList = new ArrayList<QueueData>();
+        queueDataList.add(queueData);
+
+        HashMap<Long, String> brokerAddrs = new HashMap<Long, String>();
+        brokerAddrs.put(0L, "192.168.0.47:10911");
+        brokerAddrs.put(1L, "192.168.0.47:10921");
+
+        BrokerData brokerData = new BrokerData();
+        brokerData.setBrokerAddrs(brokerAddrs);
+        brokerData.setBrokerName("broker-a");
+        brokerData.setCluster("TestCluster");
+
+        List<BrokerData> brokerDataList = new ArrayList<BrokerData>();
+        brokerDataList.add(brokerData);
+
+        HashMap<String, List<String>> filterServerTable = new HashMap<String, List<String>>();
+        filterServerTable.put("192.168.0.47:10911", Arrays.asList("192.168.0.48:30000"));
+
+        topicRouteData.setBrokerDatas(brokerDataList);
+        topicRouteData.setFilterServerTable(filterServerTable);
+        topicRouteData.setQueueDatas(queueDataList);
+        topicRouteData.setOrderTopicConf("broker-a:8");
+
+        byte[] binary = topicRouteData.encodeBinary();
+        assertThat(binary.length).isLessThan(topicRouteData.encode().length);
+        assertThat(TopicRouteData.decodeBinary(binary)).isEqualTo(topicRouteData);
+
+        TopicRouteData empty = new TopicRouteData();
+        assertThat(TopicRouteData.decodeBinary(empty.encodeBinary())).isEqualTo(empty);
+    }
 }
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.example.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.PosixParser;
+import org.apache.rocketmq.client.impl.consumer.ProcessQueue;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.srvutil.ServerUtil;
+
+/**
+ * Drives one {@link ProcessQueue} the way a concurrently consuming push consumer does: a pull thread puts batches
+ * and checks the span, consume threads remove the messages they consumed and commit the returned offset.
+ */
+public class ProcessQueueBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Options options = ServerUtil.buildCommandlineOptions(new Options());
+        CommandLine commandLine = ServerUtil.parseCmdLine("benchmarkProcessQueue", args, buildCommandlineOptions(options), new PosixParser());
+        if (null == commandLine) {
+            System.exit(-1);
+        }
+
+        final int threadCount = commandLine.hasOption('t') ? Integer.parseInt(commandLine.getOptionValue('t').trim()) : 64;
+        final long messages = commandLine.hasOption('n') ? Long.parseLong(commandLine.getOptionValue('n').trim()) : 10000000L;
+        final int pullBatchSize = commandLine.hasOption('b') ? Integer.parseInt(commandLine.getOptionValue('b').trim()) : 32;
+        final int threshold = commandLine.hasOption('q') ? Integer.parseInt(commandLine.getOptionValue('q').trim()) : 1000;
+        final int rounds = commandLine.hasOption('r') ? Integer.parseInt(commandLine.getOptionValue('r').trim()) : 3;
+
+        System.out.printf("threads: %d, messages: %d, pullBatchSize: %d, pullThresholdForQueue: %d%n",
+            threadCount, messages, pullBatchSize, threshold);
+        for (int i = 0; i < rounds; i++) {
+            run(threadCount, messages, pullBatchSize, threshold);
+        }
+    }
+
+    private static void run(final int threadCount, final long messages, final int pullBatchSize,
+        final int threshold) throws InterruptedException {
+        final ProcessQueue processQueue = new ProcessQueue();
+        final BlockingQueue<MessageExt> consumeQueue = new ArrayBlockingQueue<MessageExt>(threshold + pullBatchSize);
+        final AtomicLong committedOffset = new AtomicLong(-1);
+        final AtomicLong consumed = new AtomicLong(0);
+        final CountDownLatch done = new CountDownLatch(threadCount);
+        final MessageExt poison = new MessageExt();
+
+        for (int i = 0; i < threadCount; i++) {
+            Thread consumer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        List<MessageExt> msgs = new ArrayList<MessageExt>(1);
+                        while (true) {
+                            MessageExt msg = consumeQueue.take();
+                            if (msg == poison) {
+                                break;
+                            }
+                            msgs.clear();
+                            msgs.add(msg);
+                            long offset = processQueue.removeMessage(msgs);
+                            long prev = committedOffset.get();
+                            while (offset > prev && !committedOffset.compareAndSet(prev, offset)) {
+                                prev = committedOffset.get();
+                            }
+                            consumed.incrementAndGet();
+                        }
+                    } catch (InterruptedException ignored) {
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "ConsumeThread_" + i);
+            consumer.start();
+        }
+
+        long maxSpan = 0;
+        long begin = System.nanoTime();
+        byte[] body = new byte[16];
+        for (long offset = 0; offset < messages; ) {
+            if (processQueue.getMsgCount().get() > threshold) {
+                Thread.yield();
+                continue;
+            }
+            maxSpan = Math.max(maxSpan, processQueue.getMaxSpan());
+
+            List<MessageExt> batch = new ArrayList<MessageExt>(pullBatchSize);
+            for (int i = 0; i < pullBatchSize && offset < messages; i++, offset++) {
+                MessageExt msg = new MessageExt();
+                msg.setQueueOffset(offset);
+                msg.setBody(body);
+                batch.add(msg);
+            }
+            processQueue.putMessage(batch);
+            for (MessageExt msg : batch) {
+                consumeQueue.put(msg);
+            }
+        }
+        for (int i = 0; i < threadCount; i++) {
+            consumeQueue.put(poison);
+        }
+        done.await(1, TimeUnit.MINUTES);
+        long cost = System.nanoTime() - begin;
+
+        System.out.printf("consumed: %d, committed offset: %d, max span: %d, %,.0f msgs/s%n",
+            consumed.get(), committedOffset.get(), maxSpan, consumed.get() * 1e9 / cost);
+    }
+
+    public static Options buildCommandlineOptions(final Options options) {
+        Option opt = new Option("t", "threadCount", true, "Consume thread count, Default: 64");
+        opt.setRequired(false);
+        options.addOption(opt);
+
+        opt = new Option("n", "messages", true, "Messages per round, Default: 10000000");
+        opt.setRequired(false);
+        options.addOption(opt);
+
+        opt = new Option("b", "pullBatchSize", true, "Messages put per pull, Default: 32");
+        opt.setRequired(false);
+        options.addOption(opt);
+
+        opt = new Option("q", "pullThresholdForQueue", true, "Cached messages that stop the pull, Default: 1000");
+        opt.setRequired(false);
+        options.addOption(opt);
+
+        opt = new Option("r", "rounds", true, "Rounds to run, Default: 3");
+        opt.setRequired(false);
+        options.addOption(opt);
+
+        return options;
+    }
+}
@@ -28,6 +28,8 @@ import org.apache.rocketmq.client.exception.MQBrokerException;
 import org.apache.rocketmq.client.exception.MQClientException;
 import org.apache.rocketmq.client.log.ClientLogger;
 import org.apache.rocketmq.client.producer.DefaultMQProducer;
+import org.apache.rocketmq.client.producer.SendCallback;
+import org.apache.rocketmq.client.producer.SendResult;
 import org.apache.rocketmq.common.message.Message;
 import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.remoting.RPCHook;
@@ -43,6 +45,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class Producer {
@@ -68,9 +71,13 @@ public class Producer {
         final long messageNum = commandLine.hasOption('q') ? Long.parseLong(commandLine.getOptionValue('q')) : 0;
         final boolean delayEnable = commandLine.hasOption('d') && Boolean.parseBoolean(commandLine.getOptionValue('d'));
         final int delayLevel = commandLine.hasOption('e') ? Integer.parseInt(commandLine.getOptionValue('e')) : 1;
+        final boolean asyncEnable = commandLine.hasOption('y') && Boolean.parseBoolean(commandLine.getOptionValue('y'));
+        final boolean autoBatch = commandLine.hasOption('b') && Boolean.parseBoolean(commandLine.getOptionValue('b'));
+        final int batchMaxDelayMs = commandLine.hasOption('x') ? Integer.parseInt(commandLine.getOptionValue('x')) : 10;
 
-        System.out.printf("topic: %s threadCount: %d messageSize: %d keyEnable: %s propertySize: %d tagCount: %d traceEnable: %s aclEnable: %s messageQuantity: %d%n delayEnable: %s%n delayLevel: %s%n",
-            topic, threadCount, messageSize, keyEnable, propertySize, tagCount, msgTraceEnable, aclEnable, messageNum, delayEnable, delayLevel);
+        System.out.printf("topic: %s threadCount: %d messageSize: %d keyEnable: %s propertySize: %d tagCount: %d traceEnable: %s aclEnable: %s messageQuantity: %d%n delayEnable: %s%n delayLevel: %s%n asyncEnable: %s autoBatch: %s batchMaxDelayMs: %d%n",
+            topic, threadCount, messageSize, keyEnable, propertySize, tagCount, msgTraceEnable, aclEnable, messageNum, delayEnable, delayLevel,
+            asyncEnable, autoBatch, batchMaxDelayMs);
 
         StringBuilder sb = new StringBuilder(messageSize);
         for (int i = 0; i < messageSize; i++) {
@@ -136,6 +143,11 @@ public class Producer {
         }
 
         producer.setCompressMsgBodyOverHowmuch(Integer.MAX_VALUE);
+        producer.setAutoBatch(autoBatch);
+        producer.setBatchMaxDelayMs(batchMaxDelayMs);
+
+        // bounds the in-flight asynchronous sends
+        final Semaphore asyncPermits = new Semaphore(threadCount * 64);
 
         producer.start();
 
@@ -181,18 +193,29 @@ public class Producer {
                                     startValue += 2;
                                 }
                             }
-                            producer.send(msg);
-                            statsBenchmark.getSendRequestSuccessCount().increment();
-                            statsBenchmark.getReceiveResponseSuccessCount().increment();
-                            final long currentRT = System.currentTimeMillis() - beginTimestamp;
-                            statsBenchmark.getSendMessageSuccessTimeTotal().add(currentRT);
-                            long prevMaxRT = statsBenchmark.getSendMessageMaxRT().longValue();
-                            while (currentRT > prevMaxRT) {
-                                boolean updated = statsBenchmark.getSendMessageMaxRT().compareAndSet(prevMaxRT, currentRT);
-                                if (updated)
-                                    break;
-
-                                prevMaxRT = statsBenchmark.getSendMessageMaxRT().longValue();
+                            if (asyncEnable) {
+                                asyncPermits.acquire();
+                                producer.send(msg, new SendCallback() {
+                                    @Override
+                                    public void onSuccess(SendResult sendResult) {
+                                        asyncPermits.release();
+                                        statsBenchmark.getReceiveResponseSuccessCount().increment();
+                                        updateSendRT(statsBenchmark, beginTimestamp);
+                                    }
+
+                                    @Override
+                                    public void onException(Throwable e) {
+                                        asyncPermits.release();
+                                        statsBenchmark.getReceiveResponseFailedCount().increment();
+                                        log.error("[BENCHMARK_PRODUCER] Send Exception", e);
+                                    }
+                                });
+                                statsBenchmark.getSendRequestSuccessCount().increment();
+                            } else {
+                                producer.send(msg);
+                                statsBenchmark.getSendRequestSuccessCount().increment();
+                                statsBenchmark.getReceiveResponseSuccessCount().increment();
+                                updateSendRT(statsBenchmark, beginTimestamp);
                             }
                         } catch (RemotingException e) {
                             statsBenchmark.getSendRequestFailedCount().increment();
@@ -289,9 +312,34 @@ public class Producer {
         opt.setRequired(false);
         options.addOption(opt);
 
+        opt = new Option("y", "asyncEnable", true, "Send asynchronously, Default: false");
+        opt.setRequired(false);
+        options.addOption(opt);
+
+        opt = new Option("b", "autoBatch", true, "Batch asynchronous sends automatically, Default: false");
+        opt.setRequired(false);
+        options.addOption(opt);
+
+        opt = new Option("x", "batchMaxDelayMs", true, "Max delay of a message waiting for its batch, Default: 10");
+        opt.setRequired(false);
+        options.addOption(opt);
+
         return options;
     }
 
+    private static void updateSendRT(final StatsBenchmarkProducer statsBenchmark, final long beginTimestamp) {
+        final long currentRT = System.currentTimeMillis() - beginTimestamp;
+        statsBenchmark.getSendMessageSuccessTimeTotal().add(currentRT);
+        long prevMaxRT = statsBenchmark.getSendMessageMaxRT().longValue();
+        while (currentRT > prevMaxRT) {
+            boolean updated = statsBenchmark.getSendMessageMaxRT().compareAndSet(prevMaxRT, currentRT);
+            if (updated)
+                break;
+
+            prevMaxRT = statsBenchmark.getSendMessageMaxRT().longValue();
+        }
+    }
+
     private static Message buildMessage(final String topic) {
         return new Message(topic, msgBody);
     }
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.example.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.PosixParser;
+import org.apache.rocketmq.common.consumer.ConsumeFromWhere;
+import org.apache.rocketmq.common.protocol.heartbeat.ConsumeType;
+import org.apache.rocketmq.common.protocol.heartbeat.ConsumerData;
+import org.apache.rocketmq.common.protocol.heartbeat.HeartbeatData;
+import org.apache.rocketmq.common.protocol.heartbeat.MessageModel;
+import org.apache.rocketmq.common.protocol.heartbeat.ProducerData;
+import org.apache.rocketmq.common.protocol.heartbeat.SubscriptionData;
+import org.apache.rocketmq.common.protocol.route.BrokerData;
+import org.apache.rocketmq.common.protocol.route.QueueData;
+import org.apache.rocketmq.common.protocol.route.TopicRouteData;
+import org.apache.rocketmq.srvutil.ServerUtil;
+
+/**
+ * Compares the json and the compact binary bodies of heartbeats and topic routes, in encode/decode cost and size.
+ */
+public class RemotingBodyBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Options options = ServerUtil.buildCommandlineOptions(new Options());
+        CommandLine commandLine = ServerUtil.parseCmdLine("benchmarkRemotingBody", args, buildCommandlineOptions(options), new PosixParser());
+        if (null == commandLine) {
+            System.exit(-1);
+        }
+
+        final int iterations = commandLine.hasOption('i') ? Integer.parseInt(commandLine.getOptionValue('i').trim()) : 200000;
+        final int warmup = commandLine.hasOption('w') ? Integer.parseInt(commandLine.getOptionValue('w').trim()) : 50000;
+        final int groups = commandLine.hasOption('g') ? Integer.parseInt(commandLine.getOptionValue('g').trim()) : 4;
+        final int brokers = commandLine.hasOption('b') ? Integer.parseInt(commandLine.getOptionValue('b').trim()) : 4;
+
+        HeartbeatData heartbeatData = buildHeartbeatData(groups);
+        TopicRouteData topicRouteData = buildTopicRouteData(brokers);
+        for (boolean binary : new boolean[] {false, true}) {
+            runHeartbeat(heartbeatData, binary, warmup);
+            long begin = System.nanoTime();
+            int size = runHeartbeat(heartbeatData, binary, iterations);
+            print("HeartbeatData", binary, size, iterations, System.nanoTime() - begin);
+        }
+        for (boolean binary : new boolean[] {false, true}) {
+            runTopicRoute(topicRouteData, binary, warmup);
+            long begin = System.nanoTime();
+            int size = runTopicRoute(topicRouteData, binary, iterations);
+            print("TopicRouteData", binary, size, iterations, System.nanoTime() - begin);
+        }
+    }
+
+    private static void print(String body, boolean binary, int size, int iterations, long cost) {
+        System.out.printf("%-6s %-16s size: %6d encode+decode: %,10.0f ops/s %,8.0f ns/op%n",
+            binary ? "BINARY" : "JSON", body, size, iterations * 1e9 / cost, (double) cost / iterations);
+    }
+
+    private static int runHeartbeat(HeartbeatData heartbeatData, boolean binary, int iterations) {
+        int size = 0;
+        for (int i = 0; i < iterations; i++) {
+            byte[] body = binary ? heartbeatData.encodeBinary() : heartbeatData.encode();
+            size = body.length;
+            HeartbeatData decoded = binary ? HeartbeatData.decodeBinary(body) : HeartbeatData.decode(body, HeartbeatData.class);
+            if (decoded.getConsumerDataSet().size() != heartbeatData.getConsumerDataSet().size()) {
+                throw new IllegalStateException("failed to decode HeartbeatData");
+            }
+        }
+        return size;
+    }
+
+    private static int runTopicRoute(TopicRouteData topicRouteData, boolean binary, int iterations) {
+        int size = 0;
+        for (int i = 0; i < iterations; i++) {
+            byte[] body = binary ? topicRouteData.encodeBinary() : topicRouteData.encode();
+            size = body.length;
+            TopicRouteData decoded = binary ? TopicRouteData.decodeBinary(body) : TopicRouteData.decode(body, TopicRouteData.class);
+            if (decoded.getQueueDatas().size() != topicRouteData.getQueueDatas().size()) {
+                throw new IllegalStateException("failed to decode TopicRouteData");
+            }
+        }
+        return size;
+    }
+
+    private static HeartbeatData buildHeartbeatData(int groups) {
+        HeartbeatData heartbeatData = new HeartbeatData();
+        heartbeatData.setClientID("10.10.10.10@12345#1234567890");
+        for (int i = 0; i < groups; i++) {
+            ProducerData producerData = new ProducerData();
+            producerData.setGroupName("benchmark_producer_group_" + i);
+            heartbeatData.getProducerDataSet().add(producerData);
+
+            ConsumerData consumerData = new ConsumerData();
+            consumerData.setGroupName("benchmark_consumer_group_" + i);
+            consumerData.setConsumeType(ConsumeType.CONSUME_PASSIVELY);
+            consumerData.setMessageModel(MessageModel.CLUSTERING);
+            consumerData.setConsumeFromWhere(ConsumeFromWhere.CONSUME_FROM_LAST_OFFSET);
+            SubscriptionData subscriptionData = new SubscriptionData("BenchmarkTest_" + i, "TagA || TagB");
+            subscriptionData.getTagsSet().add("TagA");
+            subscriptionData.getTagsSet().add("TagB");
+            subscriptionData.getCodeSet().add("TagA".hashCode());
+            subscriptionData.getCodeSet().add("TagB".hashCode());
+            consumerData.getSubscriptionDataSet().add(subscriptionData);
+            consumerData.getSubscriptionDataSet().add(new SubscriptionData("%RETRY%benchmark_consumer_group_" + i, "*"));
+            heartbeatData.getConsumerDataSet().add(consumerData);
+        }
+        return heartbeatData;
+    }
+
+    private static TopicRouteData buildTopicRouteData(int brokers) {
+        TopicRouteData topicRouteData = new TopicRouteData();
+        List<QueueData> queueDatas = new ArrayList<>();
+        List<BrokerData> brokerDatas = new ArrayList<>();
+        for (int i = 0; i < brokers; i++) {
+            QueueData queueData = new QueueData();
+            queueData.setBrokerName("broker-" + i);
+            queueData.setReadQueueNums(16);
+            queueData.setWriteQueueNums(16);
+            queueData.setPerm(6);
+            queueDatas.add(queueData);
+
+            HashMap<Long, String> brokerAddrs = new HashMap<>();
+            brokerAddrs.put(0L, "10.10.10." + i + ":10911");
+            brokerAddrs.put(1L, "10.10.11." + i + ":10911");
+            brokerDatas.add(new BrokerData("DefaultCluster", "broker-" + i, brokerAddrs));
+        }
+        topicRouteData.setQueueDatas(queueDatas);
+        topicRouteData.setBrokerDatas(brokerDatas);
+        topicRouteData.setFilterServerTable(new HashMap<String, List<String>>());
+        return topicRouteData;
+    }
+
+    public static Options buildCommandlineOptions(final Options options) {
+        Option opt = new Option("i", "iterations", true, "Measured iterations per body, Default: 200000");
+        opt.setRequired(false);
+        options.addOption(opt);
+
+        opt = new Option("w", "warmup", true, "Warmup iterations per body, Default: 50000");
+        opt.setRequired(false);
+        options.addOption(opt);
+
+        opt = new Option("g", "groups", true, "Producer and consumer groups in the heartbeat, Default: 4");
+        opt.setRequired(false);
+        options.addOption(opt);
+
+        opt = new Option("b", "brokers", true, "Brokers in the topic route, Default: 4");
+        opt.setRequired(false);
+        options.addOption(opt);
+
+        return options;
+    }
+}
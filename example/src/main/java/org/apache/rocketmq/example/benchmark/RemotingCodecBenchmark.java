@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.example.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.PosixParser;
+import org.apache.rocketmq.common.protocol.RequestCode;
+import org.apache.rocketmq.common.protocol.header.ConsumerSendMsgBackRequestHeader;
+import org.apache.rocketmq.common.protocol.header.EndTransactionRequestHeader;
+import org.apache.rocketmq.common.protocol.header.GetMaxOffsetRequestHeader;
+import org.apache.rocketmq.common.protocol.header.PullMessageRequestHeader;
+import org.apache.rocketmq.common.protocol.header.PullMessageResponseHeader;
+import org.apache.rocketmq.common.protocol.header.QueryConsumerOffsetRequestHeader;
+import org.apache.rocketmq.common.protocol.header.SendMessageRequestHeader;
+import org.apache.rocketmq.common.protocol.header.SendMessageRequestHeaderV2;
+import org.apache.rocketmq.common.protocol.header.SendMessageResponseHeader;
+import org.apache.rocketmq.common.protocol.header.UpdateConsumerOffsetRequestHeader;
+import org.apache.rocketmq.common.sysflag.PullSysFlag;
+import org.apache.rocketmq.remoting.CommandCustomHeader;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.apache.rocketmq.remoting.protocol.SerializeType;
+import org.apache.rocketmq.srvutil.ServerUtil;
+
+/**
+ * Encodes and decodes the custom headers of the hot request codes in a loop, for both serialize types.
+ */
+public class RemotingCodecBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Options options = ServerUtil.buildCommandlineOptions(new Options());
+        CommandLine commandLine = ServerUtil.parseCmdLine("benchmarkRemotingCodec", args, buildCommandlineOptions(options), new PosixParser());
+        if (null == commandLine) {
+            System.exit(-1);
+        }
+
+        final int iterations = commandLine.hasOption('i') ? Integer.parseInt(commandLine.getOptionValue('i').trim()) : 1000000;
+        final int warmup = commandLine.hasOption('w') ? Integer.parseInt(commandLine.getOptionValue('w').trim()) : 200000;
+
+        Map<String, CommandCustomHeader> headers = buildHeaders();
+        for (SerializeType serializeType : SerializeType.values()) {
+            for (Map.Entry<String, CommandCustomHeader> entry : headers.entrySet()) {
+                run(entry.getValue(), serializeType, warmup);
+                long begin = System.nanoTime();
+                int size = run(entry.getValue(), serializeType, iterations);
+                long cost = System.nanoTime() - begin;
+                System.out.printf("%-8s %-36s size: %4d encode+decode: %,12.0f ops/s%n",
+                    serializeType, entry.getKey(), size, iterations * 1e9 / cost);
+            }
+        }
+    }
+
+    private static int run(CommandCustomHeader header, SerializeType serializeType, int iterations) throws Exception {
+        int size = 0;
+        for (int i = 0; i < iterations; i++) {
+            RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.SEND_MESSAGE_V2, header);
+            request.setSerializeTypeCurrentRPC(serializeType);
+            ByteBuffer buffer = request.encode();
+            size = buffer.limit();
+            // skip the total length, as the frame decoder does
+            buffer.getInt();
+            RemotingCommand decoded = RemotingCommand.decode(buffer.slice());
+            if (decoded.decodeCommandCustomHeader(header.getClass()) == null) {
+                throw new IllegalStateException("failed to decode " + header.getClass().getSimpleName());
+            }
+        }
+        return size;
+    }
+
+    private static Map<String, CommandCustomHeader> buildHeaders() {
+        Map<String, CommandCustomHeader> headers = new LinkedHashMap<>();
+
+        SendMessageRequestHeader sendHeader = new SendMessageRequestHeader();
+        sendHeader.setProducerGroup("benchmark_producer_group");
+        sendHeader.setTopic("BenchmarkTest");
+        sendHeader.setDefaultTopic("TBW102");
+        sendHeader.setDefaultTopicQueueNums(4);
+        sendHeader.setQueueId(3);
+        sendHeader.setSysFlag(0);
+        sendHeader.setBornTimestamp(System.currentTimeMillis());
+        sendHeader.setFlag(0);
+        sendHeader.setProperties("KEYS\u00011234567\u0002WAIT\u0001true\u0002TAGS\u0001TagA\u0002");
+        sendHeader.setReconsumeTimes(0);
+        sendHeader.setUnitMode(false);
+        sendHeader.setBatch(false);
+        headers.put("SEND_MESSAGE_V2", SendMessageRequestHeaderV2.createSendMessageRequestHeaderV2(sendHeader));
+        headers.put("SEND_MESSAGE", sendHeader);
+
+        SendMessageResponseHeader sendResponseHeader = new SendMessageResponseHeader();
+        sendResponseHeader.setMsgId("0A0A0A0A00002A9F000000000000A1B2");
+        sendResponseHeader.setQueueId(3);
+        sendResponseHeader.setQueueOffset(123456789L);
+        headers.put("SEND_MESSAGE(response)", sendResponseHeader);
+
+        PullMessageRequestHeader pullHeader = new PullMessageRequestHeader();
+        pullHeader.setConsumerGroup("benchmark_consumer_group");
+        pullHeader.setTopic("BenchmarkTest");
+        pullHeader.setQueueId(3);
+        pullHeader.setQueueOffset(123456789L);
+        pullHeader.setMaxMsgNums(32);
+        pullHeader.setSysFlag(PullSysFlag.buildSysFlag(true, true, true, false));
+        pullHeader.setCommitOffset(123456700L);
+        pullHeader.setSuspendTimeoutMillis(15000L);
+        pullHeader.setSubscription("*");
+        pullHeader.setSubVersion(System.currentTimeMillis());
+        pullHeader.setExpressionType("TAG");
+        headers.put("PULL_MESSAGE", pullHeader);
+
+        PullMessageResponseHeader pullResponseHeader = new PullMessageResponseHeader();
+        pullResponseHeader.setSuggestWhichBrokerId(0L);
+        pullResponseHeader.setNextBeginOffset(123456821L);
+        pullResponseHeader.setMinOffset(0L);
+        pullResponseHeader.setMaxOffset(223456789L);
+        headers.put("PULL_MESSAGE(response)", pullResponseHeader);
+
+        QueryConsumerOffsetRequestHeader queryOffsetHeader = new QueryConsumerOffsetRequestHeader();
+        queryOffsetHeader.setConsumerGroup("benchmark_consumer_group");
+        queryOffsetHeader.setTopic("BenchmarkTest");
+        queryOffsetHeader.setQueueId(3);
+        headers.put("QUERY_CONSUMER_OFFSET", queryOffsetHeader);
+
+        UpdateConsumerOffsetRequestHeader updateOffsetHeader = new UpdateConsumerOffsetRequestHeader();
+        updateOffsetHeader.setConsumerGroup("benchmark_consumer_group");
+        updateOffsetHeader.setTopic("BenchmarkTest");
+        updateOffsetHeader.setQueueId(3);
+        updateOffsetHeader.setCommitOffset(123456789L);
+        headers.put("UPDATE_CONSUMER_OFFSET", updateOffsetHeader);
+
+        GetMaxOffsetRequestHeader maxOffsetHeader = new GetMaxOffsetRequestHeader();
+        maxOffsetHeader.setTopic("BenchmarkTest");
+        maxOffsetHeader.setQueueId(3);
+        headers.put("GET_MAX_OFFSET", maxOffsetHeader);
+
+        EndTransactionRequestHeader endTransactionHeader = new EndTransactionRequestHeader();
+        endTransactionHeader.setProducerGroup("benchmark_producer_group");
+        endTransactionHeader.setTranStateTableOffset(123456789L);
+        endTransactionHeader.setCommitLogOffset(987654321L);
+        endTransactionHeader.setCommitOrRollback(8);
+        endTransactionHeader.setFromTransactionCheck(false);
+        endTransactionHeader.setMsgId("0A0A0A0A00002A9F000000000000A1B2");
+        endTransactionHeader.setTransactionId("0A0A0A0A00002A9F000000000000A1B3");
+        headers.put("END_TRANSACTION", endTransactionHeader);
+
+        ConsumerSendMsgBackRequestHeader sendBackHeader = new ConsumerSendMsgBackRequestHeader();
+        sendBackHeader.setOffset(987654321L);
+        sendBackHeader.setGroup("benchmark_consumer_group");
+        sendBackHeader.setDelayLevel(0);
+        sendBackHeader.setOriginMsgId("0A0A0A0A00002A9F000000000000A1B2");
+        sendBackHeader.setOriginTopic("BenchmarkTest");
+        sendBackHeader.setMaxReconsumeTimes(16);
+        headers.put("CONSUMER_SEND_MSG_BACK", sendBackHeader);
+        return headers;
+    }
+
+    public static Options buildCommandlineOptions(final Options options) {
+        Option opt = new Option("i", "iterations", true, "Measured iterations per header, Default: 1000000");
+        opt.setRequired(false);
+        options.addOption(opt);
+
+        opt = new Option("w", "warmup", true, "Warmup iterations per header, Default: 200000");
+        opt.setRequired(false);
+        options.addOption(opt);
+
+        return options;
+    }
+}
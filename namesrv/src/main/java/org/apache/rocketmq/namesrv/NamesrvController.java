@@ -27,6 +27,7 @@ import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.logging.InternalLoggerFactory;
 import org.apache.rocketmq.common.namesrv.NamesrvConfig;
 import org.apache.rocketmq.namesrv.kvconfig.KVConfigManager;
+import org.apache.rocketmq.namesrv.longpolling.RouteChangeHoldService;
 import org.apache.rocketmq.namesrv.processor.ClusterTestRequestProcessor;
 import org.apache.rocketmq.namesrv.processor.DefaultRequestProcessor;
 import org.apache.rocketmq.namesrv.routeinfo.BrokerHousekeepingService;
@@ -50,6 +51,7 @@ public class NamesrvController {
         "NSScheduledThread"));
     private final KVConfigManager kvConfigManager;
     private final RouteInfoManager routeInfoManager;
+    private final RouteChangeHoldService routeChangeHoldService;
 
     private RemotingServer remotingServer;
 
@@ -65,6 +67,7 @@ public class NamesrvController {
         this.nettyServerConfig = nettyServerConfig;
         this.kvConfigManager = new KVConfigManager(this);
         this.routeInfoManager = new RouteInfoManager();
+        this.routeChangeHoldService = new RouteChangeHoldService(this);
         this.brokerHousekeepingService = new BrokerHousekeepingService(this);
         this.configuration = new Configuration(
             log,
@@ -154,6 +157,7 @@ public class NamesrvController {
 
     public void start() throws Exception {
         this.remotingServer.start();
+        this.routeChangeHoldService.start();
 
         if (this.fileWatchService != null) {
             this.fileWatchService.start();
@@ -161,6 +165,7 @@ public class NamesrvController {
     }
 
     public void shutdown() {
+        this.routeChangeHoldService.shutdown();
         this.remotingServer.shutdown();
         this.remotingExecutor.shutdown();
         this.scheduledExecutorService.shutdown();
@@ -186,6 +191,10 @@ public class NamesrvController {
         return routeInfoManager;
     }
 
+    public RouteChangeHoldService getRouteChangeHoldService() {
+        return routeChangeHoldService;
+    }
+
     public RemotingServer getRemotingServer() {
         return remotingServer;
     }
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.namesrv.longpolling;
+
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.apache.rocketmq.common.ServiceThread;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.common.namesrv.NamesrvUtil;
+import org.apache.rocketmq.common.protocol.ResponseCode;
+import org.apache.rocketmq.common.protocol.body.TopicRouteChangesBody;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.namesrv.NamesrvController;
+import org.apache.rocketmq.namesrv.routeinfo.TopicRouteSnapshot;
+import org.apache.rocketmq.remoting.common.RemotingHelper;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+
+/**
+ * Holds the requests for route changes until a route of their topics changes or they time out.
+ * <p>
+ * The held requests are checked again only after the route tables changed, so the clients waiting cost nothing while
+ * the routes are stable.
+ */
+public class RouteChangeHoldService extends ServiceThread {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.NAMESRV_LOGGER_NAME);
+    private static final long CHECK_INTERVAL_MILLIS = 1000;
+
+    private final NamesrvController namesrvController;
+    private final ConcurrentLinkedQueue<RouteChangeRequest> routeChangeRequests =
+        new ConcurrentLinkedQueue<RouteChangeRequest>();
+    private volatile boolean orderTopicConfChanged = false;
+
+    public RouteChangeHoldService(final NamesrvController namesrvController) {
+        this.namesrvController = namesrvController;
+    }
+
+    /**
+     * @return the topics whose route version differs from the one of the table, with their current route
+     */
+    public TopicRouteChangesBody collectRouteChanges(final Map<String, Long> topicVersionTable) {
+        TopicRouteChangesBody changes = new TopicRouteChangesBody();
+        for (Map.Entry<String, Long> entry : topicVersionTable.entrySet()) {
+            String topic = entry.getKey();
+            String orderTopicConf = null;
+            if (this.namesrvController.getNamesrvConfig().isOrderMessageEnable()) {
+                orderTopicConf = this.namesrvController.getKvConfigManager()
+                    .getKVConfig(NamesrvUtil.NAMESPACE_ORDER_TOPIC_CONFIG, topic);
+            }
+
+            TopicRouteSnapshot snapshot =
+                this.namesrvController.getRouteInfoManager().pickupTopicRouteSnapshot(topic, orderTopicConf);
+            long version = snapshot != null ? snapshot.getVersion() : TopicRouteChangesBody.VERSION_NOT_EXIST;
+            if (entry.getValue() == null || entry.getValue() != version) {
+                changes.getTopicVersionTable().put(topic, version);
+                if (snapshot != null) {
+                    changes.getTopicRouteDataTable().put(topic, snapshot.getTopicRouteData());
+                }
+            }
+        }
+        return changes;
+    }
+
+    public void suspendRouteChangeRequest(final RouteChangeRequest routeChangeRequest) {
+        this.routeChangeRequests.add(routeChangeRequest);
+    }
+
+    public void notifyOrderTopicConfChanged() {
+        this.orderTopicConfChanged = true;
+        this.wakeup();
+    }
+
+    @Override
+    public void run() {
+        log.info("{} service started", this.getServiceName());
+        while (!this.isStopped()) {
+            try {
+                this.waitForRunning(CHECK_INTERVAL_MILLIS);
+                this.checkHoldRequest();
+            } catch (Throwable e) {
+                log.warn(this.getServiceName() + " service has exception. ", e);
+            }
+        }
+
+        log.info("{} service end", this.getServiceName());
+    }
+
+    @Override
+    public String getServiceName() {
+        return RouteChangeHoldService.class.getSimpleName();
+    }
+
+    private void checkHoldRequest() {
+        long version = this.namesrvController.getRouteInfoManager().getRouteDataVersion();
+        boolean checkAll = this.orderTopicConfChanged;
+        this.orderTopicConfChanged = false;
+        long now = System.currentTimeMillis();
+
+        Iterator<RouteChangeRequest> it = this.routeChangeRequests.iterator();
+        while (it.hasNext()) {
+            RouteChangeRequest request = it.next();
+            if (!request.getChannel().isActive()) {
+                it.remove();
+                continue;
+            }
+
+            if (checkAll || request.getCheckedVersion() != version) {
+                request.setCheckedVersion(version);
+                TopicRouteChangesBody changes = this.collectRouteChanges(request.getTopicVersionTable());
+                if (!changes.getTopicVersionTable().isEmpty()) {
+                    it.remove();
+                    this.sendResponse(request, changes);
+                    continue;
+                }
+            }
+
+            if (now >= request.getDeadline()) {
+                it.remove();
+                this.sendResponse(request, new TopicRouteChangesBody());
+            }
+        }
+    }
+
+    private void sendResponse(final RouteChangeRequest request, final TopicRouteChangesBody changes) {
+        final RemotingCommand response = RemotingCommand.createResponseCommand(null);
+        response.setCode(ResponseCode.SUCCESS);
+        response.setBody(changes.encode());
+        response.setOpaque(request.getRequestCommand().getOpaque());
+        response.markResponseType();
+        try {
+            request.getChannel().writeAndFlush(response).addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture future) throws Exception {
+                    if (!future.isSuccess()) {
+                        log.warn("send route changes to {} failed", RemotingHelper.parseChannelRemoteAddr(future.channel()),
+                            future.cause());
+                    }
+                }
+            });
+        } catch (Throwable e) {
+            log.warn("send route changes failed", e);
+        }
+    }
+
+    public int getHoldRequestNums() {
+        return this.routeChangeRequests.size();
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.namesrv.longpolling;
+
+import io.netty.channel.Channel;
+import java.util.Map;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+
+public class RouteChangeRequest {
+    private final RemotingCommand requestCommand;
+    private final Channel channel;
+    private final Map<String/* topic */, Long> topicVersionTable;
+    private final long deadline;
+    private volatile long checkedVersion;
+
+    public RouteChangeRequest(RemotingCommand requestCommand, Channel channel, Map<String, Long> topicVersionTable,
+        long deadline, long checkedVersion) {
+        this.requestCommand = requestCommand;
+        this.channel = channel;
+        this.topicVersionTable = topicVersionTable;
+        this.deadline = deadline;
+        this.checkedVersion = checkedVersion;
+    }
+
+    public RemotingCommand getRequestCommand() {
+        return requestCommand;
+    }
+
+    public Channel getChannel() {
+        return channel;
+    }
+
+    public Map<String, Long> getTopicVersionTable() {
+        return topicVersionTable;
+    }
+
+    public long getDeadline() {
+        return deadline;
+    }
+
+    public long getCheckedVersion() {
+        return checkedVersion;
+    }
+
+    public void setCheckedVersion(long checkedVersion) {
+        this.checkedVersion = checkedVersion;
+    }
+}
@@ -37,6 +37,7 @@ import org.apache.rocketmq.common.namesrv.RegisterBrokerResult;
 import org.apache.rocketmq.common.protocol.RequestCode;
 import org.apache.rocketmq.common.protocol.ResponseCode;
 import org.apache.rocketmq.common.protocol.body.RegisterBrokerBody;
+import org.apache.rocketmq.common.protocol.body.TopicRouteChangesBody;
 import org.apache.rocketmq.common.protocol.body.TopicConfigSerializeWrapper;
 import org.apache.rocketmq.common.protocol.header.GetTopicsByClusterRequestHeader;
 import org.apache.rocketmq.common.protocol.header.namesrv.DeleteKVConfigRequestHeader;
@@ -44,6 +45,7 @@ import org.apache.rocketmq.common.protocol.header.namesrv.DeleteTopicInNamesrvRe
 import org.apache.rocketmq.common.protocol.header.namesrv.GetKVConfigRequestHeader;
 import org.apache.rocketmq.common.protocol.header.namesrv.GetKVConfigResponseHeader;
 import org.apache.rocketmq.common.protocol.header.namesrv.GetKVListByNamespaceRequestHeader;
+import org.apache.rocketmq.common.protocol.header.namesrv.GetRouteChangesRequestHeader;
 import org.apache.rocketmq.common.protocol.header.namesrv.GetRouteInfoRequestHeader;
 import org.apache.rocketmq.common.protocol.header.namesrv.PutKVConfigRequestHeader;
 import org.apache.rocketmq.common.protocol.header.namesrv.QueryDataVersionRequestHeader;
@@ -57,6 +59,8 @@ import org.apache.rocketmq.common.protocol.route.LogicalQueuesInfoUnordered;
 import org.apache.rocketmq.common.protocol.route.TopicRouteDataNameSrv;
 import org.apache.rocketmq.common.sysflag.MessageSysFlag;
 import org.apache.rocketmq.namesrv.NamesrvController;
+import org.apache.rocketmq.namesrv.longpolling.RouteChangeHoldService;
+import org.apache.rocketmq.namesrv.longpolling.RouteChangeRequest;
 import org.apache.rocketmq.remoting.common.RemotingHelper;
 import org.apache.rocketmq.remoting.exception.RemotingCommandException;
 import org.apache.rocketmq.remoting.netty.AsyncNettyRequestProcessor;
@@ -104,6 +108,8 @@ public class DefaultRequestProcessor extends AsyncNettyRequestProcessor implemen
                 return this.unregisterBroker(ctx, request);
             case RequestCode.GET_ROUTEINFO_BY_TOPIC:
                 return this.getRouteInfoByTopic(ctx, request);
+            case RequestCode.GET_ROUTEINFO_CHANGES_BY_TOPICS:
+                return this.getRouteChangesByTopics(ctx, request);
             case RequestCode.GET_BROKER_CLUSTER_INFO:
                 return this.getBrokerClusterInfo(ctx, request);
             case RequestCode.WIPE_WRITE_PERM_OF_BROKER:
@@ -157,6 +163,9 @@ public class DefaultRequestProcessor extends AsyncNettyRequestProcessor implemen
             requestHeader.getKey(),
             requestHeader.getValue()
         );
+        if (NamesrvUtil.NAMESPACE_ORDER_TOPIC_CONFIG.equals(requestHeader.getNamespace())) {
+            this.namesrvController.getRouteChangeHoldService().notifyOrderTopicConfChanged();
+        }
 
         response.setCode(ResponseCode.SUCCESS);
         response.setRemark(null);
@@ -197,6 +206,9 @@ public class DefaultRequestProcessor extends AsyncNettyRequestProcessor implemen
             requestHeader.getNamespace(),
             requestHeader.getKey()
         );
+        if (NamesrvUtil.NAMESPACE_ORDER_TOPIC_CONFIG.equals(requestHeader.getNamespace())) {
+            this.namesrvController.getRouteChangeHoldService().notifyOrderTopicConfChanged();
+        }
 
         response.setCode(ResponseCode.SUCCESS);
         response.setRemark(null);
@@ -375,7 +387,13 @@ public class DefaultRequestProcessor extends AsyncNettyRequestProcessor implemen
                 }
             }
 
-            byte[] content = topicRouteData.encode();
+            byte[] content;
+            if (request.isAcceptBinaryBody() && topicRouteData.getLogicalQueuesInfoUnordered() == null) {
+                content = topicRouteData.encodeBinary();
+                response.markBinaryBody();
+            } else {
+                content = topicRouteData.encode();
+            }
             response.setBody(content);
             response.setCode(ResponseCode.SUCCESS);
             response.setRemark(null);
@@ -388,6 +406,38 @@ public class DefaultRequestProcessor extends AsyncNettyRequestProcessor implemen
         return response;
     }
 
+    public RemotingCommand getRouteChangesByTopics(ChannelHandlerContext ctx,
+        RemotingCommand request) throws RemotingCommandException {
+        final RemotingCommand response = RemotingCommand.createResponseCommand(null);
+        final GetRouteChangesRequestHeader requestHeader =
+            (GetRouteChangesRequestHeader) request.decodeCommandCustomHeader(GetRouteChangesRequestHeader.class);
+
+        TopicRouteChangesBody requestBody = null;
+        if (request.getBody() != null) {
+            requestBody = TopicRouteChangesBody.decode(request.getBody(), TopicRouteChangesBody.class);
+        }
+        if (requestBody == null || requestBody.getTopicVersionTable() == null) {
+            response.setCode(ResponseCode.SYSTEM_ERROR);
+            response.setRemark("the topic versions are null");
+            return response;
+        }
+
+        RouteChangeHoldService holdService = this.namesrvController.getRouteChangeHoldService();
+        long version = this.namesrvController.getRouteInfoManager().getRouteDataVersion();
+        TopicRouteChangesBody changes = holdService.collectRouteChanges(requestBody.getTopicVersionTable());
+        if (changes.getTopicVersionTable().isEmpty() && requestHeader.getPollTimeoutMillis() > 0 && ctx != null) {
+            holdService.suspendRouteChangeRequest(new RouteChangeRequest(request, ctx.channel(),
+                requestBody.getTopicVersionTable(), System.currentTimeMillis() + requestHeader.getPollTimeoutMillis(),
+                version));
+            return null;
+        }
+
+        response.setBody(changes.encode());
+        response.setCode(ResponseCode.SUCCESS);
+        response.setRemark(null);
+        return response;
+    }
+
     private RemotingCommand getBrokerClusterInfo(ChannelHandlerContext ctx, RemotingCommand request) {
         final RemotingCommand response = RemotingCommand.createResponseCommand(null);
 
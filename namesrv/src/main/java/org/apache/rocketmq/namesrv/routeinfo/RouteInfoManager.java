@@ -17,6 +17,7 @@
 package org.apache.rocketmq.namesrv.routeinfo;
 
 import io.netty.channel.Channel;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -29,6 +30,7 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
@@ -63,6 +65,12 @@ public class RouteInfoManager {
     private final HashMap<String/* brokerAddr */, BrokerLiveInfo> brokerLiveTable;
     private final HashMap<String/* brokerAddr */, List<String>/* Filter Server */> filterServerTable;
     private final ConcurrentMap<String/* topic */, LogicalQueuesInfoUnordered> logicalQueuesInfoTable;
+    /**
+     * Increased by every change of the tables, starts from the time so that it is not reused after a restart
+     */
+    private final AtomicLong routeDataVersion = new AtomicLong(System.currentTimeMillis());
+    private final ConcurrentMap<String/* topic */, TopicRouteSnapshot> topicRouteSnapshotTable =
+        new ConcurrentHashMap<String, TopicRouteSnapshot>(1024);
 
     public RouteInfoManager() {
         this.topicQueueTable = new HashMap<String, List<QueueData>>(1024);
@@ -84,6 +92,7 @@ public class RouteInfoManager {
         try {
             try {
                 this.lock.writeLock().lockInterruptibly();
+                this.routeDataVersion.incrementAndGet();
                 this.topicQueueTable.remove(topic);
             } finally {
                 this.lock.writeLock().unlock();
@@ -122,6 +131,7 @@ public class RouteInfoManager {
         try {
             try {
                 this.lock.writeLock().lockInterruptibly();
+                this.routeDataVersion.incrementAndGet();
 
                 Set<String> brokerNames = this.clusterAddrTable.get(clusterName);
                 if (null == brokerNames) {
@@ -283,6 +293,7 @@ public class RouteInfoManager {
         try {
             try {
                 this.lock.writeLock().lockInterruptibly();
+                this.routeDataVersion.incrementAndGet();
                 return operateWritePermOfBroker(brokerName, requestCode);
             } finally {
                 this.lock.writeLock().unlock();
@@ -328,6 +339,7 @@ public class RouteInfoManager {
         try {
             try {
                 this.lock.writeLock().lockInterruptibly();
+                this.routeDataVersion.incrementAndGet();
                 BrokerLiveInfo brokerLiveInfo = this.brokerLiveTable.remove(brokerAddr);
                 log.info("unregisterBroker, remove from brokerLiveTable {}, {}",
                     brokerLiveInfo != null ? "OK" : "Failed",
@@ -466,6 +478,54 @@ public class RouteInfoManager {
         return null;
     }
 
+    public long getRouteDataVersion() {
+        return routeDataVersion.get();
+    }
+
+    /**
+     * Picks up a copy of the route of the topic, whose version changes only when the route or the order conf does.
+     * The route is compared again only after the route tables changed.
+     *
+     * @return null if the topic has no route
+     */
+    public TopicRouteSnapshot pickupTopicRouteSnapshot(final String topic, final String orderTopicConf) {
+        while (true) {
+            long checkedVersion = this.routeDataVersion.get();
+            TopicRouteSnapshot prev = this.topicRouteSnapshotTable.get(topic);
+            if (prev != null && prev.getCheckedVersion() == checkedVersion
+                && Objects.equals(prev.getOrderTopicConf(), orderTopicConf)) {
+                return prev;
+            }
+
+            TopicRouteDataNameSrv topicRouteData = this.pickupTopicRouteData(topic, true);
+            if (null == topicRouteData) {
+                if (prev != null) {
+                    this.topicRouteSnapshotTable.remove(topic, prev);
+                }
+                return null;
+            }
+
+            topicRouteData.setOrderTopicConf(orderTopicConf);
+            byte[] body = topicRouteData.encode();
+            TopicRouteSnapshot next;
+            if (prev != null && Arrays.equals(prev.getBody(), body)) {
+                next = new TopicRouteSnapshot(prev.getVersion(), checkedVersion, orderTopicConf, prev.getBody(),
+                    prev.getTopicRouteData());
+            } else {
+                // the route picked up shares the queue data with the tables, keep a copy instead
+                long version = prev != null ? Math.max(checkedVersion, prev.getVersion() + 1) : checkedVersion;
+                next = new TopicRouteSnapshot(version, checkedVersion, orderTopicConf, body,
+                    TopicRouteDataNameSrv.decode(body, TopicRouteDataNameSrv.class));
+            }
+
+            boolean updated = prev != null ? this.topicRouteSnapshotTable.replace(topic, prev, next)
+                : this.topicRouteSnapshotTable.putIfAbsent(topic, next) == null;
+            if (updated) {
+                return next;
+            }
+        }
+    }
+
     public void scanNotActiveBroker() {
         Iterator<Entry<String, BrokerLiveInfo>> it = this.brokerLiveTable.entrySet().iterator();
         while (it.hasNext()) {
@@ -514,6 +574,7 @@ public class RouteInfoManager {
             try {
                 try {
                     this.lock.writeLock().lockInterruptibly();
+                    this.routeDataVersion.incrementAndGet();
                     this.brokerLiveTable.remove(brokerAddrFound);
                     this.filterServerTable.remove(brokerAddrFound);
                     String brokerNameFound = null;
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.namesrv.routeinfo;
+
+import org.apache.rocketmq.common.protocol.route.TopicRouteDataNameSrv;
+
+/**
+ * Copy of the route of a topic, with a version that changes only when the route does.
+ */
+public class TopicRouteSnapshot {
+    private final long version;
+    /**
+     * Version of the route tables the route was last compared with
+     */
+    private final long checkedVersion;
+    private final String orderTopicConf;
+    private final byte[] body;
+    private final TopicRouteDataNameSrv topicRouteData;
+
+    public TopicRouteSnapshot(long version, long checkedVersion, String orderTopicConf, byte[] body,
+        TopicRouteDataNameSrv topicRouteData) {
+        this.version = version;
+        this.checkedVersion = checkedVersion;
+        this.orderTopicConf = orderTopicConf;
+        this.body = body;
+        this.topicRouteData = topicRouteData;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getCheckedVersion() {
+        return checkedVersion;
+    }
+
+    public String getOrderTopicConf() {
+        return orderTopicConf;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public TopicRouteDataNameSrv getTopicRouteData() {
+        return topicRouteData;
+    }
+}
@@ -39,9 +39,11 @@ import org.apache.rocketmq.common.protocol.RequestCode;
 import org.apache.rocketmq.common.protocol.ResponseCode;
 import org.apache.rocketmq.common.protocol.body.RegisterBrokerBody;
 import org.apache.rocketmq.common.protocol.body.TopicConfigSerializeWrapper;
+import org.apache.rocketmq.common.protocol.body.TopicRouteChangesBody;
 import org.apache.rocketmq.common.protocol.header.namesrv.DeleteKVConfigRequestHeader;
 import org.apache.rocketmq.common.protocol.header.namesrv.GetKVConfigRequestHeader;
 import org.apache.rocketmq.common.protocol.header.namesrv.GetKVConfigResponseHeader;
+import org.apache.rocketmq.common.protocol.header.namesrv.GetRouteChangesRequestHeader;
 import org.apache.rocketmq.common.protocol.header.namesrv.GetRouteInfoRequestHeader;
 import org.apache.rocketmq.common.protocol.header.namesrv.PutKVConfigRequestHeader;
 import org.apache.rocketmq.common.protocol.header.namesrv.RegisterBrokerRequestHeader;
@@ -50,6 +52,7 @@ import org.apache.rocketmq.common.protocol.route.LogicalQueueRouteData;
 import org.apache.rocketmq.common.protocol.route.LogicalQueuesInfo;
 import org.apache.rocketmq.common.protocol.route.LogicalQueuesInfoUnordered;
 import org.apache.rocketmq.common.protocol.route.MessageQueueRouteState;
+import org.apache.rocketmq.common.protocol.route.TopicRouteData;
 import org.apache.rocketmq.common.protocol.route.TopicRouteDataNameSrv;
 import org.apache.rocketmq.common.sysflag.MessageSysFlag;
 import org.apache.rocketmq.logging.InternalLogger;
@@ -351,6 +354,75 @@ public class DefaultRequestProcessorTest {
         assertThat((Map) brokerAddrTable.get(routes)).isNotEmpty();
     }
 
+    @Test
+    public void testProcessRequest_GetRouteInfoBinaryBody() throws RemotingCommandException {
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(null);
+
+        TopicConfigSerializeWrapper topicConfigSerializeWrapper = new TopicConfigSerializeWrapper();
+        topicConfigSerializeWrapper.setTopicConfigTable(new ConcurrentHashMap<>(Collections.singletonMap("binary-test", new TopicConfig("binary-test", 8, 8, 6))));
+        routeInfoManager.registerBroker("default-cluster", "127.0.0.1:10911", "default-broker", MixAll.MASTER_ID, "127.0.0.1:1001",
+            topicConfigSerializeWrapper, new ArrayList<String>(), mock(Channel.class));
+
+        GetRouteInfoRequestHeader header = new GetRouteInfoRequestHeader();
+        header.setTopic("binary-test");
+        RemotingCommand jsonRequest = RemotingCommand.createRequestCommand(RequestCode.GET_ROUTEINFO_BY_TOPIC, header);
+        jsonRequest.makeCustomHeaderToNet();
+        RemotingCommand jsonResponse = defaultRequestProcessor.processRequest(ctx, jsonRequest);
+        assertThat(jsonResponse.getCode()).isEqualTo(ResponseCode.SUCCESS);
+        assertThat(jsonResponse.isBinaryBody()).isFalse();
+
+        RemotingCommand binaryRequest = RemotingCommand.createRequestCommand(RequestCode.GET_ROUTEINFO_BY_TOPIC, header);
+        binaryRequest.makeCustomHeaderToNet();
+        binaryRequest.markAcceptBinaryBody();
+        RemotingCommand binaryResponse = defaultRequestProcessor.processRequest(ctx, binaryRequest);
+        assertThat(binaryResponse.getCode()).isEqualTo(ResponseCode.SUCCESS);
+        assertThat(binaryResponse.isBinaryBody()).isTrue();
+
+        TopicRouteData fromJson = TopicRouteDataNameSrv.decode(jsonResponse.getBody(), TopicRouteDataNameSrv.class).toTopicRouteData();
+        assertThat(TopicRouteData.decodeBinary(binaryResponse.getBody())).isEqualTo(fromJson);
+    }
+
+    @Test
+    public void testProcessRequest_GetRouteChangesByTopics() throws RemotingCommandException {
+        TopicConfigSerializeWrapper topicConfigSerializeWrapper = new TopicConfigSerializeWrapper();
+        topicConfigSerializeWrapper.setTopicConfigTable(new ConcurrentHashMap<>(Collections.singletonMap("changes-test", new TopicConfig("changes-test", 8, 8, 6))));
+        routeInfoManager.registerBroker("default-cluster", "127.0.0.1:10911", "default-broker", MixAll.MASTER_ID, "127.0.0.1:1001",
+            topicConfigSerializeWrapper, new ArrayList<String>(), mock(Channel.class));
+
+        TopicRouteChangesBody requestBody = new TopicRouteChangesBody();
+        requestBody.getTopicVersionTable().put("changes-test", TopicRouteChangesBody.VERSION_UNKNOWN);
+        requestBody.getTopicVersionTable().put("not-exist", TopicRouteChangesBody.VERSION_UNKNOWN);
+
+        RemotingCommand response = defaultRequestProcessor.processRequest(null, genRouteChangesCmd(requestBody, 0));
+        assertThat(response.getCode()).isEqualTo(ResponseCode.SUCCESS);
+        TopicRouteChangesBody changes = TopicRouteChangesBody.decode(response.getBody(), TopicRouteChangesBody.class);
+        assertThat(changes.getTopicVersionTable().get("not-exist")).isEqualTo(TopicRouteChangesBody.VERSION_NOT_EXIST);
+        assertThat(changes.getTopicVersionTable().get("changes-test")).isGreaterThan(TopicRouteChangesBody.VERSION_NOT_EXIST);
+        assertThat(changes.getTopicRouteDataTable()).containsOnlyKeys("changes-test");
+
+        response = defaultRequestProcessor.processRequest(null, genRouteChangesCmd(changes, 0));
+        changes = TopicRouteChangesBody.decode(response.getBody(), TopicRouteChangesBody.class);
+        assertThat(changes.getTopicVersionTable()).isEmpty();
+
+        // nothing changed, the request is held
+        ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+        when(ctx.channel()).thenReturn(mock(Channel.class));
+        requestBody.getTopicVersionTable().put("not-exist", TopicRouteChangesBody.VERSION_NOT_EXIST);
+        requestBody.getTopicVersionTable().remove("changes-test");
+        assertThat(defaultRequestProcessor.processRequest(ctx, genRouteChangesCmd(requestBody, 1000))).isNull();
+        assertThat(namesrvController.getRouteChangeHoldService().getHoldRequestNums()).isEqualTo(1);
+    }
+
+    private static RemotingCommand genRouteChangesCmd(TopicRouteChangesBody body, long pollTimeoutMillis) {
+        GetRouteChangesRequestHeader header = new GetRouteChangesRequestHeader();
+        header.setPollTimeoutMillis(pollTimeoutMillis);
+        RemotingCommand request = RemotingCommand.createRequestCommand(RequestCode.GET_ROUTEINFO_CHANGES_BY_TOPICS, header);
+        request.setBody(body.encode());
+        request.makeCustomHeaderToNet();
+        return request;
+    }
+
     private static RemotingCommand genSampleRegisterCmd(boolean reg) {
         RegisterBrokerRequestHeader header = new RegisterBrokerRequestHeader();
         header.setBrokerName("broker");
@@ -17,6 +17,7 @@
 package org.apache.rocketmq.namesrv.routeinfo;
 
 import io.netty.channel.Channel;
+import org.apache.rocketmq.common.MixAll;
 import org.apache.rocketmq.common.TopicConfig;
 import org.apache.rocketmq.common.constant.PermName;
 import org.apache.rocketmq.common.namesrv.RegisterBrokerResult;
@@ -110,6 +111,41 @@ public class RouteInfoManagerTest {
         assertThat(result).isNull();
     }
 
+    @Test
+    public void testPickupTopicRouteSnapshot() {
+        assertThat(routeInfoManager.pickupTopicRouteSnapshot("unit_test", null)).isNull();
+
+        registerMasterBroker("snapshot-test");
+        TopicRouteSnapshot snapshot = routeInfoManager.pickupTopicRouteSnapshot("snapshot-test", null);
+        assertThat(snapshot).isNotNull();
+        assertThat(snapshot.getTopicRouteData().getQueueDatas().get(0).getPerm()).isEqualTo(6);
+
+        registerMasterBroker("snapshot-test");
+        assertThat(routeInfoManager.pickupTopicRouteSnapshot("snapshot-test", null).getVersion()).isEqualTo(snapshot.getVersion());
+
+        TopicRouteSnapshot ordered = routeInfoManager.pickupTopicRouteSnapshot("snapshot-test", "default-broker:8");
+        assertThat(ordered.getVersion()).isNotEqualTo(snapshot.getVersion());
+        assertThat(ordered.getTopicRouteData().getOrderTopicConf()).isEqualTo("default-broker:8");
+
+        routeInfoManager.wipeWritePermOfBrokerByLock("default-broker");
+        TopicRouteSnapshot wiped = routeInfoManager.pickupTopicRouteSnapshot("snapshot-test", "default-broker:8");
+        assertThat(wiped.getVersion()).isNotEqualTo(ordered.getVersion());
+        assertThat(wiped.getTopicRouteData().getQueueDatas().get(0).getPerm()).isEqualTo(PermName.PERM_READ);
+        assertThat(ordered.getTopicRouteData().getQueueDatas().get(0).getPerm()).isEqualTo(6);
+
+        routeInfoManager.deleteTopic("snapshot-test");
+        assertThat(routeInfoManager.pickupTopicRouteSnapshot("snapshot-test", "default-broker:8")).isNull();
+    }
+
+    private void registerMasterBroker(String topic) {
+        TopicConfigSerializeWrapper topicConfigSerializeWrapper = new TopicConfigSerializeWrapper();
+        ConcurrentHashMap<String, TopicConfig> topicConfigConcurrentHashMap = new ConcurrentHashMap<>();
+        topicConfigConcurrentHashMap.put(topic, new TopicConfig(topic, 8, 8, 6));
+        topicConfigSerializeWrapper.setTopicConfigTable(topicConfigConcurrentHashMap);
+        routeInfoManager.registerBroker("default-cluster", "127.0.0.1:10912", "default-broker", MixAll.MASTER_ID, "127.0.0.1:1002",
+                topicConfigSerializeWrapper, new ArrayList<String>(), mock(Channel.class));
+    }
+
     @Test
     public void testGetSystemTopicList() {
         byte[] topicList = routeInfoManager.getSystemTopicList();
@@ -40,6 +40,48 @@ public class NettyClientConfig {
 
     private boolean useTLS;
 
+    /**
+     * Coalesce the flushes of a channel, see {@link NettyFlushConsolidationHandler}
+     */
+    private boolean clientFlushConsolidationEnable = NettySystemConfig.clientFlushConsolidationEnable;
+    private int clientFlushConsolidationMaxFlushes = NettySystemConfig.clientFlushConsolidationMaxFlushes;
+    private int clientFlushConsolidationMaxBytes = NettySystemConfig.clientFlushConsolidationMaxBytes;
+    private long clientFlushConsolidationMaxDelayMicros = NettySystemConfig.clientFlushConsolidationMaxDelayMicros;
+
+    /**
+     * Socket transport, nio, epoll, io_uring or auto for the best available one, see {@link NettyTransportType}
+     */
+    private String clientTransport = NettySystemConfig.clientTransport;
+    /**
+     * TCP_QUICKACK, native transports only
+     */
+    private boolean clientTcpQuickAck = NettySystemConfig.clientTcpQuickAck;
+    /**
+     * SO_BUSY_POLL in microseconds, 0 to disable, epoll only
+     */
+    private int clientBusyPollMicros = NettySystemConfig.clientBusyPollMicros;
+    /**
+     * Spin the selector thread instead of blocking, epoll only
+     */
+    private boolean clientEventLoopBusyWait = NettySystemConfig.clientEventLoopBusyWait;
+
+    /**
+     * Selector threads shared by all the channels of the client
+     */
+    private int clientSelectorThreads = NettySystemConfig.clientSelectorThreads;
+    /**
+     * Channels opened to every remote address, requests are spread over them
+     */
+    private int clientChannelsPerAddress = NettySystemConfig.clientChannelsPerAddress;
+    /**
+     * Extra channels per remote address reserved for the bulk request codes, 0 to share the normal ones
+     */
+    private int clientBulkChannelsPerAddress = NettySystemConfig.clientBulkChannelsPerAddress;
+    /**
+     * How to pick a channel of an address, round_robin or least_pending
+     */
+    private String clientChannelSelectPolicy = NettySystemConfig.clientChannelSelectPolicy;
+
     public boolean isClientCloseSocketIfTimeout() {
         return clientCloseSocketIfTimeout;
     }
@@ -135,4 +177,100 @@ public class NettyClientConfig {
     public void setUseTLS(boolean useTLS) {
         this.useTLS = useTLS;
     }
+
+    public boolean isClientFlushConsolidationEnable() {
+        return clientFlushConsolidationEnable;
+    }
+
+    public void setClientFlushConsolidationEnable(boolean clientFlushConsolidationEnable) {
+        this.clientFlushConsolidationEnable = clientFlushConsolidationEnable;
+    }
+
+    public int getClientFlushConsolidationMaxFlushes() {
+        return clientFlushConsolidationMaxFlushes;
+    }
+
+    public void setClientFlushConsolidationMaxFlushes(int clientFlushConsolidationMaxFlushes) {
+        this.clientFlushConsolidationMaxFlushes = clientFlushConsolidationMaxFlushes;
+    }
+
+    public int getClientFlushConsolidationMaxBytes() {
+        return clientFlushConsolidationMaxBytes;
+    }
+
+    public void setClientFlushConsolidationMaxBytes(int clientFlushConsolidationMaxBytes) {
+        this.clientFlushConsolidationMaxBytes = clientFlushConsolidationMaxBytes;
+    }
+
+    public long getClientFlushConsolidationMaxDelayMicros() {
+        return clientFlushConsolidationMaxDelayMicros;
+    }
+
+    public void setClientFlushConsolidationMaxDelayMicros(long clientFlushConsolidationMaxDelayMicros) {
+        this.clientFlushConsolidationMaxDelayMicros = clientFlushConsolidationMaxDelayMicros;
+    }
+
+    public String getClientTransport() {
+        return clientTransport;
+    }
+
+    public void setClientTransport(String clientTransport) {
+        this.clientTransport = clientTransport;
+    }
+
+    public boolean isClientTcpQuickAck() {
+        return clientTcpQuickAck;
+    }
+
+    public void setClientTcpQuickAck(boolean clientTcpQuickAck) {
+        this.clientTcpQuickAck = clientTcpQuickAck;
+    }
+
+    public int getClientBusyPollMicros() {
+        return clientBusyPollMicros;
+    }
+
+    public void setClientBusyPollMicros(int clientBusyPollMicros) {
+        this.clientBusyPollMicros = clientBusyPollMicros;
+    }
+
+    public boolean isClientEventLoopBusyWait() {
+        return clientEventLoopBusyWait;
+    }
+
+    public void setClientEventLoopBusyWait(boolean clientEventLoopBusyWait) {
+        this.clientEventLoopBusyWait = clientEventLoopBusyWait;
+    }
+
+    public int getClientSelectorThreads() {
+        return clientSelectorThreads;
+    }
+
+    public void setClientSelectorThreads(int clientSelectorThreads) {
+        this.clientSelectorThreads = clientSelectorThreads;
+    }
+
+    public int getClientChannelsPerAddress() {
+        return clientChannelsPerAddress;
+    }
+
+    public void setClientChannelsPerAddress(int clientChannelsPerAddress) {
+        this.clientChannelsPerAddress = clientChannelsPerAddress;
+    }
+
+    public int getClientBulkChannelsPerAddress() {
+        return clientBulkChannelsPerAddress;
+    }
+
+    public void setClientBulkChannelsPerAddress(int clientBulkChannelsPerAddress) {
+        this.clientBulkChannelsPerAddress = clientBulkChannelsPerAddress;
+    }
+
+    public String getClientChannelSelectPolicy() {
+        return clientChannelSelectPolicy;
+    }
+
+    public void setClientChannelSelectPolicy(String clientChannelSelectPolicy) {
+        this.clientChannelSelectPolicy = clientChannelSelectPolicy;
+    }
 }
@@ -19,7 +19,8 @@ package org.apache.rocketmq.remoting.netty;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
-import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
 import org.apache.rocketmq.remoting.common.RemotingHelper;
 import org.apache.rocketmq.remoting.common.RemotingUtil;
 import org.apache.rocketmq.logging.InternalLogger;
@@ -32,8 +33,18 @@ public class NettyDecoder extends LengthFieldBasedFrameDecoder {
     private static final int FRAME_MAX_LENGTH =
         Integer.parseInt(System.getProperty("com.rocketmq.remoting.frameMaxLength", "16777216"));
 
+    private final Set<Integer> retainedBodyCodes;
+
     public NettyDecoder() {
+        this(Collections.<Integer>emptySet());
+    }
+
+    /**
+     * @param retainedBodyCodes request codes whose body is kept in the frame, see {@link RemotingCommand#decode(ByteBuf, Set)}
+     */
+    public NettyDecoder(final Set<Integer> retainedBodyCodes) {
         super(FRAME_MAX_LENGTH, 0, 4, 0, 4);
+        this.retainedBodyCodes = retainedBodyCodes;
     }
 
     @Override
@@ -45,9 +56,7 @@ public class NettyDecoder extends LengthFieldBasedFrameDecoder {
                 return null;
             }
 
-            ByteBuffer byteBuffer = frame.nioBuffer();
-
-            return RemotingCommand.decode(byteBuffer);
+            return RemotingCommand.decode(frame, this.retainedBodyCodes);
         } catch (Exception e) {
             log.error("decode exception, " + RemotingHelper.parseChannelRemoteAddr(ctx.channel()), e);
             RemotingUtil.closeChannel(ctx.channel());
@@ -14,13 +14,13 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+
 package org.apache.rocketmq.remoting.netty;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
-import java.nio.ByteBuffer;
 import org.apache.rocketmq.remoting.common.RemotingHelper;
 import org.apache.rocketmq.remoting.common.RemotingUtil;
 import org.apache.rocketmq.logging.InternalLogger;
@@ -31,12 +31,29 @@ import org.apache.rocketmq.remoting.protocol.RemotingCommand;
 public class NettyEncoder extends MessageToByteEncoder<RemotingCommand> {
     private static final InternalLogger log = InternalLoggerFactory.getLogger(RemotingHelper.ROCKETMQ_REMOTING);
 
+    /**
+     * Room reserved for the length fields and the header, most headers fit so the buffer is not grown and copied
+     * once the body is written.
+     */
+    private static final int ESTIMATED_HEADER_SIZE = 512;
+
+    @Override
+    protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, RemotingCommand remotingCommand,
+        boolean preferDirect) throws Exception {
+        byte[] body = remotingCommand.getBody();
+        int initialCapacity = ESTIMATED_HEADER_SIZE + (body != null ? body.length : 0);
+        if (preferDirect) {
+            return ctx.alloc().ioBuffer(initialCapacity);
+        } else {
+            return ctx.alloc().heapBuffer(initialCapacity);
+        }
+    }
+
     @Override
     public void encode(ChannelHandlerContext ctx, RemotingCommand remotingCommand, ByteBuf out)
         throws Exception {
         try {
-            ByteBuffer header = remotingCommand.encodeHeader();
-            out.writeBytes(header);
+            remotingCommand.fastEncodeHeader(out);
             byte[] body = remotingCommand.getBody();
             if (body != null) {
                 out.writeBytes(body);
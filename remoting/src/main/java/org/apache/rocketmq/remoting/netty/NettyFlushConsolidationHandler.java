@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.remoting.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces the flushes of one channel, so that commands written at a high rate by user threads leave in one
+ * syscall instead of one each.
+ * <p>
+ * A flush is passed on once {@code maxFlushes} flushes or {@code maxPendingBytes} bytes are pending, and after
+ * {@code maxDelayMicros} at the latest. With a delay of 0 the flush is passed on right after the tasks already queued
+ * on the event loop, which are the writes submitted meanwhile, so no latency is added to a lone request.
+ * <p>
+ * Must be added without an executor group, all state is only touched by the event loop of the channel.
+ */
+public class NettyFlushConsolidationHandler extends ChannelDuplexHandler {
+    private final int maxFlushes;
+    private final int maxPendingBytes;
+    private final long maxDelayMicros;
+
+    private ChannelHandlerContext ctx;
+    private int pendingFlushes;
+    private long pendingBytes;
+    private Future<?> scheduledFlush;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            scheduledFlush = null;
+            if (pendingFlushes > 0) {
+                flushNow(ctx);
+            }
+        }
+    };
+
+    public NettyFlushConsolidationHandler(int maxFlushes, int maxPendingBytes, long maxDelayMicros) {
+        if (maxFlushes <= 0) {
+            throw new IllegalArgumentException("maxFlushes: " + maxFlushes + " (expected: > 0)");
+        }
+        this.maxFlushes = maxFlushes;
+        this.maxPendingBytes = maxPendingBytes;
+        this.maxDelayMicros = maxDelayMicros;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (msg instanceof ByteBuf) {
+            this.pendingBytes += ((ByteBuf) msg).readableBytes();
+        }
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        this.pendingFlushes++;
+        if (this.pendingFlushes >= this.maxFlushes || this.pendingBytes >= this.maxPendingBytes
+            || !ctx.channel().isWritable()) {
+            flushNow(ctx);
+        } else if (this.scheduledFlush == null) {
+            if (this.maxDelayMicros > 0) {
+                this.scheduledFlush = ctx.executor().schedule(this.flushTask, this.maxDelayMicros, TimeUnit.MICROSECONDS);
+            } else {
+                this.scheduledFlush = ctx.executor().submit(this.flushTask);
+            }
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (!ctx.channel().isWritable()) {
+            flushIfNeeded(ctx);
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        flushIfNeeded(ctx);
+        ctx.close(promise);
+    }
+
+    @Override
+    public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) throws Exception {
+        flushIfNeeded(ctx);
+        ctx.disconnect(promise);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        flushIfNeeded(ctx);
+    }
+
+    private void flushIfNeeded(ChannelHandlerContext ctx) {
+        if (this.pendingFlushes > 0) {
+            flushNow(ctx);
+        }
+    }
+
+    private void flushNow(ChannelHandlerContext ctx) {
+        if (this.scheduledFlush != null) {
+            this.scheduledFlush.cancel(false);
+            this.scheduledFlush = null;
+        }
+        this.pendingFlushes = 0;
+        this.pendingBytes = 0;
+        ctx.flush();
+    }
+}
@@ -22,6 +22,10 @@ import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslHandler;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import java.net.SocketAddress;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -69,6 +73,12 @@ public abstract class NettyRemotingAbstract {
      */
     protected final Semaphore semaphoreAsync;
 
+    /**
+     * Timer failing async requests whose response did not arrive in time, shared by all remoting instances.
+     */
+    private static final HashedWheelTimer RESPONSE_TIMEOUT_TIMER =
+        new HashedWheelTimer(new DefaultThreadFactory("NettyResponseTimeoutTimer", true), 10, TimeUnit.MILLISECONDS, 1024);
+
     /**
      * This map caches all on-going requests.
      */
@@ -204,20 +214,24 @@ public abstract class NettyRemotingAbstract {
                         final RemotingResponseCallback callback = new RemotingResponseCallback() {
                             @Override
                             public void callback(RemotingCommand response) {
-                                doAfterRpcHooks(remoteAddr, cmd, response);
-                                if (!cmd.isOnewayRPC()) {
-                                    if (response != null) {
-                                        response.setOpaque(opaque);
-                                        response.markResponseType();
-                                        try {
-                                            ctx.writeAndFlush(response);
-                                        } catch (Throwable e) {
-                                            log.error("process request over, but response failed", e);
-                                            log.error(cmd.toString());
-                                            log.error(response.toString());
+                                try {
+                                    doAfterRpcHooks(remoteAddr, cmd, response);
+                                    if (!cmd.isOnewayRPC()) {
+                                        if (response != null) {
+                                            response.setOpaque(opaque);
+                                            response.markResponseType();
+                                            try {
+                                                ctx.writeAndFlush(response);
+                                            } catch (Throwable e) {
+                                                log.error("process request over, but response failed", e);
+                                                log.error(cmd.toString());
+                                                log.error(response.toString());
+                                            }
+                                        } else {
                                         }
-                                    } else {
                                     }
+                                } finally {
+                                    cmd.releaseBody();
                                 }
                             }
                         };
@@ -230,6 +244,7 @@ public abstract class NettyRemotingAbstract {
                             callback.callback(response);
                         }
                     } catch (Throwable e) {
+                        cmd.releaseBody();
                         log.error("process request exception", e);
                         log.error(cmd.toString());
 
@@ -244,6 +259,7 @@ public abstract class NettyRemotingAbstract {
             };
 
             if (pair.getObject1().rejectRequest()) {
+                cmd.releaseBody();
                 final RemotingCommand response = RemotingCommand.createResponseCommand(RemotingSysResponseCode.SYSTEM_BUSY,
                     "[REJECTREQUEST]system busy, start flow control for a while");
                 response.setOpaque(opaque);
@@ -255,6 +271,7 @@ public abstract class NettyRemotingAbstract {
                 final RequestTask requestTask = new RequestTask(run, ctx.channel(), cmd);
                 pair.getObject2().submit(requestTask);
             } catch (RejectedExecutionException e) {
+                cmd.releaseBody();
                 if ((System.currentTimeMillis() % 10000) == 0) {
                     log.warn(RemotingHelper.parseChannelRemoteAddr(ctx.channel())
                         + ", too many requests and system thread pool busy, RejectedExecutionException "
@@ -270,6 +287,7 @@ public abstract class NettyRemotingAbstract {
                 }
             }
         } else {
+            cmd.releaseBody();
             String error = " request type " + cmd.getCode() + " not supported";
             final RemotingCommand response =
                 RemotingCommand.createResponseCommand(RemotingSysResponseCode.REQUEST_CODE_NOT_SUPPORTED, error);
@@ -292,6 +310,7 @@ public abstract class NettyRemotingAbstract {
             responseFuture.setResponseCommand(cmd);
 
             responseTable.remove(opaque);
+            responseFuture.cancelTimeout();
 
             if (responseFuture.getInvokeCallback() != null) {
                 executeInvokeCallback(responseFuture);
@@ -376,9 +395,30 @@ public abstract class NettyRemotingAbstract {
      */
     public abstract ExecutorService getCallbackExecutor();
 
+    /**
+     * Fail the async request once its timeout elapsed, unless the response or a send failure removed it before.
+     */
+    void scheduleResponseTimeout(final ResponseFuture responseFuture, final long timeoutMillis) {
+        Timeout timeout = RESPONSE_TIMEOUT_TIMER.newTimeout(new TimerTask() {
+            @Override
+            public void run(Timeout timeout) {
+                if (responseTable.remove(responseFuture.getOpaque(), responseFuture)) {
+                    log.warn("remove timeout request, " + responseFuture);
+                    try {
+                        executeInvokeCallback(responseFuture);
+                    } catch (Throwable e) {
+                        log.warn("responseTimeout, operationComplete Exception", e);
+                    }
+                }
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        responseFuture.setTimeout(timeout);
+    }
+
     /**
      * <p>
-     * This method is periodically invoked to scan and expire deprecated request.
+     * Scan and expire deprecated request. Timeouts of async requests are driven by {@link #scheduleResponseTimeout},
+     * so this is no longer invoked periodically.
      * </p>
      */
     public void scanResponseTable() {
@@ -463,6 +503,7 @@ public abstract class NettyRemotingAbstract {
 
             final ResponseFuture responseFuture = new ResponseFuture(channel, opaque, timeoutMillis - costTime, invokeCallback, once);
             this.responseTable.put(opaque, responseFuture);
+            this.scheduleResponseTimeout(responseFuture, timeoutMillis - costTime);
             try {
                 channel.writeAndFlush(request).addListener(new ChannelFutureListener() {
                     @Override
@@ -476,6 +517,8 @@ public abstract class NettyRemotingAbstract {
                     }
                 });
             } catch (Exception e) {
+                responseTable.remove(opaque);
+                responseFuture.cancelTimeout();
                 responseFuture.release();
                 log.warn("send a request command to channel <" + RemotingHelper.parseChannelRemoteAddr(channel) + "> Exception", e);
                 throw new RemotingSendRequestException(RemotingHelper.parseChannelRemoteAddr(channel), e);
@@ -499,6 +542,7 @@ public abstract class NettyRemotingAbstract {
     private void requestFail(final int opaque) {
         ResponseFuture responseFuture = responseTable.remove(opaque);
         if (responseFuture != null) {
+            responseFuture.cancelTimeout();
             responseFuture.setSendRequestOK(false);
             responseFuture.putResponse(null);
             try {
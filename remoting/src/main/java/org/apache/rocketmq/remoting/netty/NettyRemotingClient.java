@@ -27,12 +27,11 @@ import io.netty.channel.ChannelPipeline;
 import io.netty.channel.ChannelPromise;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.SimpleChannelInboundHandler;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.AttributeKey;
 import io.netty.util.concurrent.DefaultEventExecutorGroup;
 import java.io.IOException;
 import java.net.SocketAddress;
@@ -41,10 +40,10 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -75,15 +74,21 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
 
     private final NettyClientConfig nettyClientConfig;
     private final Bootstrap bootstrap = new Bootstrap();
+    private final NettyTransportType transportType;
     private final EventLoopGroup eventLoopGroupWorker;
     private final Lock lockChannelTables = new ReentrantLock();
-    private final ConcurrentMap<String /* addr */, ChannelWrapper> channelTables = new ConcurrentHashMap<String, ChannelWrapper>();
+    private static final AttributeKey<AtomicInteger> PENDING_REQUESTS = AttributeKey.valueOf("pendingRequests");
+    private static final String CHANNEL_SLOT_SEPARATOR = "#";
 
-    private final Timer timer = new Timer("ClientHouseKeepingService", true);
+    /**
+     * Keyed by the address for the first channel of it, and by address#slot for the others of the pool
+     */
+    private final ConcurrentMap<String /* addr */, ChannelWrapper> channelTables = new ConcurrentHashMap<String, ChannelWrapper>();
 
     private final AtomicReference<List<String>> namesrvAddrList = new AtomicReference<List<String>>();
     private final AtomicReference<String> namesrvAddrChoosed = new AtomicReference<String>();
     private final AtomicInteger namesrvIndex = new AtomicInteger(initValueIndex());
+    private final AtomicInteger channelIndex = new AtomicInteger(initValueIndex());
     private final Lock namesrvChannelLock = new ReentrantLock();
 
     private final ExecutorService publicExecutor;
@@ -95,6 +100,18 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
     private final ChannelEventListener channelEventListener;
     private DefaultEventExecutorGroup defaultEventExecutorGroup;
 
+    private final int channelsPerAddress;
+    private final int bulkChannelsPerAddress;
+    private final boolean leastPendingSelect;
+    /**
+     * Request codes with large responses, served by the bulk channels if there are any
+     */
+    private final Set<Integer> bulkRequestCodes = new CopyOnWriteArraySet<Integer>();
+    /**
+     * Request codes that must always use the first channel of an address, such as registrations bound to the channel
+     */
+    private final Set<Integer> pinnedRequestCodes = new CopyOnWriteArraySet<Integer>();
+
     public NettyRemotingClient(final NettyClientConfig nettyClientConfig) {
         this(nettyClientConfig, null);
     }
@@ -119,14 +136,24 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
             }
         });
 
-        this.eventLoopGroupWorker = new NioEventLoopGroup(1, new ThreadFactory() {
+        this.transportType = NettyTransportType.resolve(nettyClientConfig.getClientTransport());
+        log.info("netty client uses {} transport", this.transportType);
+        this.channelsPerAddress = Math.max(1, nettyClientConfig.getClientChannelsPerAddress());
+        this.bulkChannelsPerAddress = Math.max(0, nettyClientConfig.getClientBulkChannelsPerAddress());
+        this.leastPendingSelect = "least_pending".equalsIgnoreCase(nettyClientConfig.getClientChannelSelectPolicy());
+        if (this.getChannelSlots() > 1) {
+            log.info("netty client opens {} channels and {} bulk channels per address, select by {}", this.channelsPerAddress,
+                this.bulkChannelsPerAddress, this.leastPendingSelect ? "least pending" : "round robin");
+        }
+        int selectorThreads = Math.max(1, nettyClientConfig.getClientSelectorThreads());
+        this.eventLoopGroupWorker = this.transportType.newEventLoopGroup(selectorThreads, new ThreadFactory() {
             private AtomicInteger threadIndex = new AtomicInteger(0);
 
             @Override
             public Thread newThread(Runnable r) {
                 return new Thread(r, String.format("NettyClientSelector_%d", this.threadIndex.incrementAndGet()));
             }
-        });
+        }, nettyClientConfig.isClientEventLoopBusyWait());
 
         if (nettyClientConfig.isUseTLS()) {
             try {
@@ -161,7 +188,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                 }
             });
 
-        Bootstrap handler = this.bootstrap.group(this.eventLoopGroupWorker).channel(NioSocketChannel.class)
+        Bootstrap handler = this.bootstrap.group(this.eventLoopGroupWorker).channel(this.transportType.socketChannelClass())
             .option(ChannelOption.TCP_NODELAY, true)
             .option(ChannelOption.SO_KEEPALIVE, false)
             .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, nettyClientConfig.getConnectTimeoutMillis())
@@ -179,6 +206,13 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                             log.warn("Connections are insecure as SSLContext is null!");
                         }
                     }
+                    if (nettyClientConfig.isClientFlushConsolidationEnable()) {
+                        // runs on the event loop of the channel, behind the ssl handler
+                        pipeline.addLast("flushConsolidationHandler", new NettyFlushConsolidationHandler(
+                            nettyClientConfig.getClientFlushConsolidationMaxFlushes(),
+                            nettyClientConfig.getClientFlushConsolidationMaxBytes(),
+                            nettyClientConfig.getClientFlushConsolidationMaxDelayMicros()));
+                    }
                     pipeline.addLast(
                         defaultEventExecutorGroup,
                         new NettyEncoder(),
@@ -189,16 +223,20 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                 }
             });
 
-        this.timer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                try {
-                    NettyRemotingClient.this.scanResponseTable();
-                } catch (Throwable e) {
-                    log.error("scanResponseTable exception", e);
-                }
+        if (nettyClientConfig.isClientTcpQuickAck()) {
+            if (this.transportType.tcpQuickAckOption() != null) {
+                handler.option(this.transportType.tcpQuickAckOption(), true);
+            } else {
+                log.warn("TCP_QUICKACK is not supported by the {} transport", this.transportType);
+            }
+        }
+        if (nettyClientConfig.getClientBusyPollMicros() > 0) {
+            if (this.transportType.busyPollOption() != null) {
+                handler.option(this.transportType.busyPollOption(), nettyClientConfig.getClientBusyPollMicros());
+            } else {
+                log.warn("SO_BUSY_POLL is not supported by the {} transport", this.transportType);
             }
-        }, 1000 * 3, 1000);
+        }
 
         if (this.channelEventListener != null) {
             this.nettyEventExecutor.start();
@@ -208,8 +246,6 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
     @Override
     public void shutdown() {
         try {
-            this.timer.cancel();
-
             for (ChannelWrapper cw : this.channelTables.values()) {
                 this.closeChannel(null, cw.getChannel());
             }
@@ -242,7 +278,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
         if (null == channel)
             return;
 
-        final String addrRemote = null == addr ? RemotingHelper.parseChannelRemoteAddr(channel) : addr;
+        final String addrRemote = this.findChannelKey(null == addr ? RemotingHelper.parseChannelRemoteAddr(channel) : addr, channel);
 
         try {
             if (this.lockChannelTables.tryLock(LOCK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
@@ -280,6 +316,44 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
         }
     }
 
+    private String findChannelKey(final String addr, final Channel channel) {
+        ChannelWrapper cw = this.channelTables.get(addr);
+        if (null == cw || cw.getChannel() == channel) {
+            return addr;
+        }
+
+        for (int slot = 1; slot < this.getChannelSlots(); slot++) {
+            String key = channelKey(addr, slot);
+            cw = this.channelTables.get(key);
+            if (cw != null && cw.getChannel() == channel) {
+                return key;
+            }
+        }
+        return addr;
+    }
+
+    private static String channelKey(final String addr, final int slot) {
+        return slot == 0 ? addr : addr + CHANNEL_SLOT_SEPARATOR + slot;
+    }
+
+    private int getChannelSlots() {
+        return this.channelsPerAddress + this.bulkChannelsPerAddress;
+    }
+
+    /**
+     * Requests of this code are sent through the bulk channels of an address, if configured
+     */
+    public void registerBulkRequestCode(int requestCode) {
+        this.bulkRequestCodes.add(requestCode);
+    }
+
+    /**
+     * Requests of this code are always sent through the first channel of an address
+     */
+    public void registerPinnedRequestCode(int requestCode) {
+        this.pinnedRequestCodes.add(requestCode);
+    }
+
     @Override
     public void registerRPCHook(RPCHook rpcHook) {
         if (rpcHook != null && !rpcHooks.contains(rpcHook)) {
@@ -366,7 +440,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
     public RemotingCommand invokeSync(String addr, final RemotingCommand request, long timeoutMillis)
         throws InterruptedException, RemotingConnectException, RemotingSendRequestException, RemotingTimeoutException {
         long beginStartTime = System.currentTimeMillis();
-        final Channel channel = this.getAndCreateChannel(addr);
+        final Channel channel = this.getAndCreateChannel(addr, request);
         if (channel != null && channel.isActive()) {
             try {
                 doBeforeRpcHooks(addr, request);
@@ -374,7 +448,18 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                 if (timeoutMillis < costTime) {
                     throw new RemotingTimeoutException("invokeSync call timeout");
                 }
-                RemotingCommand response = this.invokeSyncImpl(channel, request, timeoutMillis - costTime);
+                final AtomicInteger pending = this.pendingRequests(channel);
+                RemotingCommand response;
+                if (pending != null) {
+                    pending.incrementAndGet();
+                    try {
+                        response = this.invokeSyncImpl(channel, request, timeoutMillis - costTime);
+                    } finally {
+                        pending.decrementAndGet();
+                    }
+                } else {
+                    response = this.invokeSyncImpl(channel, request, timeoutMillis - costTime);
+                }
                 doAfterRpcHooks(RemotingHelper.parseChannelRemoteAddr(channel), request, response);
                 return response;
             } catch (RemotingSendRequestException e) {
@@ -408,6 +493,74 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
         return this.createChannel(addr);
     }
 
+    private Channel getAndCreateChannel(final String addr, final RemotingCommand request)
+        throws RemotingConnectException, InterruptedException {
+        if (null == addr || this.getChannelSlots() == 1 || this.pinnedRequestCodes.contains(request.getCode())) {
+            return this.getAndCreateChannel(addr);
+        }
+
+        int from = 0;
+        int count = this.channelsPerAddress;
+        if (this.bulkChannelsPerAddress > 0 && this.bulkRequestCodes.contains(request.getCode())) {
+            from = this.channelsPerAddress;
+            count = this.bulkChannelsPerAddress;
+        }
+
+        int slot = from + this.selectChannelSlot(addr, from, count);
+        String key = channelKey(addr, slot);
+        ChannelWrapper cw = this.channelTables.get(key);
+        if (cw != null && cw.isOK()) {
+            return cw.getChannel();
+        }
+
+        return this.createChannel(key, addr);
+    }
+
+    /**
+     * Pick one of the count slots starting at from, a slot not connected yet wins for least pending so the pool gets filled.
+     */
+    private int selectChannelSlot(final String addr, final int from, final int count) {
+        if (count == 1) {
+            return 0;
+        }
+
+        if (!this.leastPendingSelect) {
+            return Math.abs(this.channelIndex.getAndIncrement() % count);
+        }
+
+        int selected = 0;
+        int minPending = Integer.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            ChannelWrapper cw = this.channelTables.get(channelKey(addr, from + i));
+            if (null == cw || !cw.isOK()) {
+                return i;
+            }
+            AtomicInteger pending = this.pendingRequests(cw.getChannel());
+            int value = pending != null ? pending.get() : 0;
+            if (value < minPending) {
+                minPending = value;
+                selected = i;
+            }
+        }
+        return selected;
+    }
+
+    private AtomicInteger pendingRequests(final Channel channel) {
+        if (this.getChannelSlots() == 1) {
+            return null;
+        }
+
+        AtomicInteger pending = channel.attr(PENDING_REQUESTS).get();
+        if (null == pending) {
+            pending = new AtomicInteger(0);
+            AtomicInteger prev = channel.attr(PENDING_REQUESTS).setIfAbsent(pending);
+            if (prev != null) {
+                pending = prev;
+            }
+        }
+        return pending;
+    }
+
     private Channel getAndCreateNameserverChannel() throws RemotingConnectException, InterruptedException {
         String addr = this.namesrvAddrChoosed.get();
         if (addr != null) {
@@ -455,7 +608,11 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
     }
 
     private Channel createChannel(final String addr) throws InterruptedException {
-        ChannelWrapper cw = this.channelTables.get(addr);
+        return this.createChannel(addr, addr);
+    }
+
+    private Channel createChannel(final String key, final String addr) throws InterruptedException {
+        ChannelWrapper cw = this.channelTables.get(key);
         if (cw != null && cw.isOK()) {
             return cw.getChannel();
         }
@@ -463,7 +620,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
         if (this.lockChannelTables.tryLock(LOCK_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
             try {
                 boolean createNewConnection;
-                cw = this.channelTables.get(addr);
+                cw = this.channelTables.get(key);
                 if (cw != null) {
 
                     if (cw.isOK()) {
@@ -471,7 +628,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                     } else if (!cw.getChannelFuture().isDone()) {
                         createNewConnection = false;
                     } else {
-                        this.channelTables.remove(addr);
+                        this.channelTables.remove(key);
                         createNewConnection = true;
                     }
                 } else {
@@ -482,7 +639,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                     ChannelFuture channelFuture = this.bootstrap.connect(RemotingHelper.string2SocketAddress(addr));
                     log.info("createChannel: begin to connect remote host[{}] asynchronously", addr);
                     cw = new ChannelWrapper(channelFuture);
-                    this.channelTables.put(addr, cw);
+                    this.channelTables.put(key, cw);
                 }
             } catch (Exception e) {
                 log.error("createChannel: create channel exception", e);
@@ -512,11 +669,11 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
     }
 
     @Override
-    public void invokeAsync(String addr, RemotingCommand request, long timeoutMillis, InvokeCallback invokeCallback)
+    public void invokeAsync(String addr, RemotingCommand request, long timeoutMillis, final InvokeCallback invokeCallback)
         throws InterruptedException, RemotingConnectException, RemotingTooMuchRequestException, RemotingTimeoutException,
         RemotingSendRequestException {
         long beginStartTime = System.currentTimeMillis();
-        final Channel channel = this.getAndCreateChannel(addr);
+        final Channel channel = this.getAndCreateChannel(addr, request);
         if (channel != null && channel.isActive()) {
             try {
                 doBeforeRpcHooks(addr, request);
@@ -524,7 +681,25 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
                 if (timeoutMillis < costTime) {
                     throw new RemotingTooMuchRequestException("invokeAsync call timeout");
                 }
-                this.invokeAsyncImpl(channel, request, timeoutMillis - costTime, invokeCallback);
+                final AtomicInteger pending = invokeCallback != null ? this.pendingRequests(channel) : null;
+                if (pending != null) {
+                    pending.incrementAndGet();
+                    try {
+                        this.invokeAsyncImpl(channel, request, timeoutMillis - costTime, new InvokeCallback() {
+                            @Override
+                            public void operationComplete(ResponseFuture responseFuture) {
+                                pending.decrementAndGet();
+                                invokeCallback.operationComplete(responseFuture);
+                            }
+                        });
+                    } catch (Exception e) {
+                        // the callback is never called when the request was not put out
+                        pending.decrementAndGet();
+                        throw e;
+                    }
+                } else {
+                    this.invokeAsyncImpl(channel, request, timeoutMillis - costTime, invokeCallback);
+                }
             } catch (RemotingSendRequestException e) {
                 log.warn("invokeAsync: send request exception, so close the channel[{}]", addr);
                 this.closeChannel(addr, channel);
@@ -539,7 +714,7 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
     @Override
     public void invokeOneway(String addr, RemotingCommand request, long timeoutMillis) throws InterruptedException,
         RemotingConnectException, RemotingTooMuchRequestException, RemotingTimeoutException, RemotingSendRequestException {
-        final Channel channel = this.getAndCreateChannel(addr);
+        final Channel channel = this.getAndCreateChannel(addr, request);
         if (channel != null && channel.isActive()) {
             try {
                 doBeforeRpcHooks(addr, request);
@@ -569,10 +744,20 @@ public class NettyRemotingClient extends NettyRemotingAbstract implements Remoti
     @Override
     public boolean isChannelWritable(String addr) {
         ChannelWrapper cw = this.channelTables.get(addr);
-        if (cw != null && cw.isOK()) {
-            return cw.isWritable();
+        if (cw != null && cw.isOK() && cw.isWritable()) {
+            return true;
+        }
+        boolean found = cw != null && cw.isOK();
+        for (int slot = 1; slot < this.channelsPerAddress; slot++) {
+            cw = this.channelTables.get(channelKey(addr, slot));
+            if (cw != null && cw.isOK()) {
+                if (cw.isWritable()) {
+                    return true;
+                }
+                found = true;
+            }
         }
-        return true;
+        return !found;
     }
 
     @Override
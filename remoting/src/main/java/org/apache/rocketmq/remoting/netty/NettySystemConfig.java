@@ -36,6 +36,30 @@ public class NettySystemConfig {
         "com.rocketmq.remoting.client.channel.maxIdleTimeSeconds";
     public static final String COM_ROCKETMQ_REMOTING_CLIENT_CLOSE_SOCKET_IF_TIMEOUT =
         "com.rocketmq.remoting.client.closeSocketIfTimeout";
+    public static final String COM_ROCKETMQ_REMOTING_CLIENT_FLUSH_CONSOLIDATION_ENABLE =
+        "com.rocketmq.remoting.client.flushConsolidation.enable";
+    public static final String COM_ROCKETMQ_REMOTING_CLIENT_FLUSH_CONSOLIDATION_MAX_FLUSHES =
+        "com.rocketmq.remoting.client.flushConsolidation.maxFlushes";
+    public static final String COM_ROCKETMQ_REMOTING_CLIENT_FLUSH_CONSOLIDATION_MAX_BYTES =
+        "com.rocketmq.remoting.client.flushConsolidation.maxBytes";
+    public static final String COM_ROCKETMQ_REMOTING_CLIENT_FLUSH_CONSOLIDATION_MAX_DELAY_MICROS =
+        "com.rocketmq.remoting.client.flushConsolidation.maxDelayMicros";
+    public static final String COM_ROCKETMQ_REMOTING_CLIENT_TRANSPORT =
+        "com.rocketmq.remoting.client.transport";
+    public static final String COM_ROCKETMQ_REMOTING_CLIENT_TCP_QUICK_ACK =
+        "com.rocketmq.remoting.client.tcpQuickAck";
+    public static final String COM_ROCKETMQ_REMOTING_CLIENT_BUSY_POLL_MICROS =
+        "com.rocketmq.remoting.client.busyPollMicros";
+    public static final String COM_ROCKETMQ_REMOTING_CLIENT_EVENT_LOOP_BUSY_WAIT =
+        "com.rocketmq.remoting.client.eventLoopBusyWait";
+    public static final String COM_ROCKETMQ_REMOTING_CLIENT_SELECTOR_THREADS =
+        "com.rocketmq.remoting.client.selectorThreads";
+    public static final String COM_ROCKETMQ_REMOTING_CLIENT_CHANNELS_PER_ADDRESS =
+        "com.rocketmq.remoting.client.channelsPerAddress";
+    public static final String COM_ROCKETMQ_REMOTING_CLIENT_BULK_CHANNELS_PER_ADDRESS =
+        "com.rocketmq.remoting.client.bulkChannelsPerAddress";
+    public static final String COM_ROCKETMQ_REMOTING_CLIENT_CHANNEL_SELECT_POLICY =
+        "com.rocketmq.remoting.client.channelSelectPolicy";
 
     public static final boolean NETTY_POOLED_BYTE_BUF_ALLOCATOR_ENABLE = //
         Boolean.parseBoolean(System.getProperty(COM_ROCKETMQ_REMOTING_NETTY_POOLED_BYTE_BUF_ALLOCATOR_ENABLE, "false"));
@@ -55,4 +79,28 @@ public class NettySystemConfig {
         Integer.parseInt(System.getProperty(COM_ROCKETMQ_REMOTING_CLIENT_CHANNEL_MAX_IDLE_SECONDS, "120"));
     public static boolean clientCloseSocketIfTimeout =
         Boolean.parseBoolean(System.getProperty(COM_ROCKETMQ_REMOTING_CLIENT_CLOSE_SOCKET_IF_TIMEOUT, "true"));
+    public static boolean clientFlushConsolidationEnable =
+        Boolean.parseBoolean(System.getProperty(COM_ROCKETMQ_REMOTING_CLIENT_FLUSH_CONSOLIDATION_ENABLE, "false"));
+    public static int clientFlushConsolidationMaxFlushes =
+        Integer.parseInt(System.getProperty(COM_ROCKETMQ_REMOTING_CLIENT_FLUSH_CONSOLIDATION_MAX_FLUSHES, "256"));
+    public static int clientFlushConsolidationMaxBytes =
+        Integer.parseInt(System.getProperty(COM_ROCKETMQ_REMOTING_CLIENT_FLUSH_CONSOLIDATION_MAX_BYTES, "65536"));
+    public static long clientFlushConsolidationMaxDelayMicros =
+        Long.parseLong(System.getProperty(COM_ROCKETMQ_REMOTING_CLIENT_FLUSH_CONSOLIDATION_MAX_DELAY_MICROS, "0"));
+    public static String clientTransport =
+        System.getProperty(COM_ROCKETMQ_REMOTING_CLIENT_TRANSPORT, "nio");
+    public static boolean clientTcpQuickAck =
+        Boolean.parseBoolean(System.getProperty(COM_ROCKETMQ_REMOTING_CLIENT_TCP_QUICK_ACK, "false"));
+    public static int clientBusyPollMicros =
+        Integer.parseInt(System.getProperty(COM_ROCKETMQ_REMOTING_CLIENT_BUSY_POLL_MICROS, "0"));
+    public static boolean clientEventLoopBusyWait =
+        Boolean.parseBoolean(System.getProperty(COM_ROCKETMQ_REMOTING_CLIENT_EVENT_LOOP_BUSY_WAIT, "false"));
+    public static int clientSelectorThreads =
+        Integer.parseInt(System.getProperty(COM_ROCKETMQ_REMOTING_CLIENT_SELECTOR_THREADS, "1"));
+    public static int clientChannelsPerAddress =
+        Integer.parseInt(System.getProperty(COM_ROCKETMQ_REMOTING_CLIENT_CHANNELS_PER_ADDRESS, "1"));
+    public static int clientBulkChannelsPerAddress =
+        Integer.parseInt(System.getProperty(COM_ROCKETMQ_REMOTING_CLIENT_BULK_CHANNELS_PER_ADDRESS, "0"));
+    public static String clientChannelSelectPolicy =
+        System.getProperty(COM_ROCKETMQ_REMOTING_CLIENT_CHANNEL_SELECT_POLICY, "round_robin");
 }
@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.remoting.netty;
+
+import io.netty.channel.ChannelOption;
+import io.netty.channel.DefaultSelectStrategyFactory;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SelectStrategy;
+import io.netty.channel.SelectStrategyFactory;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.IntSupplier;
+import java.lang.reflect.Constructor;
+import java.util.concurrent.ThreadFactory;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.remoting.common.RemotingHelper;
+import org.apache.rocketmq.remoting.common.RemotingUtil;
+
+/**
+ * Socket transports of the remoting client.
+ * <p>
+ * io_uring comes from the netty incubator transport, which is not a dependency of RocketMQ, so it is only looked up
+ * reflectively and used when its jar is on the classpath.
+ */
+public enum NettyTransportType {
+    NIO,
+    EPOLL,
+    IO_URING;
+
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(RemotingHelper.ROCKETMQ_REMOTING);
+
+    private static final String IO_URING_PACKAGE = "io.netty.incubator.channel.uring.";
+
+    /**
+     * The transport for the configured name, one of nio, epoll, io_uring or auto, falling back to epoll then nio when
+     * the native library is not available.
+     */
+    public static NettyTransportType resolve(final String name) {
+        NettyTransportType wanted;
+        if (name == null || "auto".equalsIgnoreCase(name)) {
+            wanted = IO_URING;
+        } else {
+            try {
+                wanted = NettyTransportType.valueOf(name.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                log.warn("unknown netty transport {}, use nio", name);
+                return NIO;
+            }
+        }
+
+        for (int i = wanted.ordinal(); i > 0; i--) {
+            NettyTransportType type = values()[i];
+            if (type.isAvailable()) {
+                return type;
+            }
+            if (name != null && !"auto".equalsIgnoreCase(name)) {
+                log.warn("netty transport {} is not available", type);
+            }
+        }
+        return NIO;
+    }
+
+    public boolean isAvailable() {
+        switch (this) {
+            case EPOLL:
+                return RemotingUtil.isLinuxPlatform() && Epoll.isAvailable();
+            case IO_URING:
+                try {
+                    return RemotingUtil.isLinuxPlatform()
+                        && (Boolean) Class.forName(IO_URING_PACKAGE + "IOUring").getMethod("isAvailable").invoke(null);
+                } catch (Throwable e) {
+                    return false;
+                }
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * @param busyWait spin on the event loop instead of blocking in epoll_wait, trading a core for latency, epoll only
+     */
+    public EventLoopGroup newEventLoopGroup(final int threads, final ThreadFactory threadFactory,
+        final boolean busyWait) {
+        switch (this) {
+            case EPOLL:
+                return new EpollEventLoopGroup(threads, threadFactory,
+                    busyWait ? BusyWaitSelectStrategyFactory.INSTANCE : DefaultSelectStrategyFactory.INSTANCE);
+            case IO_URING:
+                try {
+                    Constructor<?> constructor = Class.forName(IO_URING_PACKAGE + "IOUringEventLoopGroup")
+                        .getConstructor(int.class, ThreadFactory.class);
+                    return (EventLoopGroup) constructor.newInstance(threads, threadFactory);
+                } catch (Exception e) {
+                    throw new IllegalStateException("create io_uring event loop group failed", e);
+                }
+            default:
+                return new NioEventLoopGroup(threads, threadFactory);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public Class<? extends SocketChannel> socketChannelClass() {
+        switch (this) {
+            case EPOLL:
+                return EpollSocketChannel.class;
+            case IO_URING:
+                try {
+                    return (Class<? extends SocketChannel>) Class.forName(IO_URING_PACKAGE + "IOUringSocketChannel");
+                } catch (ClassNotFoundException e) {
+                    throw new IllegalStateException("io_uring socket channel not found", e);
+                }
+            default:
+                return NioSocketChannel.class;
+        }
+    }
+
+    /**
+     * TCP_QUICKACK, only supported by the native transports.
+     */
+    @SuppressWarnings("unchecked")
+    public ChannelOption<Boolean> tcpQuickAckOption() {
+        switch (this) {
+            case EPOLL:
+                return EpollChannelOption.TCP_QUICKACK;
+            case IO_URING:
+                try {
+                    return (ChannelOption<Boolean>) Class.forName(IO_URING_PACKAGE + "IOUringChannelOption")
+                        .getField("TCP_QUICKACK").get(null);
+                } catch (Exception e) {
+                    return null;
+                }
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * SO_BUSY_POLL, microseconds the kernel busy polls the device queue on a blocking read, epoll only.
+     */
+    public ChannelOption<Integer> busyPollOption() {
+        return this == EPOLL ? EpollChannelOption.SO_BUSY_POLL : null;
+    }
+
+    private static final class BusyWaitSelectStrategyFactory implements SelectStrategyFactory {
+        private static final BusyWaitSelectStrategyFactory INSTANCE = new BusyWaitSelectStrategyFactory();
+
+        @Override
+        public SelectStrategy newSelectStrategy() {
+            return new SelectStrategy() {
+                @Override
+                public int calculateStrategy(IntSupplier selectSupplier, boolean hasTasks) {
+                    return SelectStrategy.BUSY_WAIT;
+                }
+            };
+        }
+    }
+}
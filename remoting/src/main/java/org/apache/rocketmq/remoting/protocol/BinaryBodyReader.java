@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.protocol;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads a body written by {@link BinaryBodyWriter}.
+ */
+public class BinaryBodyReader {
+    private final ByteBuffer buffer;
+
+    public BinaryBodyReader(final byte[] data) {
+        this.buffer = ByteBuffer.wrap(data);
+        byte version = this.buffer.get();
+        if (version != BinaryBodyWriter.VERSION) {
+            throw new IllegalArgumentException("unsupported binary body version " + version);
+        }
+    }
+
+    public int readVarInt() {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = this.buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    public long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = this.buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("malformed varlong");
+    }
+
+    public long readLong() {
+        return this.buffer.getLong();
+    }
+
+    public boolean readBoolean() {
+        return this.buffer.get() != 0;
+    }
+
+    /**
+     * @return the size of a collection, -1 for null
+     */
+    public int readSize() {
+        int size = readVarInt() - 1;
+        // every element takes at least one byte
+        if (size > this.buffer.remaining()) {
+            throw new IllegalArgumentException("size " + size + " exceeds the body");
+        }
+        return size;
+    }
+
+    public String readString() {
+        int len = readVarInt() - 1;
+        if (len < 0) {
+            return null;
+        }
+        if (len > this.buffer.remaining()) {
+            throw new IllegalArgumentException("string length " + len + " exceeds the body");
+        }
+        String value = new String(this.buffer.array(), this.buffer.arrayOffset() + this.buffer.position(), len,
+            RemotingSerializable.CHARSET_UTF8);
+        this.buffer.position(this.buffer.position() + len);
+        return value;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Writes a body in the compact binary format, the counterpart of {@link BinaryBodyReader}.
+ * <p>
+ * The body starts with a format version byte, followed by the fields in a fixed order known to both sides: ints and
+ * sizes as unsigned varints, strings and nullable collections with their length plus one, 0 meaning null.
+ */
+public class BinaryBodyWriter {
+    public static final byte VERSION = 1;
+
+    private final ByteBuf buffer;
+
+    public BinaryBodyWriter(final int initialCapacity) {
+        this.buffer = Unpooled.buffer(initialCapacity);
+        this.buffer.writeByte(VERSION);
+    }
+
+    public BinaryBodyWriter writeVarInt(int value) {
+        while ((value & ~0x7F) != 0) {
+            this.buffer.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        this.buffer.writeByte(value);
+        return this;
+    }
+
+    public BinaryBodyWriter writeVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            this.buffer.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        this.buffer.writeByte((int) value);
+        return this;
+    }
+
+    public BinaryBodyWriter writeLong(final long value) {
+        this.buffer.writeLong(value);
+        return this;
+    }
+
+    public BinaryBodyWriter writeBoolean(final boolean value) {
+        this.buffer.writeBoolean(value);
+        return this;
+    }
+
+    /**
+     * Writes the size of a nullable collection, -1 for null.
+     */
+    public BinaryBodyWriter writeSize(final int size) {
+        return writeVarInt(size + 1);
+    }
+
+    public BinaryBodyWriter writeString(final String value) {
+        if (value == null) {
+            return writeVarInt(0);
+        }
+        writeVarInt(ByteBufUtil.utf8Bytes(value) + 1);
+        ByteBufUtil.writeUtf8(this.buffer, value);
+        return this;
+    }
+
+    public byte[] toByteArray() {
+        return ByteBufUtil.getBytes(this.buffer, this.buffer.readerIndex(), this.buffer.readableBytes(), false);
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.remoting.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.remoting.CommandCustomHeader;
+import org.apache.rocketmq.remoting.common.RemotingHelper;
+
+/**
+ * Reads and writes the fields of one {@link CommandCustomHeader} class through method handles resolved once per
+ * class, instead of walking the fields by reflection on every command.
+ * <p>
+ * Besides the extFields map, the fields can be written straight into a buffer in the {@link SerializeType#ROCKETMQ}
+ * layout, numbers are written as ascii digits without building a string first.
+ */
+public class CommandCustomHeaderCodec {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(RemotingHelper.ROCKETMQ_REMOTING);
+    private static final Charset CHARSET_UTF8 = Charset.forName("UTF-8");
+    private static final byte[] TRUE_BYTES = "true".getBytes(CHARSET_UTF8);
+    private static final byte[] FALSE_BYTES = "false".getBytes(CHARSET_UTF8);
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private static final ConcurrentMap<Class<?>, CommandCustomHeaderCodec> CODEC_TABLE =
+        new ConcurrentHashMap<Class<?>, CommandCustomHeaderCodec>(256);
+
+    enum FieldType {
+        STRING,
+        INTEGER,
+        LONG,
+        BOOLEAN,
+        DOUBLE,
+        /**
+         * Written with toString, can not be decoded.
+         */
+        OTHER
+    }
+
+    static class FieldCodec {
+        private final String name;
+        private final byte[] nameBytes;
+        private final FieldType type;
+        private final boolean nullable;
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        FieldCodec(String name, FieldType type, boolean nullable, MethodHandle getter, MethodHandle setter) {
+            this.name = name;
+            this.nameBytes = name.getBytes(CHARSET_UTF8);
+            this.type = type;
+            this.nullable = nullable;
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        Object get(CommandCustomHeader header) throws Throwable {
+            return this.getter.invokeExact((Object) header);
+        }
+
+        void set(CommandCustomHeader header, Object value) throws Throwable {
+            this.setter.invokeExact((Object) header, value);
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+
+    private final Class<? extends CommandCustomHeader> headerClass;
+    private final MethodHandle constructor;
+    private final FieldCodec[] fields;
+
+    private CommandCustomHeaderCodec(Class<? extends CommandCustomHeader> headerClass) {
+        this.headerClass = headerClass;
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        this.constructor = resolveConstructor(lookup, headerClass);
+
+        List<FieldCodec> fieldList = new ArrayList<FieldCodec>();
+        for (Field field : headerClass.getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || field.getName().startsWith("this")) {
+                continue;
+            }
+            try {
+                field.setAccessible(true);
+                MethodHandle getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+                MethodHandle setter = null;
+                if (!Modifier.isFinal(field.getModifiers())) {
+                    setter = lookup.unreflectSetter(field).asType(SETTER_TYPE);
+                }
+                fieldList.add(new FieldCodec(field.getName(), fieldType(field.getType()),
+                    RemotingCommand.isFieldNullable(field), getter, setter));
+            } catch (Exception e) {
+                log.error("Failed to resolve field [{}] of {}", field.getName(), headerClass.getName(), e);
+            }
+        }
+        this.fields = fieldList.toArray(new FieldCodec[0]);
+    }
+
+    public static CommandCustomHeaderCodec getCodec(Class<? extends CommandCustomHeader> headerClass) {
+        CommandCustomHeaderCodec codec = CODEC_TABLE.get(headerClass);
+        if (codec == null) {
+            codec = new CommandCustomHeaderCodec(headerClass);
+            CommandCustomHeaderCodec prev = CODEC_TABLE.putIfAbsent(headerClass, codec);
+            if (prev != null) {
+                codec = prev;
+            }
+        }
+        return codec;
+    }
+
+    private static MethodHandle resolveConstructor(MethodHandles.Lookup lookup,
+        Class<? extends CommandCustomHeader> headerClass) {
+        if (headerClass.isInterface() || Modifier.isAbstract(headerClass.getModifiers())) {
+            return null;
+        }
+        try {
+            Constructor<? extends CommandCustomHeader> ctor = headerClass.getDeclaredConstructor();
+            if (!Modifier.isPublic(ctor.getModifiers()) || !Modifier.isPublic(headerClass.getModifiers())) {
+                // keep the Class.newInstance access rules, non public headers are built through reflection
+                return null;
+            }
+            return lookup.unreflectConstructor(ctor).asType(MethodType.methodType(CommandCustomHeader.class));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static FieldType fieldType(Class<?> clazz) {
+        if (clazz == String.class) {
+            return FieldType.STRING;
+        } else if (clazz == Integer.class || clazz == int.class) {
+            return FieldType.INTEGER;
+        } else if (clazz == Long.class || clazz == long.class) {
+            return FieldType.LONG;
+        } else if (clazz == Boolean.class || clazz == boolean.class) {
+            return FieldType.BOOLEAN;
+        } else if (clazz == Double.class || clazz == double.class) {
+            return FieldType.DOUBLE;
+        }
+        return FieldType.OTHER;
+    }
+
+    /**
+     * @return a new header, or null if the class can not be instantiated
+     */
+    public CommandCustomHeader newInstance() {
+        try {
+            if (this.constructor != null) {
+                return (CommandCustomHeader) this.constructor.invokeExact();
+            }
+            return this.headerClass.newInstance();
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    /**
+     * Fill the header from the extFields, a field failing to decode is logged and skipped.
+     */
+    public void decode(Map<String, String> extFields, CommandCustomHeader header) {
+        for (FieldCodec field : this.fields) {
+            String value = extFields.get(field.name);
+            if (null == value) {
+                if (!field.nullable) {
+                    log.error("Failed field [{}] decoding", field.name,
+                        new IllegalArgumentException("the custom field <" + field.name + "> is null"));
+                }
+                continue;
+            }
+
+            try {
+                Object valueParsed;
+                switch (field.type) {
+                    case STRING:
+                        valueParsed = value;
+                        break;
+                    case INTEGER:
+                        valueParsed = Integer.parseInt(value);
+                        break;
+                    case LONG:
+                        valueParsed = Long.parseLong(value);
+                        break;
+                    case BOOLEAN:
+                        valueParsed = Boolean.parseBoolean(value);
+                        break;
+                    case DOUBLE:
+                        valueParsed = Double.parseDouble(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("the custom field <" + field.name + "> type is not supported");
+                }
+                if (field.setter != null) {
+                    field.set(header, valueParsed);
+                }
+            } catch (Throwable e) {
+                log.error("Failed field [{}] decoding", field.name, e);
+            }
+        }
+    }
+
+    /**
+     * Put the non null fields of the header into the extFields as strings.
+     */
+    public void encode(CommandCustomHeader header, Map<String, String> extFields) {
+        for (FieldCodec field : this.fields) {
+            Object value = null;
+            try {
+                value = field.get(header);
+            } catch (Throwable e) {
+                log.error("Failed to access field [{}]", field.name, e);
+            }
+
+            if (value != null) {
+                extFields.put(field.name, value.toString());
+            }
+        }
+    }
+
+    /**
+     * Serialize the header fields and the extFields into the key/value layout of {@link RocketMQSerializable},
+     * a non null header field wins over the extFields key of the same name, as with {@link #encode}.
+     *
+     * @return the serialized bytes, or null if there is nothing to write
+     */
+    public byte[] serializeWithExtFields(CommandCustomHeader header, HashMap<String, String> extFields) {
+        ByteBuf buf = Unpooled.buffer(256);
+        int length = writeWithExtFields(header, extFields, buf);
+        if (length == 0) {
+            return null;
+        }
+        byte[] result = new byte[length];
+        buf.readBytes(result);
+        return result;
+    }
+
+    /**
+     * Same as {@link #serializeWithExtFields(CommandCustomHeader, HashMap)}, but written in place into the buffer.
+     *
+     * @return the number of bytes written
+     */
+    public int writeWithExtFields(CommandCustomHeader header, HashMap<String, String> extFields, ByteBuf out) {
+        int beginIndex = out.writerIndex();
+        boolean hasExtFields = extFields != null && !extFields.isEmpty();
+        Set<String> writtenNames = hasExtFields ? new HashSet<String>(this.fields.length) : null;
+        for (FieldCodec field : this.fields) {
+            Object value;
+            try {
+                value = field.get(header);
+            } catch (Throwable e) {
+                log.error("Failed to access field [{}]", field.name, e);
+                continue;
+            }
+            if (value == null) {
+                continue;
+            }
+
+            // keySize + key + valSize + val
+            out.writeShort(field.nameBytes.length);
+            out.writeBytes(field.nameBytes);
+            if (value instanceof Long || value instanceof Integer) {
+                long v = ((Number) value).longValue();
+                out.writeInt(stringSize(v));
+                writeAscii(out, v);
+            } else if (value instanceof Boolean) {
+                byte[] bytes = (Boolean) value ? TRUE_BYTES : FALSE_BYTES;
+                out.writeInt(bytes.length);
+                out.writeBytes(bytes);
+            } else {
+                writeString(out, false, value.toString());
+            }
+            if (writtenNames != null) {
+                writtenNames.add(field.name);
+            }
+        }
+
+        if (hasExtFields) {
+            for (Map.Entry<String, String> entry : extFields.entrySet()) {
+                if (entry.getKey() != null && entry.getValue() != null && !writtenNames.contains(entry.getKey())) {
+                    writeString(out, true, entry.getKey());
+                    writeString(out, false, entry.getValue());
+                }
+            }
+        }
+        return out.writerIndex() - beginIndex;
+    }
+
+    private static void writeString(ByteBuf out, boolean isShortLength, String str) {
+        int lengthIndex = out.writerIndex();
+        if (isShortLength) {
+            out.writeShort(0);
+        } else {
+            out.writeInt(0);
+        }
+        int length = ByteBufUtil.writeUtf8(out, str);
+        if (isShortLength) {
+            out.setShort(lengthIndex, length);
+        } else {
+            out.setInt(lengthIndex, length);
+        }
+    }
+
+    static int stringSize(long v) {
+        if (v == Long.MIN_VALUE) {
+            return 20;
+        }
+        int size = 1;
+        long x = v;
+        if (x < 0) {
+            size++;
+            x = -x;
+        }
+        while (x >= 10) {
+            x /= 10;
+            size++;
+        }
+        return size;
+    }
+
+    static void writeAscii(ByteBuf out, long v) {
+        if (v == Long.MIN_VALUE) {
+            out.writeBytes(Long.toString(v).getBytes(CHARSET_UTF8));
+            return;
+        }
+        int size = stringSize(v);
+        out.ensureWritable(size);
+        int begin = out.writerIndex();
+        long x = v;
+        if (x < 0) {
+            out.setByte(begin, '-');
+            x = -x;
+        }
+        int pos = begin + size;
+        do {
+            out.setByte(--pos, (int) ('0' + x % 10));
+            x /= 10;
+        } while (x > 0);
+        out.writerIndex(begin + size);
+    }
+
+    FieldCodec[] getFields() {
+        return fields;
+    }
+}
@@ -17,12 +17,12 @@
 package org.apache.rocketmq.remoting.protocol;
 
 import com.alibaba.fastjson.annotation.JSONField;
-import java.lang.annotation.Annotation;
+import io.netty.buffer.ByteBuf;
 import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
 import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.rocketmq.remoting.CommandCustomHeader;
 import org.apache.rocketmq.remoting.annotation.CFNotNull;
@@ -38,21 +38,10 @@ public class RemotingCommand {
     private static final InternalLogger log = InternalLoggerFactory.getLogger(RemotingHelper.ROCKETMQ_REMOTING);
     private static final int RPC_TYPE = 0; // 0, REQUEST_COMMAND
     private static final int RPC_ONEWAY = 1; // 0, RPC
-    private static final Map<Class<? extends CommandCustomHeader>, Field[]> CLASS_HASH_MAP =
-        new HashMap<Class<? extends CommandCustomHeader>, Field[]>();
-    private static final Map<Class, String> CANONICAL_NAME_CACHE = new HashMap<Class, String>();
+    private static final int RPC_BINARY_BODY = 2; // 1, body in the compact binary format
+    private static final int RPC_ACCEPT_BINARY_BODY = 3; // 1, sender is able to read compact binary bodies
     // 1, Oneway
     // 1, RESPONSE_COMMAND
-    private static final Map<Field, Boolean> NULLABLE_FIELD_CACHE = new HashMap<Field, Boolean>();
-    private static final String STRING_CANONICAL_NAME = String.class.getCanonicalName();
-    private static final String DOUBLE_CANONICAL_NAME_1 = Double.class.getCanonicalName();
-    private static final String DOUBLE_CANONICAL_NAME_2 = double.class.getCanonicalName();
-    private static final String INTEGER_CANONICAL_NAME_1 = Integer.class.getCanonicalName();
-    private static final String INTEGER_CANONICAL_NAME_2 = int.class.getCanonicalName();
-    private static final String LONG_CANONICAL_NAME_1 = Long.class.getCanonicalName();
-    private static final String LONG_CANONICAL_NAME_2 = long.class.getCanonicalName();
-    private static final String BOOLEAN_CANONICAL_NAME_1 = Boolean.class.getCanonicalName();
-    private static final String BOOLEAN_CANONICAL_NAME_2 = boolean.class.getCanonicalName();
     private static volatile int configVersion = -1;
     private static AtomicInteger requestId = new AtomicInteger(0);
 
@@ -81,6 +70,11 @@ public class RemotingCommand {
     private SerializeType serializeTypeCurrentRPC = serializeTypeConfigInThisServer;
 
     private transient byte[] body;
+    /**
+     * Body left in the frame it was decoded from, see {@link #decode(ByteBuf, Set)}
+     */
+    private transient ByteBuf retainedBody;
+    private transient int retainedBodyLength;
 
     protected RemotingCommand() {
     }
@@ -162,10 +156,66 @@ public class RemotingCommand {
         return cmd;
     }
 
+    /**
+     * Decode a frame without copying the header out of the buffer first, the body is copied into a byte[] owned by
+     * the command.
+     */
+    public static RemotingCommand decode(final ByteBuf byteBuffer) {
+        return decode(byteBuffer, Collections.<Integer>emptySet());
+    }
+
+    /**
+     * Decode a frame without copying the header out of the buffer first.
+     * <p>
+     * The body of a request whose code is in {@code retainedBodyCodes} is not copied, the command keeps a retained
+     * slice of the frame instead, read through {@link #getRetainedBody()}. It has to be given back with
+     * {@link #releaseBody()} once the request is answered, {@link #getBody()} still works until then but copies it.
+     */
+    public static RemotingCommand decode(final ByteBuf byteBuffer, final Set<Integer> retainedBodyCodes) {
+        int length = byteBuffer.readableBytes();
+        int oriHeaderLen = byteBuffer.readInt();
+        int headerLength = getHeaderLength(oriHeaderLen);
+
+        RemotingCommand cmd = headerDecode(byteBuffer, headerLength, getProtocolType(oriHeaderLen));
+
+        int bodyLength = length - 4 - headerLength;
+        if (bodyLength > 0) {
+            if (cmd.getType() == RemotingCommandType.REQUEST_COMMAND && retainedBodyCodes.contains(cmd.getCode())) {
+                cmd.retainedBody = byteBuffer.readRetainedSlice(bodyLength);
+                cmd.retainedBodyLength = bodyLength;
+            } else {
+                byte[] bodyData = new byte[bodyLength];
+                byteBuffer.readBytes(bodyData);
+                cmd.body = bodyData;
+            }
+        }
+
+        return cmd;
+    }
+
     public static int getHeaderLength(int length) {
         return length & 0xFFFFFF;
     }
 
+    private static RemotingCommand headerDecode(ByteBuf byteBuffer, int len, SerializeType type) {
+        switch (type) {
+            case JSON:
+                byte[] headerData = new byte[len];
+                byteBuffer.readBytes(headerData);
+                RemotingCommand resultJson = RemotingSerializable.decode(headerData, RemotingCommand.class);
+                resultJson.setSerializeTypeCurrentRPC(type);
+                return resultJson;
+            case ROCKETMQ:
+                RemotingCommand resultRMQ = RocketMQSerializable.rocketMQProtocolDecode(byteBuffer, len);
+                resultRMQ.setSerializeTypeCurrentRPC(type);
+                return resultRMQ;
+            default:
+                break;
+        }
+
+        return null;
+    }
+
     private static RemotingCommand headerDecode(byte[] headerData, SerializeType type) {
         switch (type) {
             case JSON:
@@ -233,96 +283,22 @@ public class RemotingCommand {
 
     public CommandCustomHeader decodeCommandCustomHeader(
         Class<? extends CommandCustomHeader> classHeader) throws RemotingCommandException {
-        CommandCustomHeader objectHeader;
-        try {
-            objectHeader = classHeader.newInstance();
-        } catch (InstantiationException e) {
-            return null;
-        } catch (IllegalAccessException e) {
+        CommandCustomHeaderCodec codec = CommandCustomHeaderCodec.getCodec(classHeader);
+        CommandCustomHeader objectHeader = codec.newInstance();
+        if (objectHeader == null) {
             return null;
         }
 
         if (this.extFields != null) {
-
-            Field[] fields = getClazzFields(classHeader);
-            for (Field field : fields) {
-                if (!Modifier.isStatic(field.getModifiers())) {
-                    String fieldName = field.getName();
-                    if (!fieldName.startsWith("this")) {
-                        try {
-                            String value = this.extFields.get(fieldName);
-                            if (null == value) {
-                                if (!isFieldNullable(field)) {
-                                    throw new RemotingCommandException("the custom field <" + fieldName + "> is null");
-                                }
-                                continue;
-                            }
-
-                            field.setAccessible(true);
-                            String type = getCanonicalName(field.getType());
-                            Object valueParsed;
-
-                            if (type.equals(STRING_CANONICAL_NAME)) {
-                                valueParsed = value;
-                            } else if (type.equals(INTEGER_CANONICAL_NAME_1) || type.equals(INTEGER_CANONICAL_NAME_2)) {
-                                valueParsed = Integer.parseInt(value);
-                            } else if (type.equals(LONG_CANONICAL_NAME_1) || type.equals(LONG_CANONICAL_NAME_2)) {
-                                valueParsed = Long.parseLong(value);
-                            } else if (type.equals(BOOLEAN_CANONICAL_NAME_1) || type.equals(BOOLEAN_CANONICAL_NAME_2)) {
-                                valueParsed = Boolean.parseBoolean(value);
-                            } else if (type.equals(DOUBLE_CANONICAL_NAME_1) || type.equals(DOUBLE_CANONICAL_NAME_2)) {
-                                valueParsed = Double.parseDouble(value);
-                            } else {
-                                throw new RemotingCommandException("the custom field <" + fieldName + "> type is not supported");
-                            }
-
-                            field.set(objectHeader, valueParsed);
-
-                        } catch (Throwable e) {
-                            log.error("Failed field [{}] decoding", fieldName, e);
-                        }
-                    }
-                }
-            }
-
+            codec.decode(this.extFields, objectHeader);
             objectHeader.checkFields();
         }
 
         return objectHeader;
     }
 
-    private Field[] getClazzFields(Class<? extends CommandCustomHeader> classHeader) {
-        Field[] field = CLASS_HASH_MAP.get(classHeader);
-
-        if (field == null) {
-            field = classHeader.getDeclaredFields();
-            synchronized (CLASS_HASH_MAP) {
-                CLASS_HASH_MAP.put(classHeader, field);
-            }
-        }
-        return field;
-    }
-
-    private boolean isFieldNullable(Field field) {
-        if (!NULLABLE_FIELD_CACHE.containsKey(field)) {
-            Annotation annotation = field.getAnnotation(CFNotNull.class);
-            synchronized (NULLABLE_FIELD_CACHE) {
-                NULLABLE_FIELD_CACHE.put(field, annotation == null);
-            }
-        }
-        return NULLABLE_FIELD_CACHE.get(field);
-    }
-
-    private String getCanonicalName(Class clazz) {
-        String name = CANONICAL_NAME_CACHE.get(clazz);
-
-        if (name == null) {
-            name = clazz.getCanonicalName();
-            synchronized (CANONICAL_NAME_CACHE) {
-                CANONICAL_NAME_CACHE.put(clazz, name);
-            }
-        }
-        return name;
+    static boolean isFieldNullable(Field field) {
+        return field.getAnnotation(CFNotNull.class) == null;
     }
 
     public ByteBuffer encode() {
@@ -334,7 +310,8 @@ public class RemotingCommand {
         length += headerData.length;
 
         // 3> body data length
-        if (this.body != null) {
+        byte[] body = this.getBody();
+        if (body != null) {
             length += body.length;
         }
 
@@ -350,8 +327,8 @@ public class RemotingCommand {
         result.put(headerData);
 
         // body data;
-        if (this.body != null) {
-            result.put(this.body);
+        if (body != null) {
+            result.put(body);
         }
 
         result.flip();
@@ -360,44 +337,51 @@ public class RemotingCommand {
     }
 
     private byte[] headerEncode() {
-        this.makeCustomHeaderToNet();
         if (SerializeType.ROCKETMQ == serializeTypeCurrentRPC) {
-            return RocketMQSerializable.rocketMQProtocolEncode(this);
+            // the custom header is written straight into the header bytes, see RocketMQSerializable
+            byte[] header = RocketMQSerializable.rocketMQProtocolEncode(this);
+            this.makeCustomHeaderToNet();
+            return header;
         } else {
+            this.makeCustomHeaderToNet();
             return RemotingSerializable.encode(this);
         }
     }
 
     public void makeCustomHeaderToNet() {
         if (this.customHeader != null) {
-            Field[] fields = getClazzFields(customHeader.getClass());
             if (null == this.extFields) {
                 this.extFields = new HashMap<String, String>();
             }
+            CommandCustomHeaderCodec.getCodec(this.customHeader.getClass()).encode(this.customHeader, this.extFields);
+        }
+    }
 
-            for (Field field : fields) {
-                if (!Modifier.isStatic(field.getModifiers())) {
-                    String name = field.getName();
-                    if (!name.startsWith("this")) {
-                        Object value = null;
-                        try {
-                            field.setAccessible(true);
-                            value = field.get(this.customHeader);
-                        } catch (Exception e) {
-                            log.error("Failed to access field [{}]", name, e);
-                        }
-
-                        if (value != null) {
-                            this.extFields.put(name, value.toString());
-                        }
-                    }
-                }
-            }
+    /**
+     * Write the length, the header length and the header in place into the buffer, the body is left to the caller.
+     */
+    public void fastEncodeHeader(ByteBuf out) {
+        int bodySize = this.getBodyLength();
+        int beginIndex = out.writerIndex();
+        // skip the total length and the header length, filled once the header is written
+        out.writeLong(0);
+        int headerSize;
+        if (SerializeType.ROCKETMQ == serializeTypeCurrentRPC) {
+            headerSize = RocketMQSerializable.rocketMQProtocolEncode(this, out);
+            // the extFields stay readable after sending, as with the json serialize type
+            this.makeCustomHeaderToNet();
+        } else {
+            this.makeCustomHeaderToNet();
+            byte[] header = RemotingSerializable.encode(this);
+            headerSize = header.length;
+            out.writeBytes(header);
         }
+        out.setInt(beginIndex, 4 + headerSize + bodySize);
+        out.setBytes(beginIndex + 4, markProtocolType(headerSize, serializeTypeCurrentRPC));
     }
 
     public ByteBuffer encodeHeader() {
-        return encodeHeader(this.body != null ? this.body.length : 0);
+        return encodeHeader(this.getBodyLength());
     }
 
     public ByteBuffer encodeHeader(final int bodyLength) {
@@ -440,6 +424,34 @@ public class RemotingCommand {
         return (this.flag & bits) == bits;
     }
 
+    /**
+     * The body was written by {@link BinaryBodyWriter} instead of as json.
+     */
+    public void markBinaryBody() {
+        int bits = 1 << RPC_BINARY_BODY;
+        this.flag |= bits;
+    }
+
+    @JSONField(serialize = false)
+    public boolean isBinaryBody() {
+        int bits = 1 << RPC_BINARY_BODY;
+        return (this.flag & bits) == bits;
+    }
+
+    /**
+     * Tells the peer it may answer with a binary body, peers not knowing the flag ignore it and keep json.
+     */
+    public void markAcceptBinaryBody() {
+        int bits = 1 << RPC_ACCEPT_BINARY_BODY;
+        this.flag |= bits;
+    }
+
+    @JSONField(serialize = false)
+    public boolean isAcceptBinaryBody() {
+        int bits = 1 << RPC_ACCEPT_BINARY_BODY;
+        return (this.flag & bits) == bits;
+    }
+
     public int getCode() {
         return code;
     }
@@ -504,9 +516,48 @@ public class RemotingCommand {
     }
 
     public byte[] getBody() {
+        if (null == this.body && this.retainedBody != null) {
+            ByteBuf retained = this.retainedBody;
+            byte[] bodyData = new byte[this.retainedBodyLength];
+            retained.getBytes(retained.readerIndex(), bodyData);
+            this.body = bodyData;
+        }
         return body;
     }
 
+    /**
+     * @return the body length, still known once a retained body is released
+     */
+    @JSONField(serialize = false)
+    public int getBodyLength() {
+        if (this.body != null) {
+            return this.body.length;
+        }
+        return this.retainedBodyLength;
+    }
+
+    /**
+     * @return the body left in its frame, null if it was copied out on decode or already released
+     */
+    @JSONField(serialize = false)
+    public ByteBuf getRetainedBody() {
+        return retainedBody;
+    }
+
+    /**
+     * Gives back the frame of a retained body, nothing happens if there is none or it was already released.
+     */
+    public void releaseBody() {
+        ByteBuf retained;
+        synchronized (this) {
+            retained = this.retainedBody;
+            this.retainedBody = null;
+        }
+        if (retained != null) {
+            retained.release();
+        }
+    }
+
     public void setBody(byte[] body) {
         this.body = body;
     }
@@ -16,11 +16,14 @@
  */
 package org.apache.rocketmq.remoting.protocol;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import org.apache.rocketmq.remoting.CommandCustomHeader;
 
 public class RocketMQSerializable {
     private static final Charset CHARSET_UTF8 = Charset.forName("UTF-8");
@@ -34,11 +37,17 @@ public class RocketMQSerializable {
             remarkLen = remarkBytes.length;
         }
 
-        // HashMap<String, String> extFields
+        // HashMap<String, String> extFields, together with the fields of the custom header
         byte[] extFieldsBytes = null;
         int extLen = 0;
-        if (cmd.getExtFields() != null && !cmd.getExtFields().isEmpty()) {
+        CommandCustomHeader customHeader = cmd.readCustomHeader();
+        if (customHeader != null) {
+            extFieldsBytes = CommandCustomHeaderCodec.getCodec(customHeader.getClass())
+                .serializeWithExtFields(customHeader, cmd.getExtFields());
+        } else if (cmd.getExtFields() != null && !cmd.getExtFields().isEmpty()) {
             extFieldsBytes = mapSerialize(cmd.getExtFields());
+        }
+        if (extFieldsBytes != null) {
             extLen = extFieldsBytes.length;
         }
 
@@ -73,6 +82,61 @@ public class RocketMQSerializable {
         return headerBuffer.array();
     }
 
+    /**
+     * Write the header of the command in place into the buffer.
+     *
+     * @return the length of the header
+     */
+    public static int rocketMQProtocolEncode(RemotingCommand cmd, ByteBuf out) {
+        int beginIndex = out.writerIndex();
+        // int code(~32767)
+        out.writeShort(cmd.getCode());
+        // LanguageCode language
+        out.writeByte(cmd.getLanguage().getCode());
+        // int version(~32767)
+        out.writeShort(cmd.getVersion());
+        // int opaque
+        out.writeInt(cmd.getOpaque());
+        // int flag
+        out.writeInt(cmd.getFlag());
+        // String remark
+        String remark = cmd.getRemark();
+        if (remark != null && !remark.isEmpty()) {
+            int remarkLengthIndex = out.writerIndex();
+            out.writeInt(0);
+            out.setInt(remarkLengthIndex, ByteBufUtil.writeUtf8(out, remark));
+        } else {
+            out.writeInt(0);
+        }
+        // HashMap<String, String> extFields, together with the fields of the custom header
+        int extLengthIndex = out.writerIndex();
+        out.writeInt(0);
+        CommandCustomHeader customHeader = cmd.readCustomHeader();
+        if (customHeader != null) {
+            out.setInt(extLengthIndex, CommandCustomHeaderCodec.getCodec(customHeader.getClass())
+                .writeWithExtFields(customHeader, cmd.getExtFields(), out));
+        } else if (cmd.getExtFields() != null && !cmd.getExtFields().isEmpty()) {
+            out.setInt(extLengthIndex, mapSerialize(cmd.getExtFields(), out));
+        }
+
+        return out.writerIndex() - beginIndex;
+    }
+
+    private static int mapSerialize(HashMap<String, String> map, ByteBuf out) {
+        int beginIndex = out.writerIndex();
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            if (entry.getKey() != null && entry.getValue() != null) {
+                byte[] key = entry.getKey().getBytes(CHARSET_UTF8);
+                byte[] val = entry.getValue().getBytes(CHARSET_UTF8);
+                out.writeShort(key.length);
+                out.writeBytes(key);
+                out.writeInt(val.length);
+                out.writeBytes(val);
+            }
+        }
+        return out.writerIndex() - beginIndex;
+    }
+
     public static byte[] mapSerialize(HashMap<String, String> map) {
         // keySize+key+valSize+val
         if (null == map || map.isEmpty())
@@ -164,6 +228,60 @@ public class RocketMQSerializable {
         return cmd;
     }
 
+    /**
+     * Decode a header of the given length read from the buffer, strings are decoded straight from the buffer.
+     */
+    public static RemotingCommand rocketMQProtocolDecode(final ByteBuf headerBuffer, int headerLen) {
+        int endIndex = headerBuffer.readerIndex() + headerLen;
+        RemotingCommand cmd = new RemotingCommand();
+        // int code(~32767)
+        cmd.setCode(headerBuffer.readShort());
+        // LanguageCode language
+        cmd.setLanguage(LanguageCode.valueOf(headerBuffer.readByte()));
+        // int version(~32767)
+        cmd.setVersion(headerBuffer.readShort());
+        // int opaque
+        cmd.setOpaque(headerBuffer.readInt());
+        // int flag
+        cmd.setFlag(headerBuffer.readInt());
+        // String remark
+        int remarkLength = headerBuffer.readInt();
+        if (remarkLength > 0) {
+            cmd.setRemark(readString(headerBuffer, remarkLength, endIndex));
+        }
+
+        // HashMap<String, String> extFields
+        int extFieldsLength = headerBuffer.readInt();
+        if (extFieldsLength > 0) {
+            cmd.setExtFields(mapDeserialize(headerBuffer, extFieldsLength, endIndex));
+        }
+        if (headerBuffer.readerIndex() != endIndex) {
+            throw new IllegalArgumentException("header length mismatch, expected " + headerLen);
+        }
+        return cmd;
+    }
+
+    private static HashMap<String, String> mapDeserialize(ByteBuf byteBuffer, int len, int headerEndIndex) {
+        int endIndex = byteBuffer.readerIndex() + len;
+        if (endIndex > headerEndIndex) {
+            throw new IllegalArgumentException("extFields length " + len + " exceeds the header");
+        }
+        HashMap<String, String> map = new HashMap<String, String>();
+        while (byteBuffer.readerIndex() < endIndex) {
+            String key = readString(byteBuffer, byteBuffer.readShort(), endIndex);
+            String value = readString(byteBuffer, byteBuffer.readInt(), endIndex);
+            map.put(key, value);
+        }
+        return map;
+    }
+
+    private static String readString(ByteBuf byteBuffer, int len, int endIndex) {
+        if (len < 0 || byteBuffer.readerIndex() + len > endIndex) {
+            throw new IllegalArgumentException("string length " + len + " exceeds the header");
+        }
+        return byteBuffer.readCharSequence(len, CHARSET_UTF8).toString();
+    }
+
     public static HashMap<String, String> mapDeserialize(byte[] bytes) {
         if (bytes == null || bytes.length <= 0)
             return null;
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.remoting.netty;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NettyFlushConsolidationHandlerTest {
+
+    @Test
+    public void testFlushAfterQueuedTasks() {
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyFlushConsolidationHandler(256, 64 * 1024, 0));
+
+        ChannelFuture future = channel.pipeline().writeAndFlush(Unpooled.wrappedBuffer(new byte[8]));
+        assertThat(channel.outboundMessages()).isEmpty();
+        assertThat(future.isDone()).isFalse();
+
+        channel.runPendingTasks();
+        assertThat(channel.outboundMessages()).hasSize(1);
+        assertThat(future.isSuccess()).isTrue();
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testFlushOnMaxFlushes() {
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyFlushConsolidationHandler(3, 64 * 1024, 1000 * 1000));
+
+        channel.pipeline().writeAndFlush(Unpooled.wrappedBuffer(new byte[8]));
+        channel.pipeline().writeAndFlush(Unpooled.wrappedBuffer(new byte[8]));
+        assertThat(channel.outboundMessages()).isEmpty();
+
+        channel.pipeline().writeAndFlush(Unpooled.wrappedBuffer(new byte[8]));
+        assertThat(channel.outboundMessages()).hasSize(3);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testFlushOnMaxBytes() {
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyFlushConsolidationHandler(256, 16, 1000 * 1000));
+
+        channel.pipeline().writeAndFlush(Unpooled.wrappedBuffer(new byte[8]));
+        assertThat(channel.outboundMessages()).isEmpty();
+
+        channel.pipeline().writeAndFlush(Unpooled.wrappedBuffer(new byte[8]));
+        assertThat(channel.outboundMessages()).hasSize(2);
+        channel.finishAndReleaseAll();
+    }
+
+    @Test
+    public void testFlushOnClose() {
+        EmbeddedChannel channel = new EmbeddedChannel(new NettyFlushConsolidationHandler(256, 64 * 1024, 1000 * 1000));
+
+        ChannelFuture future = channel.pipeline().writeAndFlush(Unpooled.wrappedBuffer(new byte[8]));
+        assertThat(future.isDone()).isFalse();
+
+        channel.close();
+        assertThat(future.isSuccess()).isTrue();
+        channel.finishAndReleaseAll();
+    }
+}
@@ -16,7 +16,10 @@
  */
 package org.apache.rocketmq.remoting.netty;
 
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.rocketmq.remoting.InvokeCallback;
 import org.apache.rocketmq.remoting.common.SemaphoreReleaseOnlyOnce;
 import org.apache.rocketmq.remoting.protocol.RemotingCommand;
@@ -105,4 +108,46 @@ public class NettyRemotingAbstractTest {
         remotingAbstract.scanResponseTable();
         assertNull(remotingAbstract.responseTable.get(dummyId));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testScheduleResponseTimeout() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Semaphore semaphore = new Semaphore(0);
+        ResponseFuture responseFuture = new ResponseFuture(null, 2, 100, new InvokeCallback() {
+            @Override
+            public void operationComplete(final ResponseFuture responseFuture) {
+                latch.countDown();
+            }
+        }, new SemaphoreReleaseOnlyOnce(semaphore));
+        remotingAbstract.responseTable.putIfAbsent(2, responseFuture);
+
+        remotingAbstract.scheduleResponseTimeout(responseFuture, 100);
+
+        assertThat(latch.await(3, TimeUnit.SECONDS)).isTrue();
+        assertThat(responseFuture.getResponseCommand()).isNull();
+        assertNull(remotingAbstract.responseTable.get(2));
+        assertThat(semaphore.tryAcquire(3, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void testResponseCancelsTimeout() throws InterruptedException {
+        final AtomicInteger callbackTimes = new AtomicInteger(0);
+        ResponseFuture responseFuture = new ResponseFuture(null, 3, 100, new InvokeCallback() {
+            @Override
+            public void operationComplete(final ResponseFuture responseFuture) {
+                callbackTimes.incrementAndGet();
+            }
+        }, null);
+        remotingAbstract.responseTable.putIfAbsent(3, responseFuture);
+        remotingAbstract.scheduleResponseTimeout(responseFuture, 100);
+        when(remotingAbstract.getCallbackExecutor()).thenReturn(null);
+
+        RemotingCommand response = RemotingCommand.createResponseCommand(0, "Foo");
+        response.setOpaque(3);
+        remotingAbstract.processResponseCommand(null, response);
+
+        Thread.sleep(300);
+        assertThat(callbackTimes.get()).isEqualTo(1);
+        assertThat(responseFuture.getResponseCommand()).isSameAs(response);
+    }
+}
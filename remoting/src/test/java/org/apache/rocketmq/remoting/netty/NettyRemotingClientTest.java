@@ -16,8 +16,13 @@
  */
 package org.apache.rocketmq.remoting.netty;
 
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import org.apache.rocketmq.remoting.RemotingServer;
+import org.apache.rocketmq.remoting.RemotingServerTest;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.junit.MockitoJUnitRunner;
@@ -35,4 +40,59 @@ public class NettyRemotingClientTest {
 
         assertThat(remotingClient.getCallbackExecutor()).isEqualTo(customized);
     }
+
+    @Test
+    public void testChannelPoolRoundRobin() throws Exception {
+        NettyClientConfig clientConfig = new NettyClientConfig();
+        clientConfig.setClientChannelsPerAddress(3);
+        clientConfig.setClientBulkChannelsPerAddress(1);
+        clientConfig.setClientSelectorThreads(2);
+
+        RemotingServer remotingServer = RemotingServerTest.createRemotingServer();
+        NettyRemotingClient client = (NettyRemotingClient) RemotingServerTest.createRemotingClient(clientConfig);
+        try {
+            Set<String> channels = invokeAndCollect(client, 6);
+            assertThat(channels).hasSize(3);
+            assertThat(client.isChannelWritable("localhost:8888")).isTrue();
+
+            client.registerBulkRequestCode(0);
+            Set<String> bulkChannels = invokeAndCollect(client, 3);
+            assertThat(bulkChannels).hasSize(1);
+            assertThat(channels).doesNotContainAnyElementsOf(bulkChannels);
+
+            client.registerPinnedRequestCode(0);
+            assertThat(invokeAndCollect(client, 3)).hasSize(1);
+        } finally {
+            client.shutdown();
+            remotingServer.shutdown();
+        }
+    }
+
+    @Test
+    public void testChannelPoolLeastPending() throws Exception {
+        NettyClientConfig clientConfig = new NettyClientConfig();
+        clientConfig.setClientChannelsPerAddress(3);
+        clientConfig.setClientChannelSelectPolicy("least_pending");
+
+        RemotingServer remotingServer = RemotingServerTest.createRemotingServer();
+        NettyRemotingClient client = (NettyRemotingClient) RemotingServerTest.createRemotingClient(clientConfig);
+        try {
+            // idle channels are all equal, so the pool is filled first and the first channel wins afterwards
+            assertThat(invokeAndCollect(client, 5)).hasSize(3);
+        } finally {
+            client.shutdown();
+            remotingServer.shutdown();
+        }
+    }
+
+    private static Set<String> invokeAndCollect(NettyRemotingClient client, int times) throws Exception {
+        Set<String> channels = new HashSet<>();
+        for (int i = 0; i < times; i++) {
+            RemotingCommand request = RemotingCommand.createRequestCommand(0, null);
+            RemotingCommand response = client.invokeSync("localhost:8888", request, 1000 * 3);
+            assertThat(response).isNotNull();
+            channels.add(response.getRemark());
+        }
+        return channels;
+    }
 }
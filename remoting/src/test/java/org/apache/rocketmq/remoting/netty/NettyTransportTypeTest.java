@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rocketmq.remoting.netty;
+
+import org.apache.rocketmq.remoting.RemotingClient;
+import org.apache.rocketmq.remoting.RemotingServer;
+import org.apache.rocketmq.remoting.RemotingServerTest;
+import org.apache.rocketmq.remoting.protocol.RemotingCommand;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class NettyTransportTypeTest {
+
+    @Test
+    public void testResolve() {
+        assertThat(NettyTransportType.resolve("nio")).isEqualTo(NettyTransportType.NIO);
+        assertThat(NettyTransportType.resolve("unknown")).isEqualTo(NettyTransportType.NIO);
+        assertThat(NettyTransportType.resolve("auto").isAvailable()).isTrue();
+        assertThat(NettyTransportType.resolve("epoll"))
+            .isEqualTo(NettyTransportType.EPOLL.isAvailable() ? NettyTransportType.EPOLL : NettyTransportType.NIO);
+        assertThat(NettyTransportType.resolve("io_uring").isAvailable()).isTrue();
+    }
+
+    @Test
+    public void testEpollClient() throws Exception {
+        assumeTrue(NettyTransportType.EPOLL.isAvailable());
+        NettyClientConfig clientConfig = new NettyClientConfig();
+        clientConfig.setClientTransport("epoll");
+        clientConfig.setClientTcpQuickAck(true);
+        clientConfig.setClientBusyPollMicros(50);
+        clientConfig.setClientEventLoopBusyWait(true);
+
+        RemotingServer remotingServer = RemotingServerTest.createRemotingServer();
+        RemotingClient remotingClient = RemotingServerTest.createRemotingClient(clientConfig);
+        try {
+            RemotingCommand request = RemotingCommand.createRequestCommand(0, null);
+            RemotingCommand response = remotingClient.invokeSync("localhost:8888", request, 1000 * 3);
+            assertThat(response).isNotNull();
+            assertThat(response.getRemark()).startsWith("Hi ");
+        } finally {
+            remotingClient.shutdown();
+            remotingServer.shutdown();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.remoting.protocol;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.CharsetUtil;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import org.apache.rocketmq.remoting.CommandCustomHeader;
+import org.apache.rocketmq.remoting.annotation.CFNotNull;
+import org.apache.rocketmq.remoting.exception.RemotingCommandException;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CommandCustomHeaderCodecTest {
+
+    @Test
+    public void testRocketMQEncodeAndDecode() throws Exception {
+        NumberHeader header = new NumberHeader();
+        header.setTopic("TopicTest");
+        header.setQueueId(-3);
+        header.setOffset(Long.MIN_VALUE);
+        header.setMaxOffset(Long.MAX_VALUE);
+        header.setUnitMode(true);
+        header.setRatio(0.5);
+        RemotingCommand cmd = RemotingCommand.createRequestCommand(10, header);
+        cmd.setSerializeTypeCurrentRPC(SerializeType.ROCKETMQ);
+        cmd.addExtField("extKey", "extValue");
+
+        ByteBuffer buffer = cmd.encode();
+        // skip the total length
+        buffer.getInt();
+        RemotingCommand decoded = RemotingCommand.decode(buffer.slice());
+
+        assertThat(decoded.getExtFields()).containsEntry("topic", "TopicTest")
+            .containsEntry("queueId", "-3")
+            .containsEntry("offset", String.valueOf(Long.MIN_VALUE))
+            .containsEntry("maxOffset", String.valueOf(Long.MAX_VALUE))
+            .containsEntry("unitMode", "true")
+            .containsEntry("ratio", "0.5")
+            .containsEntry("extKey", "extValue");
+
+        NumberHeader decodedHeader = (NumberHeader) decoded.decodeCommandCustomHeader(NumberHeader.class);
+        assertThat(decodedHeader.getTopic()).isEqualTo("TopicTest");
+        assertThat(decodedHeader.getQueueId()).isEqualTo(-3);
+        assertThat(decodedHeader.getOffset()).isEqualTo(Long.MIN_VALUE);
+        assertThat(decodedHeader.getMaxOffset()).isEqualTo(Long.MAX_VALUE);
+        assertThat(decodedHeader.isUnitMode()).isTrue();
+        assertThat(decodedHeader.getRatio()).isEqualTo(0.5);
+    }
+
+    @Test
+    public void testSameBytesAsExtFieldsMap() {
+        NumberHeader header = new NumberHeader();
+        header.setTopic("TopicTest");
+        header.setQueueId(7);
+        header.setOffset(1234567890123L);
+
+        RemotingCommand cmd = RemotingCommand.createRequestCommand(10, header);
+        cmd.makeCustomHeaderToNet();
+        HashMap<String, String> fromMap = RocketMQSerializable.rocketMQProtocolDecode(
+            RocketMQSerializable.rocketMQProtocolEncode(cmd)).getExtFields();
+
+        RemotingCommand direct = RemotingCommand.createRequestCommand(10, header);
+        HashMap<String, String> fromCodec = RocketMQSerializable.rocketMQProtocolDecode(
+            RocketMQSerializable.rocketMQProtocolEncode(direct)).getExtFields();
+
+        assertThat(fromCodec).isEqualTo(fromMap);
+    }
+
+    @Test
+    public void testHeaderFieldsWin() {
+        NumberHeader header = new NumberHeader();
+        header.setTopic("TopicTest");
+        RemotingCommand cmd = RemotingCommand.createRequestCommand(10, header);
+        cmd.addExtField("topic", "Overridden");
+        cmd.addExtField("maxOffset", "100");
+
+        byte[] bytes = CommandCustomHeaderCodec.getCodec(NumberHeader.class)
+            .serializeWithExtFields(header, cmd.getExtFields());
+
+        assertThat(RocketMQSerializable.mapDeserialize(bytes)).containsEntry("topic", "TopicTest")
+            .containsEntry("maxOffset", "100").hasSize(4);
+    }
+
+    @Test
+    public void testJsonAndRocketMQEncodeAlike() throws Exception {
+        HashMap<String, String> decodedJson = null;
+        for (SerializeType serializeType : SerializeType.values()) {
+            NumberHeader header = new NumberHeader();
+            header.setTopic("TopicTest");
+            header.setQueueId(7);
+            RemotingCommand cmd = RemotingCommand.createRequestCommand(10, header);
+            cmd.setSerializeTypeCurrentRPC(serializeType);
+            cmd.addExtField("topic", "Overridden");
+            cmd.addExtField("extKey", "extValue");
+
+            ByteBuffer buffer = cmd.encode();
+            buffer.getInt();
+            RemotingCommand decoded = RemotingCommand.decode(buffer.slice());
+
+            assertThat(decoded.getExtFields()).containsEntry("topic", "TopicTest")
+                .containsEntry("queueId", "7")
+                .containsEntry("extKey", "extValue");
+            // the extFields of the sent command are filled with the header fields whatever the serialize type
+            assertThat(cmd.getExtFields()).isEqualTo(decoded.getExtFields());
+            if (decodedJson == null) {
+                decodedJson = decoded.getExtFields();
+            } else {
+                assertThat(decoded.getExtFields()).isEqualTo(decodedJson);
+            }
+        }
+    }
+
+    @Test
+    public void testMissingNotNullFieldIsSkipped() throws Exception {
+        RemotingCommand cmd = RemotingCommand.createRequestCommand(10, null);
+        cmd.addExtField("queueId", "not-a-number");
+        cmd.addExtField("offset", "100");
+
+        NumberHeader decodedHeader = (NumberHeader) cmd.decodeCommandCustomHeader(NumberHeader.class);
+
+        assertThat(decodedHeader.getTopic()).isNull();
+        assertThat(decodedHeader.getQueueId()).isNull();
+        assertThat(decodedHeader.getOffset()).isEqualTo(100L);
+    }
+
+    @Test
+    public void testWriteAscii() {
+        long[] values = {0, 9, 10, -1, -10, 99999, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        for (long value : values) {
+            ByteBuf buf = Unpooled.buffer(1);
+            CommandCustomHeaderCodec.writeAscii(buf, value);
+            assertThat(buf.readableBytes()).isEqualTo(CommandCustomHeaderCodec.stringSize(value));
+            assertThat(buf.toString(CharsetUtil.UTF_8)).isEqualTo(String.valueOf(value));
+        }
+    }
+
+    public static class NumberHeader implements CommandCustomHeader {
+        @CFNotNull
+        private String topic;
+        private Integer queueId;
+        private long offset;
+        private Long maxOffset;
+        private boolean unitMode;
+        private Double ratio;
+
+        @Override
+        public void checkFields() throws RemotingCommandException {
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public void setTopic(String topic) {
+            this.topic = topic;
+        }
+
+        public Integer getQueueId() {
+            return queueId;
+        }
+
+        public void setQueueId(Integer queueId) {
+            this.queueId = queueId;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public void setOffset(long offset) {
+            this.offset = offset;
+        }
+
+        public Long getMaxOffset() {
+            return maxOffset;
+        }
+
+        public void setMaxOffset(Long maxOffset) {
+            this.maxOffset = maxOffset;
+        }
+
+        public boolean isUnitMode() {
+            return unitMode;
+        }
+
+        public void setUnitMode(boolean unitMode) {
+            this.unitMode = unitMode;
+        }
+
+        public Double getRatio() {
+            return ratio;
+        }
+
+        public void setRatio(Double ratio) {
+            this.ratio = ratio;
+        }
+    }
+}
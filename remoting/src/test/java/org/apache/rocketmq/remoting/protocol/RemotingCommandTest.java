@@ -16,9 +16,13 @@
  */
 package org.apache.rocketmq.remoting.protocol;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.util.Collections;
 import org.apache.rocketmq.remoting.CommandCustomHeader;
 import org.apache.rocketmq.remoting.annotation.CFNotNull;
 import org.apache.rocketmq.remoting.exception.RemotingCommandException;
@@ -183,6 +187,120 @@ public class RemotingCommandTest {
         assertThat(((ExtFieldsHeader) decodedHeader).getDoubleValue()).isBetween(0.617, 0.619);
     }
 
+    @Test
+    public void testFastEncodeHeader() {
+        for (SerializeType serializeType : SerializeType.values()) {
+            RemotingCommand cmd = RemotingCommand.createRequestCommand(10, new ExtFieldsHeader());
+            cmd.setSerializeTypeCurrentRPC(serializeType);
+            cmd.setRemark("remark");
+            cmd.addExtField("key", "value");
+            cmd.setBody(new byte[] {'b', 'o', 'd', 'y'});
+
+            ByteBuf buf = Unpooled.buffer(16);
+            cmd.fastEncodeHeader(buf);
+            buf.writeBytes(cmd.getBody());
+            byte[] fastEncoded = new byte[buf.readableBytes()];
+            buf.readBytes(fastEncoded);
+
+            ByteBuffer encoded = cmd.encode();
+            byte[] expected = new byte[encoded.remaining()];
+            encoded.get(expected);
+            assertThat(fastEncoded).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void testDecodeFromByteBuf() throws Exception {
+        for (SerializeType serializeType : SerializeType.values()) {
+            RemotingCommand cmd = RemotingCommand.createRequestCommand(10, new ExtFieldsHeader());
+            cmd.setSerializeTypeCurrentRPC(serializeType);
+            cmd.setRemark("remark");
+            cmd.addExtField("key", "value");
+            cmd.setBody(new byte[] {'b', 'o', 'd', 'y'});
+
+            ByteBuf frame = Unpooled.wrappedBuffer(cmd.encode());
+            // skip the total length, as the frame decoder does
+            frame.skipBytes(4);
+            RemotingCommand decoded = RemotingCommand.decode(frame);
+
+            assertThat(frame.isReadable()).isFalse();
+            assertThat(decoded.getSerializeTypeCurrentRPC()).isEqualTo(serializeType);
+            assertThat(decoded.getCode()).isEqualTo(10);
+            assertThat(decoded.getOpaque()).isEqualTo(cmd.getOpaque());
+            assertThat(decoded.getRemark()).isEqualTo("remark");
+            assertThat(decoded.getExtFields()).containsEntry("key", "value").containsEntry("stringValue", "bilibili");
+            assertThat(decoded.getBody()).isEqualTo(cmd.getBody());
+
+            ExtFieldsHeader header = (ExtFieldsHeader) decoded.decodeCommandCustomHeader(ExtFieldsHeader.class);
+            assertThat(header.getLongValue()).isEqualTo(23333333L);
+        }
+    }
+
+    @Test
+    public void testDecodedBodyOutlivesFrame() throws Exception {
+        RemotingCommand cmd = RemotingCommand.createRequestCommand(10, new ExtFieldsHeader());
+        cmd.setSerializeTypeCurrentRPC(SerializeType.ROCKETMQ);
+        cmd.setBody(new byte[] {'b', 'o', 'd', 'y'});
+        ByteBuffer encoded = cmd.encode();
+
+        ByteBuf frame = PooledByteBufAllocator.DEFAULT.directBuffer(encoded.remaining());
+        frame.writeBytes(encoded);
+        frame.skipBytes(4);
+        RemotingCommand decoded = RemotingCommand.decode(frame);
+        // the decoder releases the frame, its memory goes back to the pool and is written again
+        frame.release();
+        ByteBuf reused = PooledByteBufAllocator.DEFAULT.directBuffer(frame.capacity());
+        reused.writeZero(reused.capacity());
+        reused.release();
+
+        assertThat(decoded.getBody()).isEqualTo(new byte[] {'b', 'o', 'd', 'y'});
+    }
+
+    @Test
+    public void testDecodeRetainedBody() throws Exception {
+        RemotingCommand cmd = RemotingCommand.createRequestCommand(10, new ExtFieldsHeader());
+        cmd.setSerializeTypeCurrentRPC(SerializeType.ROCKETMQ);
+        cmd.setBody(new byte[] {'b', 'o', 'd', 'y'});
+        ByteBuffer encoded = cmd.encode();
+
+        ByteBuf frame = PooledByteBufAllocator.DEFAULT.directBuffer(encoded.remaining());
+        frame.writeBytes(encoded);
+        frame.skipBytes(4);
+        RemotingCommand decoded = RemotingCommand.decode(frame, Collections.singleton(10));
+        frame.release();
+
+        // the body is still in the frame, held by the command
+        assertThat(frame.refCnt()).isEqualTo(1);
+        assertThat(decoded.getBodyLength()).isEqualTo(4);
+        ByteBuffer body = decoded.getRetainedBody().nioBuffer();
+        assertThat(body.remaining()).isEqualTo(4);
+        assertThat(body.get(0)).isEqualTo((byte) 'b');
+        assertThat(decoded.getBody()).isEqualTo(new byte[] {'b', 'o', 'd', 'y'});
+
+        decoded.releaseBody();
+        decoded.releaseBody();
+        assertThat(frame.refCnt()).isZero();
+        assertThat(decoded.getRetainedBody()).isNull();
+        assertThat(decoded.getBodyLength()).isEqualTo(4);
+    }
+
+    @Test
+    public void testDecodeNotRetainedBody() throws Exception {
+        RemotingCommand cmd = RemotingCommand.createRequestCommand(11, new ExtFieldsHeader());
+        cmd.setSerializeTypeCurrentRPC(SerializeType.ROCKETMQ);
+        cmd.setBody(new byte[] {'b', 'o', 'd', 'y'});
+        ByteBuffer encoded = cmd.encode();
+
+        ByteBuf frame = Unpooled.wrappedBuffer(encoded);
+        frame.skipBytes(4);
+        RemotingCommand decoded = RemotingCommand.decode(frame, Collections.singleton(10));
+        frame.release();
+
+        assertThat(frame.refCnt()).isZero();
+        assertThat(decoded.getRetainedBody()).isNull();
+        assertThat(decoded.getBody()).isEqualTo(new byte[] {'b', 'o', 'd', 'y'});
+    }
+
     @Test
     public void testNotNullField() throws Exception {
         RemotingCommand remotingCommand = new RemotingCommand();
@@ -30,6 +30,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
+import java.util.zip.CRC32;
 
 import org.apache.rocketmq.common.ServiceThread;
 import org.apache.rocketmq.common.UtilAll;
@@ -48,6 +49,7 @@ import org.apache.rocketmq.store.config.FlushDiskType;
 import org.apache.rocketmq.store.config.MessageStoreConfig;
 import org.apache.rocketmq.store.ha.HAService;
 import org.apache.rocketmq.store.schedule.ScheduleMessageService;
+import org.apache.rocketmq.store.timer.TimerMessageStore;
 
 /**
  * Store all metadata downtime for recovery, data protection reliability
@@ -386,6 +388,11 @@ public class CommitLog {
                                 storeTimestamp);
                         }
                     }
+
+                    String deliverMs = propertiesMap.get(MessageConst.PROPERTY_TIMER_DELIVER_MS);
+                    if (TopicValidator.RMQ_SYS_WHEEL_TIMER.equals(topic) && deliverMs != null) {
+                        tagsCode = Long.parseLong(deliverMs);
+                    }
                 }
             }
 
@@ -596,12 +603,21 @@ public class CommitLog {
         return keyBuilder.toString();
     }
 
+    private static int bodyCrc32(final MessageExtBrokerInner msg) {
+        if (msg.getBodyBuffer() == null) {
+            return UtilAll.crc32(msg.getBody());
+        }
+        CRC32 crc32 = new CRC32();
+        crc32.update(msg.getBodyBuffer().duplicate());
+        return (int) (crc32.getValue() & 0x7FFFFFFF);
+    }
+
     public CompletableFuture<PutMessageResult> asyncPutMessage(final MessageExtBrokerInner msg) {
         // Set the storage time
         msg.setStoreTimestamp(System.currentTimeMillis());
         // Set the message body BODY CRC (consider the most appropriate setting
         // on the client)
-        msg.setBodyCRC(UtilAll.crc32(msg.getBody()));
+        msg.setBodyCRC(bodyCrc32(msg));
         // Back to Results
         AppendMessageResult result = null;
 
@@ -629,6 +645,11 @@ public class CommitLog {
 
                 msg.setTopic(topic);
                 msg.setQueueId(queueId);
+            } else if (this.defaultMessageStore.getMessageStoreConfig().isTimerWheelEnable()
+                && TimerMessageStore.transformTimerMessage(msg, this.defaultMessageStore.getMessageStoreConfig())) {
+                // Timer Delivery
+                topic = msg.getTopic();
+                queueId = msg.getQueueId();
             }
         }
 
@@ -707,7 +728,7 @@ public class CommitLog {
         }
 
         if (elapsedTimeInLock > 500) {
-            log.warn("[NOTIFYME]putMessage in lock cost time(ms)={}, bodyLength={} AppendMessageResult={}", elapsedTimeInLock, msg.getBody().length, result);
+            log.warn("[NOTIFYME]putMessage in lock cost time(ms)={}, bodyLength={} AppendMessageResult={}", elapsedTimeInLock, msg.getBodyLength(), result);
         }
 
         if (null != unlockMappedFile && this.defaultMessageStore.getMessageStoreConfig().isWarmMapedFileEnable()) {
@@ -1533,7 +1554,7 @@ public class CommitLog {
             final byte[] topicData = msgInner.getTopic().getBytes(MessageDecoder.CHARSET_UTF8);
             final int topicLength = topicData.length;
 
-            final int bodyLength = msgInner.getBody() == null ? 0 : msgInner.getBody().length;
+            final int bodyLength = msgInner.getBodyLength();
 
             final int msgLen = calMsgLength(msgInner.getSysFlag(), bodyLength, topicLength, propertiesLength);
 
@@ -1576,8 +1597,13 @@ public class CommitLog {
             this.encoderBuffer.putLong(msgInner.getPreparedTransactionOffset());
             // 15 BODY
             this.encoderBuffer.putInt(bodyLength);
-            if (bodyLength > 0)
-                this.encoderBuffer.put(msgInner.getBody());
+            if (bodyLength > 0) {
+                if (msgInner.getBodyBuffer() != null) {
+                    this.encoderBuffer.put(msgInner.getBodyBuffer().duplicate());
+                } else {
+                    this.encoderBuffer.put(msgInner.getBody());
+                }
+            }
             // 16 TOPIC
             this.encoderBuffer.put((byte) topicLength);
             this.encoderBuffer.put(topicData);
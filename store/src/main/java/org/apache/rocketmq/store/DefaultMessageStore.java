@@ -65,6 +65,7 @@ import org.apache.rocketmq.store.ha.HAService;
 import org.apache.rocketmq.store.index.IndexService;
 import org.apache.rocketmq.store.index.QueryOffsetResult;
 import org.apache.rocketmq.store.schedule.ScheduleMessageService;
+import org.apache.rocketmq.store.timer.TimerMessageStore;
 import org.apache.rocketmq.store.stats.BrokerStatsManager;
 
 public class DefaultMessageStore implements MessageStore {
@@ -92,6 +93,8 @@ public class DefaultMessageStore implements MessageStore {
 
     private final ScheduleMessageService scheduleMessageService;
 
+    private final TimerMessageStore timerMessageStore;
+
     private final StoreStatsService storeStatsService;
 
     private final TransientStorePool transientStorePool;
@@ -152,6 +155,12 @@ public class DefaultMessageStore implements MessageStore {
 
         this.scheduleMessageService = new ScheduleMessageService(this);
 
+        if (messageStoreConfig.isTimerWheelEnable()) {
+            this.timerMessageStore = new TimerMessageStore(this);
+        } else {
+            this.timerMessageStore = null;
+        }
+
         this.transientStorePool = new TransientStorePool(messageStoreConfig);
 
         if (messageStoreConfig.isTransientStorePoolEnable()) {
@@ -212,6 +221,10 @@ public class DefaultMessageStore implements MessageStore {
                 if (null != scheduleMessageService) {
                     result =  this.scheduleMessageService.load();
                 }
+
+                if (null != timerMessageStore) {
+                    result = result && this.timerMessageStore.load();
+                }
             }
 
         } catch (Exception e) {
@@ -317,6 +330,10 @@ public class DefaultMessageStore implements MessageStore {
             if (this.scheduleMessageService != null) {
                 this.scheduleMessageService.shutdown();
             }
+            if (this.timerMessageStore != null) {
+                this.timerMessageStore.shutdown();
+                this.timerMessageStore.close();
+            }
             if (this.haService != null) {
                 this.haService.shutdown();
             }
@@ -355,6 +372,11 @@ public class DefaultMessageStore implements MessageStore {
         this.indexService.destroy();
         this.deleteFile(StorePathConfigHelper.getAbortFile(this.messageStoreConfig.getStorePathRootDir()));
         this.deleteFile(StorePathConfigHelper.getStoreCheckpoint(this.messageStoreConfig.getStorePathRootDir()));
+        if (this.timerMessageStore != null) {
+            this.timerMessageStore.getTimerLog().destroy();
+            this.deleteFile(StorePathConfigHelper.getTimerWheelPath(this.messageStoreConfig.getStorePathRootDir()));
+            this.deleteFile(StorePathConfigHelper.getTimerCheckpointPath(this.messageStoreConfig.getStorePathRootDir()));
+        }
     }
 
     public void destroyLogics() {
@@ -441,7 +463,7 @@ public class DefaultMessageStore implements MessageStore {
         putResultFuture.thenAccept((result) -> {
             long elapsedTime = this.getSystemClock().now() - beginTime;
             if (elapsedTime > 500) {
-                log.warn("putMessage not in lock elapsed time(ms)={}, bodyLength={}", elapsedTime, msg.getBody().length);
+                log.warn("putMessage not in lock elapsed time(ms)={}, bodyLength={}", elapsedTime, msg.getBodyLength());
             }
             this.storeStatsService.setPutMessageEntireTimeMax(elapsedTime);
 
@@ -835,6 +857,9 @@ public class DefaultMessageStore implements MessageStore {
             if (this.scheduleMessageService != null) {
                 this.scheduleMessageService.buildRunningStats(result);
             }
+            if (this.timerMessageStore != null) {
+                this.timerMessageStore.buildRunningStats(result);
+            }
         }
 
         result.put(RunningStats.commitLogMinOffset.name(), String.valueOf(DefaultMessageStore.this.getMinPhyOffset()));
@@ -1030,7 +1055,8 @@ public class DefaultMessageStore implements MessageStore {
             String topic = next.getKey();
 
             if (!topics.contains(topic) && !topic.equals(TopicValidator.RMQ_SYS_SCHEDULE_TOPIC)
-                    && !topic.equals(TopicValidator.RMQ_SYS_TRANS_OP_HALF_TOPIC)) {
+                    && !topic.equals(TopicValidator.RMQ_SYS_TRANS_OP_HALF_TOPIC)
+                    && !topic.equals(TopicValidator.RMQ_SYS_WHEEL_TIMER)) {
                 ConcurrentMap<Integer, ConsumeQueue> queueTable = next.getValue();
                 for (ConsumeQueue cq : queueTable.values()) {
                     cq.destroy();
@@ -1513,6 +1539,10 @@ public class DefaultMessageStore implements MessageStore {
         return scheduleMessageService;
     }
 
+    public TimerMessageStore getTimerMessageStore() {
+        return timerMessageStore;
+    }
+
     public RunningFlags getRunningFlags() {
         return runningFlags;
     }
@@ -1543,6 +1573,14 @@ public class DefaultMessageStore implements MessageStore {
             }
         }
 
+        if (this.timerMessageStore != null) {
+            if (brokerRole == BrokerRole.SLAVE) {
+                this.timerMessageStore.shutdown();
+            } else {
+                this.timerMessageStore.start();
+            }
+        }
+
     }
 
     public int remainTransientStoreBufferNumbs() {
@@ -28,6 +28,45 @@ public class MessageExtBrokerInner extends MessageExt {
 
     private ByteBuffer encodedBuff;
 
+    /**
+     * Body left in the buffer it was received in, written as is by the commit log encoder. It is only valid until
+     * the put completes.
+     */
+    private ByteBuffer bodyBuffer;
+
+    /**
+     * Copies a body only held in {@link #getBodyBuffer()} on first call, the put reads the buffer instead.
+     */
+    @Override
+    public byte[] getBody() {
+        byte[] body = super.getBody();
+        if (null == body && this.bodyBuffer != null) {
+            body = new byte[this.bodyBuffer.remaining()];
+            this.bodyBuffer.duplicate().get(body);
+            super.setBody(body);
+        }
+        return body;
+    }
+
+    /**
+     * @return the body length, without copying a body held in {@link #getBodyBuffer()}
+     */
+    public int getBodyLength() {
+        if (this.bodyBuffer != null) {
+            return this.bodyBuffer.remaining();
+        }
+        byte[] body = super.getBody();
+        return body == null ? 0 : body.length;
+    }
+
+    public ByteBuffer getBodyBuffer() {
+        return bodyBuffer;
+    }
+
+    public void setBodyBuffer(ByteBuffer bodyBuffer) {
+        this.bodyBuffer = bodyBuffer;
+    }
+
     public ByteBuffer getEncodedBuff() {
         return encodedBuff;
     }
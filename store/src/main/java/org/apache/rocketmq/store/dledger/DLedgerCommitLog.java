@@ -56,6 +56,7 @@ import org.apache.rocketmq.store.PutMessageStatus;
 import org.apache.rocketmq.store.SelectMappedBufferResult;
 import org.apache.rocketmq.store.StoreStatsService;
 import org.apache.rocketmq.store.schedule.ScheduleMessageService;
+import org.apache.rocketmq.store.timer.TimerMessageStore;
 
 /**
  * Store all metadata downtime for recovery, data protection reliability
@@ -398,6 +399,8 @@ public class DLedgerCommitLog extends CommitLog {
 
                 msg.setTopic(topic);
                 msg.setQueueId(queueId);
+            } else if (this.defaultMessageStore.getMessageStoreConfig().isTimerWheelEnable()) {
+                TimerMessageStore.transformTimerMessage(msg, this.defaultMessageStore.getMessageStoreConfig());
             }
         }
 
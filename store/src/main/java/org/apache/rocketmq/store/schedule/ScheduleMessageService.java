@@ -21,14 +21,18 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import org.apache.rocketmq.common.ConfigManager;
 import org.apache.rocketmq.common.MixAll;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
 import org.apache.rocketmq.common.TopicFilterType;
 import org.apache.rocketmq.common.constant.LoggerName;
 import org.apache.rocketmq.common.message.MessageAccessor;
@@ -39,6 +43,7 @@ import org.apache.rocketmq.common.running.RunningStats;
 import org.apache.rocketmq.common.topic.TopicValidator;
 import org.apache.rocketmq.logging.InternalLogger;
 import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.store.AppendMessageResult;
 import org.apache.rocketmq.store.ConsumeQueue;
 import org.apache.rocketmq.store.ConsumeQueueExt;
 import org.apache.rocketmq.store.DefaultMessageStore;
@@ -48,6 +53,7 @@ import org.apache.rocketmq.store.PutMessageResult;
 import org.apache.rocketmq.store.PutMessageStatus;
 import org.apache.rocketmq.store.SelectMappedBufferResult;
 import org.apache.rocketmq.store.config.StorePathConfigHelper;
+import org.apache.rocketmq.store.stats.BrokerStatsManager;
 
 public class ScheduleMessageService extends ConfigManager {
     private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
@@ -55,6 +61,8 @@ public class ScheduleMessageService extends ConfigManager {
     private static final long FIRST_DELAY_TIME = 1000L;
     private static final long DELAY_FOR_A_WHILE = 100L;
     private static final long DELAY_FOR_A_PERIOD = 10000L;
+    private static final long WAIT_FOR_SHUTDOWN = 5000L;
+    private static final long DELAY_FOR_A_SLEEP = 10L;
 
     private final ConcurrentMap<Integer /* level */, Long/* delay timeMillis */> delayLevelTable =
         new ConcurrentHashMap<Integer, Long>(32);
@@ -62,10 +70,17 @@ public class ScheduleMessageService extends ConfigManager {
     private final ConcurrentMap<Integer /* level */, Long/* offset */> offsetTable =
         new ConcurrentHashMap<Integer, Long>(32);
     private final DefaultMessageStore defaultMessageStore;
+    /**
+     * Async puts not yet confirmed, in consume queue order, per delay level.
+     */
+    private final ConcurrentMap<Integer /* level */, LinkedBlockingQueue<PutResultProcess>> deliverPendingTable =
+        new ConcurrentHashMap<Integer, LinkedBlockingQueue<PutResultProcess>>(32);
     private final AtomicBoolean started = new AtomicBoolean(false);
-    private Timer timer;
+    private ScheduledExecutorService deliverExecutorService;
+    private ScheduledExecutorService handleExecutorService;
     private MessageStore writeMessageStore;
     private int maxDelayLevel;
+    private volatile boolean enableAsyncDeliver = false;
 
     public ScheduleMessageService(final DefaultMessageStore defaultMessageStore) {
         this.defaultMessageStore = defaultMessageStore;
@@ -116,7 +131,12 @@ public class ScheduleMessageService extends ConfigManager {
     public void start() {
         if (started.compareAndSet(false, true)) {
             super.load();
-            this.timer = new Timer("ScheduleMessageTimerThread", true);
+            this.enableAsyncDeliver = this.defaultMessageStore.getMessageStoreConfig().isEnableScheduleAsyncDeliver();
+            int threadNum = Math.max(1, this.maxDelayLevel);
+            this.deliverExecutorService = new ScheduledThreadPoolExecutor(threadNum, new ThreadFactoryImpl("ScheduleMessageTimerThread_"));
+            if (this.enableAsyncDeliver) {
+                this.handleExecutorService = new ScheduledThreadPoolExecutor(threadNum, new ThreadFactoryImpl("ScheduleMessageExecutorHandleThread_"));
+            }
             for (Map.Entry<Integer, Long> entry : this.delayLevelTable.entrySet()) {
                 Integer level = entry.getKey();
                 Long timeDelay = entry.getValue();
@@ -126,11 +146,16 @@ public class ScheduleMessageService extends ConfigManager {
                 }
 
                 if (timeDelay != null) {
-                    this.timer.schedule(new DeliverDelayedMessageTimerTask(level, offset), FIRST_DELAY_TIME);
+                    if (this.enableAsyncDeliver) {
+                        this.deliverPendingTable.put(level, new LinkedBlockingQueue<PutResultProcess>(
+                            this.defaultMessageStore.getMessageStoreConfig().getScheduleAsyncDeliverMaxPendingLimit()));
+                        this.handleExecutorService.schedule(new HandlePutResultTask(level), FIRST_DELAY_TIME, TimeUnit.MILLISECONDS);
+                    }
+                    this.deliverExecutorService.schedule(new DeliverDelayedMessageTimerTask(level, offset), FIRST_DELAY_TIME, TimeUnit.MILLISECONDS);
                 }
             }
 
-            this.timer.scheduleAtFixedRate(new TimerTask() {
+            this.deliverExecutorService.scheduleAtFixedRate(new Runnable() {
 
                 @Override
                 public void run() {
@@ -142,16 +167,31 @@ public class ScheduleMessageService extends ConfigManager {
                         log.error("scheduleAtFixedRate flush exception", e);
                     }
                 }
-            }, 10000, this.defaultMessageStore.getMessageStoreConfig().getFlushDelayOffsetInterval());
+            }, 10000, this.defaultMessageStore.getMessageStoreConfig().getFlushDelayOffsetInterval(), TimeUnit.MILLISECONDS);
         }
     }
 
     public void shutdown() {
-        if (this.started.compareAndSet(true, false)) {
-            if (null != this.timer)
-                this.timer.cancel();
-        }
+        if (this.started.compareAndSet(true, false) && null != this.deliverExecutorService) {
+            this.deliverExecutorService.shutdown();
+            try {
+                this.deliverExecutorService.awaitTermination(WAIT_FOR_SHUTDOWN, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                log.error("deliverExecutorService awaitTermination error", e);
+            }
+
+            if (this.handleExecutorService != null) {
+                this.handleExecutorService.shutdown();
+                try {
+                    this.handleExecutorService.awaitTermination(WAIT_FOR_SHUTDOWN, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    log.error("handleExecutorService awaitTermination error", e);
+                }
+            }
 
+            // unconfirmed puts are redelivered from the persisted offset after restart
+            this.deliverPendingTable.clear();
+        }
     }
 
     public boolean isStarted() {
@@ -275,7 +315,52 @@ public class ScheduleMessageService extends ConfigManager {
         return sortedLevels.get(sortedLevels.size() - 1).getKey();
     }
 
-    class DeliverDelayedMessageTimerTask extends TimerTask {
+    private MessageExtBrokerInner messageTimeup(MessageExt msgExt) {
+        MessageExtBrokerInner msgInner = new MessageExtBrokerInner();
+        msgInner.setBody(msgExt.getBody());
+        msgInner.setFlag(msgExt.getFlag());
+        MessageAccessor.setProperties(msgInner, msgExt.getProperties());
+
+        TopicFilterType topicFilterType = MessageExt.parseTopicFilterType(msgInner.getSysFlag());
+        long tagsCodeValue =
+            MessageExtBrokerInner.tagsString2tagsCode(topicFilterType, msgInner.getTags());
+        msgInner.setTagsCode(tagsCodeValue);
+        msgInner.setPropertiesString(MessageDecoder.messageProperties2String(msgExt.getProperties()));
+
+        msgInner.setSysFlag(msgExt.getSysFlag());
+        msgInner.setBornTimestamp(msgExt.getBornTimestamp());
+        msgInner.setBornHost(msgExt.getBornHost());
+        msgInner.setStoreHost(msgExt.getStoreHost());
+        msgInner.setReconsumeTimes(msgExt.getReconsumeTimes());
+
+        msgInner.setWaitStoreMsgOK(false);
+        MessageAccessor.clearProperty(msgInner, MessageConst.PROPERTY_DELAY_TIME_LEVEL);
+
+        msgInner.setTopic(msgInner.getProperty(MessageConst.PROPERTY_REAL_TOPIC));
+
+        String queueIdStr = msgInner.getProperty(MessageConst.PROPERTY_REAL_QUEUE_ID);
+        int queueId = Integer.parseInt(queueIdStr);
+        msgInner.setQueueId(queueId);
+
+        return msgInner;
+    }
+
+    private void recordDeliverStats(int delayLevel, String topic, PutMessageResult putMessageResult) {
+        if (!this.defaultMessageStore.getMessageStoreConfig().isEnableScheduleMessageStats()) {
+            return;
+        }
+        BrokerStatsManager brokerStatsManager = this.defaultMessageStore.getBrokerStatsManager();
+        AppendMessageResult appendMessageResult = putMessageResult.getAppendMessageResult();
+        brokerStatsManager.incQueueGetNums(MixAll.SCHEDULE_CONSUMER_GROUP, TopicValidator.RMQ_SYS_SCHEDULE_TOPIC, delayLevel - 1, appendMessageResult.getMsgNum());
+        brokerStatsManager.incQueueGetSize(MixAll.SCHEDULE_CONSUMER_GROUP, TopicValidator.RMQ_SYS_SCHEDULE_TOPIC, delayLevel - 1, appendMessageResult.getWroteBytes());
+        brokerStatsManager.incGroupGetNums(MixAll.SCHEDULE_CONSUMER_GROUP, TopicValidator.RMQ_SYS_SCHEDULE_TOPIC, appendMessageResult.getMsgNum());
+        brokerStatsManager.incGroupGetSize(MixAll.SCHEDULE_CONSUMER_GROUP, TopicValidator.RMQ_SYS_SCHEDULE_TOPIC, appendMessageResult.getWroteBytes());
+        brokerStatsManager.incTopicPutNums(topic, appendMessageResult.getMsgNum(), 1);
+        brokerStatsManager.incTopicPutSize(topic, appendMessageResult.getWroteBytes());
+        brokerStatsManager.incBrokerPutNums(appendMessageResult.getMsgNum());
+    }
+
+    class DeliverDelayedMessageTimerTask implements Runnable {
         private final int delayLevel;
         private final long offset;
 
@@ -293,8 +378,7 @@ public class ScheduleMessageService extends ConfigManager {
             } catch (Exception e) {
                 // XXX: warn and notify me
                 log.error("ScheduleMessageService, executeOnTimeup exception", e);
-                ScheduleMessageService.this.timer.schedule(new DeliverDelayedMessageTimerTask(
-                    this.delayLevel, this.offset), DELAY_FOR_A_PERIOD);
+                this.scheduleNextTimerTask(this.offset, DELAY_FOR_A_PERIOD);
             }
         }
 
@@ -318,158 +402,315 @@ public class ScheduleMessageService extends ConfigManager {
                 ScheduleMessageService.this.defaultMessageStore.findConsumeQueue(TopicValidator.RMQ_SYS_SCHEDULE_TOPIC,
                     delayLevel2QueueId(delayLevel));
 
-            long failScheduleOffset = offset;
+            if (cq == null) {
+                this.scheduleNextTimerTask(this.offset, DELAY_FOR_A_WHILE);
+                return;
+            }
 
-            if (cq != null) {
-                SelectMappedBufferResult bufferCQ = cq.getIndexBuffer(this.offset);
-                if (bufferCQ != null) {
-                    try {
-                        long nextOffset = offset;
-                        int i = 0;
-                        ConsumeQueueExt.CqExtUnit cqExtUnit = new ConsumeQueueExt.CqExtUnit();
-                        for (; i < bufferCQ.getSize(); i += ConsumeQueue.CQ_STORE_UNIT_SIZE) {
-                            long offsetPy = bufferCQ.getByteBuffer().getLong();
-                            int sizePy = bufferCQ.getByteBuffer().getInt();
-                            long tagsCode = bufferCQ.getByteBuffer().getLong();
-
-                            if (cq.isExtAddr(tagsCode)) {
-                                if (cq.getExt(tagsCode, cqExtUnit)) {
-                                    tagsCode = cqExtUnit.getTagsCode();
-                                } else {
-                                    //can't find ext content.So re compute tags code.
-                                    log.error("[BUG] can't find consume queue extend file content!addr={}, offsetPy={}, sizePy={}",
-                                        tagsCode, offsetPy, sizePy);
-                                    long msgStoreTime = defaultMessageStore.getCommitLog().pickupStoreTimestamp(offsetPy, sizePy);
-                                    tagsCode = computeDeliverTimestamp(delayLevel, msgStoreTime);
-                                }
-                            }
-
-                            long now = System.currentTimeMillis();
-                            long deliverTimestamp = this.correctDeliverTimestamp(now, tagsCode);
-
-                            nextOffset = offset + (i / ConsumeQueue.CQ_STORE_UNIT_SIZE);
-
-                            long countdown = deliverTimestamp - now;
-
-                            if (countdown <= 0) {
-                                MessageExt msgExt =
-                                    ScheduleMessageService.this.defaultMessageStore.lookMessageByOffset(
-                                        offsetPy, sizePy);
-
-                                if (msgExt != null) {
-                                    try {
-                                        MessageExtBrokerInner msgInner = this.messageTimeup(msgExt);
-                                        if (TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC.equals(msgInner.getTopic())) {
-                                            log.error("[BUG] the real topic of schedule msg is {}, discard the msg. msg={}",
-                                                msgInner.getTopic(), msgInner);
-                                            continue;
-                                        }
-                                        PutMessageResult putMessageResult =
-                                            ScheduleMessageService.this.writeMessageStore
-                                                .putMessage(msgInner);
-
-                                        if (putMessageResult != null
-                                            && putMessageResult.getPutMessageStatus() == PutMessageStatus.PUT_OK) {
-                                            if (ScheduleMessageService.this.defaultMessageStore.getMessageStoreConfig().isEnableScheduleMessageStats()) {
-                                                ScheduleMessageService.this.defaultMessageStore.getBrokerStatsManager().incQueueGetNums(MixAll.SCHEDULE_CONSUMER_GROUP, TopicValidator.RMQ_SYS_SCHEDULE_TOPIC, delayLevel - 1, putMessageResult.getAppendMessageResult().getMsgNum());
-                                                ScheduleMessageService.this.defaultMessageStore.getBrokerStatsManager().incQueueGetSize(MixAll.SCHEDULE_CONSUMER_GROUP, TopicValidator.RMQ_SYS_SCHEDULE_TOPIC, delayLevel - 1, putMessageResult.getAppendMessageResult().getWroteBytes());
-                                                ScheduleMessageService.this.defaultMessageStore.getBrokerStatsManager().incGroupGetNums(MixAll.SCHEDULE_CONSUMER_GROUP, TopicValidator.RMQ_SYS_SCHEDULE_TOPIC, putMessageResult.getAppendMessageResult().getMsgNum());
-                                                ScheduleMessageService.this.defaultMessageStore.getBrokerStatsManager().incGroupGetSize(MixAll.SCHEDULE_CONSUMER_GROUP, TopicValidator.RMQ_SYS_SCHEDULE_TOPIC, putMessageResult.getAppendMessageResult().getWroteBytes());
-                                                ScheduleMessageService.this.defaultMessageStore.getBrokerStatsManager().incTopicPutNums(msgInner.getTopic(), putMessageResult.getAppendMessageResult().getMsgNum(), 1);
-                                                ScheduleMessageService.this.defaultMessageStore.getBrokerStatsManager().incTopicPutSize(msgInner.getTopic(),
-                                                    putMessageResult.getAppendMessageResult().getWroteBytes());
-                                                ScheduleMessageService.this.defaultMessageStore.getBrokerStatsManager().incBrokerPutNums(putMessageResult.getAppendMessageResult().getMsgNum());
-                                            }
-                                            continue;
-                                        } else {
-                                            // XXX: warn and notify me
-                                            log.error(
-                                                "ScheduleMessageService, a message time up, but reput it failed, topic: {} msgId {}",
-                                                msgExt.getTopic(), msgExt.getMsgId());
-                                            ScheduleMessageService.this.timer.schedule(
-                                                new DeliverDelayedMessageTimerTask(this.delayLevel,
-                                                    nextOffset), DELAY_FOR_A_PERIOD);
-                                            ScheduleMessageService.this.updateOffset(this.delayLevel,
-                                                nextOffset);
-                                            return;
-                                        }
-                                    } catch (Exception e) {
-                                        /*
-                                         * XXX: warn and notify me
-                                         */
-                                        log.error(
-                                            "ScheduleMessageService, messageTimeup execute error, drop it. msgExt={}, nextOffset={}, offsetPy={}, sizePy={}", msgExt, nextOffset, offsetPy, sizePy, e);
-                                    }
-                                }
-                            } else {
-                                ScheduleMessageService.this.timer.schedule(
-                                    new DeliverDelayedMessageTimerTask(this.delayLevel, nextOffset),
-                                    countdown);
-                                ScheduleMessageService.this.updateOffset(this.delayLevel, nextOffset);
-                                return;
-                            }
-                        } // end of for
-
-                        nextOffset = offset + (i / ConsumeQueue.CQ_STORE_UNIT_SIZE);
-                        ScheduleMessageService.this.timer.schedule(new DeliverDelayedMessageTimerTask(
-                            this.delayLevel, nextOffset), DELAY_FOR_A_WHILE);
-                        ScheduleMessageService.this.updateOffset(this.delayLevel, nextOffset);
-                        return;
-                    } finally {
+            SelectMappedBufferResult bufferCQ = cq.getIndexBuffer(this.offset);
+            if (bufferCQ == null) {
+                long resetOffset = this.offset;
+                long cqMinOffset = cq.getMinOffsetInQueue();
+                long cqMaxOffset = cq.getMaxOffsetInQueue();
+                if (this.offset < cqMinOffset) {
+                    resetOffset = cqMinOffset;
+                    log.error("schedule CQ offset invalid. offset={}, cqMinOffset={}, cqMaxOffset={}, queueId={}",
+                        this.offset, cqMinOffset, cqMaxOffset, cq.getQueueId());
+                }
 
-                        bufferCQ.release();
+                if (this.offset > cqMaxOffset) {
+                    resetOffset = cqMaxOffset;
+                    log.error("schedule CQ offset invalid. offset={}, cqMinOffset={}, cqMaxOffset={}, queueId={}",
+                        this.offset, cqMinOffset, cqMaxOffset, cq.getQueueId());
+                }
+
+                this.scheduleNextTimerTask(resetOffset, DELAY_FOR_A_WHILE);
+                return;
+            }
+
+            long nextOffset = this.offset;
+            try {
+                int i = 0;
+                ConsumeQueueExt.CqExtUnit cqExtUnit = new ConsumeQueueExt.CqExtUnit();
+                for (; i < bufferCQ.getSize() && isStarted(); i += ConsumeQueue.CQ_STORE_UNIT_SIZE) {
+                    long offsetPy = bufferCQ.getByteBuffer().getLong();
+                    int sizePy = bufferCQ.getByteBuffer().getInt();
+                    long tagsCode = bufferCQ.getByteBuffer().getLong();
+
+                    if (cq.isExtAddr(tagsCode)) {
+                        if (cq.getExt(tagsCode, cqExtUnit)) {
+                            tagsCode = cqExtUnit.getTagsCode();
+                        } else {
+                            //can't find ext content.So re compute tags code.
+                            log.error("[BUG] can't find consume queue extend file content!addr={}, offsetPy={}, sizePy={}",
+                                tagsCode, offsetPy, sizePy);
+                            long msgStoreTime = defaultMessageStore.getCommitLog().pickupStoreTimestamp(offsetPy, sizePy);
+                            tagsCode = computeDeliverTimestamp(delayLevel, msgStoreTime);
+                        }
                     }
-                } // end of if (bufferCQ != null)
-                else {
-
-                    long cqMinOffset = cq.getMinOffsetInQueue();
-                    long cqMaxOffset = cq.getMaxOffsetInQueue();
-                    if (offset < cqMinOffset) {
-                        failScheduleOffset = cqMinOffset;
-                        log.error("schedule CQ offset invalid. offset={}, cqMinOffset={}, cqMaxOffset={}, queueId={}",
-                            offset, cqMinOffset, cqMaxOffset, cq.getQueueId());
+
+                    long now = System.currentTimeMillis();
+                    long deliverTimestamp = this.correctDeliverTimestamp(now, tagsCode);
+                    nextOffset = this.offset + (i / ConsumeQueue.CQ_STORE_UNIT_SIZE);
+
+                    long countdown = deliverTimestamp - now;
+                    if (countdown > 0) {
+                        this.scheduleNextTimerTask(nextOffset, countdown);
+                        this.updateOffsetIfConfirmed(nextOffset);
+                        return;
                     }
 
-                    if (offset > cqMaxOffset) {
-                        failScheduleOffset = cqMaxOffset;
-                        log.error("schedule CQ offset invalid. offset={}, cqMinOffset={}, cqMaxOffset={}, queueId={}",
-                            offset, cqMinOffset, cqMaxOffset, cq.getQueueId());
+                    boolean deliverSuc;
+                    if (ScheduleMessageService.this.enableAsyncDeliver) {
+                        deliverSuc = this.asyncDeliver(nextOffset, offsetPy, sizePy);
+                    } else {
+                        deliverSuc = this.syncDeliver(nextOffset, offsetPy, sizePy);
+                    }
+
+                    if (!deliverSuc) {
+                        this.scheduleNextTimerTask(nextOffset, ScheduleMessageService.this.enableAsyncDeliver
+                            ? DELAY_FOR_A_WHILE : DELAY_FOR_A_PERIOD);
+                        this.updateOffsetIfConfirmed(nextOffset);
+                        return;
                     }
                 }
-            } // end of if (cq != null)
 
-            ScheduleMessageService.this.timer.schedule(new DeliverDelayedMessageTimerTask(this.delayLevel,
-                failScheduleOffset), DELAY_FOR_A_WHILE);
+                nextOffset = this.offset + (i / ConsumeQueue.CQ_STORE_UNIT_SIZE);
+            } finally {
+                bufferCQ.release();
+            }
+
+            this.scheduleNextTimerTask(nextOffset, DELAY_FOR_A_WHILE);
+            this.updateOffsetIfConfirmed(nextOffset);
         }
 
-        private MessageExtBrokerInner messageTimeup(MessageExt msgExt) {
-            MessageExtBrokerInner msgInner = new MessageExtBrokerInner();
-            msgInner.setBody(msgExt.getBody());
-            msgInner.setFlag(msgExt.getFlag());
-            MessageAccessor.setProperties(msgInner, msgExt.getProperties());
+        /**
+         * Puts one due message and waits for the result.
+         *
+         * @return false if the put failed and the message must be retried later
+         */
+        private boolean syncDeliver(long cqOffset, long offsetPy, int sizePy) {
+            MessageExtBrokerInner msgInner = this.buildTimeupMessage(cqOffset, offsetPy, sizePy);
+            if (msgInner == null) {
+                return true;
+            }
+
+            PutMessageResult putMessageResult = ScheduleMessageService.this.writeMessageStore.putMessage(msgInner);
+            if (putMessageResult != null && putMessageResult.getPutMessageStatus() == PutMessageStatus.PUT_OK) {
+                recordDeliverStats(this.delayLevel, msgInner.getTopic(), putMessageResult);
+                return true;
+            }
 
-            TopicFilterType topicFilterType = MessageExt.parseTopicFilterType(msgInner.getSysFlag());
-            long tagsCodeValue =
-                MessageExtBrokerInner.tagsString2tagsCode(topicFilterType, msgInner.getTags());
-            msgInner.setTagsCode(tagsCodeValue);
-            msgInner.setPropertiesString(MessageDecoder.messageProperties2String(msgExt.getProperties()));
+            // XXX: warn and notify me
+            log.error("ScheduleMessageService, a message time up, but reput it failed, topic: {} offsetPy {}",
+                msgInner.getTopic(), offsetPy);
+            return false;
+        }
 
-            msgInner.setSysFlag(msgExt.getSysFlag());
-            msgInner.setBornTimestamp(msgExt.getBornTimestamp());
-            msgInner.setBornHost(msgExt.getBornHost());
-            msgInner.setStoreHost(msgExt.getStoreHost());
-            msgInner.setReconsumeTimes(msgExt.getReconsumeTimes());
+        /**
+         * Submits one due message without waiting, the offset is committed by {@link HandlePutResultTask}.
+         *
+         * @return false if too many puts of this level are still pending
+         */
+        private boolean asyncDeliver(long cqOffset, long offsetPy, int sizePy) {
+            LinkedBlockingQueue<PutResultProcess> pendingQueue =
+                ScheduleMessageService.this.deliverPendingTable.get(this.delayLevel);
+            if (pendingQueue.remainingCapacity() == 0) {
+                log.warn("Asynchronous deliver pending queue is full, delayLevel={}, pendingSize={}",
+                    this.delayLevel, pendingQueue.size());
+                return false;
+            }
 
-            msgInner.setWaitStoreMsgOK(false);
-            MessageAccessor.clearProperty(msgInner, MessageConst.PROPERTY_DELAY_TIME_LEVEL);
+            MessageExtBrokerInner msgInner = this.buildTimeupMessage(cqOffset, offsetPy, sizePy);
+            if (msgInner == null) {
+                return true;
+            }
+
+            PutResultProcess resultProcess = new PutResultProcess(this.delayLevel, cqOffset + 1, offsetPy, sizePy);
+            resultProcess.deliver(msgInner);
+            pendingQueue.add(resultProcess);
+            return true;
+        }
 
-            msgInner.setTopic(msgInner.getProperty(MessageConst.PROPERTY_REAL_TOPIC));
+        private MessageExtBrokerInner buildTimeupMessage(long cqOffset, long offsetPy, int sizePy) {
+            MessageExt msgExt = ScheduleMessageService.this.defaultMessageStore.lookMessageByOffset(offsetPy, sizePy);
+            if (msgExt == null) {
+                return null;
+            }
 
-            String queueIdStr = msgInner.getProperty(MessageConst.PROPERTY_REAL_QUEUE_ID);
-            int queueId = Integer.parseInt(queueIdStr);
-            msgInner.setQueueId(queueId);
+            try {
+                MessageExtBrokerInner msgInner = messageTimeup(msgExt);
+                if (TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC.equals(msgInner.getTopic())) {
+                    log.error("[BUG] the real topic of schedule msg is {}, discard the msg. msg={}",
+                        msgInner.getTopic(), msgInner);
+                    return null;
+                }
+                return msgInner;
+            } catch (Exception e) {
+                /*
+                 * XXX: warn and notify me
+                 */
+                log.error(
+                    "ScheduleMessageService, messageTimeup execute error, drop it. msgExt={}, nextOffset={}, offsetPy={}, sizePy={}", msgExt, cqOffset, offsetPy, sizePy, e);
+                return null;
+            }
+        }
+
+        /**
+         * In async mode the offset only moves here once every submitted put of the level is confirmed,
+         * otherwise {@link HandlePutResultTask} moves it as results arrive.
+         */
+        private void updateOffsetIfConfirmed(long nextOffset) {
+            if (!ScheduleMessageService.this.enableAsyncDeliver
+                || ScheduleMessageService.this.deliverPendingTable.get(this.delayLevel).isEmpty()) {
+                ScheduleMessageService.this.updateOffset(this.delayLevel, nextOffset);
+            }
+        }
+
+        private void scheduleNextTimerTask(long offset, long delay) {
+            if (isStarted()) {
+                ScheduleMessageService.this.deliverExecutorService.schedule(
+                    new DeliverDelayedMessageTimerTask(this.delayLevel, offset), delay, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Commits the offset of a delay level in consume queue order as async puts complete, resending failed ones.
+     */
+    class HandlePutResultTask implements Runnable {
+        private final int delayLevel;
+
+        public HandlePutResultTask(int delayLevel) {
+            this.delayLevel = delayLevel;
+        }
+
+        @Override
+        public void run() {
+            LinkedBlockingQueue<PutResultProcess> pendingQueue =
+                ScheduleMessageService.this.deliverPendingTable.get(this.delayLevel);
+
+            PutResultProcess putResultProcess;
+            while ((putResultProcess = pendingQueue.peek()) != null && isStarted()) {
+                ProcessStatus status = putResultProcess.getStatus();
+                if (status == ProcessStatus.SUCCESS || status == ProcessStatus.SKIP) {
+                    ScheduleMessageService.this.updateOffset(this.delayLevel, putResultProcess.getNextOffset());
+                    pendingQueue.remove();
+                } else if (status == ProcessStatus.EXCEPTION) {
+                    putResultProcess.resend();
+                    break;
+                } else {
+                    break;
+                }
+            }
+
+            if (isStarted()) {
+                ScheduleMessageService.this.handleExecutorService.schedule(
+                    new HandlePutResultTask(this.delayLevel), DELAY_FOR_A_SLEEP, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    enum ProcessStatus {
+        RUNNING,
+        SUCCESS,
+        /**
+         * The put failed, waiting for a resend.
+         */
+        EXCEPTION,
+        /**
+         * The message can not be read back any more, nothing left to deliver.
+         */
+        SKIP
+    }
+
+    class PutResultProcess {
+        private final int delayLevel;
+        private final long nextOffset;
+        private final long physicOffset;
+        private final int physicSize;
+        private volatile ProcessStatus status = ProcessStatus.RUNNING;
+        private volatile int resendCount = 0;
+
+        public PutResultProcess(int delayLevel, long nextOffset, long physicOffset, int physicSize) {
+            this.delayLevel = delayLevel;
+            this.nextOffset = nextOffset;
+            this.physicOffset = physicOffset;
+            this.physicSize = physicSize;
+        }
+
+        public void deliver(final MessageExtBrokerInner msgInner) {
+            this.status = ProcessStatus.RUNNING;
+            CompletableFuture<PutMessageResult> future;
+            try {
+                future = ScheduleMessageService.this.writeMessageStore.asyncPutMessage(msgInner);
+            } catch (Throwable e) {
+                log.error("ScheduleMessageService, async put message exception, topic: {}, offsetPy: {}",
+                    msgInner.getTopic(), this.physicOffset, e);
+                this.status = ProcessStatus.EXCEPTION;
+                return;
+            }
+
+            future.whenComplete((putMessageResult, throwable) -> {
+                if (throwable == null && putMessageResult != null
+                    && putMessageResult.getPutMessageStatus() == PutMessageStatus.PUT_OK) {
+                    recordDeliverStats(this.delayLevel, msgInner.getTopic(), putMessageResult);
+                    this.status = ProcessStatus.SUCCESS;
+                } else {
+                    log.error("ScheduleMessageService, a message time up, but reput it failed, topic: {}, offsetPy: {}, result: {}",
+                        msgInner.getTopic(), this.physicOffset, putMessageResult, throwable);
+                    this.status = ProcessStatus.EXCEPTION;
+                }
+            });
+        }
+
+        /**
+         * Reads the message back from the commit log and puts it again, backing off once it keeps failing.
+         */
+        public void resend() {
+            this.resendCount++;
+            int maxResendNum2Blocked = ScheduleMessageService.this.defaultMessageStore.getMessageStoreConfig()
+                .getScheduleAsyncDeliverMaxResendNum2Blocked();
+            if (this.resendCount > maxResendNum2Blocked) {
+                log.warn("ScheduleMessageService, delivery of delayLevel {} blocked, offsetPy: {}, resendCount: {}",
+                    this.delayLevel, this.physicOffset, this.resendCount);
+                try {
+                    Thread.sleep(DELAY_FOR_A_SLEEP * Math.min(this.resendCount - maxResendNum2Blocked, 100));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+
+            MessageExt msgExt = ScheduleMessageService.this.defaultMessageStore.lookMessageByOffset(this.physicOffset, this.physicSize);
+            if (msgExt == null) {
+                log.warn("ScheduleMessageService, resend failed, message not found, offsetPy: {}, sizePy: {}",
+                    this.physicOffset, this.physicSize);
+                this.status = ProcessStatus.SKIP;
+                return;
+            }
+
+            MessageExtBrokerInner msgInner;
+            try {
+                msgInner = messageTimeup(msgExt);
+            } catch (Exception e) {
+                log.error("ScheduleMessageService, messageTimeup execute error, drop it. msgExt={}", msgExt, e);
+                this.status = ProcessStatus.SKIP;
+                return;
+            }
+            this.deliver(msgInner);
+        }
+
+        public long getNextOffset() {
+            return nextOffset;
+        }
+
+        public ProcessStatus getStatus() {
+            return status;
+        }
 
-            return msgInner;
+        public int getResendCount() {
+            return resendCount;
         }
     }
 }
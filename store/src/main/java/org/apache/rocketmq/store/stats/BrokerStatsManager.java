@@ -61,6 +61,16 @@ public class BrokerStatsManager {
     // Pull Message Latency
     public static final String GROUP_GET_LATENCY = "GROUP_GET_LATENCY";
 
+    // Time a request waits in the queue of its executor and runs in its processor, per request code
+    public static final String REQUEST_QUEUE_TIME = "REQUEST_QUEUE_TIME";
+    public static final String REQUEST_SERVICE_TIME = "REQUEST_SERVICE_TIME";
+    public static final String REQUEST_QUEUE_TIME_DISTRIBUTION = "REQUEST_QUEUE_TIME_DISTRIBUTION";
+    public static final String REQUEST_SERVICE_TIME_DISTRIBUTION = "REQUEST_SERVICE_TIME_DISTRIBUTION";
+    /**
+     * Upper bounds of the distribution buckets in milliseconds, the last bucket holds everything above.
+     */
+    private static final long[] REQUEST_TIME_BUCKETS = {1, 5, 10, 50, 100, 500, 1000};
+
     /**
      * read disk follow stats
      */
@@ -94,6 +104,10 @@ public class BrokerStatsManager {
         this.statsTable.put(GROUP_GET_FROM_DISK_SIZE, new StatsItemSet(GROUP_GET_FROM_DISK_SIZE, this.scheduledExecutorService, log));
         this.statsTable.put(BROKER_GET_FROM_DISK_NUMS, new StatsItemSet(BROKER_GET_FROM_DISK_NUMS, this.scheduledExecutorService, log));
         this.statsTable.put(BROKER_GET_FROM_DISK_SIZE, new StatsItemSet(BROKER_GET_FROM_DISK_SIZE, this.scheduledExecutorService, log));
+        this.statsTable.put(REQUEST_QUEUE_TIME, new StatsItemSet(REQUEST_QUEUE_TIME, this.scheduledExecutorService, log));
+        this.statsTable.put(REQUEST_SERVICE_TIME, new StatsItemSet(REQUEST_SERVICE_TIME, this.scheduledExecutorService, log));
+        this.statsTable.put(REQUEST_QUEUE_TIME_DISTRIBUTION, new StatsItemSet(REQUEST_QUEUE_TIME_DISTRIBUTION, this.scheduledExecutorService, log));
+        this.statsTable.put(REQUEST_SERVICE_TIME_DISTRIBUTION, new StatsItemSet(REQUEST_SERVICE_TIME_DISTRIBUTION, this.scheduledExecutorService, log));
 
         this.statsTable.put(COMMERCIAL_SEND_TIMES, new StatsItemSet(COMMERCIAL_SEND_TIMES, this.commercialExecutor, COMMERCIAL_LOG));
         this.statsTable.put(COMMERCIAL_RCV_TIMES, new StatsItemSet(COMMERCIAL_RCV_TIMES, this.commercialExecutor, COMMERCIAL_LOG));
@@ -212,6 +226,28 @@ public class BrokerStatsManager {
         this.statsTable.get(GROUP_GET_LATENCY).addValue(statsKey, incValue, 1);
     }
 
+    public void incRequestQueueTime(final int requestCode, final long queueTimeMillis) {
+        this.statsTable.get(REQUEST_QUEUE_TIME).addRTValue(String.valueOf(requestCode), (int) queueTimeMillis, 1);
+        this.statsTable.get(REQUEST_QUEUE_TIME_DISTRIBUTION).addValue(buildTimeBucketKey(requestCode, queueTimeMillis), 1, 1);
+    }
+
+    public void incRequestServiceTime(final int requestCode, final long serviceTimeMillis) {
+        this.statsTable.get(REQUEST_SERVICE_TIME).addRTValue(String.valueOf(requestCode), (int) serviceTimeMillis, 1);
+        this.statsTable.get(REQUEST_SERVICE_TIME_DISTRIBUTION).addValue(buildTimeBucketKey(requestCode, serviceTimeMillis), 1, 1);
+    }
+
+    /**
+     * @return requestCode@bucket, the bucket being the upper bound in milliseconds, e.g. 10@5ms, or 10@INF for the last one
+     */
+    static String buildTimeBucketKey(final int requestCode, final long timeMillis) {
+        for (long bucket : REQUEST_TIME_BUCKETS) {
+            if (timeMillis <= bucket) {
+                return requestCode + "@" + bucket + "ms";
+            }
+        }
+        return requestCode + "@INF";
+    }
+
     public void incBrokerPutNums() {
         this.statsTable.get(BROKER_PUT_NUMS).getAndCreateStatsItem(this.clusterName).getValue().add(1);
     }
@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.timer;
+
+/**
+ * One slot of the timing wheel, the head of a chain of units in {@link TimerLog} linked backwards.
+ */
+public class Slot {
+    public static final short SIZE = 24;
+
+    public final long timeMs;
+    public final long lastPos;
+    public final int num;
+
+    public Slot(long timeMs, long lastPos, int num) {
+        this.timeMs = timeMs;
+        this.lastPos = lastPos;
+        this.num = num;
+    }
+
+    @Override
+    public String toString() {
+        return "Slot{" +
+            "timeMs=" + timeMs +
+            ", lastPos=" + lastPos +
+            ", num=" + num +
+            '}';
+    }
+}
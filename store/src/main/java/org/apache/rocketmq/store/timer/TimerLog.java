@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.timer;
+
+import java.nio.ByteBuffer;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.store.MappedFile;
+import org.apache.rocketmq.store.MappedFileQueue;
+import org.apache.rocketmq.store.SelectMappedBufferResult;
+
+/**
+ * Append only log of timer units. Units of the same wheel slot are chained backwards through
+ * {@code prevPos}, so a slot only has to remember the position of its last unit.
+ * <p>
+ * Unit layout: size(4) prevPos(8) magic(4) delayedTimeMs(8) offsetPy(8) sizePy(4) reserved(4)
+ */
+public class TimerLog {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+
+    public static final int UNIT_SIZE = 40;
+
+    public static final int MAGIC_DEFAULT = 1;
+    public static final int MAGIC_ROLL = 1 << 1;
+
+    private final MappedFileQueue mappedFileQueue;
+    private final int fileSize;
+    private final ByteBuffer unitBuffer = ByteBuffer.allocate(UNIT_SIZE);
+
+    public TimerLog(final String storePath, final int fileSize) {
+        // keep units from spanning two files, so that no blank has to be filled
+        this.fileSize = fileSize / UNIT_SIZE * UNIT_SIZE;
+        this.mappedFileQueue = new MappedFileQueue(storePath, this.fileSize, null);
+    }
+
+    public boolean load() {
+        return this.mappedFileQueue.load();
+    }
+
+    /**
+     * Drop everything written after {@code offset}, which was not covered by the last checkpoint.
+     */
+    public void truncate(final long offset) {
+        this.mappedFileQueue.truncateDirtyFiles(offset);
+        this.mappedFileQueue.setFlushedWhere(offset);
+        this.mappedFileQueue.setCommittedWhere(offset);
+    }
+
+    /**
+     * Not thread safe, appending is serialized by the timer message store.
+     *
+     * @return position of the unit, or -1 if it can not be appended
+     */
+    public long append(final long prevPos, final int magic, final long delayedTimeMs, final long offsetPy,
+        final int sizePy) {
+        MappedFile mappedFile = this.mappedFileQueue.getLastMappedFile();
+        if (null == mappedFile || mappedFile.isFull()) {
+            mappedFile = this.mappedFileQueue.getLastMappedFile(0);
+        }
+        if (null == mappedFile) {
+            log.error("Create timer log mapped file failed");
+            return -1;
+        }
+        this.unitBuffer.clear();
+        this.unitBuffer.putInt(UNIT_SIZE);
+        this.unitBuffer.putLong(prevPos);
+        this.unitBuffer.putInt(magic);
+        this.unitBuffer.putLong(delayedTimeMs);
+        this.unitBuffer.putLong(offsetPy);
+        this.unitBuffer.putInt(sizePy);
+        this.unitBuffer.putInt(0);
+        long pos = mappedFile.getFileFromOffset() + mappedFile.getWrotePosition();
+        if (!mappedFile.appendMessage(this.unitBuffer.array())) {
+            log.error("Append timer log unit failed, pos={}", pos);
+            return -1;
+        }
+        return pos;
+    }
+
+    /**
+     * @return the unit at the position, null if it is not available
+     */
+    public Unit getUnit(final long pos) {
+        MappedFile mappedFile = this.mappedFileQueue.findMappedFileByOffset(pos);
+        if (null == mappedFile) {
+            return null;
+        }
+        SelectMappedBufferResult result = mappedFile.selectMappedBuffer((int) (pos % this.fileSize), UNIT_SIZE);
+        if (null == result) {
+            return null;
+        }
+        try {
+            ByteBuffer buffer = result.getByteBuffer();
+            int size = buffer.getInt();
+            if (size != UNIT_SIZE) {
+                log.warn("Illegal timer log unit at {}, size={}", pos, size);
+                return null;
+            }
+            return new Unit(pos, buffer.getLong(), buffer.getInt(), buffer.getLong(), buffer.getLong(), buffer.getInt());
+        } finally {
+            result.release();
+        }
+    }
+
+    public void flush() {
+        // one mapped file is flushed at a time, go on until nothing is left
+        while (!this.mappedFileQueue.flush(0)) {
+        }
+    }
+
+    public long getMaxOffset() {
+        return this.mappedFileQueue.getMaxOffset();
+    }
+
+    public long getFlushedWhere() {
+        return this.mappedFileQueue.getFlushedWhere();
+    }
+
+    /**
+     * Delete files whose units have all been dequeued: a unit always targets a slot within one round of the wheel
+     * after it is written, so a file not written for a round has nothing left to deliver.
+     */
+    public int deleteExpiredFile(final long expiredTime) {
+        return this.mappedFileQueue.deleteExpiredFileByTime(expiredTime, 0, 1000 * 120, false, 0);
+    }
+
+    public void shutdown() {
+        this.flush();
+        this.mappedFileQueue.shutdown(1000 * 3);
+    }
+
+    public void destroy() {
+        this.mappedFileQueue.destroy();
+    }
+
+    public MappedFileQueue getMappedFileQueue() {
+        return mappedFileQueue;
+    }
+
+    public static class Unit {
+        public final long pos;
+        public final long prevPos;
+        public final int magic;
+        public final long delayedTimeMs;
+        public final long offsetPy;
+        public final int sizePy;
+
+        public Unit(long pos, long prevPos, int magic, long delayedTimeMs, long offsetPy, int sizePy) {
+            this.pos = pos;
+            this.prevPos = prevPos;
+            this.magic = magic;
+            this.delayedTimeMs = delayedTimeMs;
+            this.offsetPy = offsetPy;
+            this.sizePy = sizePy;
+        }
+
+        public boolean isRoll() {
+            return (magic & MAGIC_ROLL) != 0;
+        }
+    }
+}
@@ -0,0 +1,646 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.timer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.rocketmq.common.ServiceThread;
+import org.apache.rocketmq.common.ThreadFactoryImpl;
+import org.apache.rocketmq.common.TopicFilterType;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.common.message.MessageAccessor;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.message.MessageDecoder;
+import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.topic.TopicValidator;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.store.ConsumeQueue;
+import org.apache.rocketmq.store.ConsumeQueueExt;
+import org.apache.rocketmq.store.DefaultMessageStore;
+import org.apache.rocketmq.store.MessageExtBrokerInner;
+import org.apache.rocketmq.store.MessageStore;
+import org.apache.rocketmq.store.PutMessageResult;
+import org.apache.rocketmq.store.PutMessageStatus;
+import org.apache.rocketmq.store.SelectMappedBufferResult;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.apache.rocketmq.store.config.StorePathConfigHelper;
+
+/**
+ * Delivers messages at arbitrary timestamps, carried by {@link MessageConst#PROPERTY_TIMER_DELIVER_MS}
+ * or {@link MessageConst#PROPERTY_TIMER_DELAY_MS}.
+ * <p>
+ * Timer messages are written to {@link TopicValidator#RMQ_SYS_WHEEL_TIMER} by the commit log, with the deliver
+ * time as tags code. The enqueue service moves them from that consume queue into the {@link TimerLog}, linking each
+ * unit into the {@link TimerWheel} slot of its deliver time. Timers beyond one round of the wheel are put into its
+ * farthest slot and rolled over when reached. The dequeue service walks the slots as time goes, and delivers the
+ * units of a slot in parallel batches back to their real topics; a slot is committed only once all of them are
+ * stored, so a restart delivers at least once.
+ */
+public class TimerMessageStore {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+
+    public static final int TIMER_TOPIC_QUEUE_ID = 0;
+
+    private static final long DELAY_FOR_A_WHILE = 100L;
+    private static final long DELAY_FOR_A_PERIOD = 3000L;
+
+    private final DefaultMessageStore defaultMessageStore;
+    private final MessageStoreConfig storeConfig;
+    private final TimerWheel timerWheel;
+    private final TimerLog timerLog;
+    private final TimerCheckpoint timerCheckpoint;
+    private final int precisionMs;
+    private final int slotsTotal;
+
+    /**
+     * Guards the wheel, the timer log appending and the two reading positions below.
+     */
+    private final ReentrantLock wheelLock = new ReentrantLock();
+    /**
+     * Time of the next slot to dequeue.
+     */
+    private volatile long currReadTimeMs;
+    /**
+     * Next offset of the timer topic consume queue to enqueue.
+     */
+    private volatile long currQueueOffset;
+    /**
+     * All slots before it have been delivered.
+     */
+    private volatile long commitReadTimeMs;
+
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private final TimerEnqueueService enqueueService = new TimerEnqueueService();
+    private final TimerDequeueService dequeueService = new TimerDequeueService();
+    private final TimerFlushService flushService = new TimerFlushService();
+    private ThreadPoolExecutor deliverExecutor;
+    private MessageStore writeMessageStore;
+
+    public TimerMessageStore(final DefaultMessageStore defaultMessageStore) throws IOException {
+        this.defaultMessageStore = defaultMessageStore;
+        this.writeMessageStore = defaultMessageStore;
+        this.storeConfig = defaultMessageStore.getMessageStoreConfig();
+        this.precisionMs = storeConfig.getTimerPrecisionMs();
+        this.slotsTotal = storeConfig.getTimerWheelSlots();
+        String rootDir = storeConfig.getStorePathRootDir();
+        this.timerWheel = new TimerWheel(StorePathConfigHelper.getTimerWheelPath(rootDir), this.slotsTotal, this.precisionMs);
+        this.timerLog = new TimerLog(StorePathConfigHelper.getTimerLogPath(rootDir), storeConfig.getMappedFileSizeTimerLog());
+        this.timerCheckpoint = new TimerCheckpoint(StorePathConfigHelper.getTimerCheckpointPath(rootDir));
+    }
+
+    /**
+     * @param writeMessageStore the writeMessageStore to set
+     */
+    public void setWriteMessageStore(MessageStore writeMessageStore) {
+        this.writeMessageStore = writeMessageStore;
+    }
+
+    /**
+     * Redirect a timer message to the timer topic, backing up its real topic and queue id.
+     * Called by the commit log before the message is encoded.
+     *
+     * @return false if the message is not a timer one, or it is due and has to be delivered at once
+     */
+    public static boolean transformTimerMessage(final MessageExtBrokerInner msg, final MessageStoreConfig storeConfig) {
+        String deliverMs = msg.getProperty(MessageConst.PROPERTY_TIMER_DELIVER_MS);
+        String delayMs = msg.getProperty(MessageConst.PROPERTY_TIMER_DELAY_MS);
+        if (deliverMs == null && delayMs == null) {
+            return false;
+        }
+        long deliverTimeMs;
+        try {
+            deliverTimeMs = delayMs != null ? msg.getStoreTimestamp() + Long.parseLong(delayMs) : Long.parseLong(deliverMs);
+        } catch (NumberFormatException e) {
+            log.warn("Illegal timer property, deliver {}, delay {}, deliver it at once", deliverMs, delayMs);
+            return false;
+        }
+        if (deliverTimeMs <= msg.getStoreTimestamp()) {
+            return false;
+        }
+        long maxDeliverTimeMs = msg.getStoreTimestamp() + storeConfig.getTimerMaxDelaySec() * 1000L;
+        if (deliverTimeMs > maxDeliverTimeMs) {
+            deliverTimeMs = maxDeliverTimeMs;
+        }
+
+        MessageAccessor.clearProperty(msg, MessageConst.PROPERTY_TIMER_DELAY_MS);
+        MessageAccessor.putProperty(msg, MessageConst.PROPERTY_TIMER_DELIVER_MS, String.valueOf(deliverTimeMs));
+        // Backup real topic, queueId
+        MessageAccessor.putProperty(msg, MessageConst.PROPERTY_REAL_TOPIC, msg.getTopic());
+        MessageAccessor.putProperty(msg, MessageConst.PROPERTY_REAL_QUEUE_ID, String.valueOf(msg.getQueueId()));
+        msg.setPropertiesString(MessageDecoder.messageProperties2String(msg.getProperties()));
+
+        msg.setTopic(TopicValidator.RMQ_SYS_WHEEL_TIMER);
+        msg.setQueueId(TIMER_TOPIC_QUEUE_ID);
+        return true;
+    }
+
+    public boolean load() {
+        boolean result = this.timerLog.load();
+        if (!result) {
+            return false;
+        }
+        this.recover();
+        return true;
+    }
+
+    /**
+     * Cut the timer log back to the last checkpoint, and unlink the units after it from the wheel.
+     * They will be enqueued again from the checkpointed consume queue offset.
+     */
+    private void recover() {
+        long flushPos = this.timerCheckpoint.getLastTimerLogFlushPos();
+        int revised = 0;
+        for (int i = 0; i < this.slotsTotal; i++) {
+            Slot slot = this.timerWheel.getRawSlotByIndex(i);
+            if (slot.lastPos < flushPos) {
+                continue;
+            }
+            long pos = slot.lastPos;
+            int num = slot.num;
+            while (pos >= flushPos) {
+                TimerLog.Unit unit = this.timerLog.getUnit(pos);
+                if (null == unit) {
+                    log.error("Timer log chain broken at {}, drop the rest of slot {}", pos, slot);
+                    pos = -1;
+                    break;
+                }
+                pos = unit.prevPos;
+                num--;
+            }
+            if (pos < 0) {
+                this.timerWheel.clearSlot(slot.timeMs);
+            } else {
+                this.timerWheel.putSlot(slot.timeMs, pos, Math.max(num, 1));
+            }
+            revised++;
+        }
+        this.timerLog.truncate(flushPos);
+        this.timerWheel.flush();
+
+        long now = System.currentTimeMillis();
+        this.currReadTimeMs = this.timerCheckpoint.getLastReadTimeMs() > 0
+            ? this.timerCheckpoint.getLastReadTimeMs() : now / precisionMs * precisionMs;
+        this.commitReadTimeMs = this.currReadTimeMs;
+        this.currQueueOffset = this.timerCheckpoint.getLastTimerQueueOffset();
+        log.info("Timer message store recovered, revisedSlots={}, flushPos={}, readTime={}, queueOffset={}",
+            revised, flushPos, this.currReadTimeMs, this.currQueueOffset);
+    }
+
+    public void start() {
+        if (started.compareAndSet(false, true)) {
+            this.deliverExecutor = new ThreadPoolExecutor(
+                storeConfig.getTimerDeliverThreadNum(),
+                storeConfig.getTimerDeliverThreadNum(),
+                1000 * 60,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryImpl("TimerDeliverThread_"));
+            this.enqueueService.start();
+            this.dequeueService.start();
+            this.flushService.start();
+        }
+    }
+
+    public void shutdown() {
+        if (started.compareAndSet(true, false)) {
+            this.enqueueService.shutdown();
+            this.dequeueService.shutdown();
+            this.deliverExecutor.shutdown();
+            this.flushService.shutdown();
+            this.persist();
+        }
+    }
+
+    /**
+     * Release the files on store shutdown, the services can not be started again afterwards.
+     */
+    public void close() {
+        this.timerLog.shutdown();
+        this.timerWheel.shutdown();
+        this.timerCheckpoint.shutdown();
+    }
+
+    public boolean isStarted() {
+        return started.get();
+    }
+
+    /**
+     * Flush the timer log and the wheel, then checkpoint the positions they are consistent with.
+     */
+    public void persist() {
+        // taken first: a slot committed before it has done all its rolling over before the log position below
+        long readTimeMs = this.commitReadTimeMs;
+        long queueOffset;
+        long logPos;
+        this.wheelLock.lock();
+        try {
+            queueOffset = this.currQueueOffset;
+            logPos = this.timerLog.getMaxOffset();
+        } finally {
+            this.wheelLock.unlock();
+        }
+        this.timerLog.flush();
+        this.timerWheel.flush();
+        this.timerCheckpoint.setLastTimerQueueOffset(queueOffset);
+        this.timerCheckpoint.setLastTimerLogFlushPos(logPos);
+        this.timerCheckpoint.setLastReadTimeMs(readTimeMs);
+        this.timerCheckpoint.flush();
+    }
+
+    public void buildRunningStats(HashMap<String, String> stats) {
+        long maxOffset = this.defaultMessageStore.getMaxOffsetInQueue(TopicValidator.RMQ_SYS_WHEEL_TIMER, TIMER_TOPIC_QUEUE_ID);
+        stats.put("timerQueueOffset", String.format("%d,%d", this.currQueueOffset, maxOffset));
+        stats.put("timerReadBehindMs", String.valueOf(System.currentTimeMillis() - this.commitReadTimeMs));
+    }
+
+    private long ceilToSlot(final long timeMs) {
+        return (timeMs + precisionMs - 1) / precisionMs * precisionMs;
+    }
+
+    /**
+     * Link a unit into the slot of its deliver time. Overdue units go to the next slot to dequeue,
+     * and units beyond one round go to the farthest slot not read since the last commit, to be rolled over.
+     *
+     * @param fromQueue whether the unit comes from the timer consume queue, whose offset then moves on atomically
+     */
+    private boolean enqueue(final long delayedTimeMs, final long offsetPy, final int sizePy, final boolean fromQueue) {
+        this.wheelLock.lock();
+        try {
+            long slotTimeMs = Math.max(ceilToSlot(delayedTimeMs), this.currReadTimeMs);
+            int magic = TimerLog.MAGIC_DEFAULT;
+            // from the committed read time: the slot being delivered is read again after a crash, so it must not be
+            // taken over by the next round yet
+            long farthestSlotTimeMs = this.commitReadTimeMs + (long) (this.slotsTotal - 1) * precisionMs;
+            if (slotTimeMs > farthestSlotTimeMs) {
+                slotTimeMs = farthestSlotTimeMs;
+                magic |= TimerLog.MAGIC_ROLL;
+            }
+            Slot slot = this.timerWheel.getSlot(slotTimeMs);
+            long pos = this.timerLog.append(slot.lastPos, magic, delayedTimeMs, offsetPy, sizePy);
+            if (pos < 0) {
+                return false;
+            }
+            this.timerWheel.putSlot(slotTimeMs, pos, slot.num + 1);
+            if (fromQueue) {
+                this.currQueueOffset++;
+            }
+            return true;
+        } finally {
+            this.wheelLock.unlock();
+        }
+    }
+
+    /**
+     * Move timer messages from the consume queue into the wheel.
+     *
+     * @return whether anything was enqueued
+     */
+    private boolean enqueueFromQueue() {
+        ConsumeQueue cq = this.defaultMessageStore.findConsumeQueue(TopicValidator.RMQ_SYS_WHEEL_TIMER, TIMER_TOPIC_QUEUE_ID);
+        if (null == cq) {
+            return false;
+        }
+        if (this.currQueueOffset < cq.getMinOffsetInQueue()) {
+            log.warn("Timer queue offset {} is less than min offset {}, correct it", this.currQueueOffset,
+                cq.getMinOffsetInQueue());
+            this.currQueueOffset = cq.getMinOffsetInQueue();
+        }
+        SelectMappedBufferResult bufferCQ = cq.getIndexBuffer(this.currQueueOffset);
+        if (null == bufferCQ) {
+            return false;
+        }
+        int enqueued = 0;
+        try {
+            ConsumeQueueExt.CqExtUnit cqExtUnit = new ConsumeQueueExt.CqExtUnit();
+            for (int i = 0; i < bufferCQ.getSize() && !this.enqueueService.isStopped(); i += ConsumeQueue.CQ_STORE_UNIT_SIZE) {
+                long offsetPy = bufferCQ.getByteBuffer().getLong();
+                int sizePy = bufferCQ.getByteBuffer().getInt();
+                long tagsCode = bufferCQ.getByteBuffer().getLong();
+                long delayedTimeMs = tagsCode;
+                if (cq.isExtAddr(tagsCode)) {
+                    if (cq.getExt(tagsCode, cqExtUnit)) {
+                        delayedTimeMs = cqExtUnit.getTagsCode();
+                    } else {
+                        delayedTimeMs = this.pickupDeliverTimeMs(offsetPy, sizePy);
+                    }
+                }
+                if (!this.enqueue(delayedTimeMs, offsetPy, sizePy, true)) {
+                    break;
+                }
+                enqueued++;
+            }
+        } finally {
+            bufferCQ.release();
+        }
+        return enqueued > 0;
+    }
+
+    private long pickupDeliverTimeMs(final long offsetPy, final int sizePy) {
+        MessageExt msgExt = this.defaultMessageStore.lookMessageByOffset(offsetPy, sizePy);
+        if (msgExt != null) {
+            String deliverMs = msgExt.getProperty(MessageConst.PROPERTY_TIMER_DELIVER_MS);
+            if (deliverMs != null) {
+                return Long.parseLong(deliverMs);
+            }
+        }
+        log.error("[BUG] can't find deliver time of timer message, deliver it at once, offsetPy={}, sizePy={}",
+            offsetPy, sizePy);
+        return 0;
+    }
+
+    /**
+     * Deliver the next slot if it is due.
+     *
+     * @return false if there is nothing to do for now
+     */
+    private boolean dequeue() throws InterruptedException {
+        if (!this.isStarted()) {
+            // a slot may have been left unconfirmed, the read pointer must not move past it
+            return false;
+        }
+        Slot slot;
+        long slotTimeMs;
+        this.wheelLock.lock();
+        try {
+            slotTimeMs = this.currReadTimeMs;
+            if (slotTimeMs > System.currentTimeMillis()) {
+                return false;
+            }
+            slot = this.timerWheel.getSlot(slotTimeMs);
+            // from now on, overdue units are linked into the next slot
+            this.currReadTimeMs = slotTimeMs + precisionMs;
+        } finally {
+            this.wheelLock.unlock();
+        }
+
+        if (slot.lastPos >= 0) {
+            List<TimerLog.Unit> units = new ArrayList<TimerLog.Unit>(slot.num);
+            long pos = slot.lastPos;
+            while (pos >= 0) {
+                TimerLog.Unit unit = this.timerLog.getUnit(pos);
+                if (null == unit) {
+                    log.error("Timer log chain broken at {}, slot {}", pos, slot);
+                    break;
+                }
+                units.add(unit);
+                pos = unit.prevPos;
+            }
+            if (!this.deliverUnits(units, slotTimeMs)) {
+                // stopped before every unit was confirmed, keep the slot to deliver it again after restart
+                log.warn("Timer slot {} not fully delivered, it will be delivered again", slotTimeMs);
+                return false;
+            }
+        }
+        this.commitReadTimeMs = slotTimeMs + precisionMs;
+        return true;
+    }
+
+    /**
+     * Split the units into batches delivered in parallel, and wait until all of them are done.
+     * Units were chained backwards, so batches are taken from the tail to keep the write order.
+     *
+     * @return true if every unit was rolled over or written to the store
+     */
+    private boolean deliverUnits(final List<TimerLog.Unit> units, final long slotTimeMs) throws InterruptedException {
+        int batchSize = Math.max(1, storeConfig.getTimerDeliverBatchSize());
+        List<CompletableFuture<Boolean>> futures = new ArrayList<CompletableFuture<Boolean>>();
+        for (int end = units.size(); end > 0; end -= batchSize) {
+            final List<TimerLog.Unit> batch = new ArrayList<TimerLog.Unit>(batchSize);
+            for (int i = end - 1; i >= Math.max(0, end - batchSize); i--) {
+                batch.add(units.get(i));
+            }
+            futures.add(CompletableFuture.supplyAsync(() -> deliverBatch(batch, slotTimeMs), this.deliverExecutor));
+        }
+        boolean allDone = true;
+        for (CompletableFuture<Boolean> future : futures) {
+            try {
+                allDone &= future.join();
+            } catch (Exception e) {
+                log.error("Deliver timer batch failed", e);
+                allDone = false;
+            }
+        }
+        return allDone;
+    }
+
+    /**
+     * @return true if every unit of the batch was rolled over or written to the store, false if stopped before
+     */
+    private boolean deliverBatch(final List<TimerLog.Unit> batch, final long slotTimeMs) {
+        boolean allDone = true;
+        List<MessageExtBrokerInner> toPut = new ArrayList<MessageExtBrokerInner>(batch.size());
+        for (TimerLog.Unit unit : batch) {
+            if (unit.isRoll() && unit.delayedTimeMs > slotTimeMs) {
+                // not there yet, roll it over to another round without touching the commit log
+                boolean rolled = this.enqueue(unit.delayedTimeMs, unit.offsetPy, unit.sizePy, false);
+                while (!rolled && this.isStarted()) {
+                    sleepQuietly(DELAY_FOR_A_PERIOD);
+                    rolled = this.enqueue(unit.delayedTimeMs, unit.offsetPy, unit.sizePy, false);
+                }
+                allDone &= rolled;
+                continue;
+            }
+            MessageExt msgExt = this.defaultMessageStore.lookMessageByOffset(unit.offsetPy, unit.sizePy);
+            if (null == msgExt) {
+                log.error("Timer message not found in commit log, maybe expired, offsetPy={}, sizePy={}",
+                    unit.offsetPy, unit.sizePy);
+                continue;
+            }
+            MessageExtBrokerInner msgInner = this.messageTimeup(msgExt);
+            if (TopicValidator.RMQ_SYS_TRANS_HALF_TOPIC.equals(msgInner.getTopic())) {
+                log.error("[BUG] the real topic of timer msg is {}, discard the msg. msg={}", msgInner.getTopic(), msgInner);
+                continue;
+            }
+            toPut.add(msgInner);
+        }
+
+        List<CompletableFuture<PutMessageResult>> results = new ArrayList<CompletableFuture<PutMessageResult>>(toPut.size());
+        for (MessageExtBrokerInner msgInner : toPut) {
+            results.add(this.writeMessageStore.asyncPutMessage(msgInner));
+        }
+        for (int i = 0; i < toPut.size(); i++) {
+            PutMessageResult putMessageResult = null;
+            try {
+                putMessageResult = results.get(i).get();
+            } catch (Exception e) {
+                log.warn("Put timer message failed", e);
+            }
+            // only confirmed writes count, retry the rest one by one until the store takes them
+            while (!this.isPutOk(putMessageResult) && this.isStarted()) {
+                log.error("Timer message time up, but put it failed, retry later. topic={}, msgId={}, result={}",
+                    toPut.get(i).getTopic(), toPut.get(i).getMsgId(), putMessageResult);
+                sleepQuietly(DELAY_FOR_A_PERIOD);
+                putMessageResult = this.writeMessageStore.putMessage(toPut.get(i));
+            }
+            if (!this.isPutOk(putMessageResult)) {
+                allDone = false;
+            } else if (storeConfig.isEnableScheduleMessageStats()) {
+                this.defaultMessageStore.getBrokerStatsManager().incTopicPutNums(toPut.get(i).getTopic(),
+                    putMessageResult.getAppendMessageResult().getMsgNum(), 1);
+                this.defaultMessageStore.getBrokerStatsManager().incTopicPutSize(toPut.get(i).getTopic(),
+                    putMessageResult.getAppendMessageResult().getWroteBytes());
+                this.defaultMessageStore.getBrokerStatsManager().incBrokerPutNums(
+                    putMessageResult.getAppendMessageResult().getMsgNum());
+            }
+        }
+        return allDone;
+    }
+
+    private boolean isPutOk(final PutMessageResult putMessageResult) {
+        return putMessageResult != null && putMessageResult.getPutMessageStatus() == PutMessageStatus.PUT_OK;
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    private MessageExtBrokerInner messageTimeup(MessageExt msgExt) {
+        MessageExtBrokerInner msgInner = new MessageExtBrokerInner();
+        msgInner.setBody(msgExt.getBody());
+        msgInner.setFlag(msgExt.getFlag());
+        MessageAccessor.setProperties(msgInner, msgExt.getProperties());
+
+        TopicFilterType topicFilterType = MessageExt.parseTopicFilterType(msgInner.getSysFlag());
+        long tagsCodeValue =
+            MessageExtBrokerInner.tagsString2tagsCode(topicFilterType, msgInner.getTags());
+        msgInner.setTagsCode(tagsCodeValue);
+
+        msgInner.setSysFlag(msgExt.getSysFlag());
+        msgInner.setBornTimestamp(msgExt.getBornTimestamp());
+        msgInner.setBornHost(msgExt.getBornHost());
+        msgInner.setStoreHost(msgExt.getStoreHost());
+        msgInner.setReconsumeTimes(msgExt.getReconsumeTimes());
+
+        msgInner.setWaitStoreMsgOK(false);
+        // keep the deliver time for consumers, but make sure it is not taken as a timer message again
+        MessageAccessor.clearProperty(msgInner, MessageConst.PROPERTY_TIMER_DELAY_MS);
+        msgInner.setTopic(msgInner.getProperty(MessageConst.PROPERTY_REAL_TOPIC));
+        msgInner.setQueueId(Integer.parseInt(msgInner.getProperty(MessageConst.PROPERTY_REAL_QUEUE_ID)));
+        MessageAccessor.clearProperty(msgInner, MessageConst.PROPERTY_REAL_TOPIC);
+        MessageAccessor.clearProperty(msgInner, MessageConst.PROPERTY_REAL_QUEUE_ID);
+        msgInner.setPropertiesString(MessageDecoder.messageProperties2String(msgInner.getProperties()));
+
+        return msgInner;
+    }
+
+    public TimerWheel getTimerWheel() {
+        return timerWheel;
+    }
+
+    public TimerLog getTimerLog() {
+        return timerLog;
+    }
+
+    public TimerCheckpoint getTimerCheckpoint() {
+        return timerCheckpoint;
+    }
+
+    public long getCurrReadTimeMs() {
+        return currReadTimeMs;
+    }
+
+    public long getCurrQueueOffset() {
+        return currQueueOffset;
+    }
+
+    public long getCommitReadTimeMs() {
+        return commitReadTimeMs;
+    }
+
+    class TimerEnqueueService extends ServiceThread {
+        @Override
+        public String getServiceName() {
+            return TimerEnqueueService.class.getSimpleName();
+        }
+
+        @Override
+        public void run() {
+            log.info(this.getServiceName() + " service started");
+            while (!this.isStopped()) {
+                try {
+                    if (!TimerMessageStore.this.enqueueFromQueue()) {
+                        this.waitForRunning(DELAY_FOR_A_WHILE);
+                    }
+                } catch (Throwable e) {
+                    log.error("Error occurred in " + getServiceName(), e);
+                    this.waitForRunning(DELAY_FOR_A_PERIOD);
+                }
+            }
+            log.info(this.getServiceName() + " service end");
+        }
+    }
+
+    class TimerDequeueService extends ServiceThread {
+        @Override
+        public String getServiceName() {
+            return TimerDequeueService.class.getSimpleName();
+        }
+
+        @Override
+        public void run() {
+            log.info(this.getServiceName() + " service started");
+            while (!this.isStopped()) {
+                try {
+                    if (!TimerMessageStore.this.dequeue()) {
+                        long waitMs = TimerMessageStore.this.currReadTimeMs - System.currentTimeMillis();
+                        this.waitForRunning(Math.max(1, Math.min(waitMs, precisionMs)));
+                    }
+                } catch (Throwable e) {
+                    log.error("Error occurred in " + getServiceName(), e);
+                    this.waitForRunning(DELAY_FOR_A_PERIOD);
+                }
+            }
+            log.info(this.getServiceName() + " service end");
+        }
+    }
+
+    class TimerFlushService extends ServiceThread {
+        @Override
+        public String getServiceName() {
+            return TimerFlushService.class.getSimpleName();
+        }
+
+        @Override
+        public void run() {
+            log.info(this.getServiceName() + " service started");
+            while (!this.isStopped()) {
+                try {
+                    this.waitForRunning(storeConfig.getTimerFlushIntervalMs());
+                    TimerMessageStore.this.persist();
+                    long readBehindMs = System.currentTimeMillis() - TimerMessageStore.this.commitReadTimeMs;
+                    long roundMs = (long) slotsTotal * precisionMs;
+                    TimerMessageStore.this.timerLog.deleteExpiredFile(roundMs + Math.max(0, readBehindMs) + precisionMs);
+                } catch (Throwable e) {
+                    log.error("Error occurred in " + getServiceName(), e);
+                }
+            }
+            log.info(this.getServiceName() + " service end");
+        }
+    }
+}
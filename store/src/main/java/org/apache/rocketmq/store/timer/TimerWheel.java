@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.timer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import org.apache.rocketmq.common.constant.LoggerName;
+import org.apache.rocketmq.logging.InternalLogger;
+import org.apache.rocketmq.logging.InternalLoggerFactory;
+import org.apache.rocketmq.store.MappedFile;
+
+/**
+ * A timing wheel persisted in a memory mapped file. Slot {@code i} covers the timestamps
+ * {@code t} with {@code (t / precisionMs) % slotsTotal == i}, a slot whose time does not match is
+ * considered empty, as it is left over from a previous round.
+ */
+public class TimerWheel {
+    private static final InternalLogger log = InternalLoggerFactory.getLogger(LoggerName.STORE_LOGGER_NAME);
+
+    private final String fileName;
+    private final int slotsTotal;
+    private final int precisionMs;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel fileChannel;
+    private final MappedByteBuffer mappedByteBuffer;
+
+    public TimerWheel(String fileName, int slotsTotal, int precisionMs) throws IOException {
+        this.fileName = fileName;
+        this.slotsTotal = slotsTotal;
+        this.precisionMs = precisionMs;
+        long wheelLength = (long) slotsTotal * Slot.SIZE;
+
+        File file = new File(fileName);
+        MappedFile.ensureDirOK(file.getParent());
+        if (file.exists() && file.length() != wheelLength) {
+            throw new IOException(String.format("Timer wheel length %d does not match slots %d, file %s",
+                file.length(), slotsTotal, fileName));
+        }
+
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        this.randomAccessFile.setLength(wheelLength);
+        this.fileChannel = this.randomAccessFile.getChannel();
+        this.mappedByteBuffer = this.fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, wheelLength);
+    }
+
+    public void shutdown() {
+        this.flush();
+
+        MappedFile.clean(this.mappedByteBuffer);
+
+        try {
+            this.fileChannel.close();
+        } catch (IOException e) {
+            log.error("Failed to properly close the timer wheel channel", e);
+        }
+    }
+
+    public void flush() {
+        this.mappedByteBuffer.force();
+    }
+
+    /**
+     * @return the slot covering the time, empty if nothing has been put into it in this round
+     */
+    public Slot getSlot(long timeMs) {
+        Slot slot = getRawSlot(timeMs);
+        if (slot.timeMs != timeMs / precisionMs * precisionMs) {
+            return new Slot(-1, -1, 0);
+        }
+        return slot;
+    }
+
+    public Slot getRawSlot(long timeMs) {
+        return getRawSlotByIndex(getSlotIndex(timeMs));
+    }
+
+    public Slot getRawSlotByIndex(int slotIndex) {
+        int index = slotIndex * Slot.SIZE;
+        return new Slot(this.mappedByteBuffer.getLong(index) * precisionMs,
+            this.mappedByteBuffer.getLong(index + 8), this.mappedByteBuffer.getInt(index + 16));
+    }
+
+    public void putSlot(long timeMs, long lastPos, int num) {
+        int index = getSlotIndex(timeMs) * Slot.SIZE;
+        // write the time last, so that a torn slot is seen as empty rather than pointing to another round
+        this.mappedByteBuffer.putLong(index + 8, lastPos);
+        this.mappedByteBuffer.putInt(index + 16, num);
+        this.mappedByteBuffer.putLong(index, timeMs / precisionMs);
+    }
+
+    public void clearSlot(long timeMs) {
+        int index = getSlotIndex(timeMs) * Slot.SIZE;
+        this.mappedByteBuffer.putLong(index, -1);
+        this.mappedByteBuffer.putLong(index + 8, -1);
+        this.mappedByteBuffer.putInt(index + 16, 0);
+    }
+
+    public int getSlotIndex(long timeMs) {
+        return (int) (timeMs / precisionMs % slotsTotal);
+    }
+
+    public int getSlotsTotal() {
+        return slotsTotal;
+    }
+
+    public int getPrecisionMs() {
+        return precisionMs;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+}
@@ -140,6 +140,24 @@ public class DefaultMessageStoreTest {
         verifyThatMasterIsFunctional(totalMsgs, messageStore);
     }
 
+    @Test
+    public void testWriteBodyBuffer() {
+        byte[] body = "body kept in its buffer".getBytes();
+        ByteBuffer bodyBuffer = ByteBuffer.allocateDirect(body.length + 2);
+        bodyBuffer.put((byte) 0).put(body).put((byte) 0);
+        bodyBuffer.position(1).limit(1 + body.length);
+        MessageExtBrokerInner msg = buildMessage(null, "FooBar");
+        msg.setBodyBuffer(bodyBuffer.slice());
+
+        PutMessageResult putMessageResult = messageStore.putMessage(msg);
+        assertThat(putMessageResult.isOk()).isTrue();
+
+        MessageExt messageExt = getDefaultMessageStore().lookMessageByOffset(
+            putMessageResult.getAppendMessageResult().getWroteOffset(), putMessageResult.getAppendMessageResult().getWroteBytes());
+        assertThat(messageExt.getBody()).isEqualTo(body);
+        assertThat(messageExt.getBodyCRC()).isEqualTo(UtilAll.crc32(body));
+    }
+
     @Test
     public void testLookMessageByOffset_OffsetIsFirst() {
         final int totalCount = 10;
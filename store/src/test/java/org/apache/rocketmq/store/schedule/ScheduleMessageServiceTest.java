@@ -21,6 +21,7 @@ import org.apache.rocketmq.common.BrokerConfig;
 import org.apache.rocketmq.common.UtilAll;
 import org.apache.rocketmq.common.message.MessageDecoder;
 import org.apache.rocketmq.common.message.MessageExt;
+import org.apache.rocketmq.common.running.RunningStats;
 import org.apache.rocketmq.store.*;
 import org.apache.rocketmq.store.config.MessageStoreConfig;
 import org.apache.rocketmq.store.stats.BrokerStatsManager;
@@ -174,6 +175,39 @@ public class ScheduleMessageServiceTest {
 
     }
 
+    @Test
+    public void asyncDeliverDelayedMessageTest() throws Exception {
+        scheduleMessageService.shutdown();
+        messageStoreConfig.setEnableScheduleAsyncDeliver(true);
+        // a tiny pending limit makes the deliver task back off while puts are confirmed
+        messageStoreConfig.setScheduleAsyncDeliverMaxPendingLimit(2);
+        scheduleMessageService.start();
+
+        int msgNum = 5;
+        for (int i = 0; i < msgNum; i++) {
+            MessageExtBrokerInner msg = buildMessage();
+            msg.setDelayTimeLevel(1);
+            assertThat(messageStore.putMessage(msg).isOk()).isTrue();
+        }
+        StoreTestUtil.waitCommitLogReput(messageStore);
+
+        GetMessageResult messageResult = messageStore.getMessage(messageGroup, topic, 0, 0, 32, null);
+        assertThat(messageResult.getStatus()).isNotEqualTo(GetMessageStatus.FOUND);
+        messageResult.release();
+
+        TimeUnit.SECONDS.sleep(10);
+
+        for (int i = 0; i < msgNum; i++) {
+            messageResult = messageStore.getMessage(messageGroup, topic, 0, i, 1, null);
+            assertThat(messageResult.getStatus()).isEqualTo(GetMessageStatus.FOUND);
+            messageResult.release();
+        }
+
+        HashMap<String, String> stats = new HashMap<String, String>();
+        scheduleMessageService.buildRunningStats(stats);
+        assertThat(stats.get(RunningStats.scheduleMessageOffset.name() + "_1")).isEqualTo(msgNum + "," + msgNum);
+    }
+
     /**
      * add some [error/no use] code test
      */
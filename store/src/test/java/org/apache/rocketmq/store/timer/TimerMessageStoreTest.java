@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.timer;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.rocketmq.common.BrokerConfig;
+import org.apache.rocketmq.common.UtilAll;
+import org.apache.rocketmq.common.message.MessageConst;
+import org.apache.rocketmq.common.topic.TopicValidator;
+import org.apache.rocketmq.store.DefaultMessageStore;
+import org.apache.rocketmq.store.GetMessageResult;
+import org.apache.rocketmq.store.GetMessageStatus;
+import org.apache.rocketmq.store.MessageArrivingListener;
+import org.apache.rocketmq.store.MessageExtBrokerInner;
+import org.apache.rocketmq.store.MessageStore;
+import org.apache.rocketmq.store.PutMessageResult;
+import org.apache.rocketmq.store.PutMessageStatus;
+import org.apache.rocketmq.store.config.MessageStoreConfig;
+import org.apache.rocketmq.store.stats.BrokerStatsManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TimerMessageStoreTest {
+    private final String storePath = System.getProperty("java.io.tmpdir") + File.separator + "timer_test#" + UUID.randomUUID();
+    private final String topic = "timer_topic_test";
+    private final String group = "timerGroupTest";
+    private SocketAddress bornHost;
+    private SocketAddress storeHost;
+    private MessageStoreConfig messageStoreConfig;
+    private DefaultMessageStore messageStore;
+
+    @Before
+    public void init() throws Exception {
+        bornHost = new InetSocketAddress(InetAddress.getLocalHost(), 8123);
+        storeHost = new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0);
+        messageStoreConfig = new MessageStoreConfig();
+        messageStoreConfig.setMappedFileSizeCommitLog(1024 * 1024);
+        messageStoreConfig.setMappedFileSizeConsumeQueue(1024 * 20);
+        messageStoreConfig.setMessageIndexEnable(false);
+        messageStoreConfig.setStorePathRootDir(storePath);
+        messageStoreConfig.setStorePathCommitLog(storePath + File.separator + "commitlog");
+        messageStoreConfig.setTimerWheelEnable(true);
+        messageStoreConfig.setTimerPrecisionMs(100);
+        // one round of 2 seconds, so that long timers roll over
+        messageStoreConfig.setTimerWheelSlots(20);
+        messageStoreConfig.setMappedFileSizeTimerLog(1024 * 40);
+        messageStoreConfig.setTimerFlushIntervalMs(100);
+        messageStore = createMessageStore();
+    }
+
+    private DefaultMessageStore createMessageStore() throws Exception {
+        DefaultMessageStore store = new DefaultMessageStore(messageStoreConfig,
+            new BrokerStatsManager(new BrokerConfig().getBrokerClusterName()), new MyMessageArrivingListener(), new BrokerConfig());
+        assertThat(store.load()).isTrue();
+        store.start();
+        return store;
+    }
+
+    @Test
+    public void testTransformTimerMessage() {
+        MessageExtBrokerInner msg = buildMessage();
+        msg.setStoreTimestamp(System.currentTimeMillis());
+        assertThat(TimerMessageStore.transformTimerMessage(msg, messageStoreConfig)).isFalse();
+
+        msg.setDelayTimeMs(3000);
+        assertThat(TimerMessageStore.transformTimerMessage(msg, messageStoreConfig)).isTrue();
+        assertThat(msg.getTopic()).isEqualTo(TopicValidator.RMQ_SYS_WHEEL_TIMER);
+        assertThat(msg.getProperty(MessageConst.PROPERTY_REAL_TOPIC)).isEqualTo(topic);
+        assertThat(msg.getDeliverTimeMs()).isEqualTo(msg.getStoreTimestamp() + 3000);
+
+        MessageExtBrokerInner overdue = buildMessage();
+        overdue.setStoreTimestamp(System.currentTimeMillis());
+        overdue.setDeliverTimeMs(overdue.getStoreTimestamp() - 1);
+        assertThat(TimerMessageStore.transformTimerMessage(overdue, messageStoreConfig)).isFalse();
+        assertThat(overdue.getTopic()).isEqualTo(topic);
+    }
+
+    @Test
+    public void testDeliverAtTime() throws Exception {
+        long deliverTimeMs = System.currentTimeMillis() + 1000;
+        MessageExtBrokerInner msg = buildMessage();
+        msg.setDeliverTimeMs(deliverTimeMs);
+        PutMessageResult result = messageStore.putMessage(msg);
+        assertThat(result.isOk()).isTrue();
+
+        GetMessageResult messageResult = messageStore.getMessage(group, topic, 0, 0, 1, null);
+        assertThat(messageResult.getStatus()).isNotEqualTo(GetMessageStatus.FOUND);
+
+        messageResult = waitForMessage();
+        assertThat(messageResult.getStatus()).isEqualTo(GetMessageStatus.FOUND);
+        assertThat(System.currentTimeMillis()).isGreaterThanOrEqualTo(deliverTimeMs);
+        messageResult.release();
+    }
+
+    @Test
+    public void testDeliverAfterRollOver() throws Exception {
+        // beyond one round of the wheel
+        long deliverTimeMs = System.currentTimeMillis() + 3000;
+        MessageExtBrokerInner msg = buildMessage();
+        msg.setDeliverTimeMs(deliverTimeMs);
+        assertThat(messageStore.putMessage(msg).isOk()).isTrue();
+
+        TimeUnit.MILLISECONDS.sleep(2000);
+        assertThat(messageStore.getMaxOffsetInQueue(topic, 0)).isEqualTo(0);
+
+        GetMessageResult messageResult = waitForMessage();
+        assertThat(messageResult.getStatus()).isEqualTo(GetMessageStatus.FOUND);
+        assertThat(System.currentTimeMillis()).isGreaterThanOrEqualTo(deliverTimeMs);
+        messageResult.release();
+    }
+
+    @Test
+    public void testDeliverAfterRestart() throws Exception {
+        MessageExtBrokerInner msg = buildMessage();
+        msg.setDelayTimeMs(2000);
+        assertThat(messageStore.putMessage(msg).isOk()).isTrue();
+        TimeUnit.MILLISECONDS.sleep(500);
+
+        messageStore.shutdown();
+        messageStore = createMessageStore();
+
+        GetMessageResult messageResult = waitForMessage();
+        assertThat(messageResult.getStatus()).isEqualTo(GetMessageStatus.FOUND);
+        assertThat(messageResult.getMessageCount()).isEqualTo(1);
+        messageResult.release();
+    }
+
+    @Test
+    public void testRollOverKeepsSlotBeingDelivered() throws Exception {
+        TimerMessageStore timerMessageStore = messageStore.getTimerMessageStore();
+        timerMessageStore.shutdown();
+        long precisionMs = messageStoreConfig.getTimerPrecisionMs();
+        long roundMs = messageStoreConfig.getTimerWheelSlots() * precisionMs;
+        long slotTimeMs = timerMessageStore.getCommitReadTimeMs();
+
+        Method enqueue = TimerMessageStore.class.getDeclaredMethod("enqueue", long.class, long.class, int.class, boolean.class);
+        enqueue.setAccessible(true);
+        assertThat((Boolean) enqueue.invoke(timerMessageStore, slotTimeMs, 0L, 100, false)).isTrue();
+
+        // the slot is being delivered: read but not committed yet
+        Field currReadTimeMs = TimerMessageStore.class.getDeclaredField("currReadTimeMs");
+        currReadTimeMs.setAccessible(true);
+        currReadTimeMs.set(timerMessageStore, slotTimeMs + precisionMs);
+        assertThat((Boolean) enqueue.invoke(timerMessageStore, slotTimeMs + 10 * roundMs, 100L, 100, false)).isTrue();
+
+        Slot slot = timerMessageStore.getTimerWheel().getSlot(slotTimeMs);
+        assertThat(slot.num).isEqualTo(1);
+        assertThat(timerMessageStore.getTimerLog().getUnit(slot.lastPos).offsetPy).isEqualTo(0L);
+    }
+
+    @Test
+    public void testRedeliverSlotNotConfirmedBeforeShutdown() throws Exception {
+        final CountDownLatch putTried = new CountDownLatch(1);
+        MessageStore failingStore = mock(MessageStore.class);
+        PutMessageResult failed = new PutMessageResult(PutMessageStatus.SERVICE_NOT_AVAILABLE, null);
+        when(failingStore.asyncPutMessage(any(MessageExtBrokerInner.class))).thenAnswer(invocation -> {
+            putTried.countDown();
+            return CompletableFuture.completedFuture(failed);
+        });
+        when(failingStore.putMessage(any(MessageExtBrokerInner.class))).thenReturn(failed);
+        messageStore.getTimerMessageStore().setWriteMessageStore(failingStore);
+
+        MessageExtBrokerInner msg = buildMessage();
+        msg.setDelayTimeMs(500);
+        assertThat(messageStore.putMessage(msg).isOk()).isTrue();
+        assertThat(putTried.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // stopped while the put keeps failing, the slot must not be committed
+        messageStore.shutdown();
+        messageStore = createMessageStore();
+
+        GetMessageResult messageResult = waitForMessage();
+        assertThat(messageResult.getStatus()).isEqualTo(GetMessageStatus.FOUND);
+        assertThat(messageResult.getMessageCount()).isEqualTo(1);
+        messageResult.release();
+    }
+
+    private GetMessageResult waitForMessage() throws InterruptedException {
+        GetMessageResult messageResult = null;
+        for (int i = 0; i < 100; i++) {
+            messageResult = messageStore.getMessage(group, topic, 0, 0, 32, null);
+            if (messageResult.getStatus() == GetMessageStatus.FOUND) {
+                break;
+            }
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        return messageResult;
+    }
+
+    private MessageExtBrokerInner buildMessage() {
+        MessageExtBrokerInner msg = new MessageExtBrokerInner();
+        msg.setTopic(topic);
+        msg.setTags("timer_tag");
+        msg.setKeys("timer_key");
+        msg.setBody("timer message test".getBytes());
+        msg.setSysFlag(0);
+        msg.setBornTimestamp(System.currentTimeMillis());
+        msg.setStoreHost(storeHost);
+        msg.setBornHost(bornHost);
+        return msg;
+    }
+
+    @After
+    public void shutdown() {
+        messageStore.shutdown();
+        messageStore.destroy();
+        UtilAll.deleteFile(new File(storePath));
+    }
+
+    private class MyMessageArrivingListener implements MessageArrivingListener {
+        @Override
+        public void arriving(String topic, int queueId, long logicOffset, long tagsCode, long msgStoreTime,
+            byte[] filterBitMap, Map<String, String> properties) {
+        }
+    }
+}
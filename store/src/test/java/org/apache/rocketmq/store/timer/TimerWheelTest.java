@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rocketmq.store.timer;
+
+import java.io.File;
+import java.util.UUID;
+import org.apache.rocketmq.common.UtilAll;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TimerWheelTest {
+    private final String baseDir = System.getProperty("java.io.tmpdir") + File.separator + "timer_wheel_test#" + UUID.randomUUID();
+    private final int slotsTotal = 60;
+    private final int precisionMs = 1000;
+    private TimerWheel timerWheel;
+
+    @Before
+    public void init() throws Exception {
+        timerWheel = new TimerWheel(baseDir + File.separator + "timerwheel", slotsTotal, precisionMs);
+    }
+
+    @Test
+    public void testPutAndGetSlot() {
+        long now = System.currentTimeMillis() / precisionMs * precisionMs;
+        assertThat(timerWheel.getSlot(now).lastPos).isEqualTo(-1);
+
+        timerWheel.putSlot(now, 120, 3);
+        Slot slot = timerWheel.getSlot(now + precisionMs - 1);
+        assertThat(slot.timeMs).isEqualTo(now);
+        assertThat(slot.lastPos).isEqualTo(120);
+        assertThat(slot.num).isEqualTo(3);
+
+        // same index, but another round
+        assertThat(timerWheel.getSlotIndex(now + slotsTotal * precisionMs)).isEqualTo(timerWheel.getSlotIndex(now));
+        assertThat(timerWheel.getSlot(now + slotsTotal * precisionMs).lastPos).isEqualTo(-1);
+
+        timerWheel.clearSlot(now);
+        assertThat(timerWheel.getSlot(now).lastPos).isEqualTo(-1);
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        long now = System.currentTimeMillis() / precisionMs * precisionMs;
+        timerWheel.putSlot(now, 40, 1);
+        timerWheel.shutdown();
+
+        timerWheel = new TimerWheel(baseDir + File.separator + "timerwheel", slotsTotal, precisionMs);
+        assertThat(timerWheel.getSlot(now).lastPos).isEqualTo(40);
+    }
+
+    @After
+    public void shutdown() {
+        timerWheel.shutdown();
+        UtilAll.deleteFile(new File(baseDir));
+    }
+}